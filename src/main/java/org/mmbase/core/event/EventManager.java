@@ -183,7 +183,7 @@ public class EventManager implements SystemEventListener {
 
             }
         }
-        log.debug("Found brokers " + getBrokers());
+        log.debug("Found brokers {}", getBrokers());
         for (URL url : ResourceLoader.getConfigurationRoot().getResourceList(resource)) {
             try {
                 log.debug("listeners of " + url);
@@ -288,7 +288,7 @@ public class EventManager implements SystemEventListener {
                             sel.notify(se.getKey());
                             se.getValue().add(sel);
                         } else {
-                            log.debug(sel.toString() + " was already notified about " + se);
+                            log.debug("{} was already notified about {}", sel, se);
                         }
                     }
                 }
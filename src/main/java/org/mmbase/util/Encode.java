@@ -10,7 +10,8 @@ See http://www.MMBase.org/license
 package org.mmbase.util;
 
 import java.util.*;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.mmbase.util.logging.Logger;
 import org.mmbase.util.logging.Logging;
@@ -41,7 +42,7 @@ import org.mmbase.util.transformers.*;
  *
  *  Usage:
  *  <pre>
- *  Encode encoder = new Encode("ESCAPE_XML");
+ *  Encode encoder = Encode.encoder("ESCAPE_XML");
  *  System.out.println(  encoder.decode( encoder.encode("& \" < >") )  );
  *  </pre>
  *
@@ -56,21 +57,25 @@ public class Encode {
 
     private Transformer trans; // the instance of the object doing the actual work.
 
+    // these are read without synchronization (only register is synchronized), so they are all concurrent
     private  static Map<String,Config> encodings;                   // string -> Config, all encoding are registered in this.
-    private  static Set<String> registered = new HashSet<String>();  // in this is remembered which classes were registered, to avoid registering them more than once.
+    private  static Set<String> registered = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());  // in this is remembered which classes were registered, to avoid registering them more than once.
+    private  static Set<String> cached = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());      // the encodings of which the results are cached, see register(String, boolean)
+    private  static Set<String> threadSafe = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());  // the encodings of which one transformer instance can be shared by all threads
+    private  static ConcurrentMap<String, Encode> encoders = new ConcurrentHashMap<String, Encode>(); // string -> Encode, see encoder(String)
 
     static {
-        encodings = new HashMap<String,Config>();
+        encodings = new ConcurrentHashMap<String,Config>();
 
         // a few Encoding are avaible by default:
         for (String clazz :  new String[] {
                 "org.mmbase.util.transformers.MD5",
+                "org.mmbase.util.transformers.Digest",
                 "org.mmbase.util.transformers.Base64",
                 "org.mmbase.util.transformers.Hex",
                 "org.mmbase.util.transformers.Xml",
                 "org.mmbase.util.transformers.Url",
                 "org.mmbase.util.transformers.Sql",
-                "org.mmbase.util.transformers.XmlField",
                 "org.mmbase.util.transformers.LinkFinder",
                 "org.mmbase.util.transformers.Censor",
                 "org.mmbase.util.transformers.Rot13",
@@ -78,11 +83,17 @@ public class Encode {
                 "org.mmbase.util.transformers.UnicodeEscaper"
             }) {
             try {
-                register(clazz);
+                register(clazz, false, true);
             } catch (IllegalArgumentException e) {
                 log.warn(e.getMessage());
             }
         }
+        try {
+            // these are expensive, and deterministic
+            register("org.mmbase.util.transformers.XmlField", true, true);
+        } catch (IllegalArgumentException e) {
+            log.warn(e.getMessage());
+        }
     }
 
     /**
@@ -94,21 +105,65 @@ public class Encode {
      * @param	encoding a string that describes which encoding should be used.
      */
     public Encode(String encoding) {
-        if (encodings.containsKey(encoding.toUpperCase())) { // it must be known.
-            Config e = encodings.get(encoding.toUpperCase()); // get the info.
-            try {
-                trans = (Transformer) e.clazz.newInstance();
-            } catch (InstantiationException ex) {
-                throw new IllegalArgumentException("encoding: '" + encoding + "' could not be instantiated");
-            } catch (IllegalAccessException ex) {
-            }
-            if (trans instanceof ConfigurableTransformer) {
-                ((ConfigurableTransformer) trans).configure(e.config);
-            }
-        } else {
+        trans = newTransformer(encoding);
+    }
+
+    /**
+     * For {@link ThreadConfined}, which makes its transformers itself.
+     */
+    private Encode() {
+    }
+
+    private static Transformer newTransformer(String encoding) {
+        Config e = encodings.get(encoding.toUpperCase()); // get the info.
+        if (e == null) { // it must be known.
             throw new IllegalArgumentException("encoding: '" + encoding + "' unknown" + encodings.keySet());
         }
+        Transformer trans = null;
+        try {
+            trans = (Transformer) e.clazz.newInstance();
+        } catch (InstantiationException ex) {
+            throw new IllegalArgumentException("encoding: '" + encoding + "' could not be instantiated");
+        } catch (IllegalAccessException ex) {
+        }
+        if (trans instanceof ConfigurableTransformer) {
+            ((ConfigurableTransformer) trans).configure(e.config);
+        }
+        if (trans instanceof CharTransformer && cached.contains(encoding.toUpperCase())) {
+            trans = new CachingCharTransformer((CharTransformer) trans, encoding.toUpperCase());
+        }
+        return trans;
+    }
 
+    /**
+     * Returns an Encode instance for the given encoding, which may be used by several threads at
+     * the same time. The transformer is instantiated and configured only once, so this is much
+     * cheaper than creating a new Encode for every encoding.
+     *
+     * Encodings which were not registered as thread-safe get a transformer per thread.
+     *
+     * @param	encoding a string that describes which encoding should be used.
+     * @throws IllegalArgumentException If the encoding is unknown
+     * @see #register(String, boolean, boolean)
+     * @since MMBase-2.0
+     */
+    public static Encode encoder(String encoding) {
+        Encode encoder = encoders.get(encoding);
+        if (encoder == null) {
+            String key = encoding.toUpperCase();
+            encoder = encoders.get(key);
+            if (encoder == null) {
+                encoder = threadSafe.contains(key) ? new Encode(key) : new ThreadConfined(key);
+                Encode existing = encoders.putIfAbsent(key, encoder);
+                if (existing != null) {
+                    encoder = existing;
+                }
+            }
+            if (! key.equals(encoding)) {
+                encoders.put(encoding, encoder);
+            }
+        }
+        return encoder;
     }
 
     /**
@@ -126,6 +181,32 @@ public class Encode {
      * @param clazz a class name.
      */
     public static void register(String clazz) {
+        register(clazz, false);
+    }
+
+    /**
+     * Add new transformation types, and optionally cache their results. This should only be done
+     * if the transformations are deterministic, i.e. their results only depend on their input.
+     *
+     * @param clazz a class name.
+     * @param cache Whether the results of the (String) transformations of this class must be cached
+     * @see CachingCharTransformer
+     * @since MMBase-2.0
+     */
+    public static void register(String clazz, boolean cache) {
+        register(clazz, cache, false);
+    }
+
+    /**
+     * Add new transformation types.
+     *
+     * @param clazz a class name.
+     * @param cache Whether the results of the (String) transformations of this class must be cached
+     * @param shared Whether the transformers of this class are thread-safe once configured, so
+     * that {@link #encoder(String)} can share one instance between all threads.
+     * @since MMBase-2.0
+     */
+    public static synchronized void register(String clazz, boolean cache, boolean shared) {
         if (! registered.contains(clazz)) { // if already registered, do nothing.
             log.service("registering encode class " + clazz);
             try {
@@ -137,10 +218,23 @@ public class Encode {
                         // In this way we find out what this class can do.
                         ConfigurableTransformer transformer = (ConfigurableTransformer) atrans.newInstance();
                         Map<String,Config> newencodings = transformer.transformers();
+                        // the encodings themselves last, so that they are never used without these
+                        if (cache) {
+                            cached.addAll(newencodings.keySet());
+                        }
+                        if (shared) {
+                            threadSafe.addAll(newencodings.keySet());
+                        }
                         encodings.putAll(newencodings); // add them all to our encodings.
                     } else {
                         log.debug("Non configurable");
                         Transformer transformer = (Transformer) atrans.newInstance();
+                        if (cache) {
+                            cached.add(transformer.toString().toUpperCase());
+                        }
+                        if (shared) {
+                            threadSafe.add(transformer.toString().toUpperCase());
+                        }
                         encodings.put(transformer.toString().toUpperCase(), new Config(atrans, -1, "Transformer: " + clazz));
                     }
                     // TODO, perhaps there should be a check here, to make sure that no two classes use the
@@ -156,14 +250,13 @@ public class Encode {
                 throw new IllegalArgumentException(e.toString());
             }
             registered.add(clazz);
+            encoders.clear();
         }
     }
 
     /**
      *	This function will encode a given string to it's encoded
-     *	variant. It is static, it will make a temporary instance of
-     *	the Transformer class. If you need to encode alot, it is
-     *	better to use new Encode first.
+     *	variant. It is static, it uses the shared instance of {@link #encoder(String)}.
      *
      *
      *	@param	encoding    a string that describes which encoding should be used.
@@ -174,14 +267,12 @@ public class Encode {
      *	    	    	    with the given encoding
      **/
     public static String encode(String encoding, String toEncode) {
-        Encode e = new Encode(encoding);
-        return e.encode(toEncode);
+        return encoder(encoding).encode(toEncode);
     }
 
 
     public static String encode(String encoding, byte[] bytes) {
-        Encode e = new Encode(encoding);
-        return e.encode(bytes);
+        return encoder(encoding).encode(bytes);
     }
 
 
@@ -195,13 +286,11 @@ public class Encode {
      **/
 
     public static String decode(String encoding, String toDecode) {
-        Encode e = new Encode(encoding);
-        return e.decode(toDecode);
+        return encoder(encoding).decode(toDecode);
     }
 
     public static byte[] decodeBytes(String encoding, String toDecode) {
-        Encode e = new Encode(encoding);
-        return e.decodeBytes(toDecode);
+        return encoder(encoding).decodeBytes(toDecode);
     }
 
 
@@ -215,9 +304,9 @@ public class Encode {
      **/
     public String encode(String toEncode) {
         if (isByteToCharEncoder()) {
-            return ((ByteToCharTransformer)trans).transform(toEncode.getBytes());
+            return ((ByteToCharTransformer) getTransformer()).transform(toEncode.getBytes());
         } else {
-            return ((CharTransformer)trans).transform(toEncode);
+            return ((CharTransformer) getTransformer()).transform(toEncode);
         }
     }
     /**
@@ -226,7 +315,7 @@ public class Encode {
      * @return a string;;
      */
     public String encode(byte[] bytes) {
-        return ((ByteToCharTransformer)trans).transform(bytes);
+        return ((ByteToCharTransformer) getTransformer()).transform(bytes);
     }
 
     /**
@@ -237,16 +326,16 @@ public class Encode {
      **/
     public String decode(String toDecode) {
         if (isByteToCharEncoder()) {
-            return new String(((ByteToCharTransformer)trans).transformBack(toDecode));
+            return new String(((ByteToCharTransformer) getTransformer()).transformBack(toDecode));
         } else {
-            return ((CharTransformer)trans).transformBack(toDecode);
+            return ((CharTransformer) getTransformer()).transformBack(toDecode);
         }
     }
     public byte[] decodeBytes(String toDecode) {
         if (isByteToCharEncoder()) {
-            return ((ByteToCharTransformer)trans).transformBack(toDecode);
+            return ((ByteToCharTransformer) getTransformer()).transformBack(toDecode);
         } else {
-            return ((CharTransformer)trans).transformBack(toDecode).getBytes();
+            return ((CharTransformer) getTransformer()).transformBack(toDecode).getBytes();
         }
     }
     /**
@@ -270,13 +359,13 @@ public class Encode {
      * Checks if the transformation is between two Strings.
      */
     public boolean isCharEncoder() {
-        return trans instanceof org.mmbase.util.transformers.CharTransformer;
+        return getTransformer() instanceof org.mmbase.util.transformers.CharTransformer;
     }
     /**
      * Checks if the transformations makes from byte[] String.
      */
     public boolean isByteToCharEncoder() {
-        return trans instanceof org.mmbase.util.transformers.ByteToCharTransformer;
+        return getTransformer() instanceof org.mmbase.util.transformers.ByteToCharTransformer;
     }
     /**
      * Returns the encoding
@@ -284,8 +373,32 @@ public class Encode {
      * @return An String representing the coding that is currently used.
      */
     public String getEncoding() {
-        return trans.toString();
+        return getTransformer().toString();
     }
+    /**
+     * The Encode for encodings with transformers which may not be used by several threads at the
+     * same time. Every thread gets its own transformer.
+     * @since MMBase-2.0
+     */
+    private static class ThreadConfined extends Encode {
+        private final ThreadLocal<Transformer> transformers;
+        ThreadConfined(final String encoding) {
+            if (! isEncoding(encoding)) {
+                throw new IllegalArgumentException("encoding: '" + encoding + "' unknown" + encodings.keySet());
+            }
+            transformers = new ThreadLocal<Transformer>() {
+                @Override
+                protected Transformer initialValue() {
+                    return newTransformer(encoding);
+                }
+            };
+        }
+        @Override
+        public Transformer getTransformer() {
+            return transformers.get();
+        }
+    }
+
     /**
      * Invocation of the class from the commandline for testing.
      */
@@ -61,6 +61,133 @@ public abstract class ThreadPools {
         return s;
     }
 
+    /**
+     * Wraps a task, so that it runs with the logging context ({@link MDC}) of the current thread,
+     * like the thread which submits it. The executors of this class do this for every task. The
+     * context is an immutable snapshot, so this costs hardly anything. Also an empty context is
+     * installed, so that the task never sees what a previous task left in the thread.
+     * @since MMBase-2.0
+     */
+    public static Runnable withContext(final Runnable task) {
+        if (task instanceof ContextRunnable) {
+            return task;
+        }
+        final Map<String, Object> context = Logging.getMDC().getContext();
+        return new ContextRunnable(task, context);
+    }
+
+    /**
+     * @see #withContext(Runnable)
+     * @since MMBase-2.0
+     */
+    public static <V> Callable<V> withContext(final Callable<V> task) {
+        if (task instanceof ContextCallable) {
+            return task;
+        }
+        final Map<String, Object> context = Logging.getMDC().getContext();
+        return new ContextCallable<V>(task, context);
+    }
+
+    private static <T> List<Callable<T>> withContext(Collection<? extends Callable<T>> tasks) {
+        List<Callable<T>> result = new ArrayList<Callable<T>>(tasks.size());
+        for (Callable<T> task : tasks) {
+            result.add(withContext(task));
+        }
+        return result;
+    }
+
+    /**
+     * Installs the given logging context in the current thread.
+     * @return The previous context, to be restored with {@link #leave}
+     */
+    private static Map<String, Object> enter(Map<String, Object> context) {
+        MDC mdc = Logging.getMDC();
+        Map<String, Object> previous = mdc.getContext();
+        mdc.setContext(context);
+        return previous;
+    }
+
+    private static void leave(Map<String, Object> previous) {
+        Logging.getMDC().setContext(previous);
+    }
+
+    /**
+     * A Runnable which runs in the logging context in which it was submitted.
+     */
+    private static final class ContextRunnable implements Runnable {
+        private final Runnable task;
+        private final Map<String, Object> context;
+        ContextRunnable(Runnable task, Map<String, Object> context) {
+            this.task = task;
+            this.context = context;
+        }
+        @Override
+        public void run() {
+            Map<String, Object> previous = enter(context);
+            try {
+                task.run();
+            } finally {
+                leave(previous);
+            }
+        }
+        @Override
+        public String toString() {
+            return task.toString();
+        }
+    }
+
+    /**
+     * A Callable which runs in the logging context in which it was submitted.
+     */
+    private static final class ContextCallable<V> implements Callable<V> {
+        private final Callable<V> task;
+        private final Map<String, Object> context;
+        ContextCallable(Callable<V> task, Map<String, Object> context) {
+            this.task = task;
+            this.context = context;
+        }
+        @Override
+        public V call() throws Exception {
+            Map<String, Object> previous = enter(context);
+            try {
+                return task.call();
+            } finally {
+                leave(previous);
+            }
+        }
+        @Override
+        public String toString() {
+            return task.toString();
+        }
+    }
+
+    /**
+     * A ThreadPoolExecutor which runs its tasks in the logging context in which they were
+     * submitted. The context is captured in the FutureTask which {@link #submit} creates, so that
+     * the queue still contains those Futures (see {@link #identify}). Only Runnables which are
+     * not Futures are wrapped in {@link #execute}.
+     */
+    private static class ContextThreadPoolExecutor extends ThreadPoolExecutor {
+        ContextThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit, BlockingQueue<Runnable> workQueue) {
+            super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue);
+        }
+        ContextThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit, BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory) {
+            super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory);
+        }
+        @Override
+        protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+            return super.newTaskFor(withContext(runnable), value);
+        }
+        @Override
+        protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+            return super.newTaskFor(withContext(callable));
+        }
+        @Override
+        public void execute(Runnable r) {
+            super.execute(r instanceof Future ? r : withContext(r));
+        }
+    }
+
     /**
      * Generic Thread Pools which can be used by 'filters'. Filters
      * are short living tasks. This is mainly used by {@link
@@ -69,7 +196,49 @@ public abstract class ThreadPools {
      *
      * Code performing a similar task could also use this thread pool.
      */
-    public static final ExecutorService filterExecutor = Executors.newCachedThreadPool();
+    public static final ExecutorService filterExecutor = new ContextThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+
+    /**
+     * Fork/join pool for CPU bound work which is split in parts, which can be done
+     * simultaneously. This is e.g. used by {@link
+     * org.mmbase.util.transformers.ParallelTransformation} to transform very large Strings.
+     * @since MMBase-2.0
+     */
+    public static final ForkJoinPool forkJoinPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors()) {
+            // ForkJoinTasks themselves are not wrapped, they are used as is.
+            @Override
+            public void execute(Runnable task) {
+                super.execute(task instanceof ForkJoinTask ? task : withContext(task));
+            }
+            @Override
+            public ForkJoinTask<?> submit(Runnable task) {
+                return super.submit(task instanceof ForkJoinTask ? task : withContext(task));
+            }
+            @Override
+            public <T> ForkJoinTask<T> submit(Runnable task, T result) {
+                return super.submit(withContext(task), result);
+            }
+            @Override
+            public <T> ForkJoinTask<T> submit(Callable<T> task) {
+                return super.submit(withContext(task));
+            }
+            @Override
+            public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) {
+                return super.invokeAll(withContext(tasks));
+            }
+            @Override
+            public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) throws InterruptedException {
+                return super.invokeAll(withContext(tasks), timeout, unit);
+            }
+            @Override
+            public <T> T invokeAny(Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
+                return super.invokeAny(withContext(tasks));
+            }
+            @Override
+            public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+                return super.invokeAny(withContext(tasks), timeout, unit);
+            }
+        };
 
 
     private static List<WeakReference<Thread>> nameLess = new CopyOnWriteArrayList<WeakReference<Thread>>();
@@ -77,7 +246,7 @@ public abstract class ThreadPools {
 
     public static Thread newThread(final Runnable r, final String id) {
         String mn = getMachineName();
-        LOG.service("Found mn " + mn + "(" + (mn == null) + ")");
+        LOG.service("Found mn {}({})", mn, mn == null);
         Thread t = new Thread(threadGroup, r,
                               (mn == null ? "" : mn) + ":" + id) {
                 /**
@@ -110,7 +279,7 @@ public abstract class ThreadPools {
      * job of this type.
      *
      */
-    public static final ThreadPoolExecutor jobsExecutor = new ThreadPoolExecutor(2, 2000, 1 * 60 , TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+    public static final ThreadPoolExecutor jobsExecutor = new ContextThreadPoolExecutor(2, 2000, 1 * 60 , TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
 
             @Override
             public Thread newThread(Runnable r) {
@@ -126,7 +295,7 @@ public abstract class ThreadPools {
             }
             @Override
             protected void beforeExecute(Thread t, Runnable r) {
-                LOG.debug("Now executing " + r + " in thread " + t);
+                LOG.debug("Now executing {} in thread {}", r, t);
 
 
             }
@@ -152,7 +321,25 @@ public abstract class ThreadPools {
         public Thread newThread(Runnable r) {
             return ThreadPools.newThread(r, "SchedulerThread-" + (schedSeq++));
         }
-    });
+    }) {
+        // execute and submit call these too
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            return super.schedule(withContext(command), delay, unit);
+        }
+        @Override
+        public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+            return super.schedule(withContext(callable), delay, unit);
+        }
+        @Override
+        public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+            return super.scheduleAtFixedRate(withContext(command), initialDelay, period, unit);
+        }
+        @Override
+        public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+            return super.scheduleWithFixedDelay(withContext(command), initialDelay, delay, unit);
+        }
+    };
 
     private static final Map<String, ExecutorService> threadPools = new ConcurrentHashMap<String, ExecutorService>();
 
@@ -196,6 +383,7 @@ public abstract class ThreadPools {
             }
             threadPools.put("jobs", jobsExecutor);
             threadPools.put("filters", filterExecutor);
+            threadPools.put("forkjoin", forkJoinPool);
             threadPools.put("schedules", scheduler);
         } catch (Throwable t) {
             LOG.fatal(t.getMessage(), t);
@@ -280,6 +468,12 @@ public abstract class ThreadPools {
             }
 
         }
+        {
+            List<Runnable> run = forkJoinPool.shutdownNow();
+            if (run.size() > 0) {
+                LOG.info("Interrupted " + run);
+            }
+        }
         {
             List<Runnable> run = jobsExecutor.shutdownNow();
             if (run.size() > 0) {
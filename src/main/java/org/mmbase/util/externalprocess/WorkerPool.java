@@ -0,0 +1,406 @@
+/*
+
+This software is OSI Certified Open Source Software.
+OSI Certified is a certification mark of the Open Source Initiative.
+
+The license (Mozilla version 1.0) can be read at the MMBase site.
+See http://www.MMBase.org/license
+
+*/
+package org.mmbase.util.externalprocess;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.mmbase.core.event.*;
+import org.mmbase.util.ThreadPools;
+import org.mmbase.util.logging.Logger;
+import org.mmbase.util.logging.Logging;
+
+/**
+ * A pool of long-lived external processes ('workers'), which all run the same command. Starting a
+ * process for every job is expensive, this pool starts at most <code>size</code> of them, and
+ * reuses them for one job after the other.
+ *
+ * A worker must speak a simple protocol on stdin and stdout. A request is the length of the
+ * data, in decimal ASCII digits, a newline, and then the data itself. The answer is in the same
+ * format. So a shell script like this makes a worker of 'dot':
+ * <pre>
+ * while read length; do
+ *   head -c $length | dot -Tsvg &gt; /tmp/dot.$$
+ *   wc -c &lt; /tmp/dot.$$
+ *   cat /tmp/dot.$$
+ * done
+ * </pre>
+ * An empty request must be answered too (with anything), because it is used as a health
+ * check. What the worker writes to stderr is logged.
+ *
+ * A worker which died, did not answer in time (see {@link #setTimeout}), or answered something
+ * which is not according to the protocol (or too big, see {@link #setMaxResponse}), is destroyed,
+ * and replaced by a new one when needed. The idle workers are checked periodically (see {@link
+ * #setHealthCheckInterval}), so dead ones are found before a job needs them. Workers are stopped
+ * when their stdin is closed, so when this JVM ends, or after {@link #shutdown}. The pools of
+ * {@link #getInstance} are shut down on a {@link SystemEvent.Shutdown}, e.g. when the web
+ * application is stopped.
+ *
+ * @author Michiel Meeuwissen
+ * @since MMBase-2.0
+ */
+public class WorkerPool {
+
+    private static final Logger log = Logging.getLoggerInstance(WorkerPool.class);
+
+    private static final ConcurrentHashMap<String, WorkerPool> pools = new ConcurrentHashMap<String, WorkerPool>();
+
+    static {
+        EventManager.getInstance().addEventListener(new SystemEventListener() {
+                @Override
+                public void notify(SystemEvent se) {
+                    if (se instanceof SystemEvent.Shutdown) {
+                        shutdownAll();
+                    }
+                }
+                @Override
+                public int getWeight() {
+                    return 0;
+                }
+            });
+    }
+
+    /**
+     * Returns the pool with the given size and command, so that it is shared by everything which
+     * uses that command.
+     */
+    public static WorkerPool getInstance(int size, String... command) {
+        String key = size + ":" + Arrays.asList(command);
+        WorkerPool pool = pools.get(key);
+        if (pool == null) {
+            pool = new WorkerPool(size, command);
+            WorkerPool existing = pools.putIfAbsent(key, pool);
+            if (existing != null) {
+                pool = existing;
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Shuts down all pools of {@link #getInstance}, and forgets them, so that a later call to that
+     * starts a new pool.
+     */
+    public static void shutdownAll() {
+        Iterator<WorkerPool> i = pools.values().iterator();
+        while (i.hasNext()) {
+            WorkerPool pool = i.next();
+            i.remove();
+            log.service("Shutting down " + pool);
+            pool.shutdown();
+        }
+    }
+
+    private final String[] command;
+    private final int size;
+    private final Semaphore permits;
+    private final BlockingQueue<Worker> idle = new LinkedBlockingQueue<Worker>();
+    private long timeout = 60000;
+    private int maxResponse = 64 * 1024 * 1024;
+    private long healthCheckInterval = 60000;
+    private ScheduledFuture<?> healthChecks;
+    private final AtomicInteger started = new AtomicInteger();
+    /**
+     * Incremented by {@link #shutdown}. Workers of an older generation are stopped when they are
+     * returned.
+     */
+    private volatile int generation = 0;
+
+    public WorkerPool(int size, String... command) {
+        if (size < 1) {
+            throw new IllegalArgumentException("The size of a worker pool must be at least 1 (not " + size + ")");
+        }
+        this.size = size;
+        this.command = command;
+        this.permits = new Semaphore(size, true);
+    }
+
+    /**
+     * The number of milliseconds a worker may take to answer. After that it is destroyed. Defaults
+     * to one minute.
+     */
+    public void setTimeout(long t) {
+        timeout = t;
+    }
+
+    /**
+     * The maximal length of an answer, in bytes. A worker which announces a longer one, is
+     * destroyed. Defaults to 64 MiB.
+     */
+    public void setMaxResponse(int m) {
+        maxResponse = m;
+    }
+
+    /**
+     * How often (in milliseconds) the idle workers are checked with {@link #healthCheck}, as long
+     * as there are workers. Defaults to one minute. 0 or less disables the checks.
+     */
+    public synchronized void setHealthCheckInterval(long i) {
+        healthCheckInterval = i;
+        if (healthChecks != null) {
+            healthChecks.cancel(false);
+            healthChecks = null;
+        }
+        if (started.get() > 0) {
+            scheduleHealthChecks();
+        }
+    }
+
+    private synchronized void scheduleHealthChecks() {
+        if (healthChecks == null && healthCheckInterval > 0) {
+            healthChecks = ThreadPools.scheduler.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        healthCheck();
+                    }
+                    @Override
+                    public String toString() {
+                        return "Health check of " + WorkerPool.this;
+                    }
+                }, healthCheckInterval, healthCheckInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * The number of workers which were started (including the restarted ones).
+     */
+    public int getStarted() {
+        return started.get();
+    }
+
+    /**
+     * Sends the request to a worker, and returns its answer. If all workers are busy, waits for one.
+     * @throws ProcessException If the worker could not be started, or did not answer correctly.
+     */
+    public byte[] execute(byte[] request) throws ProcessException, InterruptedException {
+        permits.acquire();
+        try {
+            Worker worker = idle.poll();
+            if (worker != null && ! worker.isAlive()) {
+                log.warn(worker + " died, starting a new one");
+                worker.destroy();
+                worker = null;
+            }
+            if (worker == null) {
+                worker = new Worker();
+                scheduleHealthChecks();
+            }
+            boolean ok = false;
+            try {
+                byte[] result = worker.call(request);
+                ok = true;
+                return result;
+            } catch (IOException ioe) {
+                throw new ProcessException(worker + ": " + ioe.getMessage(), ioe);
+            } finally {
+                // also if something unexpected happened
+                if (ok) {
+                    release(worker);
+                } else {
+                    worker.destroy();
+                }
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Makes the worker available for the next job, or stops it if the pool was shut down since it
+     * was started.
+     */
+    private void release(Worker worker) {
+        if (worker.generation == generation) {
+            idle.offer(worker);
+            if (worker.generation == generation || ! idle.remove(worker)) {
+                return;
+            }
+        }
+        worker.close();
+    }
+
+    /**
+     * Sends an empty request to all idle workers, and destroys the ones which do not answer.
+     * @return The number of workers which were destroyed
+     */
+    public int healthCheck() {
+        int destroyed = 0;
+        for (int i = idle.size(); i > 0; i--) {
+            if (! permits.tryAcquire()) {
+                break;
+            }
+            try {
+                Worker worker = idle.poll();
+                if (worker == null) {
+                    break;
+                }
+                boolean ok = false;
+                try {
+                    if (! worker.isAlive()) {
+                        throw new IOException("died");
+                    }
+                    worker.call(new byte[0]);
+                    ok = true;
+                } catch (IOException ioe) {
+                    log.warn(worker + " failed health check: " + ioe.getMessage());
+                } finally {
+                    if (ok) {
+                        release(worker);
+                    } else {
+                        worker.destroy();
+                        destroyed++;
+                    }
+                }
+            } finally {
+                permits.release();
+            }
+        }
+        return destroyed;
+    }
+
+    /**
+     * Stops all idle workers, and the health checks. The busy workers are stopped when they
+     * finished their current job. The pool can still be used after this, it then starts new
+     * workers.
+     */
+    public void shutdown() {
+        synchronized(this) {
+            generation++;
+            if (healthChecks != null) {
+                healthChecks.cancel(false);
+                healthChecks = null;
+            }
+        }
+        Worker worker;
+        while ((worker = idle.poll()) != null) {
+            worker.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "WorkerPool " + Arrays.asList(command) + " (" + idle.size() + "/" + size + " idle, " + started + " started)";
+    }
+
+
+    private class Worker {
+        private final Process process;
+        private final OutputStream in;
+        private final DataInputStream out;
+        private final String name;
+        private final int generation = WorkerPool.this.generation;
+
+        Worker() throws ProcessException {
+            name = command[0] + "#" + started.incrementAndGet();
+            try {
+                process = new ProcessBuilder(command).start();
+            } catch (IOException ioe) {
+                throw new ProcessException("Could not start " + Arrays.asList(command) + ": " + ioe.getMessage(), ioe);
+            }
+            log.service("Started " + this);
+            in = new BufferedOutputStream(process.getOutputStream());
+            out = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+            final BufferedReader err = new BufferedReader(new InputStreamReader(process.getErrorStream()));
+            ThreadPools.newThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            String line;
+                            while ((line = err.readLine()) != null) {
+                                log.warn(name + ": " + line);
+                            }
+                        } catch (IOException ioe) {
+                            log.debug(ioe);
+                        }
+                    }
+                }, "stderr of " + name).start();
+        }
+
+        boolean isAlive() {
+            try {
+                process.exitValue();
+                return false;
+            } catch (IllegalThreadStateException itse) {
+                return true;
+            }
+        }
+
+        byte[] call(byte[] request) throws IOException {
+            final AtomicBoolean timedOut = new AtomicBoolean(false);
+            ScheduledFuture<?> watchdog = ThreadPools.scheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        timedOut.set(true);
+                        process.destroy();
+                    }
+                }, timeout, TimeUnit.MILLISECONDS);
+            try {
+                in.write((request.length + "\n").getBytes("US-ASCII"));
+                in.write(request);
+                in.flush();
+                StringBuilder length = new StringBuilder();
+                int c;
+                while ((c = out.read()) != '\n') {
+                    if (c == -1) {
+                        throw new EOFException("No answer");
+                    }
+                    if (length.length() > 20) {
+                        throw new IOException("Not a length '" + length + "...'");
+                    }
+                    length.append((char) c);
+                }
+                int n;
+                try {
+                    n = Integer.parseInt(length.toString().trim());
+                } catch (NumberFormatException nfe) {
+                    throw new IOException("Not a length '" + length + "'");
+                }
+                if (n < 0 || n > maxResponse) {
+                    throw new IOException("Length " + n + " not between 0 and " + maxResponse);
+                }
+                byte[] result = new byte[n];
+                out.readFully(result);
+                return result;
+            } catch (IOException ioe) {
+                if (timedOut.get()) {
+                    throw new IOException("No answer in " + timeout + " ms", ioe);
+                }
+                throw ioe;
+            } finally {
+                watchdog.cancel(false);
+            }
+        }
+
+        void close() {
+            try {
+                in.close();
+            } catch (IOException ioe) {
+                process.destroy();
+            }
+        }
+
+        void destroy() {
+            process.destroy();
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
@@ -21,34 +21,48 @@ import java.util.*;
 
 abstract public class AbstractSimpleImpl  implements Logger {
 
-    private static ThreadLocal<Map<String, Object>> MDC_VALUES = new ThreadLocal<Map<String, Object>>() {
+    private static final ThreadLocal<ContextMap> MDC_VALUES = new ThreadLocal<ContextMap>() {
         @Override
-        protected Map<String, Object> initialValue() {
-            Map<String, Object> o = new HashMap<String, Object>();
-            return o;
+        protected ContextMap initialValue() {
+            return ContextMap.EMPTY;
         }
 
     };
 
-    /**
-     * @since MMBase-2.0
-     */
-    public static MDC getMDC() {
-        return new MDC() {
+    private static final MDC MDC_INSTANCE = new MDC() {
             @Override
             public void put(String key, Object value) {
-                if (value != null) {
-                    MDC_VALUES.get().put(key, value);
-                } else {
-                    MDC_VALUES.get().remove(key);
-                }
+                MDC_VALUES.set(MDC_VALUES.get().with(key, value));
             }
 
             @Override
             public Object get(String key) {
                 return MDC_VALUES.get().get(key);
             }
+
+            @Override
+            public Map<String, Object> getContext() {
+                return MDC_VALUES.get();
+            }
+
+            @Override
+            public void setContext(Map<String, Object> context) {
+                MDC_VALUES.set(ContextMap.copyOf(context));
+            }
+
+            @Override
+            public String toString() {
+                return "MDC " + MDC_VALUES.get();
+            }
         };
+
+    /**
+     * The MDC of the simple implementations. The values are kept in an immutable {@link
+     * ContextMap} per thread, so the context can be passed to other threads cheaply.
+     * @since MMBase-2.0
+     */
+    public static MDC getMDC() {
+        return MDC_INSTANCE;
     }
 
     /**
@@ -0,0 +1,408 @@
+/*
+
+This software is OSI Certified Open Source Software.
+OSI Certified is a certification mark of the Open Source Initiative.
+
+The license (Mozilla version 1.0) can be read at the MMBase site.
+See http://www.MMBase.org/license
+
+*/
+package org.mmbase.util.logging;
+
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.mmbase.util.ThreadPools;
+
+/**
+ * Like {@link SimpleTimeStampImpl}, but the logging threads do not format and write the log lines
+ * themselves. They only put the message in a ring buffer, and one background thread formats and
+ * writes everything, in batches. So logging costs requests hardly any time, and they don't
+ * contend for the streams.
+ *
+ * It is configured like SimpleTimeStampImpl, with these extra options:
+ * <dl>
+ *  <dt>buffer=&lt;n&gt;</dt><dd>The size of the ring buffer (rounded to a power of 2, default
+ *  8192). Only has effect before the first message is logged.</dd>
+ *  <dt>overflow=block|drop|discard</dt><dd>What to do if the buffer is full: let the logging
+ *  thread wait (the default), drop the message, or drop the message only if its level is lower
+ *  than WARN. The number of dropped messages is logged as soon as possible, and available via
+ *  {@link #getDropped}.</dd>
+ * </dl>
+ * E.g. <code>&lt;configuration&gt;stdout,service,overflow=discard&lt;/configuration&gt;</code>
+ * in log.xml.
+ *
+ * @author  Michiel Meeuwissen
+ * @since   MMBase-2.0
+ */
+public class AsyncImpl extends AbstractSimpleImpl implements Logger {
+
+    public static enum Overflow {
+        BLOCK,
+        DROP,
+        /**
+         * Drop messages with a level lower than WARN, and block for the others.
+         */
+        DISCARD
+    }
+
+    private static final ConcurrentMap<String, AsyncImpl> loggers = new ConcurrentHashMap<String, AsyncImpl>();
+
+    private static final Collection<String> OPTIONS = Arrays.asList("buffer", "overflow");
+
+    private static int bufferSize = 8192;
+    private static volatile Overflow overflow = Overflow.BLOCK;
+    private static volatile Ring ring;
+
+    private final SimpleTimeStampImpl configuration;
+
+    public static AsyncImpl getLoggerInstance(String name) {
+        AsyncImpl impl = loggers.get(name);
+        if (impl == null) {
+            impl = new AsyncImpl(SimpleTimeStampImpl.getLoggerInstance(name));
+            AsyncImpl existing = loggers.putIfAbsent(name, impl);
+            if (existing != null) {
+                impl = existing;
+            }
+        }
+        return impl;
+    }
+
+    /**
+     * The {@link LoggerFactory} of this implementation.
+     * @since MMBase-2.0
+     */
+    public static class Factory implements LoggerFactory {
+        @Override
+        public Class<?> getLoggerClass() {
+            return AsyncImpl.class;
+        }
+        @Override
+        public Logger getLoggerInstance(String name) {
+            return AsyncImpl.getLoggerInstance(name);
+        }
+        @Override
+        public void configure(String configuration) {
+            AsyncImpl.configure(configuration);
+        }
+        @Override
+        public void shutdown() {
+            AsyncImpl.shutdown();
+        }
+        @Override
+        public MDC getMDC() {
+            return AbstractSimpleImpl.getMDC();
+        }
+    }
+
+    private AsyncImpl(SimpleTimeStampImpl conf) {
+        configuration = conf;
+        level = conf.level;
+    }
+
+    /**
+     * The configure method of this Logger implementation. The options 'buffer' and 'overflow' are
+     * handled here, the rest by {@link SimpleTimeStampImpl#configure(String)}.
+     */
+    public static void configure(String c) {
+        if (c == null) {
+            return;
+        }
+        Map<String, String> options = new HashMap<String, String>();
+        String rest = SimpleTimeStampImpl.takeOptions(c, OPTIONS, options);
+        if (options.containsKey("buffer")) {
+            bufferSize = Integer.parseInt(options.get("buffer"));
+        }
+        if (options.containsKey("overflow")) {
+            overflow = Overflow.valueOf(options.get("overflow").toUpperCase());
+        }
+        if (rest.length() > 0) {
+            SimpleTimeStampImpl.configure(rest);
+        }
+        for (AsyncImpl logger : loggers.values()) {
+            logger.level = logger.configuration.level;
+        }
+    }
+
+    static Overflow getOverflow() {
+        return overflow;
+    }
+
+    static int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * The number of messages which were dropped because the buffer was full.
+     */
+    public static long getDropped() {
+        Ring r = ring;
+        return r == null ? 0 : r.dropped.get();
+    }
+
+    /**
+     * Writes everything which was logged, and stops the background thread. Logging after this
+     * starts a new one.
+     */
+    public static synchronized void shutdown() {
+        Ring r = ring;
+        if (r != null) {
+            ring = null;
+            r.stop();
+        }
+    }
+
+    private static Ring getRing() {
+        Ring r = ring;
+        if (r == null) {
+            synchronized(AsyncImpl.class) {
+                r = ring;
+                if (r == null) {
+                    r = new Ring(bufferSize);
+                    // published before the consumer is started, because starting it may log itself
+                    ring = r;
+                    r.start();
+                }
+            }
+        }
+        return r;
+    }
+
+    @Override
+    public void setLevel(Level p) {
+        super.setLevel(p);
+        configuration.setLevel(p);
+    }
+
+    @Override
+    protected final void log(String s, Level l) {
+        if (l.toInt() >= Level.FATAL_INT) {
+            // the stack trace must be taken now
+            s = s + "\n" + Logging.stackTrace(new Throwable());
+        }
+        getRing().publish(System.currentTimeMillis(), l, s, configuration.getStream(l));
+    }
+
+    @Override
+    public String toString() {
+        return configuration.toString();
+    }
+
+
+    /**
+     * A ring buffer for several producers and one consumer. Every slot has a sequence number,
+     * which the producer sets when it filled it, so the consumer knows when it can be read.
+     */
+    private static final class Ring implements Runnable {
+        private static final class Slot {
+            volatile long sequence = -1;
+            long time;
+            Level level;
+            String message;
+            PrintStream stream;
+        }
+
+        private final Slot[] slots;
+        private final int mask;
+        private final AtomicLong claimed = new AtomicLong();
+        private volatile long consumed = 0;
+        private volatile boolean waiting = false;
+        private volatile boolean running = true;
+        private volatile boolean stopped = false;
+        private final AtomicLong dropped = new AtomicLong();
+        private volatile Thread consumer;
+        private final Thread hook;
+
+        Ring(int size) {
+            int capacity = Integer.highestOneBit(Math.max(size, 2) - 1) << 1;
+            slots = new Slot[capacity];
+            for (int i = 0; i < capacity; i++) {
+                slots[i] = new Slot();
+            }
+            mask = capacity - 1;
+            hook = new Thread() {
+                    @Override
+                    public void run() {
+                        Ring.this.stop();
+                    }
+                };
+            try {
+                Runtime.getRuntime().addShutdownHook(hook);
+            } catch (IllegalStateException ise) {
+                // shutting down already
+            }
+        }
+
+        void start() {
+            Thread t = ThreadPools.newThread(this, "MMBase async logging");
+            consumer = t;
+            t.start();
+        }
+
+        void publish(long time, Level level, String message, PrintStream stream) {
+            if (! running) {
+                // stopped (the JVM is shutting down), nobody is going to write it anymore
+                stream.println(format(new StringBuilder(), time, level, message));
+                return;
+            }
+            long seq;
+            Overflow o = overflow;
+            if (o == Overflow.DROP || (o == Overflow.DISCARD && level.toInt() < Level.WARN_INT)) {
+                do {
+                    seq = claimed.get();
+                    if (seq - consumed >= slots.length) {
+                        dropped.incrementAndGet();
+                        return;
+                    }
+                } while (! claimed.compareAndSet(seq, seq + 1));
+            } else {
+                seq = claimed.getAndIncrement();
+                while (seq - consumed >= slots.length) {
+                    if (stopped) {
+                        // stopped while waiting, so there is no consumer to free the slot
+                        drainStopped();
+                    } else {
+                        LockSupport.unpark(consumer);
+                    }
+                    LockSupport.parkNanos(10000);
+                }
+            }
+            Slot slot = slots[(int) seq & mask];
+            slot.time = time;
+            slot.level = level;
+            slot.message = message;
+            slot.stream = stream;
+            slot.sequence = seq;
+            if (stopped) {
+                // stopped after this slot was claimed, so stop() may have missed it
+                drainStopped();
+            } else if (waiting) {
+                LockSupport.unpark(consumer);
+            }
+        }
+
+        /**
+         * Writes the messages of producers which published after the consumer was stopped.
+         */
+        private synchronized void drainStopped() {
+            drain();
+        }
+
+        private final StringBuilder buffer = new StringBuilder();
+
+        private StringBuilder format(StringBuilder sb, long time, Level level, String message) {
+            sb.append(level).append(' ');
+            return TimeStamp.append(sb, time).append(' ').append(message);
+        }
+
+        /**
+         * Writes all messages which are ready.
+         * @return Whether there were any
+         */
+        private boolean drain() {
+            long next = consumed;
+            Slot slot = slots[(int) next & mask];
+            if (slot.sequence != next) {
+                return false;
+            }
+            PrintStream stream = slot.stream;
+            while (slot.sequence == next) {
+                if (slot.stream != stream) {
+                    write(stream);
+                    stream = slot.stream;
+                }
+                format(buffer, slot.time, slot.level, slot.message).append('\n');
+                slot.message = null;
+                slot.stream = null;
+                next++;
+                if (buffer.length() > 64 * 1024) {
+                    write(stream);
+                    consumed = next;
+                }
+                slot = slots[(int) next & mask];
+            }
+            write(stream);
+            consumed = next;
+            reportDropped(false);
+            return true;
+        }
+
+        private long reportedDropped = 0;
+        private long reported = 0;
+
+        /**
+         * Logs how many messages were dropped since the previous time, but not more often than
+         * once a second.
+         */
+        private void reportDropped(boolean force) {
+            long d = dropped.get();
+            long now = System.currentTimeMillis();
+            if (d > reportedDropped && (force || now - reported >= 1000)) {
+                System.err.println(format(new StringBuilder(), now, Level.WARN, "Dropped " + (d - reportedDropped) + " log messages, because the buffer (" + slots.length + ") was full"));
+                reportedDropped = d;
+                reported = now;
+            }
+        }
+
+        private void write(PrintStream stream) {
+            if (buffer.length() > 0) {
+                stream.print(buffer);
+                stream.flush();
+                buffer.setLength(0);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                if (! drain()) {
+                    waiting = true;
+                    if (! drain()) {
+                        LockSupport.parkNanos(10000000);
+                    }
+                    waiting = false;
+                }
+            }
+        }
+
+        /**
+         * Stops the consumer thread, and writes what it left.
+         */
+        synchronized void stop() {
+            if (running) {
+                running = false;
+                Thread c = consumer;
+                if (c != null) {
+                    LockSupport.unpark(c);
+                    try {
+                        c.join(5000);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                // everything which was claimed, should be published soon. Producers which are
+                // waiting for a free slot, get one while this drains.
+                long end = System.currentTimeMillis() + 1000;
+                while (consumed < claimed.get() && System.currentTimeMillis() < end) {
+                    if (! drain()) {
+                        Thread.yield();
+                    }
+                }
+                // a producer which claims a slot after this, sees 'stopped', and drains itself
+                stopped = true;
+                drain();
+                reportDropped(true);
+                if (Thread.currentThread() != hook) {
+                    try {
+                        Runtime.getRuntime().removeShutdownHook(hook);
+                    } catch (IllegalStateException ise) {
+                        // shutting down already
+                    }
+                }
+            }
+        }
+    }
+}
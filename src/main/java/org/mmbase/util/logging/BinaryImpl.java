@@ -0,0 +1,316 @@
+/*
+
+This software is OSI Certified Open Source Software.
+OSI Certified is a certification mark of the Open Source Initiative.
+
+The license (Mozilla version 1.0) can be read at the MMBase site.
+See http://www.MMBase.org/license
+
+*/
+package org.mmbase.util.logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A Logger implementation which writes to a {@link BinaryLog}, so to rotating, memory mapped files
+ * in a compact binary format. The parameterized methods (like {@link #debug(String, Object...)})
+ * do not format the message, but only write the template and the arguments. The files can be
+ * read with <code>java org.mmbase.util.logging.BinaryLog &lt;file&gt;</code>.
+ *
+ * It is configured like {@link SimpleTimeStampImpl} (for the levels of the categories), with these
+ * extra options:
+ * <dl>
+ *  <dt>file=&lt;path&gt;</dt><dd>The base name of the files. The default is 'mmbase' in the
+ *  temporary directory (java.io.tmpdir)</dd>
+ *  <dt>size=&lt;n&gt;[K|M]</dt><dd>The size of one file (default 16M)</dd>
+ *  <dt>files=&lt;n&gt;</dt><dd>The number of files to keep (default 10)</dd>
+ * </dl>
+ * E.g. <code>&lt;configuration&gt;file=/var/log/mmbase/mmbase,size=64M,service&lt;/configuration&gt;</code>
+ * in log.xml.
+ *
+ * @author  Michiel Meeuwissen
+ * @since   MMBase-2.0
+ */
+public class BinaryImpl extends AbstractSimpleImpl implements Logger {
+
+    private static final ConcurrentMap<String, BinaryImpl> loggers = new ConcurrentHashMap<String, BinaryImpl>();
+
+    private static File file = new File(System.getProperty("java.io.tmpdir"), "mmbase");
+    private static int size = 16 * 1024 * 1024;
+    private static int files = 10;
+    private static volatile BinaryLog binaryLog;
+    /**
+     * The last time opening the binary log failed, or 0
+     */
+    private static long failed = 0;
+
+    private static final Collection<String> OPTIONS = Arrays.asList("file", "size", "files");
+
+    private final String name;
+    private final SimpleTimeStampImpl configuration;
+
+    public static BinaryImpl getLoggerInstance(String name) {
+        BinaryImpl impl = loggers.get(name);
+        if (impl == null) {
+            impl = new BinaryImpl(name, SimpleTimeStampImpl.getLoggerInstance(name));
+            BinaryImpl existing = loggers.putIfAbsent(name, impl);
+            if (existing != null) {
+                impl = existing;
+            }
+        }
+        return impl;
+    }
+
+    /**
+     * The {@link LoggerFactory} of this implementation.
+     * @since MMBase-2.0
+     */
+    public static class Factory implements LoggerFactory {
+        @Override
+        public Class<?> getLoggerClass() {
+            return BinaryImpl.class;
+        }
+        @Override
+        public Logger getLoggerInstance(String name) {
+            return BinaryImpl.getLoggerInstance(name);
+        }
+        @Override
+        public void configure(String configuration) {
+            BinaryImpl.configure(configuration);
+        }
+        @Override
+        public void shutdown() {
+            BinaryImpl.shutdown();
+        }
+        @Override
+        public MDC getMDC() {
+            return AbstractSimpleImpl.getMDC();
+        }
+    }
+
+    private BinaryImpl(String name, SimpleTimeStampImpl conf) {
+        this.name = name;
+        configuration = conf;
+        level = conf.level;
+    }
+
+    /**
+     * The configure method of this Logger implementation. The options 'file', 'size' and 'files'
+     * are handled here, the rest by {@link SimpleTimeStampImpl#configure(String)}. The files are
+     * (re)opened.
+     */
+    public static synchronized void configure(String c) {
+        if (c == null) {
+            return;
+        }
+        Map<String, String> options = new HashMap<String, String>();
+        String rest = SimpleTimeStampImpl.takeOptions(c, OPTIONS, options);
+        if (options.containsKey("file")) {
+            file = new File(options.get("file"));
+        }
+        if (options.containsKey("size")) {
+            size = parseSize(options.get("size"));
+        }
+        if (options.containsKey("files")) {
+            files = Integer.parseInt(options.get("files"));
+        }
+        if (rest.length() > 0) {
+            SimpleTimeStampImpl.configure(rest);
+        }
+        for (BinaryImpl logger : loggers.values()) {
+            logger.level = logger.configuration.level;
+        }
+        shutdown();
+        failed = 0;
+        getBinaryLog();
+    }
+
+    static int parseSize(String s) {
+        s = s.trim().toUpperCase();
+        long factor = 1;
+        if (s.endsWith("K")) {
+            factor = 1024;
+        } else if (s.endsWith("M")) {
+            factor = 1024 * 1024;
+        }
+        if (factor > 1) {
+            s = s.substring(0, s.length() - 1);
+        }
+        long result = Long.parseLong(s) * factor;
+        if (result > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A file can be at most " + Integer.MAX_VALUE + " bytes (not " + result + ")");
+        }
+        return (int) result;
+    }
+
+    /**
+     * Closes the files. Logging after this opens new ones.
+     */
+    public static synchronized void shutdown() {
+        if (binaryLog != null) {
+            try {
+                binaryLog.close();
+            } catch (IOException ioe) {
+                System.err.println(ioe.getMessage());
+            }
+            binaryLog = null;
+        }
+    }
+
+    /**
+     * The BinaryLog which is written to, or <code>null</code> if it could not be opened. That is
+     * reported once, and tried again every {@link BinaryLog#RETRY} ms. Meanwhile the messages are
+     * written to stderr.
+     */
+    public static BinaryLog getBinaryLog() {
+        BinaryLog log = binaryLog;
+        if (log == null) {
+            synchronized(BinaryImpl.class) {
+                log = binaryLog;
+                if (log == null) {
+                    long now = System.currentTimeMillis();
+                    if (now - failed < BinaryLog.RETRY) {
+                        return null;
+                    }
+                    try {
+                        log = new BinaryLog(file, size, files);
+                    } catch (IOException ioe) {
+                        failed(ioe, now);
+                        return null;
+                    } catch (IllegalArgumentException iae) {
+                        failed(iae, now);
+                        return null;
+                    }
+                    if (failed != 0) {
+                        System.err.println("Opened binary log " + file);
+                        failed = 0;
+                    }
+                    binaryLog = log;
+                }
+            }
+        }
+        return log;
+    }
+
+    private static void failed(Exception e, long now) {
+        if (failed == 0) {
+            System.err.println("Could not open binary log " + file + ": " + e.getMessage() + ". Logging to stderr.");
+        }
+        failed = now;
+    }
+
+    @Override
+    public void setLevel(Level p) {
+        super.setLevel(p);
+        configuration.setLevel(p);
+    }
+
+    private static final Object[] NO_ARGS = new Object[0];
+
+    /**
+     * Writes the record to the binary log, or to stderr if that is not possible.
+     */
+    private void write(Level l, String template, Object[] args, Throwable t) {
+        long now = System.currentTimeMillis();
+        BinaryLog log = getBinaryLog();
+        if (log == null || ! log.write(now, l, name, template, args, t)) {
+            StringBuilder buf = new StringBuilder();
+            buf.append(l).append(' ');
+            TimeStamp.append(buf, now).append(' ').append(name).append(' ');
+            buf.append(template == null ? args[0] : Logging.format(template, args));
+            if (t != null) {
+                buf.append('\n').append(Logging.stackTrace(t));
+            }
+            System.err.println(buf);
+        }
+    }
+
+    @Override
+    protected void log(String s, Level l) {
+        write(l, null, new Object[] {s}, null);
+    }
+
+    @Override
+    protected void log(Object s, Level l, Throwable t) {
+        write(l, null, new Object[] {s == null ? null : s.toString()}, t);
+    }
+
+    /**
+     * Writes the template and the arguments, without formatting. Like {@link Logging#log(Level,
+     * Logger, String, Object...)} a last Throwable argument, which is not used by the template,
+     * is logged with its stack trace.
+     */
+    protected void log(Level l, String format, Object[] args) {
+        if (format == null) {
+            format = "null";
+        }
+        if (args == null) {
+            args = NO_ARGS;
+        }
+        Throwable t = null;
+        if (args.length > 0 && args[args.length - 1] instanceof Throwable && Logging.placeHolders(format, args.length) < args.length) {
+            t = (Throwable) args[args.length - 1];
+            args = Arrays.copyOf(args, args.length - 1);
+        }
+        write(l, format, args, t);
+    }
+
+    @Override
+    public void trace(String format, Object... args) {
+        if (level <= Level.TRACE_INT) {
+            log(Level.TRACE, format, args);
+        }
+    }
+
+    @Override
+    public void debug(String format, Object... args) {
+        if (level <= Level.DEBUG_INT) {
+            log(Level.DEBUG, format, args);
+        }
+    }
+
+    @Override
+    public void service(String format, Object... args) {
+        if (level <= Level.SERVICE_INT) {
+            log(Level.SERVICE, format, args);
+        }
+    }
+
+    @Override
+    public void info(String format, Object... args) {
+        if (level <= Level.INFO_INT) {
+            log(Level.INFO, format, args);
+        }
+    }
+
+    @Override
+    public void warn(String format, Object... args) {
+        if (level <= Level.WARN_INT) {
+            log(Level.WARN, format, args);
+        }
+    }
+
+    @Override
+    public void error(String format, Object... args) {
+        if (level <= Level.ERROR_INT) {
+            log(Level.ERROR, format, args);
+        }
+    }
+
+    @Override
+    public void fatal(String format, Object... args) {
+        if (level <= Level.FATAL_INT) {
+            log(Level.FATAL, format, args);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BinaryImpl " + name + " " + binaryLog;
+    }
+
+}
@@ -0,0 +1,595 @@
+/*
+
+This software is OSI Certified Open Source Software.
+OSI Certified is a certification mark of the Open Source Initiative.
+
+The license (Mozilla version 1.0) can be read at the MMBase site.
+See http://www.MMBase.org/license
+
+*/
+package org.mmbase.util.logging;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * Writes log records in a compact binary format to a set of rotating, memory mapped files, and
+ * reads them back. Writing a record costs hardly more than copying its arguments, because nothing
+ * is formatted. The message templates and categories are written only once per file, after that
+ * they are referred to by number. The files can be converted to text with the {@link #main}
+ * method of this class.
+ *
+ * The format of a file is:
+ * <pre>
+ *  file     := 'MMBL' version(1 byte) start-time(8 bytes) record* 0
+ *  record   := 1 id name                           (a category)
+ *            | 2 id template                       (a message template)
+ *            | 3 time-delta level category-id template-id argc arg* [stacktrace]
+ *  arg      := 0 | 1 string | 2 varlong | 3 double(8 bytes) | 4 | 5   (null, string, integer, double, true, false)
+ *  string   := length(varint) utf-8-bytes
+ * </pre>
+ * The numbers are variable length (7 bits per byte). The time delta is relative to the previous
+ * record (or the start time), and can be negative. The level is the index in {@link
+ * Level#getLevels}, and has its high bit set if a stack trace follows. Template id 0 means that
+ * there is no template, and the message is the only argument.
+ *
+ * @see BinaryImpl
+ * @author Michiel Meeuwissen
+ * @since MMBase-2.0
+ */
+public class BinaryLog implements Closeable {
+
+    static final int MAGIC = 0x4D4D424C; // MMBL
+    static final byte VERSION = 1;
+    static final int HEADER = 13;
+    static final String SUFFIX = ".mmbl";
+
+    static final byte END      = 0;
+    static final byte CATEGORY = 1;
+    static final byte TEMPLATE = 2;
+    static final byte EVENT    = 3;
+
+    static final byte NULL    = 0;
+    static final byte STRING  = 1;
+    static final byte INTEGER = 2;
+    static final byte DOUBLE  = 3;
+    static final byte TRUE    = 4;
+    static final byte FALSE   = 5;
+
+    private final File directory;
+    private final String name;
+    private final int fileSize;
+    private final int files;
+
+    private long sequence;
+    private File file;
+    private RandomAccessFile raf;
+    private MappedByteBuffer mapped;
+    private long lastTime;
+
+    private final Map<String, Integer> categories = new HashMap<String, Integer>();
+    private final Map<String, Integer> templates  = new HashMap<String, Integer>();
+
+    private final Encoder encoder = new Encoder();
+    private long dropped = 0;
+    private boolean closed = false;
+    /**
+     * If a new file could not be opened, the time after which it is tried again
+     */
+    private long retry = 0;
+
+    /**
+     * How long to wait before trying to open a new file again, after that failed.
+     */
+    static final long RETRY = 1000;
+
+    /**
+     * @param base The files are called like this, with a sequence number and '.mmbl' appended
+     * @param fileSize The size of one file
+     * @param files The number of files to keep. The oldest ones are deleted.
+     */
+    public BinaryLog(File base, int fileSize, int files) throws IOException {
+        if (fileSize < 1024) {
+            throw new IllegalArgumentException("File size " + fileSize + " is too small");
+        }
+        this.directory = base.getAbsoluteFile().getParentFile();
+        this.name      = base.getName();
+        this.fileSize  = fileSize;
+        this.files     = Math.max(files, 1);
+        if (! directory.isDirectory() && ! directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        sequence = -1;
+        for (File f : getFiles(directory, name)) {
+            sequence = Math.max(sequence, getSequence(f));
+        }
+        open();
+    }
+
+    /**
+     * The existing files with the given name in the directory, oldest first.
+     */
+    public static List<File> getFiles(File directory, final String name) {
+        File[] found = directory.listFiles(new FileFilter() {
+                @Override
+                public boolean accept(File f) {
+                    return f.getName().startsWith(name + ".") && f.getName().endsWith(SUFFIX) && getSequence(f) >= 0;
+                }
+            });
+        List<File> result = found == null ? new ArrayList<File>() : new ArrayList<File>(Arrays.asList(found));
+        Collections.sort(result, new Comparator<File>() {
+                @Override
+                public int compare(File a, File b) {
+                    return Long.compare(getSequence(a), getSequence(b));
+                }
+            });
+        return result;
+    }
+
+    static long getSequence(File f) {
+        String n = f.getName();
+        int end = n.length() - SUFFIX.length();
+        int start = n.lastIndexOf('.', end - 1) + 1;
+        try {
+            return Long.parseLong(n.substring(start, end));
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private void open() throws IOException {
+        File f = new File(directory, name + "." + (sequence + 1) + SUFFIX);
+        RandomAccessFile r = new RandomAccessFile(f, "rw");
+        try {
+            r.setLength(0);
+            mapped = r.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+        } catch (IOException ioe) {
+            r.close();
+            throw ioe;
+        }
+        sequence++;
+        file = f;
+        raf = r;
+        lastTime = System.currentTimeMillis();
+        mapped.putInt(MAGIC);
+        mapped.put(VERSION);
+        mapped.putLong(lastTime);
+        categories.clear();
+        templates.clear();
+        List<File> existing = getFiles(directory, name);
+        for (int i = 0; i < existing.size() - files; i++) {
+            existing.get(i).delete();
+        }
+    }
+
+    private void closeFile() throws IOException {
+        if (mapped != null) {
+            int end = mapped.position();
+            mapped.force();
+            mapped = null;
+            try {
+                raf.getChannel().truncate(end + 1); // keeps the END marker
+            } catch (IOException ioe) {
+                // not possible on some systems while still mapped, never mind, the rest is zeros
+            }
+            raf.close();
+        }
+    }
+
+    /**
+     * Opens a new file, after the previous one could not be opened. Not more often than once per
+     * {@link #RETRY} ms.
+     * @return Whether there is a file to write to now
+     */
+    private boolean reopen() {
+        long now = System.currentTimeMillis();
+        if (closed || now < retry) {
+            return false;
+        }
+        try {
+            open();
+            System.err.println("Opened " + file + " again, " + dropped + " log records were dropped");
+            return true;
+        } catch (IOException ioe) {
+            retry = now + RETRY;
+            return false;
+        }
+    }
+
+    /**
+     * Writes one record.
+     * @param template The message template with '{}' place holders (see {@link Logging#format}), or
+     * <code>null</code>, in which case the message is the only argument
+     * @param t A throwable, whose stack trace must be logged too, or <code>null</code>
+     * @return Whether the record was written. It is not if it does not fit in a file, if this log
+     * is closed, or if a new file could not be opened.
+     */
+    public boolean write(long time, Level level, String category, String template, Object[] args, Throwable t) {
+        // converting the arguments may take time, so do it before locking
+        Object[] values = new Object[args.length];
+        for (int i = 0; i < args.length; i++) {
+            Object a = args[i];
+            if (a == null || a instanceof String || a instanceof Boolean || a instanceof Double || a instanceof Float) {
+                values[i] = a;
+            } else if (a instanceof Long || a instanceof Integer || a instanceof Short || a instanceof Byte) {
+                values[i] = ((Number) a).longValue();
+            } else if (a instanceof Object[]) {
+                values[i] = Arrays.deepToString((Object[]) a);
+            } else {
+                values[i] = String.valueOf(a);
+            }
+        }
+        String stackTrace = t == null ? null : Logging.stackTrace(t);
+        synchronized(this) {
+            if (mapped == null && ! reopen()) {
+                dropped++;
+                return false;
+            }
+            encode(time, level, category, template, values, stackTrace);
+            // one byte is kept for the END marker
+            if (encoder.length >= mapped.remaining()) {
+                try {
+                    closeFile();
+                    open();
+                } catch (IOException ioe) {
+                    // tried again later, see reopen
+                    System.err.println("Could not rotate " + file + ": " + ioe.getMessage());
+                    mapped = null;
+                    retry = System.currentTimeMillis() + RETRY;
+                    dropped++;
+                    return false;
+                }
+                encode(time, level, category, template, values, stackTrace);
+                if (encoder.length >= mapped.remaining()) {
+                    dropped++;
+                    return false;
+                }
+            }
+            mapped.put(encoder.bytes, 0, encoder.length);
+            lastTime = time;
+            if (encoder.newCategory) {
+                categories.put(category, categories.size() + 1);
+            }
+            if (encoder.newTemplate) {
+                templates.put(template, templates.size() + 1);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Encodes the record, plus the definitions of the category and template if they are new in
+     * this file. The dictionaries themselves are only updated if the record is actually written.
+     */
+    private void encode(long time, Level level, String category, String template, Object[] values, String stackTrace) {
+        Encoder e = encoder;
+        e.length = 0;
+        Integer categoryId = categories.get(category);
+        e.newCategory = categoryId == null;
+        if (e.newCategory) {
+            categoryId = categories.size() + 1;
+            e.writeByte(CATEGORY);
+            e.writeVarLong(categoryId);
+            e.writeString(category);
+        }
+        Integer templateId;
+        e.newTemplate = false;
+        if (template == null) {
+            templateId = 0;
+        } else {
+            templateId = templates.get(template);
+            if (templateId == null) {
+                e.newTemplate = true;
+                templateId = templates.size() + 1;
+                e.writeByte(TEMPLATE);
+                e.writeVarLong(templateId);
+                e.writeString(template);
+            }
+        }
+        e.writeByte(EVENT);
+        e.writeVarLong(zigZag(time - lastTime));
+        e.writeByte(levelIndex(level) | (stackTrace == null ? 0 : 0x80));
+        e.writeVarLong(categoryId);
+        e.writeVarLong(templateId);
+        e.writeVarLong(values.length);
+        for (Object v : values) {
+            if (v == null) {
+                e.writeByte(NULL);
+            } else if (v instanceof String) {
+                e.writeByte(STRING);
+                e.writeString((String) v);
+            } else if (v instanceof Long) {
+                e.writeByte(INTEGER);
+                e.writeVarLong(zigZag((Long) v));
+            } else if (v instanceof Boolean) {
+                e.writeByte(((Boolean) v) ? TRUE : FALSE);
+            } else {
+                e.writeByte(DOUBLE);
+                e.writeLong(Double.doubleToLongBits(((Number) v).doubleValue()));
+            }
+        }
+        if (stackTrace != null) {
+            e.writeString(stackTrace);
+        }
+    }
+
+    private static final Level[] LEVELS = Level.getLevels();
+
+    private static int levelIndex(Level level) {
+        for (int i = 0; i < LEVELS.length; i++) {
+            if (LEVELS[i].toInt() == level.toInt()) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    static long zigZag(long l) {
+        return (l << 1) ^ (l >> 63);
+    }
+
+    static long unZigZag(long l) {
+        return (l >>> 1) ^ -(l & 1);
+    }
+
+    /**
+     * The number of records which could not be written.
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * The file which is currently written to.
+     */
+    public synchronized File getFile() {
+        return file;
+    }
+
+    /**
+     * Makes sure that everything is written to disk.
+     */
+    public synchronized void flush() {
+        if (mapped != null) {
+            mapped.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        closeFile();
+    }
+
+    @Override
+    public String toString() {
+        return "BinaryLog " + new File(directory, name) + " (" + files + " x " + fileSize + " bytes)";
+    }
+
+    /**
+     * A growing byte array, to encode one record in.
+     */
+    private static class Encoder {
+        byte[] bytes = new byte[256];
+        int length;
+        boolean newCategory;
+        boolean newTemplate;
+
+        private void ensure(int extra) {
+            if (length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+            }
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            bytes[length++] = (byte) b;
+        }
+
+        void writeVarLong(long l) {
+            ensure(10);
+            while ((l & ~0x7FL) != 0) {
+                bytes[length++] = (byte) ((l & 0x7F) | 0x80);
+                l >>>= 7;
+            }
+            bytes[length++] = (byte) l;
+        }
+
+        void writeLong(long l) {
+            ensure(8);
+            for (int i = 56; i >= 0; i -= 8) {
+                bytes[length++] = (byte) (l >>> i);
+            }
+        }
+
+        void writeString(String s) {
+            int len = s.length();
+            int utf8 = 0;
+            for (int i = 0; i < len; i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    utf8++;
+                } else if (c < 0x800) {
+                    utf8 += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    utf8 += 4;
+                    i++;
+                } else {
+                    utf8 += 3;
+                }
+            }
+            writeVarLong(utf8);
+            ensure(utf8);
+            byte[] b = bytes;
+            int p = length;
+            for (int i = 0; i < len; i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    b[p++] = (byte) c;
+                } else if (c < 0x800) {
+                    b[p++] = (byte) (0xC0 | (c >> 6));
+                    b[p++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    b[p++] = (byte) (0xF0 | (cp >> 18));
+                    b[p++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    b[p++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    b[p++] = (byte) (0x80 | (cp & 0x3F));
+                } else {
+                    b[p++] = (byte) (0xE0 | (c >> 12));
+                    b[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    b[p++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            length = p;
+        }
+    }
+
+
+    private static long readVarLong(ByteBuffer in) {
+        long result = 0;
+        int shift = 0;
+        while (true) {
+            byte b = in.get();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+            shift += 7;
+        }
+    }
+
+    private static String readString(ByteBuffer in) throws UnsupportedEncodingException {
+        int len = (int) readVarLong(in);
+        String s;
+        if (in.hasArray()) {
+            s = new String(in.array(), in.arrayOffset() + in.position(), len, "UTF-8");
+        } else {
+            byte[] b = new byte[len];
+            in.duplicate().get(b);
+            s = new String(b, "UTF-8");
+        }
+        in.position(in.position() + len);
+        return s;
+    }
+
+    /**
+     * Converts the records of one file to text, one line per record (plus the stack traces), like
+     * <code>DEBUG 2011-03-01 12:00:00,123 org.mmbase.Foo message</code>.
+     * @return The number of records
+     */
+    public static int decode(ByteBuffer in, Appendable out) throws IOException {
+        if (in.remaining() < HEADER || in.getInt() != MAGIC) {
+            throw new IOException("Not an MMBase binary log");
+        }
+        byte version = in.get();
+        if (version != VERSION) {
+            throw new IOException("Unsupported version " + version);
+        }
+        long time = in.getLong();
+        Map<Long, String> categories = new HashMap<Long, String>();
+        Map<Long, String> templates  = new HashMap<Long, String>();
+        StringBuilder line = new StringBuilder();
+        int count = 0;
+        while (in.hasRemaining()) {
+            byte type = in.get();
+            switch(type) {
+            case END:
+                return count;
+            case CATEGORY:
+                categories.put(readVarLong(in), readString(in));
+                break;
+            case TEMPLATE:
+                templates.put(readVarLong(in), readString(in));
+                break;
+            case EVENT:
+                time += unZigZag(readVarLong(in));
+                int level = in.get() & 0xFF;
+                String category = categories.get(readVarLong(in));
+                String template = templates.get(readVarLong(in));
+                Object[] args = new Object[(int) readVarLong(in)];
+                for (int i = 0; i < args.length; i++) {
+                    byte t = in.get();
+                    switch(t) {
+                    case NULL:    args[i] = null; break;
+                    case STRING:  args[i] = readString(in); break;
+                    case INTEGER: args[i] = unZigZag(readVarLong(in)); break;
+                    case DOUBLE:  args[i] = Double.longBitsToDouble(in.getLong()); break;
+                    case TRUE:    args[i] = Boolean.TRUE; break;
+                    case FALSE:   args[i] = Boolean.FALSE; break;
+                    default: throw new IOException("Unknown argument type " + t + " at " + in.position());
+                    }
+                }
+                line.setLength(0);
+                line.append(LEVELS[level & 0x7F]).append(' ');
+                TimeStamp.append(line, time).append(' ').append(category).append(' ');
+                if (template == null) {
+                    line.append(args.length > 0 ? args[0] : null);
+                } else {
+                    line.append(Logging.format(template, args));
+                }
+                if ((level & 0x80) != 0) {
+                    line.append('\n').append(readString(in));
+                }
+                out.append(line).append('\n');
+                count++;
+                break;
+            default:
+                throw new IOException("Unknown record type " + type + " at " + (in.position() - 1));
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @see #decode(ByteBuffer, Appendable)
+     */
+    public static int decode(File file, Appendable out) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return decode(raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length()), out);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Converts binary log files to text, on standard output. The arguments are the files, or
+     * the base name of the files (as configured), in which case all of them are converted, oldest first.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java " + BinaryLog.class.getName() + " <file" + SUFFIX + " | base name>...");
+            System.exit(1);
+        }
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, "UTF-8"));
+        for (String arg : args) {
+            File f = new File(arg);
+            List<File> list;
+            if (f.isFile()) {
+                list = Collections.singletonList(f);
+            } else {
+                list = getFiles(f.getAbsoluteFile().getParentFile(), f.getName());
+                if (list.isEmpty()) {
+                    System.err.println("No such file " + f);
+                }
+            }
+            for (File file : list) {
+                try {
+                    decode(file, out);
+                } catch (IOException ioe) {
+                    out.flush();
+                    System.err.println(file + ": " + ioe.getMessage());
+                } catch (RuntimeException re) {
+                    // e.g. a BufferUnderflowException, because the file was not closed properly
+                    out.flush();
+                    System.err.println(file + ": " + re);
+                }
+            }
+        }
+        out.flush();
+    }
+}
@@ -10,11 +10,26 @@ package org.mmbase.util.logging;
 import java.util.*;
 import java.io.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import java.lang.ref.*;
 
 /**
  * A Logger that buffers in memory, and on request logs again to a certain other logger.
  *
+ * The entries are kept in a ring buffer of {@link #setMaxSize} entries, so the oldest entries are
+ * simply overwritten. Since MMBase-2.0 the buffer is therefore always bounded, by default to
+ * {@link #DEFAULT_MAX_SIZE} entries. Before that it was unbounded, unless a max size was set, so
+ * code which relies on all entries being kept (e.g. because it only sets a {@link #setMaxAge})
+ * must now set a big enough max size itself. Logging to it takes no locks. Entries older than {@link #setMaxAge} are
+ * removed when something is logged or relogged, which is cheap too, because the entries are ordered
+ * by time, so the ones to remove can be found by binary search.
+ *
+ * The entries are ordered by the order in which they claimed their place in the buffer, and their
+ * time stamps are taken right after that. So entries which are logged at the same moment by
+ * different threads may be a millisecond or so out of order (and so may entries logged around a
+ * moment that the system clock is set back). For those, {@link #setMaxAge} and {@link
+ * #reLog(Logger, boolean, Date)} may remove or relog one entry too many or too few.
+ *
  * @author  Michiel Meeuwissen
  * @version $Id$
  * @since   MMBase-1.9.1
@@ -24,30 +39,23 @@ public class BufferedLogger extends AbstractSimpleImpl {
 
     private static final Logger LOG = Logging.getLoggerInstance(BufferedLogger.class);
 
+    /**
+     * All buffered loggers. They are not periodically cleaned up any more, so this is not used
+     * by this class itself.
+     * @deprecated Entries are removed when logging and relogging, and by {@link #cleanup}.
+     */
+    @Deprecated
     protected static List<WeakReference<BufferedLogger>> instances = new CopyOnWriteArrayList<WeakReference<BufferedLogger>>();
 
-    static {
-        org.mmbase.util.ThreadPools.scheduler.scheduleAtFixedRate(new Runnable() {
-            @Override
-            public void run() {
-                for (WeakReference<BufferedLogger> ref : instances) {
-                    BufferedLogger buffer = ref.get();
-                    if (buffer != null) {
-                        int cleaned = buffer.cleanup();
-                        LOG.debug("Cleaned up " + cleaned + " log entry from " + buffer);
-
-                    }
-                }
-            }
-        },
-                10,
-                10, TimeUnit.SECONDS);
-    }
+    /**
+     * The max size of a new buffered logger. Before MMBase-2.0 the default was unbounded.
+     * @since MMBase-2.0
+     */
+    public static final int DEFAULT_MAX_SIZE = 1000;
 
-    private final List<LogEntry> history = Collections.synchronizedList(new LinkedList<LogEntry>());
+    private volatile Ring ring = new Ring(DEFAULT_MAX_SIZE);
 
     private long maxAge = Long.MAX_VALUE;
-    private int maxSize = Integer.MAX_VALUE;
 
     public BufferedLogger() {
         instances.add(new WeakReference<BufferedLogger>(this));
@@ -56,48 +64,73 @@ public class BufferedLogger extends AbstractSimpleImpl {
     public void setMaxAge(long ma) {
         maxAge = ma;
     }
-    public void setMaxSize(int ms) {
-        maxSize = ms;
+
+    /**
+     * The number of entries which are remembered. Defaults to {@link #DEFAULT_MAX_SIZE}. Changing
+     * it makes a new buffer, with the most recent entries of the current one.
+     */
+    public synchronized void setMaxSize(int ms) {
+        Ring old = ring;
+        Ring r = new Ring(ms);
+        long end = old.head.get();
+        for (long seq = Math.max(old.first(), end - ms); seq < end; seq++) {
+            LogEntry entry = old.get(seq);
+            if (entry != null) {
+                r.add(entry);
+            }
+        }
+        ring = r;
     }
 
+    /**
+     * Removes the entries which are older than the max age.
+     * @return The number of removed entries
+     */
     protected int cleanup() {
-        int tot = 0;
-        while (history.size() > maxSize) {
-            history.remove(0);
-            tot++;
-        }
-        long deleteStamp = System.currentTimeMillis() - maxAge;
-        while (history.get(0).timeStamp.getTime() < deleteStamp) {
-            history.remove(0);
-            tot++;
+        return cleanup(currentTimeMillis());
+    }
+
+    /**
+     * The current time, as used for the time stamps of the entries and for the max age.
+     * @since MMBase-2.0
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private int cleanup(long now) {
+        if (maxAge == Long.MAX_VALUE) {
+            return 0;
         }
-        return tot;
+        return ring.removeBefore(now - maxAge);
     }
 
 
     @Override
     protected void log(String s, Level level) {
-        LOG.debug("buffering " + level + " " + s);
-        history.add(new LogEntry(s, level));
-        if (history.size() > maxSize) {
-            history.remove(0);
-        }
+        LOG.debug("buffering {} {}", level, s);
+        cleanup(ring.add(s, level));
     }
 
+    /**
+     * Logs the buffered entries which were logged after the given date to another logger.
+     * @param clear Whether to remove the entries from this buffer
+     */
     public void reLog(final Logger log, final boolean clear, final Date after) {
-        synchronized(history) {
-            Iterator<LogEntry> i = history.iterator();
-            while(i.hasNext()) {
-                LogEntry entry = i.next();
-                if (clear) i.remove();
-                if (entry.timeStamp.after(after)) {
-                    LOG.debug("Relogging " + log);
-                    Logging.log(entry.level, log, entry.line);
-                } else {
-                    LOG.debug("Not relogging " + log + " (too old)");
-                }
+        cleanup();
+        Ring r = ring;
+        long end = r.head.get();
+        long seq = r.search(r.first(), end, after.getTime() + 1);
+        LOG.debug("Relogging {} entries to {}", end - seq, log);
+        for (; seq < end; seq++) {
+            LogEntry entry = r.get(seq);
+            if (entry != null) {
+                Logging.log(entry.level, log, entry.line);
             }
         }
+        if (clear) {
+            r.removeUntil(end);
+        }
     }
     /**
      * Utitliy function to 'relog' to a String.
@@ -113,16 +146,149 @@ public class BufferedLogger extends AbstractSimpleImpl {
 
 
     protected class LogEntry {
-        final Date timeStamp = new Date();
+        final long sequence;
+        final long timeStamp;
         final String line;
         final Level level;
-        public LogEntry(String line, Level level) {
+        LogEntry(long sequence, long timeStamp, String line, Level level) {
+            this.sequence = sequence;
+            this.timeStamp = timeStamp;
             this.level = level;
             this.line = line;
         }
+        /**
+         * @deprecated Entries are made by the buffer itself, this one is not part of it.
+         */
+        @Deprecated
+        public LogEntry(String line, Level level) {
+            this(-1, System.currentTimeMillis(), line, level);
+        }
+        /**
+         * @deprecated The time stamp is not kept as a Date any more, this makes a new one.
+         * @since MMBase-2.0
+         */
+        @Deprecated
+        public Date getTimeStamp() {
+            return new Date(timeStamp);
+        }
     }
 
+    /**
+     * The ring buffer. Every logged entry gets the next sequence number, and is stored at that
+     * number modulo the size. Entries are immutable, and know their sequence number, so a reader
+     * can see whether the entry it finds is still the one it is looking for, or was already
+     * overwritten.
+     */
+    private class Ring {
+        final AtomicReferenceArray<LogEntry> entries;
+        final int size;
+        /**
+         * The sequence number of the next entry
+         */
+        final AtomicLong head  = new AtomicLong();
+        /**
+         * Entries before this were removed (because they were too old, or relogged with 'clear')
+         */
+        final AtomicLong start = new AtomicLong();
+
+        Ring(int size) {
+            if (size < 1) {
+                throw new IllegalArgumentException("The size of a buffered logger must be at least 1 (not " + size + ")");
+            }
+            this.size = size;
+            entries = new AtomicReferenceArray<LogEntry>(size);
+        }
+
+        /**
+         * @return The time stamp of the new entry, which is taken after claiming its place, so
+         * that the entries are in order of time as much as possible.
+         */
+        long add(String line, Level level) {
+            long seq = head.getAndIncrement();
+            long time = currentTimeMillis();
+            entries.set((int) (seq % size), new LogEntry(seq, time, line, level));
+            return time;
+        }
+
+        /**
+         * Adds a copy of an entry of another buffer.
+         */
+        void add(LogEntry entry) {
+            long seq = head.getAndIncrement();
+            entries.set((int) (seq % size), new LogEntry(seq, entry.timeStamp, entry.line, entry.level));
+        }
+
+        /**
+         * The first sequence number which is still available.
+         */
+        long first() {
+            return Math.max(start.get(), head.get() - size);
+        }
+
+        /**
+         * @return The entry with the given sequence number, or <code>null</code> if it is not
+         * available (any more, or yet).
+         */
+        LogEntry get(long seq) {
+            LogEntry entry = entries.get((int) (seq % size));
+            return entry != null && entry.sequence == seq ? entry : null;
+        }
 
+        /**
+         * Binary search for the first entry (between from and to) which was logged at or after
+         * the given time. Entries which are being written at the moment, count as new, and entries
+         * which were just overwritten, as old.
+         */
+        long search(long from, long to, long time) {
+            while (from < to) {
+                long mid = (from + to) >>> 1;
+                LogEntry entry = entries.get((int) (mid % size));
+                boolean old;
+                if (entry == null || entry.sequence < mid) {
+                    old = false;
+                } else if (entry.sequence > mid) {
+                    old = true;
+                } else {
+                    old = entry.timeStamp < time;
+                }
+                if (old) {
+                    from = mid + 1;
+                } else {
+                    to = mid;
+                }
+            }
+            return from;
+        }
 
+        /**
+         * Removes all entries before the given sequence number.
+         * @return The number of removed entries
+         */
+        int removeUntil(long seq) {
+            while (true) {
+                long s = start.get();
+                if (seq <= s) {
+                    return 0;
+                }
+                if (start.compareAndSet(s, seq)) {
+                    return (int) (seq - Math.max(s, seq - size));
+                }
+            }
+        }
+
+        /**
+         * Removes all entries logged before the given time.
+         * @return The number of removed entries
+         */
+        int removeBefore(long time) {
+            long from = first();
+            LogEntry entry = get(from);
+            if (entry == null || entry.timeStamp >= time) {
+                // nothing to remove, which is the usual case
+                return 0;
+            }
+            return removeUntil(search(from, head.get(), time));
+        }
+    }
 
 }
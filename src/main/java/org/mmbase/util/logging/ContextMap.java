@@ -0,0 +1,148 @@
+/*
+
+This software is OSI Certified Open Source Software.
+OSI Certified is a certification mark of the Open Source Initiative.
+
+The license (Mozilla version 1.0) can be read at the MMBase site.
+See http://www.MMBase.org/license
+
+*/
+package org.mmbase.util.logging;
+
+import java.util.*;
+
+/**
+ * An immutable Map from String to Object, used as the value of a {@link MDC}. Changing it makes a
+ * new one ({@link #with}), so the current context of a thread can be remembered and given to
+ * another thread without copying, which is what {@link org.mmbase.util.ThreadPools} does for
+ * every task.
+ *
+ * A diagnostic context contains only a few entries, so they are simply kept in an array.
+ *
+ * @author Michiel Meeuwissen
+ * @since MMBase-2.0
+ */
+public final class ContextMap extends AbstractMap<String, Object> {
+
+    public static final ContextMap EMPTY = new ContextMap(new Object[0]);
+
+    /**
+     * Keys and values, alternating
+     */
+    private final Object[] entries;
+
+    private ContextMap(Object[] entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * @return A ContextMap with the same entries as the given map (without the entries with
+     * <code>null</code> values)
+     */
+    public static ContextMap copyOf(Map<?, ?> map) {
+        if (map == null || map.isEmpty()) {
+            return EMPTY;
+        }
+        if (map instanceof ContextMap) {
+            return (ContextMap) map;
+        }
+        ContextMap result = EMPTY;
+        for (Map.Entry<?, ?> e : map.entrySet()) {
+            result = result.with(String.valueOf(e.getKey()), e.getValue());
+        }
+        return result;
+    }
+
+    private int indexOf(Object key) {
+        for (int i = 0; i < entries.length; i += 2) {
+            if (entries[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns a ContextMap with the given entry added or replaced, or removed if the value is
+     * <code>null</code>. This map itself is not changed.
+     */
+    public ContextMap with(String key, Object value) {
+        if (key == null) {
+            throw new IllegalArgumentException("The key of a diagnostic context cannot be null");
+        }
+        int i = indexOf(key);
+        if (value == null) {
+            if (i == -1) {
+                return this;
+            }
+            if (entries.length == 2) {
+                return EMPTY;
+            }
+            Object[] copy = new Object[entries.length - 2];
+            System.arraycopy(entries, 0, copy, 0, i);
+            System.arraycopy(entries, i + 2, copy, i, entries.length - i - 2);
+            return new ContextMap(copy);
+        }
+        if (i == -1) {
+            Object[] copy = Arrays.copyOf(entries, entries.length + 2);
+            copy[entries.length] = key;
+            copy[entries.length + 1] = value;
+            return new ContextMap(copy);
+        }
+        if (entries[i + 1] == value) {
+            return this;
+        }
+        Object[] copy = entries.clone();
+        copy[i + 1] = value;
+        return new ContextMap(copy);
+    }
+
+    @Override
+    public Object get(Object key) {
+        int i = key == null ? -1 : indexOf(key);
+        return i == -1 ? null : entries[i + 1];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key != null && indexOf(key) != -1;
+    }
+
+    @Override
+    public int size() {
+        return entries.length / 2;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Object>>() {
+            @Override
+            public int size() {
+                return ContextMap.this.size();
+            }
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                return new Iterator<Map.Entry<String, Object>>() {
+                    int i = 0;
+                    @Override
+                    public boolean hasNext() {
+                        return i < entries.length;
+                    }
+                    @Override
+                    public Map.Entry<String, Object> next() {
+                        if (i >= entries.length) {
+                            throw new NoSuchElementException();
+                        }
+                        Map.Entry<String, Object> e = new AbstractMap.SimpleImmutableEntry<String, Object>((String) entries[i], entries[i + 1]);
+                        i += 2;
+                        return e;
+                    }
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+}
@@ -9,6 +9,8 @@ See http://www.MMBase.org/license
 
 package org.mmbase.util.logging;
 
+import java.util.function.Supplier;
+
 /**
  * The `Logger' interface for MMBase.
  *
@@ -65,6 +67,54 @@ public interface Logger {
 
     void trace(Object m, Throwable t);
 
+    /**
+     * @see #debug(String, Object...)
+     * @since MMBase-2.0
+     */
+    default void trace(String format, Object... args) {
+        if (isTraceEnabled()) {
+            Logging.log(Level.TRACE, this, format, args);
+        }
+    }
+
+    /**
+     * @see #debug(String, Object)
+     * @since MMBase-2.0
+     */
+    default void trace(String format, Object arg) {
+        if (isTraceEnabled()) {
+            trace(format, new Object[] {arg});
+        }
+    }
+
+    /**
+     * @see #debug(String, Object, Object)
+     * @since MMBase-2.0
+     */
+    default void trace(String format, Object arg1, Object arg2) {
+        if (isTraceEnabled()) {
+            trace(format, new Object[] {arg1, arg2});
+        }
+    }
+
+    /**
+     * @see #debug(String, Throwable)
+     * @since MMBase-2.0
+     */
+    default void trace(String m, Throwable t) {
+        trace((Object) m, t);
+    }
+
+    /**
+     * @see #debug(Supplier)
+     * @since MMBase-2.0
+     */
+    default void trace(Supplier<?> m) {
+        if (isTraceEnabled()) {
+            trace(m == null ? null : m.get());
+        }
+    }
+
     /**
      * Logs the message m with debug priority. Everything a
      * non-developer never wants to see, but you do, to * keep track
@@ -80,6 +130,61 @@ public interface Logger {
 
     void debug(Object m, Throwable t);
 
+    /**
+     * Logs with debug priority, if debug is enabled. Only then the arguments are filled in the
+     * '{}' place holders of the format. So, you don't need to protect
+     * <code>log.debug("Found {} in {}", node, list)</code> with <code>isDebugEnabled</code>. If the
+     * last argument is a Throwable for which there is no place holder, its stack trace is logged too.
+     * @see Logging#format(String, Object...)
+     * @since MMBase-2.0
+     */
+    default void debug(String format, Object... args) {
+        if (isDebugEnabled()) {
+            Logging.log(Level.DEBUG, this, format, args);
+        }
+    }
+
+    /**
+     * Like {@link #debug(String, Object...)}, but for one argument, so nothing is allocated if
+     * debug is disabled.
+     * @since MMBase-2.0
+     */
+    default void debug(String format, Object arg) {
+        if (isDebugEnabled()) {
+            debug(format, new Object[] {arg});
+        }
+    }
+
+    /**
+     * Like {@link #debug(String, Object...)}, for two arguments.
+     * @since MMBase-2.0
+     */
+    default void debug(String format, Object arg1, Object arg2) {
+        if (isDebugEnabled()) {
+            debug(format, new Object[] {arg1, arg2});
+        }
+    }
+
+    /**
+     * The same as {@link #debug(Object, Throwable)}. This exists because otherwise a call with a
+     * String and a Throwable would be ambiguous, with {@link #debug(String, Object)}.
+     * @since MMBase-2.0
+     */
+    default void debug(String m, Throwable t) {
+        debug((Object) m, t);
+    }
+
+    /**
+     * Logs the result of the supplier with debug priority. The supplier is only called if debug
+     * is enabled.
+     * @since MMBase-2.0
+     */
+    default void debug(Supplier<?> m) {
+        if (isDebugEnabled()) {
+            debug(m == null ? null : m.get());
+        }
+    }
+
 
     /**
      * Logs the message m with service priority. An interested system
@@ -97,6 +202,54 @@ public interface Logger {
 
     void service(Object m, Throwable t);
 
+    /**
+     * @see #debug(String, Object...)
+     * @since MMBase-2.0
+     */
+    default void service(String format, Object... args) {
+        if (isServiceEnabled()) {
+            Logging.log(Level.SERVICE, this, format, args);
+        }
+    }
+
+    /**
+     * @see #debug(String, Object)
+     * @since MMBase-2.0
+     */
+    default void service(String format, Object arg) {
+        if (isServiceEnabled()) {
+            service(format, new Object[] {arg});
+        }
+    }
+
+    /**
+     * @see #debug(String, Object, Object)
+     * @since MMBase-2.0
+     */
+    default void service(String format, Object arg1, Object arg2) {
+        if (isServiceEnabled()) {
+            service(format, new Object[] {arg1, arg2});
+        }
+    }
+
+    /**
+     * @see #debug(String, Throwable)
+     * @since MMBase-2.0
+     */
+    default void service(String m, Throwable t) {
+        service((Object) m, t);
+    }
+
+    /**
+     * @see #debug(Supplier)
+     * @since MMBase-2.0
+     */
+    default void service(Supplier<?> m) {
+        if (isServiceEnabled()) {
+            service(m == null ? null : m.get());
+        }
+    }
+
 
     /**
      * Logs the message m with info priority. As `service', but
@@ -112,6 +265,54 @@ public interface Logger {
      */
     void info(Object m, Throwable t);
 
+    /**
+     * @see #debug(String, Object...)
+     * @since MMBase-2.0
+     */
+    default void info(String format, Object... args) {
+        if (isEnabledFor(Level.INFO)) {
+            Logging.log(Level.INFO, this, format, args);
+        }
+    }
+
+    /**
+     * @see #debug(String, Object)
+     * @since MMBase-2.0
+     */
+    default void info(String format, Object arg) {
+        if (isEnabledFor(Level.INFO)) {
+            info(format, new Object[] {arg});
+        }
+    }
+
+    /**
+     * @see #debug(String, Object, Object)
+     * @since MMBase-2.0
+     */
+    default void info(String format, Object arg1, Object arg2) {
+        if (isEnabledFor(Level.INFO)) {
+            info(format, new Object[] {arg1, arg2});
+        }
+    }
+
+    /**
+     * @see #debug(String, Throwable)
+     * @since MMBase-2.0
+     */
+    default void info(String m, Throwable t) {
+        info((Object) m, t);
+    }
+
+    /**
+     * @see #debug(Supplier)
+     * @since MMBase-2.0
+     */
+    default void info(Supplier<?> m) {
+        if (isEnabledFor(Level.INFO)) {
+            info(m == null ? null : m.get());
+        }
+    }
+
 
     /**
      * Logs the message m with warn priority. Something strange
@@ -124,6 +325,54 @@ public interface Logger {
      */
     void warn(Object m, Throwable t);
 
+    /**
+     * @see #debug(String, Object...)
+     * @since MMBase-2.0
+     */
+    default void warn(String format, Object... args) {
+        if (isEnabledFor(Level.WARN)) {
+            Logging.log(Level.WARN, this, format, args);
+        }
+    }
+
+    /**
+     * @see #debug(String, Object)
+     * @since MMBase-2.0
+     */
+    default void warn(String format, Object arg) {
+        if (isEnabledFor(Level.WARN)) {
+            warn(format, new Object[] {arg});
+        }
+    }
+
+    /**
+     * @see #debug(String, Object, Object)
+     * @since MMBase-2.0
+     */
+    default void warn(String format, Object arg1, Object arg2) {
+        if (isEnabledFor(Level.WARN)) {
+            warn(format, new Object[] {arg1, arg2});
+        }
+    }
+
+    /**
+     * @see #debug(String, Throwable)
+     * @since MMBase-2.0
+     */
+    default void warn(String m, Throwable t) {
+        warn((Object) m, t);
+    }
+
+    /**
+     * @see #debug(Supplier)
+     * @since MMBase-2.0
+     */
+    default void warn(Supplier<?> m) {
+        if (isEnabledFor(Level.WARN)) {
+            warn(m == null ? null : m.get());
+        }
+    }
+
 
     /**
      * Logs the message m with error priority. Something is definitely
@@ -137,6 +386,54 @@ public interface Logger {
      */
     void error(Object m, Throwable t);
 
+    /**
+     * @see #debug(String, Object...)
+     * @since MMBase-2.0
+     */
+    default void error(String format, Object... args) {
+        if (isEnabledFor(Level.ERROR)) {
+            Logging.log(Level.ERROR, this, format, args);
+        }
+    }
+
+    /**
+     * @see #debug(String, Object)
+     * @since MMBase-2.0
+     */
+    default void error(String format, Object arg) {
+        if (isEnabledFor(Level.ERROR)) {
+            error(format, new Object[] {arg});
+        }
+    }
+
+    /**
+     * @see #debug(String, Object, Object)
+     * @since MMBase-2.0
+     */
+    default void error(String format, Object arg1, Object arg2) {
+        if (isEnabledFor(Level.ERROR)) {
+            error(format, new Object[] {arg1, arg2});
+        }
+    }
+
+    /**
+     * @see #debug(String, Throwable)
+     * @since MMBase-2.0
+     */
+    default void error(String m, Throwable t) {
+        error((Object) m, t);
+    }
+
+    /**
+     * @see #debug(Supplier)
+     * @since MMBase-2.0
+     */
+    default void error(Supplier<?> m) {
+        if (isEnabledFor(Level.ERROR)) {
+            error(m == null ? null : m.get());
+        }
+    }
+
 
     /**
      * Logs the message m with fatal priority. The progam could not
@@ -153,6 +450,54 @@ public interface Logger {
      */
     void fatal(Object m, Throwable t);
 
+    /**
+     * @see #debug(String, Object...)
+     * @since MMBase-2.0
+     */
+    default void fatal(String format, Object... args) {
+        if (isEnabledFor(Level.FATAL)) {
+            Logging.log(Level.FATAL, this, format, args);
+        }
+    }
+
+    /**
+     * @see #debug(String, Object)
+     * @since MMBase-2.0
+     */
+    default void fatal(String format, Object arg) {
+        if (isEnabledFor(Level.FATAL)) {
+            fatal(format, new Object[] {arg});
+        }
+    }
+
+    /**
+     * @see #debug(String, Object, Object)
+     * @since MMBase-2.0
+     */
+    default void fatal(String format, Object arg1, Object arg2) {
+        if (isEnabledFor(Level.FATAL)) {
+            fatal(format, new Object[] {arg1, arg2});
+        }
+    }
+
+    /**
+     * @see #debug(String, Throwable)
+     * @since MMBase-2.0
+     */
+    default void fatal(String m, Throwable t) {
+        fatal((Object) m, t);
+    }
+
+    /**
+     * @see #debug(Supplier)
+     * @since MMBase-2.0
+     */
+    default void fatal(Supplier<?> m) {
+        if (isEnabledFor(Level.FATAL)) {
+            fatal(m == null ? null : m.get());
+        }
+    }
+
     /**
      * Returns true if for this category (Logger), a call to trace
      * would do something.
@@ -0,0 +1,57 @@
+/*
+
+This software is OSI Certified Open Source Software.
+OSI Certified is a certification mark of the Open Source Initiative.
+
+The license (Mozilla version 1.0) can be read at the MMBase site.
+See http://www.MMBase.org/license
+
+*/
+package org.mmbase.util.logging;
+
+/**
+ * Creates the {@link Logger}s of one Logger implementation. Traditionally, {@link Logging} calls
+ * the static methods 'getLoggerInstance', 'configure' and 'shutdown' of the configured
+ * implementation class with reflection. A LoggerFactory does that without reflection.
+ *
+ * Logging finds the factory for the class configured in log.xml once, when logging is
+ * configured. The class can be a LoggerFactory itself, or a factory for it can be registered in
+ * <code>META-INF/services/org.mmbase.util.logging.LoggerFactory</code> (see {@link
+ * java.util.ServiceLoader}). If there is none, its static methods are still used.
+ *
+ * @author Michiel Meeuwissen
+ * @since MMBase-2.0
+ */
+public interface LoggerFactory {
+
+    /**
+     * The Logger implementation this factory is for. This is the class which is configured in
+     * log.xml.
+     */
+    Class<?> getLoggerClass();
+
+    /**
+     * Returns the Logger for the given category.
+     */
+    Logger getLoggerInstance(String name);
+
+    /**
+     * Configures the implementation, with the configuration string of log.xml.
+     */
+    default void configure(String configuration) {
+    }
+
+    /**
+     * Called when logging is shut down.
+     */
+    default void shutdown() {
+    }
+
+    /**
+     * Returns the mapped diagnostic context of the implementation, or <code>null</code> if it
+     * has none, in which case a simple one is used.
+     */
+    default MDC getMDC() {
+        return null;
+    }
+}
@@ -9,6 +9,7 @@ See http://www.MMBase.org/license
 
 package org.mmbase.util.logging;
 import java.util.*;
+import java.util.function.Supplier;
 
 /**
  * Wraps a logger instance. This can be used for static logger instances which might be instatatied
@@ -133,6 +134,181 @@ public class LoggerWrapper implements Logger {
         log.fatal(m, t);
     }
 
+    @Override
+    final public void trace  (String format, Object... args) {
+        if (log != null) log.trace(format, args);
+    }
+
+    @Override
+    final public void trace  (String format, Object arg) {
+        if (log != null) log.trace(format, arg);
+    }
+
+    @Override
+    final public void trace  (String format, Object arg1, Object arg2) {
+        if (log != null) log.trace(format, arg1, arg2);
+    }
+
+    @Override
+    final public void trace  (String m, Throwable t) {
+        if (log != null) log.trace(m, t);
+    }
+
+    @Override
+    final public void trace  (Supplier<?> m) {
+        if (log != null) log.trace(m);
+    }
+
+    @Override
+    final public void debug  (String format, Object... args) {
+        if (log != null) log.debug(format, args);
+    }
+
+    @Override
+    final public void debug  (String format, Object arg) {
+        if (log != null) log.debug(format, arg);
+    }
+
+    @Override
+    final public void debug  (String format, Object arg1, Object arg2) {
+        if (log != null) log.debug(format, arg1, arg2);
+    }
+
+    @Override
+    final public void debug  (String m, Throwable t) {
+        if (log != null) log.debug(m, t);
+    }
+
+    @Override
+    final public void debug  (Supplier<?> m) {
+        if (log != null) log.debug(m);
+    }
+
+    @Override
+    final public void service(String format, Object... args) {
+        log.service(format, args);
+    }
+
+    @Override
+    final public void service(String format, Object arg) {
+        log.service(format, arg);
+    }
+
+    @Override
+    final public void service(String format, Object arg1, Object arg2) {
+        log.service(format, arg1, arg2);
+    }
+
+    @Override
+    final public void service(String m, Throwable t) {
+        log.service(m, t);
+    }
+
+    @Override
+    final public void service(Supplier<?> m) {
+        log.service(m);
+    }
+
+    @Override
+    final public void info   (String format, Object... args) {
+        log.info(format, args);
+    }
+
+    @Override
+    final public void info   (String format, Object arg) {
+        log.info(format, arg);
+    }
+
+    @Override
+    final public void info   (String format, Object arg1, Object arg2) {
+        log.info(format, arg1, arg2);
+    }
+
+    @Override
+    final public void info   (String m, Throwable t) {
+        log.info(m, t);
+    }
+
+    @Override
+    final public void info   (Supplier<?> m) {
+        log.info(m);
+    }
+
+    @Override
+    final public void warn   (String format, Object... args) {
+        log.warn(format, args);
+    }
+
+    @Override
+    final public void warn   (String format, Object arg) {
+        log.warn(format, arg);
+    }
+
+    @Override
+    final public void warn   (String format, Object arg1, Object arg2) {
+        log.warn(format, arg1, arg2);
+    }
+
+    @Override
+    final public void warn   (String m, Throwable t) {
+        log.warn(m, t);
+    }
+
+    @Override
+    final public void warn   (Supplier<?> m) {
+        log.warn(m);
+    }
+
+    @Override
+    final public void error  (String format, Object... args) {
+        log.error(format, args);
+    }
+
+    @Override
+    final public void error  (String format, Object arg) {
+        log.error(format, arg);
+    }
+
+    @Override
+    final public void error  (String format, Object arg1, Object arg2) {
+        log.error(format, arg1, arg2);
+    }
+
+    @Override
+    final public void error  (String m, Throwable t) {
+        log.error(m, t);
+    }
+
+    @Override
+    final public void error  (Supplier<?> m) {
+        log.error(m);
+    }
+
+    @Override
+    final public void fatal  (String format, Object... args) {
+        log.fatal(format, args);
+    }
+
+    @Override
+    final public void fatal  (String format, Object arg) {
+        log.fatal(format, arg);
+    }
+
+    @Override
+    final public void fatal  (String format, Object arg1, Object arg2) {
+        log.fatal(format, arg1, arg2);
+    }
+
+    @Override
+    final public void fatal  (String m, Throwable t) {
+        log.fatal(m, t);
+    }
+
+    @Override
+    final public void fatal  (Supplier<?> m) {
+        log.fatal(m);
+    }
+
     @Override
     final public boolean isTraceEnabled() {
         return log.isTraceEnabled();
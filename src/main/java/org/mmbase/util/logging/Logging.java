@@ -12,6 +12,7 @@ package org.mmbase.util.logging;
 import java.lang.reflect.Method;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.mmbase.core.event.*;
 import org.mmbase.util.ApplicationContextReader;
@@ -67,7 +68,15 @@ import org.mmbase.util.xml.DocumentReader;
 public class Logging {
 
     private static Class<?>  logClass    = SimpleTimeStampImpl.class; // default Logger Implementation
+    private static volatile LoggerFactory factory = new SimpleTimeStampImpl.Factory();
+    private static final ConcurrentHashMap<String, Logger> loggers = new ConcurrentHashMap<String, Logger>();
+    /**
+     * Replaced as a whole when configuring, so every {@link RateLimitedLogger} can see by its
+     * identity whether it must look up its limit again.
+     */
+    private static volatile List<RateLimitedLogger.Limit> rateLimits = Collections.emptyList();
     private static boolean configured = false;
+    private static final Object[] NO_ARGS = new Object[0];
     private static final Logger log   = getLoggerInstance(Logging.class); // logger for this class itself
 
    /**
@@ -166,6 +175,18 @@ public class Logging {
         } catch (Exception e) {
             log.error("Exception during parsing: " + e.getMessage(), e);
         }
+        List<RateLimitedLogger.Limit> limits = new ArrayList<RateLimitedLogger.Limit>();
+        for (org.w3c.dom.Element element : reader.getChildElements("logging", "ratelimit")) {
+            try {
+                limits.add(RateLimitedLogger.Limit.valueOf(element));
+            } catch (IllegalArgumentException iae) {
+                log.error("Could not parse rate limit for '" + element.getAttribute("category") + "': " + iae.getMessage());
+            }
+        }
+        rateLimits = Collections.unmodifiableList(limits);
+        if (! limits.isEmpty()) {
+            log.info("Rate limits: " + limits);
+        }
 
 
         log.info("Logging: " + classToUse + " (" + configuration + ").  Configured in " + resourceLoader.getResource(configFile));
@@ -173,8 +194,10 @@ public class Logging {
         // System.out.println("might be written to this file. See the configuration of the");
         // System.out.println("selected logging system for more hints where logging will appear)");
         Class<?> logClassCopy = logClass; // if something's wrong, we can restore the current value.
+        LoggerFactory factoryCopy = factory;
         try { // to find the configured class
             logClass = Class.forName(classToUse);
+            factory = getFactory(logClass);
             if (configured) {
                 if (! logClassCopy.equals(logClass)) {
                     log.warn("Tried to change logging implementation from " + logClassCopy + " to " + logClass + ". This is not really possible (most static instances are unreachable). Trying anyway as requested, if this gives strange results, you might need to restart.");
@@ -185,14 +208,17 @@ public class Logging {
             log.error("Could not find class " + classToUse);
             log.error(e.toString());
             logClass = logClassCopy;
+            factory = factoryCopy;
         } catch (Throwable e) {
             log.error("Exception to find class " + classToUse + ": " +  e);
             log.info("Falling back to " + logClassCopy.getName());
             logClass = logClassCopy;
+            factory = factoryCopy;
         }
         // System.out.println("logging to " + getLocations());
         configureClass(configuration);
         configured = true;
+        loggers.clear();
         log.service("Logging configured");
         log.debug("Now watching " + configWatcher.getResources());
         log.debug("Replacing wrappers " + LoggerWrapper.getWrappers());
@@ -205,6 +231,25 @@ public class Logging {
         ResourceLoader.initLogging();
     }
 
+    /**
+     * The configured rate limits (the 'ratelimit' elements of log.xml).
+     * @see RateLimitedLogger
+     * @since MMBase-2.0
+     */
+    public static List<RateLimitedLogger.Limit> getRateLimits() {
+        return rateLimits;
+    }
+
+    /**
+     * Replaces the rate limits. This applies to all Loggers, also to those which were requested
+     * already.
+     * @see RateLimitedLogger
+     * @since MMBase-2.0
+     */
+    public static void setRateLimits(List<RateLimitedLogger.Limit> limits) {
+        rateLimits = Collections.unmodifiableList(new ArrayList<RateLimitedLogger.Limit>(limits));
+    }
+
     /**
      * Calls the 'configure' static method of the used logging class,
      * or does nothing if it doesn't exist. You could call this method
@@ -213,16 +258,121 @@ public class Logging {
 
     public static void configureClass(String configuration) {
         try { // to configure
-            // System.out.println("Found class " + logClass.getName());
-            Method conf = logClass.getMethod("configure", String.class);
-            conf.invoke(null, configuration);
-        } catch (NoSuchMethodException e) {
-            log.debug("Could not find configure method in " + logClass.getName());
-            // okay, simply don't configure
-        } catch (java.lang.reflect.InvocationTargetException e) {
-            log.error("Invocation Exception while configuration class. " + logClass + " with configuration String '" + configuration + "' :" + e.getMessage(), e);
+            factory.configure(configuration);
         } catch (Exception e) {
-            log.error("", e);
+            log.error("Exception while configuring " + logClass + " with configuration String '" + configuration + "' :" + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Finds the {@link LoggerFactory} for a Logger implementation. That is the class itself if it
+     * is a LoggerFactory, or else the one registered for it as a service, or else one which calls
+     * its static methods.
+     * @since MMBase-2.0
+     */
+    static LoggerFactory getFactory(Class<?> loggerClass) throws ReflectiveOperationException {
+        if (LoggerFactory.class.isAssignableFrom(loggerClass)) {
+            return (LoggerFactory) loggerClass.newInstance();
+        }
+        Iterator<LoggerFactory> i = ServiceLoader.load(LoggerFactory.class, Logging.class.getClassLoader()).iterator();
+        while (true) {
+            try {
+                if (! i.hasNext()) {
+                    break;
+                }
+                LoggerFactory f = i.next();
+                if (f.getLoggerClass().equals(loggerClass)) {
+                    return f;
+                }
+            } catch (ServiceConfigurationError sce) {
+                // e.g. a factory for an implementation which is not available
+                log.debug(sce.getMessage());
+            } catch (LinkageError le) {
+                log.debug(le.getMessage());
+            }
+        }
+        return new ReflectionFactory(loggerClass);
+    }
+
+    /**
+     * The LoggerFactory for Logger implementations which only have the static methods. These are
+     * looked up once.
+     */
+    private static class ReflectionFactory implements LoggerFactory {
+        private final Class<?> loggerClass;
+        private final Method getLoggerInstance;
+        private final Method configure;
+        private final Method shutdown;
+        private final Method getMDC;
+
+        ReflectionFactory(Class<?> c) throws NoSuchMethodException {
+            loggerClass = c;
+            getLoggerInstance = c.getMethod("getLoggerInstance", String.class);
+            configure = getMethod(c, "configure", String.class);
+            shutdown  = getMethod(c, "shutdown");
+            getMDC    = getMethod(c, "getMDC");
+        }
+
+        private static Method getMethod(Class<?> c, String name, Class<?>... parameters) {
+            try {
+                return c.getMethod(name, parameters);
+            } catch (NoSuchMethodException e) {
+                return null;
+            }
+        }
+
+        private Object invoke(Method m, Object... args) {
+            try {
+                return m.invoke(null, args);
+            } catch (java.lang.reflect.InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException(cause.getMessage(), cause);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public Class<?> getLoggerClass() {
+            return loggerClass;
+        }
+
+        @Override
+        public Logger getLoggerInstance(String name) {
+            return (Logger) invoke(getLoggerInstance, name);
+        }
+
+        @Override
+        public void configure(String configuration) {
+            if (configure == null) {
+                log.debug("Could not find configure method in " + loggerClass.getName());
+                // okay, simply don't configure
+            } else {
+                invoke(configure, configuration);
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            if (shutdown != null) {
+                invoke(shutdown);
+            }
+        }
+
+        @Override
+        public MDC getMDC() {
+            return getMDC == null ? null : (MDC) invoke(getMDC);
+        }
+
+        @Override
+        public String toString() {
+            return loggerClass.getName();
         }
     }
 
@@ -240,32 +390,26 @@ public class Logging {
      */
 
     public  static Logger getLoggerInstance(String s) {
-        // call the getLoggerInstance static method of the logclass:
-        try {
-            Method getIns = logClass.getMethod("getLoggerInstance", String.class);
-            Logger logger =  (Logger) getIns.invoke(null, s);
-            if (configured) {
-                return logger;
-            } else {
-                return new LoggerWrapper(logger, s);
+        Logger logger = loggers.get(s);
+        if (logger == null) {
+            try {
+                logger = factory.getLoggerInstance(s);
+            } catch (Exception e) {
+                log.warn(e);
+                return  SimpleImpl.getLoggerInstance(s);
+            }
+            logger = new RateLimitedLogger(logger, s);
+            if (! configured) {
+                logger = new LoggerWrapper(logger, s);
+            }
+            Logger existing = loggers.putIfAbsent(s, logger);
+            if (existing != null) {
+                logger = existing;
             }
-        } catch (Exception e) {
-            log.warn(e);
-            return  SimpleImpl.getLoggerInstance(s);
         }
+        return logger;
     }
 
-    /**
-     * @since MMBase-1.9.2
-     */
-    private static ThreadLocal<Map<String, Object>> MDC_MAP = new ThreadLocal<Map<String, Object>>() {
-          @Override
-          protected Map<String, Object> initialValue() {
-              return new HashMap<String, Object>();
-          }
-
-    };
-
     private static MDC mdc = null;
 
     /**
@@ -275,26 +419,12 @@ public class Logging {
     public static MDC getMDC() {
         if (mdc == null) {
             try {
-                Method getIns = logClass.getMethod("getMDC");
-                mdc = (MDC) getIns.invoke(null);
+                mdc = factory.getMDC();
             } catch (Exception e) {
                 log.warn(e);
-                mdc = new MDC() {
-                    @Override
-                        public void put(String key, Object value) {
-                            if (value != null) {
-                                MDC_MAP.get().put(key, value);
-                            } else {
-                                MDC_MAP.get().remove(key);
-                            }
-                        }
-
-                    @Override
-                        public Object get(String key) {
-                            return MDC_MAP.get().get(key);
-                        }
-                    };
-
+            }
+            if (mdc == null) {
+                mdc = AbstractSimpleImpl.getMDC();
             }
             log.service("Found MDC " + mdc);
         }
@@ -339,15 +469,12 @@ public class Logging {
                 for (LoggerWrapper wrapper : LoggerWrapper.getWrappers()) {
                     wrapper.setLogger(SimpleImpl.getLoggerInstance(wrapper.getName() + ".SHUTDOWN"));
                 }
-                if (logClass != null) {
-                    Method shutdown = logClass.getMethod("shutdown");
-                    shutdown.invoke(null);
-                }
+                loggers.clear();
+                RateLimitedLogger.report(true);
+                factory.shutdown();
                 mdc = null;
                 configured = false;
             }
-        } catch (NoSuchMethodException e) {
-            // System.err.println("No such method"); // okay, nothing to shutdown.
         } catch (Throwable e) {
             System.err.println(e + stackTrace(e));
         }
@@ -492,6 +619,133 @@ public class Logging {
 
     }
 
+    /**
+     * Like {@link #log(Level, Logger, String)}, but with a throwable, whose stack trace is logged
+     * too, if it is not <code>null</code>.
+     * @since MMBase-2.0
+     */
+    public static void log(Level l, Logger log, Object mes, Throwable t) {
+        if (t == null) {
+            switch(l.toInt()) {
+            case Level.TRACE_INT:   log.trace(mes); break;
+            case Level.DEBUG_INT:   log.debug(mes); break;
+            case Level.SERVICE_INT: log.service(mes); break;
+            case Level.INFO_INT:    log.info(mes); break;
+            case Level.WARN_INT:    log.warn(mes); break;
+            case Level.ERROR_INT:   log.error(mes); break;
+            case Level.FATAL_INT:   log.fatal(mes); break;
+            default: break;
+            }
+        } else {
+            switch(l.toInt()) {
+            case Level.TRACE_INT:   log.trace(mes, t); break;
+            case Level.DEBUG_INT:   log.debug(mes, t); break;
+            case Level.SERVICE_INT: log.service(mes, t); break;
+            case Level.INFO_INT:    log.info(mes, t); break;
+            case Level.WARN_INT:    log.warn(mes, t); break;
+            case Level.ERROR_INT:   log.error(mes, t); break;
+            case Level.FATAL_INT:   log.fatal(mes, t); break;
+            default: break;
+            }
+        }
+    }
+
+    /**
+     * Formats the message and logs it. If the last argument is a Throwable, which is not used by
+     * the format, its stack trace is logged too. This does not check whether the level is
+     * enabled, that is done by the parameterized methods of {@link Logger}, which call this. A
+     * <code>null</code> format is logged as "null", <code>null</code> arguments are taken as none.
+     * @see #format(String, Object...)
+     * @since MMBase-2.0
+     */
+    public static void log(Level l, Logger log, String format, Object... args) {
+        if (format == null) {
+            format = "null";
+        }
+        if (args == null) {
+            args = NO_ARGS;
+        }
+        StringBuilder buf = new StringBuilder(format.length() + 16 * args.length);
+        int used = format(buf, format, args);
+        Throwable t = null;
+        if (used < args.length && args[args.length - 1] instanceof Throwable) {
+            t = (Throwable) args[args.length - 1];
+        }
+        log(l, log, buf.toString(), t);
+    }
+
+    /**
+     * Replaces the place holders '{}' in the format by the string representations of the arguments,
+     * like e.g. slf4j does. A place holder can be escaped with a backslash ('\{}'). Superfluous
+     * place holders are left alone, superfluous arguments are ignored. Arrays are shown with
+     * their elements.
+     * @since MMBase-2.0
+     */
+    public static String format(String format, Object... args) {
+        if (format == null) {
+            return "null";
+        }
+        if (args == null) {
+            args = NO_ARGS;
+        }
+        StringBuilder buf = new StringBuilder(format.length() + 16 * args.length);
+        format(buf, format, args);
+        return buf.toString();
+    }
+
+    /**
+     * The number of (not escaped) place holders in the format, but at most max.
+     */
+    static int placeHolders(String format, int max) {
+        int count = 0;
+        int start = 0;
+        while (count < max) {
+            int i = format.indexOf("{}", start);
+            if (i == -1) {
+                break;
+            }
+            if (i == 0 || format.charAt(i - 1) != '\\') {
+                count++;
+            }
+            start = i + 2;
+        }
+        return count;
+    }
+
+    /**
+     * @return The number of used arguments
+     */
+    private static int format(StringBuilder buf, String format, Object[] args) {
+        if (format == null) {
+            buf.append("null");
+            return 0;
+        }
+        int arg = 0;
+        int start = 0;
+        int length = format.length();
+        while (arg < args.length) {
+            int i = format.indexOf("{}", start);
+            if (i == -1) {
+                break;
+            }
+            if (i > 0 && format.charAt(i - 1) == '\\') {
+                buf.append(format, start, i - 1).append("{}");
+                start = i + 2;
+                continue;
+            }
+            buf.append(format, start, i);
+            Object a = args[arg++];
+            if (a instanceof Object[]) {
+                buf.append(Arrays.deepToString((Object[]) a));
+            } else {
+                buf.append(a);
+            }
+            start = i + 2;
+        }
+        buf.append(format, start, length);
+        return arg;
+    }
+
     /**
      * Utility method for dynamically checking the 'enabled'ness of a logger on a given level.
      * @since MMBase-1.9
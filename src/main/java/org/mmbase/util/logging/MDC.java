@@ -9,6 +9,9 @@ See http://www.MMBase.org/license
 
 package org.mmbase.util.logging;
 
+import java.util.Collections;
+import java.util.Map;
+
 /**
  * MDC stands for <em>mapped diagnostic contexts</em> See also <a href="http://logging.apache.org/log4j/1.2/apidocs/org/apache/log4j/MDC.html">log4j.MDC</a>
  * The implementation depends on the Logger implementation. An instance can be obtained with {@link Logging#getMDC}.
@@ -20,4 +23,22 @@ public interface MDC {
     void put(String key, Object value);
     Object get(String key);
     //void remove(String key);
+
+    /**
+     * The complete context of the current thread, as an immutable map. This can be given to
+     * {@link #setContext} in another thread, to continue work with the same context there. The
+     * default implementation cannot do that, and returns an empty map.
+     * @since MMBase-2.0
+     */
+    default Map<String, Object> getContext() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Replaces the complete context of the current thread.
+     * @see #getContext
+     * @since MMBase-2.0
+     */
+    default void setContext(Map<String, Object> context) {
+    }
 }
@@ -20,9 +20,11 @@ import org.apache.log4j.xml.DOMConfigurator;
  * try to log (info priority) to the class A0123456789.B0123456789.C0123456789.
  * It has several other command line options (starting with -).
  *
+ * @deprecated Use the JMH benchmark org.mmbase.util.logging.LoggingBenchmark of the test sources,
+ * which measures all Logger implementations, also with several threads and with the MDC.
  **/
 
-
+@Deprecated
 public class Performance {
 
     static final double SECOND = 1000;  // one second in milliseconds.
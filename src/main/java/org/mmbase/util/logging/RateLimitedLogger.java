@@ -0,0 +1,486 @@
+/*
+
+This software is OSI Certified Open Source Software.
+OSI Certified is a certification mark of the Open Source Initiative.
+
+The license (Mozilla version 1.0) can be read at the MMBase site.
+See http://www.MMBase.org/license
+
+*/
+package org.mmbase.util.logging;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import org.mmbase.util.ThreadPools;
+import org.w3c.dom.Element;
+
+/**
+ * Wraps a Logger, and limits the number of messages which are passed to it. Every message
+ * template (or message, with the numbers in it ignored) has its own token bucket, so a storm of
+ * the same warning is cut off, while other messages of the same category still pass. The number
+ * of suppressed messages is reported periodically.
+ *
+ * {@link Logging} wraps all loggers, and applies the limits which are configured in log.xml, like so:
+ * <pre>
+ *  &lt;ratelimit category="org.mmbase.cache" rate="1" burst="20" sample="1000" summary="60" /&gt;
+ * </pre>
+ * <dl>
+ *  <dt>category</dt><dd>The limit is applied to the categories starting with this. If more
+ *  limits match, the one with the longest category is used. Defaults to all categories.</dd>
+ *  <dt>rate</dt><dd>The number of messages per second (may be fractional)</dd>
+ *  <dt>burst</dt><dd>How many messages may be logged at once, before the rate applies. Defaults to the rate (but at least 1)</dd>
+ *  <dt>sample</dt><dd>Of the suppressed messages, one in this many is logged anyway. Defaults to 0 (none)</dd>
+ *  <dt>summary</dt><dd>The number of seconds after which the number of suppressed messages is
+ *  logged (default 60)</dd>
+ * </dl>
+ * The limits are looked up again when they are changed (see {@link Logging#setRateLimits}), so they
+ * also apply to the loggers which were already requested.
+ *
+ * @author Michiel Meeuwissen
+ * @since MMBase-2.0
+ */
+public class RateLimitedLogger implements Logger {
+
+    /**
+     * The maximal number of buckets per category. If there are more different messages, they
+     * share one.
+     */
+    static final int MAX_BUCKETS = 1000;
+
+    /**
+     * One configured rate limit.
+     */
+    public static class Limit {
+        private final String category;
+        private final double rate;
+        private final int burst;
+        private final int sample;
+        private final long summary;
+
+        /**
+         * @param rate Messages per second
+         * @param summary Seconds
+         */
+        public Limit(String category, double rate, int burst, int sample, long summary) {
+            if (rate <= 0) {
+                throw new IllegalArgumentException("The rate must be positive (not " + rate + ")");
+            }
+            this.category = category == null ? "" : category;
+            this.rate     = rate;
+            this.burst    = Math.max(burst, 1);
+            this.sample   = Math.max(sample, 0);
+            this.summary  = Math.max(summary, 1);
+        }
+
+        public Limit(String category, double rate) {
+            this(category, rate, (int) rate, 0, 60);
+        }
+
+        /**
+         * Reads a limit from a 'ratelimit' element of log.xml.
+         */
+        public static Limit valueOf(Element element) {
+            double rate = Double.parseDouble(element.getAttribute("rate"));
+            String burst   = element.getAttribute("burst");
+            String sample  = element.getAttribute("sample");
+            String summary = element.getAttribute("summary");
+            return new Limit(element.getAttribute("category"),
+                             rate,
+                             burst.length() == 0 ? (int) rate : Integer.parseInt(burst),
+                             sample.length() == 0 ? 0 : Integer.parseInt(sample),
+                             summary.length() == 0 ? 60 : Long.parseLong(summary));
+        }
+
+        public String getCategory() {
+            return category;
+        }
+
+        /**
+         * The limit for the category, which is the matching one with the longest category, or
+         * <code>null</code>.
+         */
+        static Limit find(Collection<Limit> limits, String category) {
+            Limit result = null;
+            for (Limit limit : limits) {
+                if (category.startsWith(limit.category) && (result == null || limit.category.length() > result.category.length())) {
+                    result = limit;
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "ratelimit " + (category.length() == 0 ? "*" : category) + " " + rate + "/s burst " + burst + (sample > 0 ? " sample 1/" + sample : "") + " summary " + summary + "s";
+        }
+    }
+
+    /**
+     * Token bucket for one message template. It remembers the 'theoretical arrival time' of the
+     * next message (see 'generic cell rate algorithm'), which can be updated without locking.
+     */
+    private static final class Bucket {
+        final RateLimitedLogger logger;
+        final Limit limit;
+        final String key;
+        final AtomicLong next = new AtomicLong(Long.MIN_VALUE);
+        final AtomicLong rejected   = new AtomicLong();
+        final AtomicLong suppressed = new AtomicLong();
+        final AtomicReference<Level> level = new AtomicReference<Level>(Level.TRACE);
+        volatile long since;
+
+        Bucket(RateLimitedLogger logger, Limit limit, String key) {
+            this.logger = logger;
+            this.limit = limit;
+            this.key = key;
+        }
+    }
+
+    /**
+     * The limit which applies, with its buckets.
+     */
+    private final class State {
+        /**
+         * The limits this was found in, or <code>null</code> if the limit is fixed
+         */
+        final List<Limit> limits;
+        /**
+         * The limit, or <code>null</code> if there is none, and everything is passed
+         */
+        final Limit limit;
+        final long interval;
+        final long tolerance;
+        final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<String, Bucket>();
+        final Bucket shared;
+
+        State(List<Limit> limits, Limit limit) {
+            this.limits = limits;
+            this.limit = limit;
+            interval  = limit == null ? 0 : (long) (1000000000L / limit.rate);
+            tolerance = limit == null ? 0 : interval * limit.burst;
+            shared = new Bucket(RateLimitedLogger.this, limit, "*");
+        }
+    }
+
+    /**
+     * The buckets with suppressed messages which were not yet reported.
+     */
+    private static final Queue<Bucket> pending = new ConcurrentLinkedQueue<Bucket>();
+    private static ScheduledFuture<?> reporter;
+
+    private final Logger log;
+    /**
+     * The category of which the limit is looked up in {@link Logging#getRateLimits}, or
+     * <code>null</code> if the limit is fixed.
+     */
+    private final String category;
+    private volatile State state;
+
+    /**
+     * A logger with a fixed limit.
+     */
+    public RateLimitedLogger(Logger log, Limit limit) {
+        this.log = log;
+        this.category = null;
+        state = new State(null, limit);
+    }
+
+    /**
+     * A logger with the limit for the category which is configured at the moment.
+     */
+    RateLimitedLogger(Logger log, String category) {
+        this.log = log;
+        this.category = category;
+        List<Limit> limits = Logging.getRateLimits();
+        state = new State(limits, Limit.find(limits, category));
+    }
+
+    /**
+     * The current state, which is replaced if the configured limits changed.
+     */
+    private State state() {
+        State s = state;
+        if (category != null) {
+            List<Limit> limits = Logging.getRateLimits();
+            if (s.limits != limits) {
+                s = new State(limits, Limit.find(limits, category));
+                state = s;
+            }
+        }
+        return s;
+    }
+
+    public Logger getLogger() {
+        return log;
+    }
+
+    /**
+     * The key for a plain message, which is the message with the digits removed, so that e.g. a
+     * size or an id in the message does not make it different.
+     */
+    static String key(Object m) {
+        String s = String.valueOf(m);
+        int i = 0;
+        int length = s.length();
+        while (i < length && ! Character.isDigit(s.charAt(i))) {
+            i++;
+        }
+        if (i == length) {
+            return s;
+        }
+        StringBuilder buf = new StringBuilder(length);
+        buf.append(s, 0, i);
+        for (; i < length; i++) {
+            char c = s.charAt(i);
+            if (! Character.isDigit(c)) {
+                buf.append(c);
+            } else if (buf.length() == 0 || buf.charAt(buf.length() - 1) != '#') {
+                buf.append('#');
+            }
+        }
+        return buf.toString();
+    }
+
+    private Bucket getBucket(State state, String key) {
+        Bucket bucket = state.buckets.get(key);
+        if (bucket == null) {
+            if (state.buckets.size() >= MAX_BUCKETS) {
+                return state.shared;
+            }
+            bucket = new Bucket(this, state.limit, key);
+            Bucket existing = state.buckets.putIfAbsent(key, bucket);
+            if (existing != null) {
+                bucket = existing;
+            }
+        }
+        return bucket;
+    }
+
+    /**
+     * Whether the message must be passed to the wrapped logger. That is if its level is enabled,
+     * and its bucket is not empty (or it is sampled).
+     */
+    private boolean allow(Level level, String key) {
+        if (! log.isEnabledFor(level)) {
+            return false;
+        }
+        State s = state();
+        return s.limit == null || take(s, level, key);
+    }
+
+    private boolean allowMessage(Level level, Object m) {
+        if (! log.isEnabledFor(level)) {
+            return false;
+        }
+        State s = state();
+        // the key is only made if needed
+        return s.limit == null || take(s, level, key(m));
+    }
+
+    /**
+     * Takes a token from the bucket for the key, or counts the message as suppressed.
+     */
+    private boolean take(State state, Level level, String key) {
+        Bucket bucket = getBucket(state, key);
+        long now = System.nanoTime();
+        while (true) {
+            long n = bucket.next.get();
+            long next = Math.max(n, now) + state.interval;
+            if (next - now > state.tolerance) {
+                break;
+            }
+            if (bucket.next.compareAndSet(n, next)) {
+                return true;
+            }
+        }
+        if (state.limit.sample > 0 && bucket.rejected.incrementAndGet() % state.limit.sample == 0) {
+            return true;
+        }
+        while (true) {
+            Level current = bucket.level.get();
+            if (current.toInt() >= level.toInt() || bucket.level.compareAndSet(current, level)) {
+                break;
+            }
+        }
+        if (bucket.suppressed.getAndIncrement() == 0) {
+            bucket.since = System.currentTimeMillis();
+            pending.add(bucket);
+            startReporter();
+        }
+        return false;
+    }
+
+    private static synchronized void startReporter() {
+        if (reporter == null) {
+            reporter = ThreadPools.scheduler.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        report(false);
+                    }
+                }, 1, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Logs the number of suppressed messages, for the buckets which are pending longer than the
+     * summary period (or all of them).
+     * @return The number of reported buckets
+     */
+    static int report(boolean all) {
+        long now = System.currentTimeMillis();
+        int count = 0;
+        Iterator<Bucket> i = pending.iterator();
+        while (i.hasNext()) {
+            Bucket bucket = i.next();
+            if (all || now - bucket.since >= bucket.limit.summary * 1000) {
+                // first remove, so that a new suppression adds it again
+                i.remove();
+                long since = bucket.since;
+                Level level = bucket.level.getAndSet(Level.TRACE);
+                long suppressed = bucket.suppressed.getAndSet(0);
+                if (suppressed > 0) {
+                    Logging.log(level, bucket.logger.log, "Suppressed " + suppressed + " messages like '" + bucket.key + "' in the last " + ((now - since) / 1000) + " s (" + bucket.limit + ")");
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void trace(Object m) {
+        if (allowMessage(Level.TRACE, m)) log.trace(m);
+    }
+
+    @Override
+    public void trace(Object m, Throwable t) {
+        if (allowMessage(Level.TRACE, m)) log.trace(m, t);
+    }
+
+    @Override
+    public void trace(String format, Object... args) {
+        if (allow(Level.TRACE, format)) log.trace(format, args);
+    }
+
+    @Override
+    public void debug(Object m) {
+        if (allowMessage(Level.DEBUG, m)) log.debug(m);
+    }
+
+    @Override
+    public void debug(Object m, Throwable t) {
+        if (allowMessage(Level.DEBUG, m)) log.debug(m, t);
+    }
+
+    @Override
+    public void debug(String format, Object... args) {
+        if (allow(Level.DEBUG, format)) log.debug(format, args);
+    }
+
+    @Override
+    public void service(Object m) {
+        if (allowMessage(Level.SERVICE, m)) log.service(m);
+    }
+
+    @Override
+    public void service(Object m, Throwable t) {
+        if (allowMessage(Level.SERVICE, m)) log.service(m, t);
+    }
+
+    @Override
+    public void service(String format, Object... args) {
+        if (allow(Level.SERVICE, format)) log.service(format, args);
+    }
+
+    @Override
+    public void info(Object m) {
+        if (allowMessage(Level.INFO, m)) log.info(m);
+    }
+
+    @Override
+    public void info(Object m, Throwable t) {
+        if (allowMessage(Level.INFO, m)) log.info(m, t);
+    }
+
+    @Override
+    public void info(String format, Object... args) {
+        if (allow(Level.INFO, format)) log.info(format, args);
+    }
+
+    @Override
+    public void warn(Object m) {
+        if (allowMessage(Level.WARN, m)) log.warn(m);
+    }
+
+    @Override
+    public void warn(Object m, Throwable t) {
+        if (allowMessage(Level.WARN, m)) log.warn(m, t);
+    }
+
+    @Override
+    public void warn(String format, Object... args) {
+        if (allow(Level.WARN, format)) log.warn(format, args);
+    }
+
+    @Override
+    public void error(Object m) {
+        if (allowMessage(Level.ERROR, m)) log.error(m);
+    }
+
+    @Override
+    public void error(Object m, Throwable t) {
+        if (allowMessage(Level.ERROR, m)) log.error(m, t);
+    }
+
+    @Override
+    public void error(String format, Object... args) {
+        if (allow(Level.ERROR, format)) log.error(format, args);
+    }
+
+    @Override
+    public void fatal(Object m) {
+        if (allowMessage(Level.FATAL, m)) log.fatal(m);
+    }
+
+    @Override
+    public void fatal(Object m, Throwable t) {
+        if (allowMessage(Level.FATAL, m)) log.fatal(m, t);
+    }
+
+    @Override
+    public void fatal(String format, Object... args) {
+        if (allow(Level.FATAL, format)) log.fatal(format, args);
+    }
+
+    @Override
+    public boolean isTraceEnabled() {
+        return log.isTraceEnabled();
+    }
+
+    @Override
+    public boolean isDebugEnabled() {
+        return log.isDebugEnabled();
+    }
+
+    @Override
+    public boolean isServiceEnabled() {
+        return log.isServiceEnabled();
+    }
+
+    @Override
+    public boolean isEnabledFor(Level l) {
+        return log.isEnabledFor(l);
+    }
+
+    @Override
+    public void setLevel(Level p) {
+        log.setLevel(p);
+    }
+
+    @Override
+    public String toString() {
+        Limit limit = state().limit;
+        return limit == null ? log.toString() : log + " (" + limit + ")";
+    }
+}
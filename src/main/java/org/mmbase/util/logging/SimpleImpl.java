@@ -47,6 +47,29 @@ public class SimpleImpl extends AbstractSimpleImpl implements Logger {
         return impl;
     }
 
+    /**
+     * The {@link LoggerFactory} of this implementation.
+     * @since MMBase-2.0
+     */
+    public static class Factory implements LoggerFactory {
+        @Override
+        public Class<?> getLoggerClass() {
+            return SimpleImpl.class;
+        }
+        @Override
+        public Logger getLoggerInstance(String name) {
+            return SimpleImpl.getLoggerInstance(name);
+        }
+        @Override
+        public void configure(String configuration) {
+            SimpleImpl.configure(configuration);
+        }
+        @Override
+        public MDC getMDC() {
+            return AbstractSimpleImpl.getMDC();
+        }
+    }
+
     private SimpleImpl(String n) {
         name = n;
     }
@@ -11,10 +11,8 @@ package org.mmbase.util.logging;
 
 import java.io.PrintStream;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 /**
  * Like SimpleImpl, but also adds timestamps.
@@ -26,26 +24,24 @@ import java.text.SimpleDateFormat;
 
 public class SimpleTimeStampImpl extends AbstractSimpleImpl implements Logger {
 
+    /**
+     * The stream for the levels below WARN, and for WARN and higher.
+     */
+    private volatile PrintStream out = System.out;
+    private volatile PrintStream err = System.err;
 
-    private  Map<Level, PrintStream> ps = new HashMap<Level, PrintStream>();
-
-    {
-        for (Level l : Level.getLevels()) {
-            if (l.toInt() >= Level.WARN.toInt()) {
-                ps.put(l, System.err);
-            } else {
-                ps.put(l, System.out);
-            }
-        }
-    }
-
-    private static final DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss,SSS ");
-    private static final Map<String, SimpleTimeStampImpl> loggers  = new ConcurrentHashMap<String, SimpleTimeStampImpl>();
+    private static final ConcurrentNavigableMap<String, SimpleTimeStampImpl> loggers  = new ConcurrentSkipListMap<String, SimpleTimeStampImpl>();
     private static final SimpleTimeStampImpl root = new SimpleTimeStampImpl("");
     static {
         loggers.put("", root);
     }
-    private static List<Map.Entry<String, String>> configurations = new CopyOnWriteArrayList<Map.Entry<String, String>>();
+
+    /**
+     * All configurations, by the prefix of the categories they apply to. This is replaced as a
+     * whole when configuring.
+     */
+    private static volatile Node configurations = Node.EMPTY;
+    private static long sequence = 0;
 
     private final String name;
 
@@ -54,66 +50,111 @@ public class SimpleTimeStampImpl extends AbstractSimpleImpl implements Logger {
         if (impl == null) {
             impl = new SimpleTimeStampImpl(name);
             impl.level = root.level;
-            loggers.put(name, impl);
-            for (Map.Entry<String, String> conf : configurations) {
-                if (name.startsWith(conf.getKey())) {
-                    impl.conf(conf.getValue());
-                }
+            Node conf = configurations;
+            impl.apply(conf);
+            SimpleTimeStampImpl existing = loggers.putIfAbsent(name, impl);
+            if (existing != null) {
+                impl = existing;
+            } else if (conf != configurations) {
+                // configured in the mean time, perhaps before it was in the map
+                impl.apply(configurations);
             }
         }
         return impl;
     }
 
+    /**
+     * The {@link LoggerFactory} of this implementation.
+     * @since MMBase-2.0
+     */
+    public static class Factory implements LoggerFactory {
+        @Override
+        public Class<?> getLoggerClass() {
+            return SimpleTimeStampImpl.class;
+        }
+        @Override
+        public Logger getLoggerInstance(String name) {
+            return SimpleTimeStampImpl.getLoggerInstance(name);
+        }
+        @Override
+        public void configure(String configuration) {
+            SimpleTimeStampImpl.configure(configuration);
+        }
+        @Override
+        public MDC getMDC() {
+            return AbstractSimpleImpl.getMDC();
+        }
+    }
+
     private SimpleTimeStampImpl(String n) {
         name = n;
     }
 
 
     protected PrintStream getStream(Level l) {
-        return ps.get(l);
+        return l.toInt() >= Level.WARN_INT ? err : out;
     }
 
 
+    /**
+     * Configures several prefixes at once, like <code>:stderr,info org.mmbase.cache:debug</code>
+     * (prefix and configuration separated by a colon, without prefix for all categories).
+     */
     public static  void configure(String c) {
+        List<String> prefixes = new ArrayList<String>();
+        List<String> confs = new ArrayList<String>();
         for (String line : c.trim().split("\\s+")) {
             if (line.startsWith("#")) continue;
             String[] e = line.trim().split(":", 2);
             if (e.length == 2) {
-                configure(e[0].trim(), e[1].trim());
+                prefixes.add(e[0].trim());
+                confs.add(e[1].trim());
             } else {
-                configure("", e[0].trim());
+                prefixes.add("");
+                confs.add(e[0].trim());
             }
         }
+        configure(prefixes, confs);
     }
 
-    private void conf(String c) {
-        StringTokenizer t    = new StringTokenizer(c, ",");
-        while (t.hasMoreTokens()) {
-            String token = t.nextToken();
-            if ("stderr".equals(token)) {
-                for (Level l : Level.getLevels()) {
-                    ps.put(l, System.err);
+    /**
+     * Takes the options with the given names (like 'buffer' in 'buffer=100') out of a
+     * configuration for {@link #configure(String)}, wherever they appear, so also after a
+     * prefix. Implementations which wrap this one use this for their own options.
+     * @param options The values of the options found are put in this Map
+     * @return The rest of the configuration
+     * @since MMBase-2.0
+     */
+    static String takeOptions(String c, Collection<String> names, Map<String, String> options) {
+        StringBuilder rest = new StringBuilder();
+        for (String line : c.trim().split("\\s+")) {
+            if (line.length() == 0) continue;
+            String prefix = null;
+            String conf = line;
+            int colon = line.indexOf(':');
+            if (colon != -1 && line.lastIndexOf(',', colon) == -1 && line.lastIndexOf('=', colon) == -1) {
+                // the colon separates a prefix, it is not part of an option value
+                prefix = line.substring(0, colon);
+                conf = line.substring(colon + 1);
+            }
+            StringBuilder remaining = new StringBuilder();
+            for (String option : conf.split(",")) {
+                int is = option.indexOf('=');
+                if (is != -1 && names.contains(option.substring(0, is))) {
+                    options.put(option.substring(0, is), option.substring(is + 1));
+                } else if (option.length() > 0) {
+                    if (remaining.length() > 0) remaining.append(',');
+                    remaining.append(option);
                 }
-            } else if ("stdout".equals(token)) {
-                for (Level l : Level.getLevels()) {
-                    ps.put(l, System.out);
+            }
+            if (remaining.length() > 0) {
+                if (prefix != null) {
+                    rest.append(prefix).append(':');
                 }
-            } else if ("trace".equals(token)) {
-                setLevel(Level.TRACE);
-            } else if ("debug".equals(token)) {
-                setLevel(Level.DEBUG);
-            } else if ("service".equals(token)) {
-                setLevel(Level.SERVICE);
-            } else if ("info".equals(token)) {
-                setLevel(Level.INFO);
-            } else if ("warn".equals(token)) {
-                setLevel(Level.WARN);
-            } else if ("error".equals(token)) {
-                setLevel(Level.ERROR);
-            } else if ("fatal".equals(token)) {
-                setLevel(Level.FATAL);
+                rest.append(remaining).append('\n');
             }
         }
+        return rest.toString();
     }
 
     /**
@@ -128,20 +169,167 @@ public class SimpleTimeStampImpl extends AbstractSimpleImpl implements Logger {
         if (c == null) {
             return; // everything default
         }
-        configurations.add(new AbstractMap.SimpleEntry<String, String>(prefix,  c));
+        configure(Collections.singletonList(prefix), Collections.singletonList(c));
+    }
+
+    /**
+     * Adds the configurations, and then applies them to the existing loggers with one of the
+     * prefixes. Loggers which are created at the same time, see either all or none of them.
+     */
+    private static void configure(List<String> prefixes, List<String> confs) {
+        synchronized(SimpleTimeStampImpl.class) {
+            Node newConfigurations = configurations;
+            for (int i = 0; i < prefixes.size(); i++) {
+                newConfigurations = newConfigurations.with(prefixes.get(i), 0, new Conf(++sequence, confs.get(i)));
+            }
+            configurations = newConfigurations;
+        }
+        for (String prefix : new HashSet<String>(prefixes)) {
+            for (SimpleTimeStampImpl logger : loggers.tailMap(prefix).values()) {
+                if (! logger.name.startsWith(prefix)) {
+                    break;
+                }
+                logger.apply(configurations);
+            }
+        }
+    }
+
+    /**
+     * Sets the level and the streams of this logger, from the latest configurations for the
+     * prefixes of its name.
+     */
+    private void apply(Node configurations) {
+        Conf levelConf = null;
+        Conf streamConf = null;
+        Node node = configurations;
+        int i = 0;
+        while (node != null) {
+            levelConf = Conf.latest(levelConf, node.level);
+            streamConf = Conf.latest(streamConf, node.stream);
+            if (i == name.length()) {
+                break;
+            }
+            node = node.get(name.charAt(i++));
+        }
+        if (levelConf != null) {
+            setLevel(levelConf.level);
+        }
+        if (streamConf != null) {
+            PrintStream stream = streamConf.stderr ? System.err : System.out;
+            out = stream;
+            err = stream;
+        }
+    }
+
+    /**
+     * One parsed configuration, e.g. 'stderr,debug'.
+     */
+    private static final class Conf {
+        final long sequence;
+        final Level level;
+        final boolean setsStream;
+        final boolean stderr;
+
+        Conf(long sequence, String c) {
+            this.sequence = sequence;
+            Level l = null;
+            Boolean e = null;
+            StringTokenizer t = new StringTokenizer(c, ",");
+            while (t.hasMoreTokens()) {
+                String token = t.nextToken();
+                if ("stderr".equals(token)) {
+                    e = true;
+                } else if ("stdout".equals(token)) {
+                    e = false;
+                } else if ("trace".equals(token)) {
+                    l = Level.TRACE;
+                } else if ("debug".equals(token)) {
+                    l = Level.DEBUG;
+                } else if ("service".equals(token)) {
+                    l = Level.SERVICE;
+                } else if ("info".equals(token)) {
+                    l = Level.INFO;
+                } else if ("warn".equals(token)) {
+                    l = Level.WARN;
+                } else if ("error".equals(token)) {
+                    l = Level.ERROR;
+                } else if ("fatal".equals(token)) {
+                    l = Level.FATAL;
+                }
+            }
+            level = l;
+            setsStream = e != null;
+            stderr = e != null && e;
+        }
+
+        static Conf latest(Conf a, Conf b) {
+            return b == null || (a != null && a.sequence > b.sequence) ? a : b;
+        }
+    }
+
+    /**
+     * A node of a trie of the configurations, by prefix, one character per level. Nodes are
+     * immutable, adding a configuration copies the path to it.
+     */
+    private static final class Node {
+        static final Node EMPTY = new Node(null, null, new char[0], new Node[0]);
+        /**
+         * The latest configuration for this prefix which sets a level, and which sets the stream
+         */
+        final Conf level;
+        final Conf stream;
+        /**
+         * The characters (sorted) of the children, and the children.
+         */
+        final char[] chars;
+        final Node[] children;
+
+        Node(Conf level, Conf stream, char[] chars, Node[] children) {
+            this.level = level;
+            this.stream = stream;
+            this.chars = chars;
+            this.children = children;
+        }
 
-        for (Map.Entry<String, SimpleTimeStampImpl> entry : loggers.entrySet()) {
-            if (entry.getKey().startsWith(prefix)) {
-                SimpleTimeStampImpl logger = entry.getValue();
-                logger.conf(c);
+        Node get(char c) {
+            int i = Arrays.binarySearch(chars, c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        Node with(String prefix, int i, Conf conf) {
+            if (i == prefix.length()) {
+                return new Node(conf.level != null ? conf : level, conf.setsStream ? conf : stream, chars, children);
+            }
+            char c = prefix.charAt(i);
+            int index = Arrays.binarySearch(chars, c);
+            char[] newChars;
+            Node[] newChildren;
+            if (index >= 0) {
+                newChars = chars;
+                newChildren = children.clone();
+                newChildren[index] = children[index].with(prefix, i + 1, conf);
+            } else {
+                index = -1 - index;
+                newChars = new char[chars.length + 1];
+                newChildren = new Node[children.length + 1];
+                System.arraycopy(chars, 0, newChars, 0, index);
+                System.arraycopy(children, 0, newChildren, 0, index);
+                newChars[index] = c;
+                newChildren[index] = EMPTY.with(prefix, i + 1, conf);
+                System.arraycopy(chars, index, newChars, index + 1, chars.length - index);
+                System.arraycopy(children, index, newChildren, index + 1, children.length - index);
             }
+            return new Node(level, stream, newChars, newChildren);
         }
     }
 
     @Override
     protected final void log (String s, Level l) {
         PrintStream stream = getStream(l);
-        stream.println(l.toString() + " " + dateFormat.format(new java.util.Date()) + s);
+        StringBuilder buf = new StringBuilder(s.length() + TimeStamp.LENGTH + 10);
+        buf.append(l).append(' ');
+        TimeStamp.append(buf).append(' ').append(s);
+        stream.println(buf);
         int stacktraceLevel = Level.FATAL_INT;
         if (l.toInt() >= stacktraceLevel) {
             Throwable t = new Throwable();
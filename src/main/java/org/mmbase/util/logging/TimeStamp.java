@@ -0,0 +1,111 @@
+/*
+
+This software is OSI Certified Open Source Software.
+OSI Certified is a certification mark of the Open Source Initiative.
+
+The license (Mozilla version 1.0) can be read at the MMBase site.
+See http://www.MMBase.org/license
+
+*/
+package org.mmbase.util.logging;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Formats time stamps for log lines, like 'yyyy-MM-dd HH:mm:ss,SSS'. Formatting a date is the
+ * most expensive part of writing a simple log line, but nearly all log lines are written in the
+ * same second as the previous one. So, the formatted 'yyyy-MM-dd HH:mm:ss,' is remembered for the
+ * current second, and only the milliseconds are appended. Within one second {@link
+ * #append(StringBuilder, long)} allocates nothing.
+ *
+ * @author Michiel Meeuwissen
+ * @since MMBase-2.0
+ */
+public final class TimeStamp {
+
+    /**
+     * The format of the time stamps. This is the same as log4j's 'ISO8601'.
+     */
+    public static final String PATTERN = "yyyy-MM-dd HH:mm:ss,SSS";
+
+    /**
+     * The length of a formatted time stamp.
+     */
+    public static final int LENGTH = 23;
+
+    private static final class Second {
+        final long second;
+        final char[] prefix;
+        Second(long second, char[] prefix) {
+            this.second = second;
+            this.prefix = prefix;
+        }
+    }
+
+    private static final DateFormat secondFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss,");
+
+    private static volatile Second current = new Second(Long.MIN_VALUE, new char[0]);
+
+    private TimeStamp() {
+    }
+
+    private static Second getSecond(long second) {
+        Second s = current;
+        if (s.second != second) {
+            String prefix;
+            synchronized(secondFormat) {
+                prefix = secondFormat.format(new Date(second * 1000));
+            }
+            s = new Second(second, prefix.toCharArray());
+            // logging threads may be a bit behind each other, don't let an older one win
+            if (second > current.second) {
+                current = s;
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Appends the time stamp for the given time (in milliseconds since 1970).
+     */
+    public static StringBuilder append(StringBuilder buf, long millis) {
+        long second = Math.floorDiv(millis, 1000L);
+        int ms = (int) (millis - second * 1000);
+        buf.append(getSecond(second).prefix);
+        buf.append((char) ('0' + ms / 100));
+        buf.append((char) ('0' + (ms / 10) % 10));
+        buf.append((char) ('0' + ms % 10));
+        return buf;
+    }
+
+    /**
+     * As {@link #append(StringBuilder, long)}, for APIs which still use a StringBuffer, like log4j's
+     * layouts.
+     */
+    public static StringBuffer append(StringBuffer buf, long millis) {
+        long second = Math.floorDiv(millis, 1000L);
+        int ms = (int) (millis - second * 1000);
+        buf.append(getSecond(second).prefix);
+        buf.append((char) ('0' + ms / 100));
+        buf.append((char) ('0' + (ms / 10) % 10));
+        buf.append((char) ('0' + ms % 10));
+        return buf;
+    }
+
+    /**
+     * Appends the time stamp for the current time.
+     */
+    public static StringBuilder append(StringBuilder buf) {
+        return append(buf, System.currentTimeMillis());
+    }
+
+    /**
+     * Returns the time stamp for the given time as a String.
+     */
+    public static String format(long millis) {
+        return append(new StringBuilder(LENGTH), millis).toString();
+    }
+
+}
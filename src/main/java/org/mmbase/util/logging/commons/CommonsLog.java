@@ -11,6 +11,7 @@ package org.mmbase.util.logging.commons;
 
 import org.apache.commons.logging.Log;
 import org.mmbase.util.logging.AbstractSimpleImpl;
+import org.mmbase.util.logging.Level;
 import org.mmbase.util.logging.Logger;
 
 /**
@@ -140,4 +141,21 @@ public class CommonsLog extends AbstractSimpleImpl implements Logger {
     public boolean isWarnEnabled() {
         return log.isWarnEnabled();
     }
+
+    /**
+     * @since MMBase-2.0
+     */
+    @Override
+    public boolean isEnabledFor(Level l) {
+        switch(l.toInt()) {
+        case Level.TRACE_INT:   return log.isTraceEnabled();
+        case Level.DEBUG_INT:   return log.isDebugEnabled();
+        case Level.SERVICE_INT:
+        case Level.INFO_INT:    return log.isInfoEnabled();
+        case Level.WARN_INT:    return log.isWarnEnabled();
+        case Level.ERROR_INT:   return log.isErrorEnabled();
+        case Level.FATAL_INT:   return log.isFatalEnabled();
+        default:                return false;
+        }
+    }
 }
@@ -10,6 +10,7 @@ See http://www.MMBase.org/license
 package org.mmbase.util.logging.java;
 
 import org.mmbase.util.logging.Logger;
+import org.mmbase.util.logging.LoggerFactory;
 import org.mmbase.util.logging.Level;
 import org.mmbase.util.logging.Logging;
 
@@ -71,6 +72,25 @@ public final class Impl implements Logger {
         return new Impl(name);
     }
 
+    /**
+     * The {@link LoggerFactory} of this implementation.
+     * @since MMBase-2.0
+     */
+    public static class Factory implements LoggerFactory {
+        @Override
+        public Class<?> getLoggerClass() {
+            return Impl.class;
+        }
+        @Override
+        public Logger getLoggerInstance(String name) {
+            return Impl.getLoggerInstance(name);
+        }
+        @Override
+        public void configure(String configuration) {
+            Impl.configure(configuration);
+        }
+    }
+
 
     /**
      * Calls LogManager#readConfiguration, and feeds it with the configured InputStream. So you can
@@ -188,34 +208,24 @@ public final class Impl implements Logger {
         logger.log(java.util.logging.Level.SEVERE, "" + m, t);
     }
 
-    private java.util.logging.Level getLevel() {
-        java.util.logging.Level level = null;
-        java.util.logging.Logger l = logger;
-        while (level == null) {
-            level = l.getLevel();
-            l = l.getParent();
-        }
-        return level;
-    }
-
     @Override
     public boolean isTraceEnabled() {
-        return (getLevel().intValue() <= java.util.logging.Level.FINER.intValue());
+        return logger.isLoggable(java.util.logging.Level.FINER);
     }
 
     @Override
     public boolean isDebugEnabled() {
-        return (getLevel().intValue() <= java.util.logging.Level.FINE.intValue());
+        return logger.isLoggable(java.util.logging.Level.FINE);
     }
 
     @Override
     public boolean isServiceEnabled() {
-        return (getLevel().intValue() <= java.util.logging.Level.CONFIG.intValue());
+        return logger.isLoggable(java.util.logging.Level.CONFIG);
     }
 
     @Override
     public boolean isEnabledFor(Level l) {
-        return (getLevel().intValue() <= getJavaLevel(l).intValue());
+        return logger.isLoggable(getJavaLevel(l));
     }
 
 }
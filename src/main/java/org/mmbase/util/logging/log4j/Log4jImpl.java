@@ -10,9 +10,11 @@ See http://www.MMBase.org/license
 package org.mmbase.util.logging.log4j;
 
 import org.mmbase.util.logging.Logger;
+import org.mmbase.util.logging.LoggerFactory;
 import org.mmbase.util.logging.Level;
 import org.mmbase.util.logging.Logging;
 import org.mmbase.util.logging.MDC;
+import org.mmbase.util.logging.ContextMap;
 
 import org.mmbase.util.ResourceWatcher;
 import org.mmbase.util.ResourceLoader;
@@ -89,6 +91,33 @@ public final class Log4jImpl extends org.apache.log4j.Logger  implements Logger
         }
 
     }
+
+    /**
+     * The {@link LoggerFactory} of this implementation.
+     * @since MMBase-2.0
+     */
+    public static class Factory implements LoggerFactory {
+        @Override
+        public Class<?> getLoggerClass() {
+            return Log4jImpl.class;
+        }
+        @Override
+        public Logger getLoggerInstance(String name) {
+            return Log4jImpl.getLoggerInstance(name);
+        }
+        @Override
+        public void configure(String configuration) {
+            Log4jImpl.configure(configuration);
+        }
+        @Override
+        public void shutdown() {
+            Log4jImpl.shutdown();
+        }
+        @Override
+        public MDC getMDC() {
+            return Log4jImpl.getMDC();
+        }
+    }
     public static MDC getMDC() {
         return new MDC() {
 
@@ -105,6 +134,20 @@ public final class Log4jImpl extends org.apache.log4j.Logger  implements Logger
             public Object get(String key) {
                 return org.apache.log4j.MDC.get(key);
             }
+
+            @Override
+            public java.util.Map<String, Object> getContext() {
+                // log4j's own context is mutable, so it must be copied
+                return ContextMap.copyOf(org.apache.log4j.MDC.getContext());
+            }
+
+            @Override
+            public void setContext(java.util.Map<String, Object> context) {
+                org.apache.log4j.MDC.clear();
+                for (java.util.Map.Entry<String, Object> e : context.entrySet()) {
+                    org.apache.log4j.MDC.put(e.getKey(), e.getValue());
+                }
+            }
         };
     }
 
@@ -270,7 +313,10 @@ public final class Log4jImpl extends org.apache.log4j.Logger  implements Logger
 
     @Override
     public boolean isEnabledFor(Level l) {
-        return ! log4jRepository.isDisabled(l.toInt());
+        if (log4jRepository.isDisabled(l.toInt())) {
+            return false;
+        }
+        return Log4jLevel.toLevel(l.toInt()).isGreaterOrEqual(this.getEffectiveLevel());
     }
 
      public static void shutdown() {
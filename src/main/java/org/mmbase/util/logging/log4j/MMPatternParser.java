@@ -9,10 +9,13 @@ See http://www.MMBase.org/license
 
 package org.mmbase.util.logging.log4j;
 
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
 import org.mmbase.util.logging.Logging;
-import org.apache.log4j.helpers.FormattingInfo;
-import org.apache.log4j.helpers.PatternConverter;
-import org.apache.log4j.helpers.PatternParser;
+import org.mmbase.util.logging.TimeStamp;
+import org.apache.log4j.helpers.*;
 import org.apache.log4j.spi.LoggingEvent;
 
 /**
@@ -23,6 +26,7 @@ import org.apache.log4j.spi.LoggingEvent;
  <tr><td>%q</td><td>A truncated level (from the _end_, not from the beginning as log4j's %p itself would do) . To 3 chars.</td></tr>
  <tr><td>%k</td><td>Currently memory in use (in kb).</td></tr>
  <tr><td>%N</td><td>Machine Name of current MMBase (or 'localhost' if not set).</td></tr>
+ <tr><td>%d</td><td>As log4j's %d, but the default ISO8601 format is done by {@link TimeStamp}, which only formats the date once per second.</td></tr>
  </table>
  * @author Michiel Meeuwissen
  * @since  MMBase-1.6
@@ -49,11 +53,38 @@ public class MMPatternParser extends PatternParser {
         } else if (c == 'T') {
             addConverter(new ThreadGroupPatternConverter(formattingInfo));
             currentLiteral.setLength(0);
+        } else if (c == 'd') {
+            String option = extractOption();
+            if (option == null || AbsoluteTimeDateFormat.ISO8601_DATE_FORMAT.equalsIgnoreCase(option) || TimeStamp.PATTERN.equals(option)) {
+                addConverter(new TimeStampPatternConverter(formattingInfo));
+            } else {
+                addConverter(new DatePatternConverter(formattingInfo, getDateFormat(option)));
+            }
+            currentLiteral.setLength(0);
         } else {
             super.finalizeConverter(c);
         }
     }
 
+    /**
+     * The same date formats as log4j's own %d.
+     * @since MMBase-2.0
+     */
+    protected DateFormat getDateFormat(String option) {
+        if (AbsoluteTimeDateFormat.ABS_TIME_DATE_FORMAT.equalsIgnoreCase(option)) {
+            return new AbsoluteTimeDateFormat();
+        } else if (AbsoluteTimeDateFormat.DATE_AND_TIME_DATE_FORMAT.equalsIgnoreCase(option)) {
+            return new DateTimeDateFormat();
+        } else {
+            try {
+                return new SimpleDateFormat(option);
+            } catch (IllegalArgumentException e) {
+                LogLog.error("Could not instantiate SimpleDateFormat with " + option, e);
+                return new ISO8601DateFormat();
+            }
+        }
+    }
+
     private static class TruncatedLevelPatternConverter extends PatternConverter {
         TruncatedLevelPatternConverter(FormattingInfo formattingInfo) {
             super(formattingInfo);
@@ -102,4 +133,60 @@ public class MMPatternParser extends PatternParser {
             return  String.format("{0}", Thread.currentThread().getThreadGroup().getName());
         }
     }
+
+    /**
+     * @since MMBase-2.0
+     */
+    private static class TimeStampPatternConverter extends PatternConverter {
+        /**
+         * Whether the minimum and maximum width of the formatting info leave the time stamp
+         * alone. They are not accessible, so this is found out by the first event.
+         */
+        private boolean plain = false;
+
+        TimeStampPatternConverter(FormattingInfo formattingInfo) {
+            super(formattingInfo);
+        }
+
+        @Override
+        public String convert(LoggingEvent event) {
+            return TimeStamp.format(event.timeStamp);
+        }
+
+        /**
+         * Appends the time stamp directly, without creating a String for every event, unless it
+         * needs padding or truncating.
+         */
+        @Override
+        public void format(StringBuffer sb, LoggingEvent event) {
+            if (plain) {
+                TimeStamp.append(sb, event.timeStamp);
+            } else {
+                int start = sb.length();
+                super.format(sb, event);
+                plain = sb.length() - start == TimeStamp.LENGTH;
+            }
+        }
+    }
+
+    /**
+     * @since MMBase-2.0
+     */
+    private static class DatePatternConverter extends PatternConverter {
+        private final DateFormat dateFormat;
+        private final Date date = new Date();
+
+        DatePatternConverter(FormattingInfo formattingInfo, DateFormat df) {
+            super(formattingInfo);
+            dateFormat = df;
+        }
+
+        @Override
+        public String convert(LoggingEvent event) {
+            synchronized(dateFormat) {
+                date.setTime(event.timeStamp);
+                return dateFormat.format(date);
+            }
+        }
+    }
 }
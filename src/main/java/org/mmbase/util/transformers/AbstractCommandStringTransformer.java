@@ -12,12 +12,17 @@ package org.mmbase.util.transformers;
 import java.io.*;
 
 import org.mmbase.util.externalprocess.CommandLauncher;
+import org.mmbase.util.externalprocess.WorkerPool;
 import org.mmbase.util.logging.*;
 
 /**
  * If you want to transform a Reader stream by the use of an external command, than you can extend
  * this class. Implement the 'getCommand' function.
  *
+ * On default a new process is started for every transformation. If a {@link #setPoolSize pool
+ * size} is set, the transformations are done by a {@link WorkerPool} of processes running {@link
+ * #getWorkerCommand}, which must speak the protocol described there.
+ *
  * @author Michiel Meeuwissen
  * @since MMBase-1.7
  */
@@ -26,19 +31,51 @@ public abstract class AbstractCommandStringTransformer extends StringTransformer
     private static final Logger log = Logging.getLoggerInstance(AbstractCommandStringTransformer.class);
 
     private boolean throwErrors = false;
+    private int poolSize = 0;
+    private String[] workerCommand = null;
 
     public void setThrowErrors(boolean te) {
         throwErrors = te;
     }
 
+    /**
+     * The number of worker processes. Defaults to 0, which means that no workers are used, but a new
+     * process is started for every transformation.
+     * @since MMBase-2.0
+     */
+    public void setPoolSize(int ps) {
+        poolSize = ps;
+    }
+
+    /**
+     * The command for the worker processes, with its arguments separated by spaces.
+     * @since MMBase-2.0
+     */
+    public void setWorkerCommand(String wc) {
+        workerCommand = wc.trim().split("\\s+");
+    }
+
     protected abstract String[] getCommand();
 
+    /**
+     * The command of the worker processes. Defaults to {@link #getCommand}, which only makes sense
+     * if that command speaks the protocol of {@link WorkerPool}.
+     * @since MMBase-2.0
+     */
+    protected String[] getWorkerCommand() {
+        return workerCommand == null ? getCommand() : workerCommand;
+    }
+
 
 
     @Override
     public final String transform(String s) {
         try {
             String encoding = System.getProperty("file.encoding");
+            if (poolSize > 0) {
+                WorkerPool pool = WorkerPool.getInstance(poolSize, getWorkerCommand());
+                return new String(pool.execute(s.getBytes(encoding)), encoding);
+            }
             CommandLauncher launcher = new CommandLauncher("Transformer");
             ByteArrayOutputStream errorStream = new ByteArrayOutputStream();
             InputStream inputStream = new ByteArrayInputStream(s.getBytes(encoding));
@@ -54,6 +91,9 @@ public abstract class AbstractCommandStringTransformer extends StringTransformer
             } else {
                 log.error(pe.toString());
             }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            log.warn(ie);
         }
         return s;
     }
@@ -8,6 +8,7 @@ See http://www.MMBase.org/license
 
 */
 package org.mmbase.util.transformers;
+import java.io.IOException;
 import java.util.regex.*;
 
 
@@ -18,6 +19,10 @@ import org.mmbase.util.logging.*;
  * Optionally, the question marks can be replaced by another character.
  * After some examples I found at http://stackoverflow.com/questions/2096667/convert-unicode-to-ascii-without-changing-the-string-length-in-java
  *
+ * Diacritics are removed with the table of {@link DiacriticsRemover}, and strings which are ascii
+ * already are returned unchanged. Only if {@link #setMoreDisallowed} is used, regular expressions
+ * are needed.
+ *
  * @author Andr&eacute; van Toly
  * @since MMBase-1.9.5
  * @version $Id$
@@ -64,8 +69,123 @@ public class Asciifier extends StringTransformer {
     }
 
 
+    private int parallelThreshold = ParallelTransformation.DEFAULT_THRESHOLD;
+
+    /**
+     * Inputs of at least this number of chars are transformed by a number of threads. Not positive
+     * means never.
+     * @since MMBase-2.0
+     */
+    public void setParallelThreshold(int t) {
+        parallelThreshold = t;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Large strings are transformed in parallel, unless {@link #setMoreDisallowed} was used (that pattern could match white space).
+     */
     @Override
     public String transform(String str) {
+        if (more != null || parallelThreshold <= 0 || str.length() < parallelThreshold) {
+            return transformSequentially(str);
+        }
+        return new ParallelTransformation(ParallelTransformation.Boundary.WHITESPACE) {
+            @Override
+            protected String transformSegment(String segment) {
+                return transformSequentially(segment);
+            }
+        }.transform(str, parallelThreshold);
+    }
+
+    /**
+     * Whether {@link #asciify} can be used, or that the (slower) regular expressions must be
+     * used.
+     */
+    private boolean useTable(CharSequence str) {
+        return more == null
+            && replacer.indexOf('$') == -1 && replacer.indexOf('\\') == -1 // those are special in replaceAll
+            && (! removeDiacritics || DiacriticsRemover.isSimple(str));
+    }
+
+    private int indexOfChange(CharSequence s) {
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c >= 128 || (removeDiacritics && DiacriticsRemover.getReplacement(c) != null)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Appends <code>c</code> or the replacer.
+     * @return Whether the replacer was used (or collapsed)
+     */
+    private boolean append(char c, boolean replaced, Appendable out) throws IOException {
+        if (c < 128) {
+            out.append(c);
+            return false;
+        }
+        if (! (replaced && collapseMultiple)) {
+            out.append(replacer);
+        }
+        return true;
+    }
+
+    private void asciify(CharSequence s, int from, Appendable out) throws IOException {
+        out.append(s, 0, from);
+        boolean replaced = false;
+        int length = s.length();
+        for (int i = from; i < length; i++) {
+            char c = s.charAt(i);
+            String replacement = removeDiacritics ? DiacriticsRemover.getReplacement(c) : null;
+            if (replacement == null) {
+                replaced = append(c, replaced, out);
+            } else {
+                for (int j = 0; j < replacement.length(); j++) {
+                    replaced = append(replacement.charAt(j), replaced, out);
+                }
+            }
+        }
+    }
+
+    /**
+     * Transforms <code>s</code>, and appends the result to <code>out</code> (which may e.g. be a Writer).
+     * @since MMBase-2.0
+     */
+    public void transform(CharSequence s, Appendable out) throws IOException {
+        if (! useTable(s)) {
+            out.append(transformWithPatterns(s.toString()));
+            return;
+        }
+        int first = indexOfChange(s);
+        if (first == -1) {
+            out.append(s);
+        } else {
+            asciify(s, first, out);
+        }
+    }
+
+    private String transformSequentially(String str) {
+        if (! useTable(str)) {
+            return transformWithPatterns(str);
+        }
+        int first = indexOfChange(str);
+        if (first == -1) {
+            return str;
+        }
+        StringBuilder sb = new StringBuilder(str.length());
+        try {
+            asciify(str, first, sb);
+        } catch (IOException ioe) {
+            // StringBuilder doesn't throw that
+            throw new IllegalStateException(ioe);
+        }
+        return sb.toString();
+    }
+
+    private String transformWithPatterns(String str) {
         LOG.debug("Starting asciifier");
 
         if (removeDiacritics) {
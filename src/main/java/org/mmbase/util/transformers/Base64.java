@@ -23,7 +23,7 @@ import java.io.*;
  * @author Michiel Meeuwissen
  */
 
-public class Base64 implements ByteToCharTransformer, ConfigurableTransformer {
+public class Base64 extends BufferedByteToCharTransformer implements ConfigurableTransformer {
     private static final long serialVersionUID = 0L;
     private final static String ENCODING = "BASE64";
     private final static int BASE_64 = 1;
@@ -76,122 +76,96 @@ public class Base64 implements ByteToCharTransformer, ConfigurableTransformer {
 
 
     @Override
-    public String transform(byte[] in) {
-        int iLen = in.length;
-        int oDataLen = (iLen*4+2)/3;       // output length without padding
-        int oLen = ((iLen+2)/3)*4;         // output length including padding
-        char[] out = new char[oLen];
-        int ip = 0;
-        int op = 0;
-        while (ip < iLen) {
-            int i0 = in[ip++] & 0xff;
-            int i1 = ip < iLen ? in[ip++] & 0xff : 0;
-            int i2 = ip < iLen ? in[ip++] & 0xff : 0;
-            int o0 = i0 >>> 2;
-            int o1 = ((i0 &   3) << 4) | (i1 >>> 4);
-            int o2 = ((i1 & 0xf) << 2) | (i2 >>> 6);
-            int o3 = i2 & 0x3F;
-            out[op++] = map1[o0];
-            out[op++] = map1[o1];
-            out[op] = op < oDataLen ? map1[o2] : '=';
-            op++;
-            out[op] = op < oDataLen ? map1[o3] : '=';
-            op++;
-        }
-        return new String(out);
+    protected int getByteBlockSize() {
+        return 3;
     }
+
     @Override
-    public Writer transform(InputStream in, Writer w)  {
-        int iLen = 0;
-        int op = 0;
-        while (true) {
-            try {
-                int ch = in.read();
-                if (ch != -1 ) iLen++;
-                int i0 = ch & 0xff;
-                ch = in.read();
-                if (ch != -1 ) iLen++;
-                int i1 = ch != -1 ? ch & 0xff : 0;
-                ch = in.read();
-                if (ch != -1 ) iLen++;
-                int i2 = ch != -1 ? ch & 0xff : 0;
-                int o0 = i0 >>> 2;
-                int o1 = ((i0 &   3) << 4) | (i1 >>> 4);
-                int o2 = ((i1 & 0xf) << 2) | (i2 >>> 6);
-                int o3 = i2 & 0x3F;
-                int oDataLen = (iLen * 4 + 2) / 3;       // output length without padding
-                w.write(map1[o0]); ++op;
-                w.write(map1[o1]); ++op;
-                w.write(op < oDataLen ? map1[o2] : '='); ++op;
-                w.write(op < oDataLen ? map1[o3] : '='); ++op;
-                if (ch == -1) break;
-            } catch (IOException ioe) {
-            }
-        }
-        return w;
+    protected int getCharBlockSize() {
+        return 4;
     }
 
+    @Override
+    protected int encodedLength(int length) {
+        return ((length + 2) / 3) * 4;
+    }
 
     @Override
-    public byte[] transformBack(String r) {
-        char[] in = r.toCharArray();
-        int iLen = in.length;
-        if (iLen%4 != 0) throw new IllegalArgumentException ("Length of Base64 encoded input string is not a multiple of 4.");
-        while (iLen > 0 && in[iLen-1] == '=') {
-            iLen--;
+    protected int decodedLength(char[] in, int off, int len) {
+        while (len > 0 && in[off + len - 1] == '=') {
+            len--;
         }
-        int oLen = (iLen*3) / 4;
-        byte[] out = new byte[oLen];
-        int ip = 0;
-        int op = 0;
-        while (ip < iLen) {
-            int i0 = in[ip++];
-            int i1 = in[ip++];
-            int i2 = ip < iLen ? in[ip++] : 'A';
-            int i3 = ip < iLen ? in[ip++] : 'A';
-            if (i0 > 127 || i1 > 127 || i2 > 127 || i3 > 127) {
-                throw new IllegalArgumentException ("Illegal character in Base64 encoded data.");
-            }
-            int b0 = map2[i0];
-            int b1 = map2[i1];
-            int b2 = map2[i2];
-            int b3 = map2[i3];
-            if (b0 < 0 || b1 < 0 || b2 < 0 || b3 < 0) {
-                throw new IllegalArgumentException ("Illegal character in Base64 encoded data.");
-            }
-            int o0 = ( b0       <<2) | (b1>>>4);
-            int o1 = ((b1 & 0xf)<<4) | (b2>>>2);
-            int o2 = ((b2 &   3)<<6) |  b3;
-            out[op++] = (byte)o0;
-            if (op<oLen) out[op++] = (byte)o1;
-            if (op<oLen) out[op++] = (byte)o2; }
-        return out;
+        return (len * 3) / 4;
     }
-    @Override
-    public OutputStream transformBack(Reader in, OutputStream out)  {
-        try {
-            StringWriter sw = new StringWriter();
-            while (true) {
-                int c = in.read();
-                if (c == -1) break;
-                sw.write(c);
-            }
-            out.write(transformBack(sw.toString()));
-        } catch (java.io.IOException e) {
 
+    @Override
+    protected int encode(byte[] in, int off, int len, char[] out, int outOff) {
+        int ip = off;
+        int op = outOff;
+        int full = off + len - len % 3;
+        while (ip < full) {
+            int i0 = in[ip++] & 0xff;
+            int i1 = in[ip++] & 0xff;
+            int i2 = in[ip++] & 0xff;
+            out[op++] = map1[i0 >>> 2];
+            out[op++] = map1[((i0 &   3) << 4) | (i1 >>> 4)];
+            out[op++] = map1[((i1 & 0xf) << 2) | (i2 >>> 6)];
+            out[op++] = map1[i2 & 0x3F];
+        }
+        int rest = off + len - full;
+        if (rest > 0) {
+            int i0 = in[ip++] & 0xff;
+            int i1 = rest > 1 ? in[ip++] & 0xff : 0;
+            out[op++] = map1[i0 >>> 2];
+            out[op++] = map1[((i0 &   3) << 4) | (i1 >>> 4)];
+            out[op++] = rest > 1 ? map1[(i1 & 0xf) << 2] : '=';
+            out[op++] = '=';
         }
-        return out;
+        return op - outOff;
     }
-    // javadoc inherited
-    @Override
-    public final OutputStream transformBack(Reader r) {
-        return transformBack(r, new ByteArrayOutputStream());
+
+    private static int nibbles(char c) {
+        int b = c > 127 ? -1 : map2[c];
+        if (b < 0) {
+            throw new IllegalArgumentException ("Illegal character in Base64 encoded data.");
+        }
+        return b;
     }
 
-    // javadoc inherited
     @Override
-    public final Writer transform(InputStream in) {
-        return transform(in, new StringWriter());
+    protected int decode(char[] in, int off, int len, byte[] out, int outOff, boolean last) {
+        int end = off + len;
+        if (last) {
+            while (end > off && in[end - 1] == '=') {
+                end--;
+            }
+        }
+        int ip = off;
+        int op = outOff;
+        int full = end - (end - off) % 4;
+        while (ip < full) {
+            int b0 = nibbles(in[ip++]);
+            int b1 = nibbles(in[ip++]);
+            int b2 = nibbles(in[ip++]);
+            int b3 = nibbles(in[ip++]);
+            out[op++] = (byte) (( b0        << 2) | (b1 >>> 4));
+            out[op++] = (byte) (((b1 & 0xf) << 4) | (b2 >>> 2));
+            out[op++] = (byte) (((b2 &   3) << 6) |  b3);
+        }
+        int rest = end - full;
+        if (rest == 1) {
+            throw new IllegalArgumentException ("Illegal character in Base64 encoded data.");
+        }
+        if (rest > 1) {
+            int b0 = nibbles(in[ip++]);
+            int b1 = nibbles(in[ip++]);
+            int b2 = rest > 2 ? nibbles(in[ip++]) : 0;
+            out[op++] = (byte) ((b0 << 2) | (b1 >>> 4));
+            if (rest > 2) {
+                out[op++] = (byte) (((b1 & 0xf) << 4) | (b2 >>> 2));
+            }
+        }
+        return op - outOff;
     }
 
     @Override
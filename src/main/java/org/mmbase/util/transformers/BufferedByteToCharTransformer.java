@@ -0,0 +1,313 @@
+/*
+
+This software is OSI Certified Open Source Software.
+OSI Certified is a certification mark of the Open Source Initiative.
+
+The license (Mozilla version 1.0) can be read at the MMBase site.
+See http://www.MMBase.org/license
+
+*/
+package org.mmbase.util.transformers;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+import org.mmbase.util.IOUtil;
+import org.mmbase.util.logging.*;
+
+/**
+ * Base class for encodings like {@link Base64} and {@link Hex}, which encode a fixed number of
+ * bytes to a fixed number of characters (a 'block'). Extensions only implement the encoding and
+ * decoding of arrays of complete blocks, and this class uses that to transform byte arrays,
+ * Strings, {@link ByteBuffer}s and streams. Streams are transformed in buffers of a fixed size,
+ * so they are never completely in memory.
+ *
+ * @author Michiel Meeuwissen
+ * @since MMBase-2.0
+ */
+
+public abstract class BufferedByteToCharTransformer implements ByteToCharTransformer {
+    private static final long serialVersionUID = 0L;
+    private static final Logger log = Logging.getLoggerInstance(BufferedByteToCharTransformer.class);
+
+    /**
+     * The number of blocks in the buffers which are used to transform streams.
+     */
+    protected static final int BLOCKS = 2048;
+
+    /**
+     * The number of bytes which are encoded together.
+     */
+    protected abstract int getByteBlockSize();
+
+    /**
+     * The number of characters one block of bytes is encoded to.
+     */
+    protected abstract int getCharBlockSize();
+
+    /**
+     * The number of characters <code>length</code> bytes are encoded to.
+     */
+    protected abstract int encodedLength(int length);
+
+    /**
+     * The number of bytes the given characters, which are the complete encoded input, decode to.
+     */
+    protected abstract int decodedLength(char[] in, int off, int len);
+
+    /**
+     * Encodes <code>len</code> bytes. This is a multiple of the byte block size, unless the end
+     * of the input is included.
+     * @return The number of characters written to <code>out</code>
+     */
+    protected abstract int encode(byte[] in, int off, int len, char[] out, int outOff);
+
+    /**
+     * Decodes <code>len</code> characters, which is a multiple of the char block size.
+     * @param last Whether these characters include the end of the input (so may be padded)
+     * @return The number of bytes written to <code>out</code>
+     * @throws IllegalArgumentException If the characters are not correctly encoded
+     */
+    protected abstract int decode(char[] in, int off, int len, byte[] out, int outOff, boolean last);
+
+
+    private void checkLength(int len) {
+        if (len % getCharBlockSize() != 0) {
+            throw new IllegalArgumentException("Length of " + getClass().getSimpleName() + " encoded input string is not a multiple of " + getCharBlockSize() + ".");
+        }
+    }
+
+    @Override
+    public String transform(byte[] in) {
+        char[] out = new char[encodedLength(in.length)];
+        encode(in, 0, in.length, out, 0);
+        return new String(out);
+    }
+
+    @Override
+    public byte[] transformBack(String r) {
+        char[] in = r.toCharArray();
+        checkLength(in.length);
+        byte[] out = new byte[decodedLength(in, 0, in.length)];
+        decode(in, 0, in.length, out, 0, true);
+        return out;
+    }
+
+    /**
+     * Encodes the remaining bytes of the buffer. If the buffer is backed by an array, that is
+     * encoded directly.
+     */
+    public String transform(ByteBuffer in) {
+        char[] out = new char[encodedLength(in.remaining())];
+        if (in.hasArray()) {
+            encode(in.array(), in.arrayOffset() + in.position(), in.remaining(), out, 0);
+            in.position(in.limit());
+        } else {
+            byte[] buf = new byte[getByteBlockSize() * BLOCKS];
+            int op = 0;
+            while (in.hasRemaining()) {
+                int len = Math.min(buf.length, in.remaining());
+                in.get(buf, 0, len);
+                op += encode(buf, 0, len, out, op);
+            }
+        }
+        return new String(out);
+    }
+
+    /**
+     * Decodes the given characters to a ByteBuffer. If a CharBuffer backed by an array is given,
+     * that is decoded directly.
+     */
+    public ByteBuffer transformBack(CharSequence in) {
+        char[] chars;
+        int off;
+        int len = in.length();
+        if (in instanceof CharBuffer && ((CharBuffer) in).hasArray()) {
+            CharBuffer cb = (CharBuffer) in;
+            chars = cb.array();
+            off = cb.arrayOffset() + cb.position();
+        } else {
+            chars = in.toString().toCharArray();
+            off = 0;
+        }
+        checkLength(len);
+        byte[] out = new byte[decodedLength(chars, off, len)];
+        decode(chars, off, len, out, 0, true);
+        return ByteBuffer.wrap(out);
+    }
+
+    @Override
+    public final Writer transform(InputStream in) {
+        return transform(in, new StringWriter());
+    }
+
+    @Override
+    public Writer transform(InputStream in, Writer w) {
+        try {
+            OutputStream out = encodingOutputStream(w);
+            IOUtil.copy(in, out);
+            out.close();
+        } catch (IOException e) {
+            log.error(e.toString(), e);
+        }
+        return w;
+    }
+
+    @Override
+    public final OutputStream transformBack(Reader r) {
+        return transformBack(r, new ByteArrayOutputStream());
+    }
+
+    @Override
+    public OutputStream transformBack(Reader r, OutputStream out) {
+        try {
+            IOUtil.copy(decodingInputStream(r), out);
+        } catch (IOException e) {
+            log.error(e.toString(), e);
+        }
+        return out;
+    }
+
+    /**
+     * Returns an OutputStream which encodes everything written to it to <code>w</code>. Closing it
+     * writes the last (possibly padded) block, and flushes, but does not close <code>w</code>.
+     */
+    public OutputStream encodingOutputStream(final Writer w) {
+        return new OutputStream() {
+            private final byte[] buf = new byte[getByteBlockSize() * BLOCKS];
+            private final char[] chars = new char[encodedLength(buf.length)];
+            private int len = 0;
+
+            /**
+             * Encodes the complete blocks in the buffer, or everything if this is the end.
+             */
+            private void encodeBuffer(boolean end) throws IOException {
+                int complete = end ? len : len - len % getByteBlockSize();
+                w.write(chars, 0, encode(buf, 0, complete, chars, 0));
+                len -= complete;
+                System.arraycopy(buf, complete, buf, 0, len);
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                buf[len++] = (byte) b;
+                if (len == buf.length) {
+                    encodeBuffer(false);
+                }
+            }
+
+            @Override
+            public void write(byte[] b, int off, int l) throws IOException {
+                while (l > 0) {
+                    int n = Math.min(l, buf.length - len);
+                    System.arraycopy(b, off, buf, len, n);
+                    len += n;
+                    off += n;
+                    l -= n;
+                    if (len == buf.length) {
+                        encodeBuffer(false);
+                    }
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                encodeBuffer(false);
+                w.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                encodeBuffer(true);
+                w.flush();
+            }
+        };
+    }
+
+    /**
+     * Returns an InputStream with the decoded contents of <code>r</code>.
+     * @throws IllegalArgumentException (on read) If the characters are not correctly encoded
+     */
+    public InputStream decodingInputStream(final Reader r) {
+        return new InputStream() {
+            private final char[] chars = new char[getCharBlockSize() * BLOCKS];
+            private final byte[] buf = new byte[getByteBlockSize() * BLOCKS];
+            private int pending = 0; // number of characters at the start of 'chars' which still need decoding
+            private int pos = 0;
+            private int count = 0;
+            private boolean eof = false;
+
+            /**
+             * Reads and decodes the next buffer. The last block is kept back, because only at the
+             * end of the input it is known whether it is the last one, which may be padded.
+             */
+            private boolean fill() throws IOException {
+                if (eof) {
+                    return false;
+                }
+                int len = pending;
+                while (len < chars.length) {
+                    int n = r.read(chars, len, chars.length - len);
+                    if (n == -1) {
+                        eof = true;
+                        break;
+                    }
+                    len += n;
+                }
+                pos = 0;
+                if (eof) {
+                    checkLength(len);
+                    count = decode(chars, 0, len, buf, 0, true);
+                    pending = 0;
+                } else {
+                    int complete = len - getCharBlockSize();
+                    count = decode(chars, 0, complete, buf, 0, false);
+                    System.arraycopy(chars, complete, chars, 0, getCharBlockSize());
+                    pending = getCharBlockSize();
+                }
+                return true;
+            }
+
+            @Override
+            public int read() throws IOException {
+                while (pos == count) {
+                    if (! fill()) return -1;
+                }
+                return buf[pos++] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) return 0;
+                while (pos == count) {
+                    if (! fill()) return -1;
+                }
+                int n = Math.min(len, count - pos);
+                System.arraycopy(buf, pos, b, off, n);
+                pos += n;
+                return n;
+            }
+
+            @Override
+            public int available() {
+                return count - pos;
+            }
+
+            @Override
+            public void close() throws IOException {
+                r.close();
+            }
+        };
+    }
+
+    /**
+     * The name of this encoding, used in messages.
+     */
+    public abstract String getEncoding();
+
+    @Override
+    public String toString() {
+        return getEncoding();
+    }
+}
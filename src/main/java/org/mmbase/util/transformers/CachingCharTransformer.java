@@ -0,0 +1,221 @@
+/*
+
+This software is OSI Certified Open Source Software.
+OSI Certified is a certification mark of the Open Source Initiative.
+
+The license (Mozilla version 1.0) can be read at the MMBase site.
+See http://www.MMBase.org/license
+
+*/
+package org.mmbase.util.transformers;
+
+import java.io.Reader;
+import java.io.Writer;
+
+import org.mmbase.cache.Cache;
+import org.mmbase.util.SizeMeasurable;
+import org.mmbase.util.SizeOf;
+
+/**
+ * Wraps a CharTransformer, and remembers the results of {@link #transform(String)} and {@link
+ * #transformBack(String)}, so that transforming the same String again costs only a lookup. This
+ * is only correct if the wrapped transformer is deterministic, i.e. its result depends on nothing
+ * else than its configuration and the String. E.g. {@link XmlField} is, but transformers which
+ * reload their configuration from files, or call external commands, are not.
+ *
+ * All instances share one {@link Cache}, 'CharTransformerResults', which is registered with the
+ * {@link org.mmbase.cache.CacheManager}, and can be configured (and monitored) like every other
+ * cache. Its 'maxEntrySize' is the maximal total length of a String and its result, longer
+ * ones are not cached.
+ *
+ * The transformations of Readers are not cached.
+ *
+ * @author Michiel Meeuwissen
+ * @since MMBase-2.0
+ * @see org.mmbase.util.Encode#register(String, boolean)
+ */
+
+public class CachingCharTransformer implements CharTransformer {
+    private static final long serialVersionUID = 0L;
+
+    private static final ResultCache cache = new ResultCache(500);
+    static {
+        cache.putCache();
+    }
+
+    /**
+     * The cache used by all CachingCharTransformers.
+     */
+    public static Cache<?, String> getCache() {
+        return cache;
+    }
+
+    private final CharTransformer ct;
+    private final Object id;
+
+    /**
+     * Caches the results of the given CharTransformer instance. Other CachingCharTransformers
+     * don't share the results, even if they wrap an equally configured transformer.
+     */
+    public CachingCharTransformer(CharTransformer c) {
+        this(c, c);
+    }
+
+    /**
+     * @param id Identifies the transformation, including its configuration. CachingCharTransformers
+     * with equal ids share their results, so e.g. the name of an encoding can be used.
+     */
+    public CachingCharTransformer(CharTransformer c, String id) {
+        this(c, (Object) id);
+    }
+
+    private CachingCharTransformer(CharTransformer c, Object id) {
+        ct = c;
+        this.id = id;
+    }
+
+    /**
+     * The wrapped CharTransformer.
+     */
+    public CharTransformer getCharTransformer() {
+        return ct;
+    }
+
+    @Override
+    public String transform(String s) {
+        if (s == null) {
+            return ct.transform(s);
+        }
+        Key key = new Key(id, false, s);
+        String result = cache.get(key);
+        if (result == null) {
+            result = ct.transform(s);
+            cache.put(key, result);
+        }
+        return result;
+    }
+
+    @Override
+    public String transformBack(String s) {
+        if (s == null) {
+            return ct.transformBack(s);
+        }
+        Key key = new Key(id, true, s);
+        String result = cache.get(key);
+        if (result == null) {
+            result = ct.transformBack(s);
+            cache.put(key, result);
+        }
+        return result;
+    }
+
+    @Override
+    public Writer transform(Reader r) {
+        return ct.transform(r);
+    }
+    @Override
+    public Writer transformBack(Reader r) {
+        return ct.transformBack(r);
+    }
+
+    @Override
+    public Writer transform(Reader r, Writer w) {
+        return ct.transform(r, w);
+    }
+    @Override
+    public Writer transformBack(Reader r, Writer w) {
+        return ct.transformBack(r, w);
+    }
+
+    /**
+     * The same as of the wrapped transformer, so {@link org.mmbase.util.Encode#getEncoding} is
+     * not affected by the caching.
+     */
+    @Override
+    public String toString() {
+        return ct.toString();
+    }
+
+
+    static final class Key implements SizeMeasurable {
+        private final Object id;
+        private final boolean back;
+        private final String string;
+        private final int hashCode;
+
+        Key(Object id, boolean back, String string) {
+            this.id = id;
+            this.back = back;
+            this.string = string;
+            this.hashCode = 31 * (31 * id.hashCode() + (back ? 1 : 0)) + string.hashCode();
+        }
+
+        int length() {
+            return string.length();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            if (o instanceof Key) {
+                Key k = (Key) o;
+                return hashCode == k.hashCode && back == k.back && id.equals(k.id) && string.equals(k.string);
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public int getByteSize() {
+            return getByteSize(new SizeOf());
+        }
+
+        @Override
+        public int getByteSize(SizeOf sizeof) {
+            // the id is shared, and not counted
+            return 24 + sizeof.sizeof(string);
+        }
+
+        @Override
+        public String toString() {
+            return (back ? "BACK " : "") + id + ":" + string.hashCode();
+        }
+    }
+
+    static class ResultCache extends Cache<Key, String> {
+
+        ResultCache(int size) {
+            super(size);
+            maxEntrySize = getDefaultMaxEntrySize();
+        }
+
+        @Override
+        public String getName() {
+            return "CharTransformerResults";
+        }
+
+        @Override
+        public String getDescription() {
+            return "String -> transformed String, for deterministic CharTransformers";
+        }
+
+        @Override
+        protected int getDefaultMaxEntrySize() {
+            return 10 * 1024;
+        }
+
+        @Override
+        public String put(Key key, String value) {
+            int max = getMaxEntrySize();
+            if (value == null || (max > 0 && key.length() + value.length() > max)) {
+                return null;
+            }
+            return super.put(key, value);
+        }
+    }
+
+}
@@ -47,7 +47,7 @@ import org.mmbase.util.logging.*;
  * @version $Id$
  */
 
-public class ChainedCharTransformer extends ReaderTransformer  {
+public class ChainedCharTransformer extends ReaderTransformer implements StreamingCharTransformer {
     private static final long serialVersionUID = 0L;
     private static final Logger log = Logging.getLoggerInstance(ChainedCharTransformer.class);
 
@@ -169,6 +169,45 @@ public class ChainedCharTransformer extends ReaderTransformer  {
         return endWriter;
     }
 
+    /**
+     * Links the Writers of all CharTransformers, without Threads. CharTransformers which are not
+     * {@link StreamingCharTransformer}s only produce their output when the returned Writer is
+     * closed.
+     * @since MMBase-2.0
+     */
+    @Override
+    public Writer transformingWriter(Writer endWriter) {
+        final List<Writer> writers = new ArrayList<Writer>(charTransformers.size());
+        Writer w = endWriter;
+        ListIterator<CharTransformer> i = charTransformers.listIterator(charTransformers.size());
+        while (i.hasPrevious()) {
+            w = StreamingWriter.of(i.previous(), w);
+            writers.add(0, w);
+        }
+        final Writer first = w;
+        return new StreamingWriter(endWriter) {
+            @Override
+            public void write(char[] cbuf, int off, int len) throws IOException {
+                first.write(cbuf, off, len);
+            }
+            @Override
+            public void write(String str, int off, int len) throws IOException {
+                first.write(str, off, len);
+            }
+            @Override
+            public void flush() throws IOException {
+                first.flush();
+            }
+            @Override
+            protected void finish() throws IOException {
+                // closing in chain order, so every writer receives the rest of its input before it finishes.
+                for (Writer link : writers) {
+                    link.close();
+                }
+            }
+        };
+    }
+
     @Override
     public String toString() {
         return "CHAINED"  + charTransformers;
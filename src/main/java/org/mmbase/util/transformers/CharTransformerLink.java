@@ -14,8 +14,7 @@ import org.mmbase.util.logging.*;
 
 /**
  * A Runnable implementation to perform a CharTransform between a Reader and a Writer.  This is used
- * in {@link ChainedCharTransformer}, {@link TransformingWriter} and {@link TransformingReader},
- * because those need a thread for each step of the transformation.
+ * in {@link ChainedCharTransformer#transform(Reader, Writer)}, because that needs a thread for each step of the transformation.
  *
  * @author Michiel Meeuwissen
  * @since  MMBase-1.8
@@ -11,6 +11,7 @@ package org.mmbase.util.transformers;
 
 import java.util.*;
 import java.io.*;
+import java.nio.CharBuffer;
 
 import org.mmbase.util.logging.*;
 
@@ -103,50 +104,65 @@ public abstract class ChunkedTransformer<P> extends ConfigurableReaderTransforme
      */
     protected abstract boolean replace(String string, Writer w, Status status) throws IOException;
 
-    protected boolean replaceWord(StringBuilder word, Writer writer, Status status) throws IOException {
-        int l = word.length();
-        StringBuilder postFix = null;
-        String w;
-        if (l > 0) {
-
-            postFix = new StringBuilder();
-
-            // surrounding quotes might look like &quot; because of earlier escaping, so we take those out of consideration.
-            w = word.toString();
-            while (w.endsWith("&quot;")) {
-                postFix.insert(0, "&quot;");
-                l -= 6;
-                word.setLength(l);
-                w = word.toString();
-            }
-            if (l > 0) {
-
-                // to allow for . , and like in the end, we tear those of.
-                char d = word.charAt(l - 1);
-                while (! Character.isLetterOrDigit(d)) {
-                    postFix.insert(0, d);
-                    word.setLength(--l);
-                    if (l == 0) break;
-                    d = word.charAt(l - 1);
-                }
-            }
+    /**
+     * The transformations call this one. The given CharSequence is only valid during this call, and
+     * is often a window on the read buffer. The default implementation makes a String of it, and
+     * calls {@link #replace(String, Writer, Status)}. Override this to avoid that.
+     * @since MMBase-2.0
+     */
+    protected boolean replace(CharSequence chars, Writer w, Status status) throws IOException {
+        return replace(chars.toString(), w, status);
+    }
+
+    private static final String QUOT = "&quot;";
+
+    private static boolean regionMatches(CharSequence chars, int offset, String s) {
+        if (offset < 0) return false;
+        for (int i = 0; i < s.length(); i++) {
+            if (chars.charAt(offset + i) != s.charAt(i)) return false;
         }
+        return true;
+    }
 
-        w = word.toString();
+    /**
+     * Writes a CharSequence, avoiding a copy if it is a window on a char array.
+     * @since MMBase-2.0
+     */
+    protected static void write(Writer w, CharSequence chars) throws IOException {
+        if (chars instanceof String) {
+            w.write((String) chars);
+        } else if (chars instanceof CharBuffer && ((CharBuffer) chars).hasArray()) {
+            CharBuffer buffer = (CharBuffer) chars;
+            w.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else {
+            w.append(chars);
+        }
+    }
+
+    protected boolean replaceWord(CharSequence word, Writer writer, Status status) throws IOException {
+        int start = 0;
+        int end = word.length();
+
+        // surrounding quotes might look like &quot; because of earlier escaping, so we take those out of consideration.
+        while (end - start >= QUOT.length() && regionMatches(word, end - QUOT.length(), QUOT)) {
+            end -= QUOT.length();
+        }
+        // to allow for . , and like in the end, we tear those of.
+        while (end > start && ! Character.isLetterOrDigit(word.charAt(end - 1))) {
+            end--;
+        }
 
         // stuff in the beginning:
-        while(w.startsWith("&quot;")) {
-            writer.write("&quot;");
-            word.delete(0, 6);
-            l -= 6;
-            w = word.toString();
+        while (end - start >= QUOT.length() && regionMatches(word, start, QUOT)) {
+            writer.write(QUOT);
+            start += QUOT.length();
         }
 
         // ready to make the replacements now.
-        boolean result = replace(w, writer, status);
+        boolean result = replace(word.subSequence(start, end), writer, status);
 
-        if (postFix != null) {
-            writer.write(postFix.toString());
+        if (end < word.length()) {
+            write(writer, word.subSequence(end, word.length()));
         }
         return result;
     }
@@ -158,49 +174,125 @@ public abstract class ChunkedTransformer<P> extends ConfigurableReaderTransforme
         return ! onlyFirstMatch || status.replaced == 0;
     }
 
+    /**
+     * Size of the buffer in which the transformations read their input.
+     * @since MMBase-2.0
+     */
+    protected static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The input buffer of a transformation, plus the current 'chunk' being collected. As long as
+     * a chunk does not cross the buffer boundary, it is only a window on the buffer, and
+     * nothing needs to be copied.
+     */
+    private static class Chunks {
+        final char[] buffer = new char[BUFFER_SIZE];
+        /**
+         * Start of the current chunk in the buffer
+         */
+        int start = 0;
+        /**
+         * The begin of the current chunk, if that was read in an earlier buffer.
+         */
+        final StringBuilder carry = new StringBuilder();
+
+        /**
+         * Fills the buffer. The current chunk must have been {@link #carry}ed before.
+         */
+        int read(Reader r) throws IOException {
+            return r.read(buffer, 0, buffer.length);
+        }
+        /**
+         * The current chunk, ending at <code>end</code> in the buffer.
+         */
+        CharSequence chunk(int end) {
+            if (carry.length() == 0) {
+                return CharBuffer.wrap(buffer, start, end - start);
+            } else {
+                carry.append(buffer, start, end - start);
+                start = end;
+                return carry;
+            }
+        }
+        /**
+         * Start a new chunk at <code>next</code> in the buffer.
+         */
+        void next(int next) {
+            carry.setLength(0);
+            start = next;
+        }
+        /**
+         * Keep the current chunk, because the buffer is going to be refilled.
+         */
+        void carry(int end) {
+            carry.append(buffer, start, end - start);
+            start = 0;
+        }
+        /**
+         * Writes everything after <code>from</code> in the buffer and the rest of the reader unchanged.
+         */
+        void copyRest(int from, int end, Reader r, Writer w) throws IOException {
+            w.write(buffer, from, end - from);
+            int n;
+            while ((n = r.read(buffer, 0, buffer.length)) != -1) {
+                w.write(buffer, 0, n);
+            }
+        }
+    }
+
+    private static boolean isWordSeparator(char c) {
+        return Character.isWhitespace(c) || c == '\'' || c == '\"' || c == '(' || c == ')';
+    }
+
+    private static boolean isA(CharSequence tag) {
+        int l = tag.length();
+        return l > 0 && tag.charAt(0) == 'a' && (l == 1 || tag.charAt(1) == ' ');
+    }
+
     public Writer transformXmlTextWords(Reader r, Writer w)  {
         Status status = newStatus();
-        StringBuilder word = new StringBuilder();  // current word
+        Chunks word = new Chunks();  // current word
+        char[] buf = word.buffer;
         boolean translating = true;
         try {
             log.trace("Starting  replacing");
-            while (true) {
-                int c = r.read();
-                if (c == -1) break;
-                if (!replace(status)) {
-                    w.write(c);
-                } else if (c == '<') {  // don't do it in existing tags and attributes
-                    translating = false;
-                    replaceWord(word, w, status);
-                    word.setLength(0);
-                    w.write(c);
-                } else if (c == '>') {
-                    translating = true;
-                    w.write(word.toString());
-                    w.write(c);
-                    String tag = word.toString();
-                    status.inA  = "a".equals(tag) || tag.startsWith("a ");
-                    word.setLength(0);
-                } else if (! translating) {
-                    word.append((char) c);
-                } else {
-                    if (Character.isWhitespace((char) c) || c == '\'' || c == '\"' || c == '(' || c == ')' ) {
-                        replaceWord(word, w, status);
-                        word.setLength(0);
+            int n;
+            while ((n = word.read(r)) != -1) {
+                for (int i = 0; i < n; i++) {
+                    char c = buf[i];
+                    if (c == '<') {  // don't do it in existing tags and attributes
+                        translating = false;
+                        replaceWord(word.chunk(i), w, status);
+                        w.write(c);
+                        word.next(i + 1);
+                        if (! replace(status)) {
+                            word.copyRest(i + 1, n, r, w);
+                            return w;
+                        }
+                    } else if (c == '>') {
+                        translating = true;
+                        CharSequence tag = word.chunk(i);
+                        write(w, tag);
                         w.write(c);
-                    } else {
-                        word.append((char) c);
+                        status.inA = isA(tag);
+                        word.next(i + 1);
+                    } else if (translating && isWordSeparator(c)) {
+                        replaceWord(word.chunk(i), w, status);
+                        w.write(c);
+                        word.next(i + 1);
+                        if (! replace(status)) {
+                            word.copyRest(i + 1, n, r, w);
+                            return w;
+                        }
                     }
                 }
+                word.carry(n);
             }
             // write last word
-            if (replace(status)) {
-                if (translating) {
-                    replaceWord(word, w, status);
-                } else {
-                    w.write(word.toString());
-                }
-                word.setLength(0);
+            if (translating) {
+                replaceWord(word.chunk(0), w, status);
+            } else {
+                write(w, word.chunk(0));
             }
             if (log.isDebugEnabled()) {
                 log.debug("Finished  replacing. Replaced " + status.replaced + " words");
@@ -213,36 +305,51 @@ public abstract class ChunkedTransformer<P> extends ConfigurableReaderTransforme
 
     public Writer transformXmlText(Reader r, Writer w)  {
         Status status = newStatus();
-        StringBuilder xmltext = new StringBuilder();  // current word
+        Chunks xmltext = new Chunks();  // current text, or current tag if not translating
+        char[] buf = xmltext.buffer;
         boolean translating = true;
         try {
             log.trace("Starting replacing");
-            while (true) {
-                int c = r.read();
-                if (c == -1) break;
-                if (!replace(status)) {
-                    w.write(c);
-                } else
-                // perhaps better use SAX to decently detect XML, but then it probably won't work
-                // very well on sloppy XML (like HTML).
-                if (c == '<') {  // don't do it in existing tags and attributes
-                    translating = false;
-                    replace(xmltext.toString(), w, status);
-                    xmltext.setLength(0);
-                    w.write(c);
-                } else if (c == '>') {
-                    translating = true;
-                    xmltext.setLength(0);
-                    w.write(c);
-                } else if (! translating) {
-                    w.write(c);
+            int n;
+            while ((n = xmltext.read(r)) != -1) {
+                for (int i = 0; i < n; i++) {
+                    char c = buf[i];
+                    // perhaps better use SAX to decently detect XML, but then it probably won't work
+                    // very well on sloppy XML (like HTML).
+                    if (c == '<') {  // don't do it in existing tags and attributes
+                        if (translating) {
+                            replace(xmltext.chunk(i), w, status);
+                        } else {
+                            w.write(buf, xmltext.start, i - xmltext.start);
+                            replace((CharSequence) "", w, status);
+                        }
+                        translating = false;
+                        w.write(c);
+                        xmltext.next(i + 1);
+                        if (! replace(status)) {
+                            xmltext.copyRest(i + 1, n, r, w);
+                            return w;
+                        }
+                    } else if (c == '>') {
+                        if (! translating) {
+                            w.write(buf, xmltext.start, i - xmltext.start);
+                        }
+                        translating = true;
+                        w.write(c);
+                        xmltext.next(i + 1);
+                    }
+                }
+                if (translating) {
+                    xmltext.carry(n);
                 } else {
-                    xmltext.append((char) c);
+                    // tags are not collected, but written immediately
+                    w.write(buf, xmltext.start, n - xmltext.start);
+                    xmltext.next(0);
                 }
             }
             // write last word
-            if (replace(status) && translating) {
-                replace(xmltext.toString(), w, status);
+            if (translating) {
+                replace(xmltext.chunk(0), w, status);
             }
             log.debug("Finished  replacing. Replaced " + status.replaced + " words");
         } catch (java.io.IOException e) {
@@ -252,28 +359,30 @@ public abstract class ChunkedTransformer<P> extends ConfigurableReaderTransforme
     }
     public Writer transformWords(Reader r, Writer w)  {
         Status status = newStatus();
-        StringBuilder word = new StringBuilder();  // current word
+        Chunks word = new Chunks();  // current word
+        char[] buf = word.buffer;
         try {
             if (log.isDebugEnabled()) {
                 log.trace("Starting replacing words." + Logging.stackTrace());
             }
-            while (true) {
-                int c = r.read();
-                if (c == -1) break;
-                if (replace(status) && (Character.isWhitespace((char) c) || c == '\'' || c == '\"' || c == '(' || c == ')' || c == '<' || c == '>' )) {
-                    replaceWord(word, w, status);
-                    word.setLength(0);
-                    w.write(c);
-                } else {
-                    word.append((char) c);
+            int n;
+            while ((n = word.read(r)) != -1) {
+                for (int i = 0; i < n; i++) {
+                    char c = buf[i];
+                    if (isWordSeparator(c) || c == '<' || c == '>') {
+                        replaceWord(word.chunk(i), w, status);
+                        w.write(c);
+                        word.next(i + 1);
+                        if (! replace(status)) {
+                            word.copyRest(i + 1, n, r, w);
+                            return w;
+                        }
+                    }
                 }
+                word.carry(n);
             }
             // write last word
-            if (replace(status)) {
-                replaceWord(word, w, status);
-            } else {
-                w.write(word.toString());
-            }
+            replaceWord(word.chunk(0), w, status);
             log.debug("Finished replacing. Replaced " + status.replaced + " words");
         } catch (java.io.IOException e) {
             log.error(e.toString());
@@ -306,17 +415,16 @@ public abstract class ChunkedTransformer<P> extends ConfigurableReaderTransforme
     }
 
     public Writer transformEntire(Reader r, Writer w) {
-        StringWriter sw = new StringWriter();
+        StringBuilder sb = new StringBuilder();
         Status status = newStatus();
         try {
-            BufferedReader br = new BufferedReader(r);
-            char[] buf = new char[200];
-            int n = br.read(buf, 0, buf.length);
+            char[] buf = new char[BUFFER_SIZE];
+            int n = r.read(buf, 0, buf.length);
             while (n > 0) {
-                sw.write(buf, 0, n);
-                n = br.read(buf, 0, buf.length);
+                sb.append(buf, 0, n);
+                n = r.read(buf, 0, buf.length);
             }
-            replace(sw.toString(), w, status);
+            replace((CharSequence) sb, w, status);
         } catch (java.io.IOException e) {
             log.error(e.getMessage(), e);
         }
@@ -325,6 +433,35 @@ public abstract class ChunkedTransformer<P> extends ConfigurableReaderTransforme
     }
 
 
+    private int parallelThreshold = ParallelTransformation.DEFAULT_THRESHOLD;
+
+    /**
+     * Inputs of at least this number of chars are transformed by a number of threads. Not positive
+     * means never.
+     * @since MMBase-2.0
+     */
+    public void setParallelThreshold(int t) {
+        parallelThreshold = t;
+    }
+
+    /**
+     * {@inheritDoc}
+     * In {@link #LINES} mode, large strings are transformed in parallel, unless only the first match must be replaced.
+     */
+    @Override
+    public String transform(String string) {
+        if (to == LINES && ! onlyFirstMatch) {
+            return new ParallelTransformation(ParallelTransformation.Boundary.LINE) {
+                @Override
+                protected String transformSegment(String segment) {
+                    return ChunkedTransformer.super.transform(segment);
+                }
+            }.transform(string, parallelThreshold);
+        } else {
+            return super.transform(string);
+        }
+    }
+
     @Override
     public Writer transform(Reader r, Writer w) {
         switch(to) {
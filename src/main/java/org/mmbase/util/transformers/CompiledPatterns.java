@@ -0,0 +1,391 @@
+/*
+
+This software is OSI Certified Open Source Software.
+OSI Certified is a certification mark of the Open Source Initiative.
+
+The license (Mozilla version 1.0) can be read at the MMBase site.
+See http://www.MMBase.org/license
+
+*/
+package org.mmbase.util.transformers;
+
+import java.util.*;
+import java.util.regex.*;
+
+import org.mmbase.util.Entry;
+import org.mmbase.util.logging.*;
+
+/**
+ * An immutable, compiled, version of the patterns of a {@link RegexpReplacer}. It can quickly
+ * determine which is the first pattern matching a certain CharSequence, so that the patterns
+ * before that don't need to be tried one by one.
+ *
+ * Patterns which are just literal strings (possibly preceded by <code>(?i)</code>) are put in an
+ * Aho-Corasick automaton. Most others are combined into one alternation with a named group for
+ * every pattern. The few patterns which cannot be combined safely (back references, flags,
+ * quoting), are tried separately.
+ *
+ * @author Michiel Meeuwissen
+ * @since MMBase-2.0
+ */
+final class CompiledPatterns {
+
+    private static final Logger log = Logging.getLoggerInstance(CompiledPatterns.class);
+
+    private static final String META = "\\^$.|?*+()[]{}";
+
+    /**
+     * The patterns themselves. This is a snapshot, so it does not change when the patterns are reloaded.
+     */
+    final List<Entry<Pattern, String>> patterns;
+
+    // the literals
+    private final Node root;
+    private final String[] literals;
+    private final boolean[] caseInsensitive;
+    private int minLiteral = Integer.MAX_VALUE;
+
+    // the alternation
+    private final Pattern combined;
+    private final int[] combinedIndices;
+
+    // all the rest
+    private final int[] separate;
+
+    CompiledPatterns(Collection<Entry<Pattern, String>> p) {
+        patterns = Collections.unmodifiableList(new ArrayList<Entry<Pattern, String>>(p));
+        int size = patterns.size();
+        literals = new String[size];
+        caseInsensitive = new boolean[size];
+        List<Integer> combine = new ArrayList<Integer>();
+        List<Integer> rest = new ArrayList<Integer>();
+        Node r = null;
+        for (int i = 0; i < size; i++) {
+            Pattern pattern = patterns.get(i).getKey();
+            if (literal(pattern, i)) {
+                if (r == null) {
+                    r = new Node();
+                }
+                r.add(fold(literals[i]), i);
+                if (i < minLiteral) {
+                    minLiteral = i;
+                }
+            } else if (combinable(pattern)) {
+                combine.add(i);
+            } else {
+                rest.add(i);
+            }
+        }
+        if (r != null) {
+            r.link();
+        }
+        root = r;
+
+        Pattern c = null;
+        if (combine.size() > 1) {
+            StringBuilder alternation = new StringBuilder();
+            for (int i : combine) {
+                if (alternation.length() > 0) {
+                    alternation.append('|');
+                }
+                alternation.append("(?<p").append(i).append('>').append(patterns.get(i).getKey().pattern()).append(')');
+            }
+            try {
+                c = Pattern.compile(alternation.toString());
+            } catch (PatternSyntaxException pse) {
+                log.warn("Could not combine patterns " + combine + " " + pse.getMessage());
+            }
+        }
+        if (c == null) {
+            rest.addAll(combine);
+            Collections.sort(rest);
+            combinedIndices = new int[0];
+        } else {
+            combinedIndices = toArray(combine);
+        }
+        combined = c;
+        separate = toArray(rest);
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] result = new int[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Whether the pattern is a simple string, which can be put in the automaton. If so, it is
+     * stored in {@link #literals}.
+     */
+    private boolean literal(Pattern pattern, int index) {
+        int flags = pattern.flags();
+        if ((flags & ~Pattern.CASE_INSENSITIVE) != 0) {
+            return false;
+        }
+        boolean ci = flags != 0;
+        String p = pattern.pattern();
+        if (p.startsWith("(?i)")) {
+            ci = true;
+            p = p.substring(4);
+        }
+        StringBuilder literal = new StringBuilder(p.length());
+        for (int i = 0; i < p.length(); i++) {
+            char c = p.charAt(i);
+            if (c == '\\') {
+                if (i + 1 < p.length() && ! Character.isLetterOrDigit(p.charAt(i + 1))) {
+                    literal.append(p.charAt(++i));
+                } else {
+                    return false;
+                }
+            } else if (META.indexOf(c) >= 0) {
+                return false;
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() == 0) {
+            return false;
+        }
+        literals[index] = literal.toString();
+        caseInsensitive[index] = ci;
+        return true;
+    }
+
+    /**
+     * Whether the pattern can be put in an alternation, without changing its meaning, or the
+     * meaning of the other alternatives.
+     */
+    private static boolean combinable(Pattern pattern) {
+        if (pattern.flags() != 0) return false;
+        String p = pattern.pattern();
+        if (p.contains("\\Q")) return false;      // quoting could continue into the next alternative
+        if (p.contains("#")) return false;        // so could comments
+        if (p.contains("\\k<")) return false;     // named back reference
+        if (p.matches("(?s).*\\(\\?<[a-zA-Z].*")) return false;   // named groups could clash
+        if (p.matches("(?s).*\\\\[1-9].*")) return false;         // back references would be renumbered
+        return true;
+    }
+
+    /**
+     * Patterns with <code>(?i)</code> only ignore case for US-ASCII.
+     */
+    private static char fold(char c) {
+        return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    private static String fold(String s) {
+        StringBuilder result = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            result.append(fold(s.charAt(i)));
+        }
+        return result.toString();
+    }
+
+    /**
+     * Whether literal <code>index</code> is really present at <code>start</code> (the automaton only
+     * found it ignoring case)
+     */
+    private boolean verify(int index, CharSequence s, int start) {
+        if (caseInsensitive[index]) {
+            return true;
+        }
+        String literal = literals[index];
+        for (int i = 0; i < literal.length(); i++) {
+            if (s.charAt(start + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The index of the first pattern which {@link Matcher#matches} the given string, or -1.
+     */
+    int firstMatching(CharSequence s) {
+        int best = Integer.MAX_VALUE;
+        if (root != null) {
+            Node node = root;
+            for (int i = 0; i < s.length() && node != null; i++) {
+                node = node.child(fold(s.charAt(i)));
+            }
+            if (node != null) {
+                for (int index : node.terminals) {
+                    if (verify(index, s, 0)) {
+                        best = index;
+                        break;
+                    }
+                }
+            }
+        }
+        if (combined != null && combinedIndices[0] < best) {
+            Matcher m = combined.matcher(s);
+            if (m.matches()) {
+                best = Math.min(best, matchedAlternative(m));
+            }
+        }
+        for (int index : separate) {
+            if (index >= best) break;
+            if (patterns.get(index).getKey().matcher(s).matches()) {
+                best = index;
+                break;
+            }
+        }
+        return best == Integer.MAX_VALUE ? -1 : best;
+    }
+
+    /**
+     * The index of the first pattern which {@link Matcher#find}s something in the given string, or -1.
+     */
+    int firstFinding(CharSequence s) {
+        int best = Integer.MAX_VALUE;
+        if (root != null) {
+            Node node = root;
+            for (int i = 0; i < s.length() && best > minLiteral; i++) {
+                char c = fold(s.charAt(i));
+                Node next = node.child(c);
+                while (next == null && node != root) {
+                    node = node.fail;
+                    next = node.child(c);
+                }
+                node = next == null ? root : next;
+                for (int index : node.outputs) {
+                    if (index >= best) break;
+                    if (verify(index, s, i + 1 - literals[index].length())) {
+                        best = index;
+                        break;
+                    }
+                }
+            }
+        }
+        if (combined != null && combinedIndices[0] < best) {
+            Matcher m = combined.matcher(s);
+            if (m.find()) {
+                // The alternation finds the left most match, but an earlier pattern may match further on.
+                int found = matchedAlternative(m);
+                for (int index : combinedIndices) {
+                    if (index >= found || index >= best) break;
+                    if (patterns.get(index).getKey().matcher(s).find()) {
+                        found = index;
+                        break;
+                    }
+                }
+                best = Math.min(best, found);
+            }
+        }
+        for (int index : separate) {
+            if (index >= best) break;
+            if (patterns.get(index).getKey().matcher(s).find()) {
+                best = index;
+                break;
+            }
+        }
+        return best == Integer.MAX_VALUE ? -1 : best;
+    }
+
+    private int matchedAlternative(Matcher m) {
+        for (int index : combinedIndices) {
+            if (m.start("p" + index) != -1) {
+                return index;
+            }
+        }
+        throw new IllegalStateException("No alternative matched " + m);
+    }
+
+    @Override
+    public String toString() {
+        return "" + patterns;
+    }
+
+    /**
+     * A state of the Aho-Corasick automaton.
+     */
+    private static class Node {
+        private final Map<Character, Node> building = new TreeMap<Character, Node>();
+        private char[] keys;
+        private Node[] children;
+        Node fail;
+        /**
+         * The patterns ending exactly here
+         */
+        int[] terminals = new int[0];
+        /**
+         * The patterns found when arriving here, including those found via the fail links. Sorted.
+         */
+        int[] outputs;
+
+        void add(String literal, int index) {
+            Node node = this;
+            for (int i = 0; i < literal.length(); i++) {
+                Character c = literal.charAt(i);
+                Node child = node.building.get(c);
+                if (child == null) {
+                    child = new Node();
+                    node.building.put(c, child);
+                }
+                node = child;
+            }
+            node.terminals = Arrays.copyOf(node.terminals, node.terminals.length + 1);
+            node.terminals[node.terminals.length - 1] = index;
+        }
+
+        Node child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i < 0 ? null : children[i];
+        }
+
+        /**
+         * Freezes the trie, and determines the fail links (breadth first).
+         */
+        void link() {
+            fail = this;
+            LinkedList<Node> queue = new LinkedList<Node>();
+            freeze();
+            outputs = terminals;
+            for (Node child : children) {
+                child.fail = this;
+                queue.add(child);
+            }
+            while (! queue.isEmpty()) {
+                Node node = queue.removeFirst();
+                node.freeze();
+                node.outputs = merge(node.terminals, node.fail.outputs);
+                for (int i = 0; i < node.keys.length; i++) {
+                    char c = node.keys[i];
+                    Node child = node.children[i];
+                    Node f = node.fail;
+                    Node next = f.child(c);
+                    while (next == null && f != this) {
+                        f = f.fail;
+                        next = f.child(c);
+                    }
+                    child.fail = next == null ? this : next;
+                    queue.add(child);
+                }
+            }
+        }
+
+        private void freeze() {
+            if (keys != null) return;
+            keys = new char[building.size()];
+            children = new Node[building.size()];
+            int i = 0;
+            for (Map.Entry<Character, Node> e : building.entrySet()) {
+                keys[i] = e.getKey();
+                children[i] = e.getValue();
+                i++;
+            }
+            building.clear();
+        }
+
+        private static int[] merge(int[] a, int[] b) {
+            int[] result = new int[a.length + b.length];
+            System.arraycopy(a, 0, result, 0, a.length);
+            System.arraycopy(b, 0, result, a.length, b.length);
+            Arrays.sort(result);
+            return result;
+        }
+    }
+
+}
@@ -0,0 +1,209 @@
+/*
+
+This software is OSI Certified Open Source Software.
+OSI Certified is a certification mark of the Open Source Initiative.
+
+The license (Mozilla version 1.0) can be read at the MMBase site.
+See http://www.MMBase.org/license
+
+*/
+package org.mmbase.util.transformers;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.regex.Pattern;
+
+import org.mmbase.cache.Cache;
+import org.mmbase.util.ResourceLoader;
+import org.mmbase.util.ThreadPools;
+import org.mmbase.util.logging.*;
+
+/**
+ * Remembers the results of {@link YUIJavaScriptCompressor} and {@link YUICSSCompressor}, because
+ * compressing is expensive, and the same javascript and css is compressed over and over
+ * again. The results are stored by a SHA-256 hash of the input and of the settings of the compressor, so
+ * changed files, or differently configured compressors, simply get other entries.
+ *
+ * The results are kept in a {@link Cache} 'CompressedResources', and optionally also in a
+ * directory (see {@link #setDirectory}), so that they survive restarts.
+ *
+ * With {@link #precompile} all javascript and css of e.g. a web application can be compressed
+ * in the background at startup.
+ *
+ * @author Michiel Meeuwissen
+ * @since MMBase-2.0
+ */
+public class CompressionCache {
+
+    private static final Logger log = Logging.getLoggerInstance(CompressionCache.class);
+
+    private static final CompressionCache instance = new CompressionCache();
+
+    public static final Pattern JAVASCRIPT = Pattern.compile(".*\\.js$");
+    public static final Pattern CSS        = Pattern.compile(".*\\.css$");
+
+    public static CompressionCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * The keys are used as file names in the directory, and whatever is stored under a key is
+     * served for every input with that key, so they must be collision resistant.
+     */
+    private static final DigestTransformer hash = new Digest(Digest.SHA256);
+
+    private final Cache<String, String> cache = new Cache<String, String>(200) {
+        @Override
+        public String getName() {
+            return "CompressedResources";
+        }
+        @Override
+        public String getDescription() {
+            return "Hash of javascript or css (and compressor settings) -> compressed javascript or css";
+        }
+    };
+    {
+        cache.putCache();
+    }
+
+    private File directory = null;
+
+    private CompressionCache() {
+    }
+
+    /**
+     * A directory to store the compressed resources too. Defaults to <code>null</code>, which
+     * means that they are only stored in memory.
+     */
+    public void setDirectory(File dir) {
+        if (dir != null && ! dir.isDirectory() && ! dir.mkdirs()) {
+            log.warn("Could not create " + dir + ", not storing compressed resources on disk");
+            dir = null;
+        }
+        directory = dir;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * The key under which the compressed version of the given input is stored.
+     * @param settings Describes the compressor, including everything which influences its result
+     */
+    public String key(String settings, String input) {
+        return hash.transform(settings + '\n' + input);
+    }
+
+    /**
+     * Returns the compressed version of the input, which was stored under the given key, or
+     * <code>null</code> if there is none yet.
+     */
+    public String get(String key) {
+        String result = cache.get(key);
+        if (result == null && directory != null) {
+            File file = new File(directory, key);
+            if (file.isFile()) {
+                try {
+                    Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+                    try {
+                        StringWriter writer = new StringWriter((int) file.length());
+                        org.mmbase.util.IOUtil.copy(reader, writer);
+                        result = writer.toString();
+                    } finally {
+                        reader.close();
+                    }
+                    cache.put(key, result);
+                } catch (IOException ioe) {
+                    log.warn(file + ": " + ioe.getMessage());
+                }
+            }
+        }
+        return result;
+    }
+
+    public void put(String key, String compressed) {
+        cache.put(key, compressed);
+        File dir = directory;
+        if (dir != null) {
+            File file = new File(dir, key);
+            if (! file.exists()) {
+                try {
+                    // written to a temporary file first, so that others never read half files
+                    File temp = File.createTempFile(key, ".tmp", dir);
+                    Writer writer = new OutputStreamWriter(new FileOutputStream(temp), "UTF-8");
+                    try {
+                        writer.write(compressed);
+                    } finally {
+                        writer.close();
+                    }
+                    if (! temp.renameTo(file)) {
+                        temp.delete();
+                    }
+                } catch (IOException ioe) {
+                    log.warn(file + ": " + ioe.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Compresses all resources of <code>loader</code> (recursively) matching the pattern with the
+     * given compressor, in parallel, and in the background. Since the results are cached, the
+     * resources are served compressed at once later.
+     *
+     * @param compressor E.g. a {@link YUIJavaScriptCompressor}, configured as it will be used later
+     * @param pattern E.g. {@link #JAVASCRIPT}
+     * @return The number of compressed resources, when ready.
+     */
+    public Future<Integer> precompile(final ResourceLoader loader, final CharTransformer compressor, final Pattern pattern) {
+        return ThreadPools.jobsExecutor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    long start = System.currentTimeMillis();
+                    List<Future<?>> jobs = new ArrayList<Future<?>>();
+                    for (final String name : loader.getResourcePaths(pattern, true)) {
+                        jobs.add(ThreadPools.forkJoinPool.submit(new Runnable() {
+                                @Override
+                                public void run() {
+                                    try {
+                                        Reader reader = loader.getReader(name);
+                                        if (reader == null) {
+                                            return;
+                                        }
+                                        try {
+                                            compressor.transform(reader, new StringWriter());
+                                        } finally {
+                                            reader.close();
+                                        }
+                                    } catch (IOException ioe) {
+                                        log.warn(name + ": " + ioe.getMessage());
+                                    }
+                                }
+                            }));
+                    }
+                    for (Future<?> job : jobs) {
+                        job.get();
+                    }
+                    log.service("Compressed " + jobs.size() + " resources of " + loader + " in " + (System.currentTimeMillis() - start) + " ms with " + compressor);
+                    return jobs.size();
+                }
+            });
+    }
+
+    /**
+     * Precompiles all javascript and css of the given loader, with default compressors.
+     */
+    public void precompile(ResourceLoader loader) {
+        precompile(loader, new YUIJavaScriptCompressor(), JAVASCRIPT);
+        precompile(loader, new YUICSSCompressor(), CSS);
+    }
+
+    @Override
+    public String toString() {
+        return cache.toString() + (directory == null ? "" : " (" + directory + ")");
+    }
+
+}
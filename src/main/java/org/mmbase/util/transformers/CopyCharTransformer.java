@@ -9,6 +9,7 @@ See http://www.MMBase.org/license
 */
 package org.mmbase.util.transformers;
 
+import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
 
@@ -24,7 +25,7 @@ import org.mmbase.util.IOUtil;
  * @version $Id$
  */
 
-public class CopyCharTransformer extends ReaderTransformer  {
+public class CopyCharTransformer extends ReaderTransformer implements StreamingCharTransformer {
     private static final long serialVersionUID = 0L;
     public static final CopyCharTransformer INSTANCE = new CopyCharTransformer();
 
@@ -43,6 +44,21 @@ public class CopyCharTransformer extends ReaderTransformer  {
         return w;
     }
 
+    // implementation, javadoc inherited
+    @Override
+    public Writer transformingWriter(Writer w) {
+        return new StreamingWriter(w) {
+            @Override
+            public void write(char[] cbuf, int off, int len) throws IOException {
+                out.write(cbuf, off, len);
+            }
+            @Override
+            public void write(String str, int off, int len) throws IOException {
+                out.write(str, off, len);
+            }
+        };
+    }
+
     // implementation, javadoc inherited
     @Override
     public Writer transformBack(Reader r, Writer w) {
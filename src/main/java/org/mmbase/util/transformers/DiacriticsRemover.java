@@ -11,11 +11,19 @@ package org.mmbase.util.transformers;
 
 import java.io.*;
 import java.text.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.regex.*;
 import org.mmbase.util.logging.*;
 
 /**
  * This transformer removes all diacritics from the characters of a string.
+ *
+ * This is done with a table, which contains for every character the result of removing the
+ * diacritics from its canonical decomposition. Every part of it is built only once, so
+ * transforming costs a lookup per character, and nothing at all if there is nothing to remove. Only strings with
+ * characters which need context (combining marks which are not removed, and surrogates) are
+ * still normalized as a whole.
+ *
  * @author Michiel Meeuwissen
  * @since MMBase-1.9.6
  */
@@ -29,9 +37,139 @@ public class DiacriticsRemover extends StringTransformer {
     // http://www.fileformat.info/info/unicode/block/combining_diacritical_marks/index.htm
     // [\u0300-\u0367]+"
 
+    /**
+     * Marks characters for which the table cannot be used.
+     */
+    private static final String COMPLEX = new String("COMPLEX");
+
+    /**
+     * The table, in pages of 256 characters, which are only built when needed. For every
+     * character the replacement, or <code>null</code> if it remains itself.
+     */
+    private static final AtomicReferenceArray<String[]> TABLE = new AtomicReferenceArray<String[]>(256);
+
+    private static String[] buildPage(int page) {
+        String[] replacements = new String[256];
+        for (int i = 0; i < 256; i++) {
+            char c = (char) ((page << 8) + i);
+            if (Character.isSurrogate(c)) {
+                replacements[i] = COMPLEX;
+                continue;
+            }
+            String replacement = removeDiacritics(String.valueOf(c));
+            for (int j = 0; j < replacement.length(); j++) {
+                switch(Character.getType(replacement.charAt(j))) {
+                case Character.NON_SPACING_MARK:
+                case Character.COMBINING_SPACING_MARK:
+                case Character.ENCLOSING_MARK:
+                    // normalization may reorder these with neighbouring characters
+                    replacement = COMPLEX;
+                }
+                if (replacement == COMPLEX) break;
+            }
+            if (replacement != COMPLEX && replacement.length() == 1 && replacement.charAt(0) == c) {
+                replacement = null;
+            }
+            replacements[i] = replacement;
+        }
+        return replacements;
+    }
+
+    private static String lookup(char c) {
+        String[] page = TABLE.get(c >> 8);
+        if (page == null) {
+            page = buildPage(c >> 8);
+            TABLE.set(c >> 8, page);
+        }
+        return page[c & 0xff];
+    }
+
+    private static String removeDiacritics(String r) {
+        return DIACRITICS.matcher(Normalizer.normalize(r, Normalizer.Form.NFD)).replaceAll("");
+    }
+
+    /**
+     * Returns the replacement for <code>c</code> (<code>null</code> if it remains itself), which
+     * can be used if {@link #isSimple} for the complete string.
+     */
+    static String getReplacement(char c) {
+        if (c < 128 && c != '^' && c != '`') { // the only ascii characters with diacritics (they are modifier symbols)
+            return null;
+        }
+        return lookup(c);
+    }
+
+    /**
+     * Whether for every character of <code>s</code> {@link #getReplacement} can be used.
+     */
+    static boolean isSimple(CharSequence s) {
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c >= 128 && lookup(c) == COMPLEX) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOfReplacement(CharSequence s, int from) {
+        int length = s.length();
+        for (int i = from; i < length; i++) {
+            if (getReplacement(s.charAt(i)) != null) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void remove(CharSequence s, int from, Appendable out) throws IOException {
+        int clean = 0;
+        for (int i = from; i != -1; i = indexOfReplacement(s, clean)) {
+            out.append(s, clean, i);
+            out.append(getReplacement(s.charAt(i)));
+            clean = i + 1;
+        }
+        out.append(s, clean, s.length());
+    }
+
+    /**
+     * Removes the diacritics of <code>s</code>, and appends the result to <code>out</code> (which
+     * may e.g. be a Writer).
+     * @since MMBase-2.0
+     */
+    public void transform(CharSequence s, Appendable out) throws IOException {
+        int first = indexOfReplacement(s, 0);
+        if (first == -1) {
+            out.append(s);
+        } else if (isSimple(s)) {
+            remove(s, first, out);
+        } else {
+            out.append(removeDiacritics(s.toString()));
+        }
+    }
+
+    /**
+     * @return The String without diacritics, or <code>r</code> itself if it had none
+     */
     @Override
     public String transform(String r) {
-        return DIACRITICS.matcher(Normalizer.normalize(r, Normalizer.Form.NFD)).replaceAll("");
+        if (r == null) return null;
+        int first = indexOfReplacement(r, 0);
+        if (first == -1) {
+            return r;
+        }
+        if (! isSimple(r)) {
+            return removeDiacritics(r);
+        }
+        StringBuilder sb = new StringBuilder(r.length());
+        try {
+            remove(r, first, sb);
+        } catch (IOException ioe) {
+            // StringBuilder doesn't throw that
+            throw new IllegalStateException(ioe);
+        }
+        return sb.toString();
     }
 
 }
@@ -0,0 +1,86 @@
+/*
+
+This software is OSI Certified Open Source Software.
+OSI Certified is a certification mark of the Open Source Initiative.
+
+The license (Mozilla version 1.0) can be read at the MMBase site.
+See http://www.MMBase.org/license
+
+*/
+package org.mmbase.util.transformers;
+
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Message digests other than {@link MD5}: SHA-256, SHA-512, and the non-cryptographic (but
+ * fast) {@link MurmurHash3}, in 64 and 128 bits. Strings are digested as UTF-8.
+ *
+ * @author Michiel Meeuwissen
+ * @since MMBase-2.0
+ */
+
+public class Digest extends DigestTransformer implements ConfigurableTransformer {
+    private static final long serialVersionUID = 0L;
+
+    public static final int SHA256      = 1;
+    public static final int SHA512      = 2;
+    public static final int MURMUR3_64  = 3;
+    public static final int MURMUR3_128 = 4;
+
+    private int to = SHA256;
+
+    public Digest() {
+    }
+
+    public Digest(int conf) {
+        configure(conf);
+    }
+
+    @Override
+    public void configure(int t) {
+        to = t;
+        resetDigests();
+    }
+
+    @Override
+    protected MessageDigest newDigest() {
+        switch(to) {
+        case SHA256:      return getInstance("SHA-256");
+        case SHA512:      return getInstance("SHA-512");
+        case MURMUR3_64:  return new MurmurHash3(64);
+        case MURMUR3_128: return new MurmurHash3(128);
+        default: throw new UnknownCodingException(getClass(), "newDigest", to);
+        }
+    }
+
+    /**
+     * Used when registering this class as a possible Transformer
+     */
+    @Override
+    public Map<String,Config> transformers() {
+        Map<String,Config> h = new HashMap<String,Config>();
+        h.put("SHA256",      new Config(Digest.class, SHA256, "SHA-256 message digest"));
+        h.put("SHA512",      new Config(Digest.class, SHA512, "SHA-512 message digest"));
+        h.put("MURMUR3_64",  new Config(Digest.class, MURMUR3_64, "64 bits MurmurHash3 (not cryptographic, but fast)"));
+        h.put("MURMUR3_128", new Config(Digest.class, MURMUR3_128, "128 bits MurmurHash3 (not cryptographic, but fast)"));
+        return h;
+    }
+
+    @Override
+    public String getEncoding() {
+        switch(to) {
+        case SHA256:      return "SHA256";
+        case SHA512:      return "SHA512";
+        case MURMUR3_64:  return "MURMUR3_64";
+        case MURMUR3_128: return "MURMUR3_128";
+        default: throw new UnknownCodingException(getClass(), "getEncoding", to);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getEncoding();
+    }
+}
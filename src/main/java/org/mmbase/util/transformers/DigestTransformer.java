@@ -0,0 +1,215 @@
+/*
+
+This software is OSI Certified Open Source Software.
+OSI Certified is a certification mark of the Open Source Initiative.
+
+The license (Mozilla version 1.0) can be read at the MMBase site.
+See http://www.MMBase.org/license
+
+*/
+package org.mmbase.util.transformers;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+
+import org.mmbase.util.SerializableInputStream;
+import org.mmbase.util.logging.*;
+
+/**
+ * Base class for transformers which calculate a {@link MessageDigest}, and present it as a
+ * (lowercase) hexadecimal String. Besides Strings, these can digest byte arrays, {@link
+ * ByteBuffer}s and streams. Everything is digested in blocks, so big streams are never completely
+ * in memory. Every thread uses its own MessageDigest, so one instance can be shared.
+ *
+ * Decoding is of course not possible.
+ *
+ * @author Michiel Meeuwissen
+ * @since MMBase-2.0
+ */
+
+public abstract class DigestTransformer extends StringTransformer {
+    private static final long serialVersionUID = 0L;
+    private static final Logger log = Logging.getLoggerInstance(DigestTransformer.class);
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int BUFFER_SIZE = 8192;
+
+    protected static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private transient ThreadLocal<MessageDigest> digests;
+
+    /**
+     * Creates a new instance of the MessageDigest this transformer uses.
+     */
+    protected abstract MessageDigest newDigest();
+
+    /**
+     * Utility for {@link #newDigest}, for the algorithms every Java platform must support.
+     */
+    protected static MessageDigest getInstance(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (java.security.NoSuchAlgorithmException nsae) {
+            throw new IllegalStateException(nsae.getMessage(), nsae);
+        }
+    }
+
+    /**
+     * The encoding of the characters which are digested. Defaults to UTF-8.
+     */
+    protected Charset getCharset() {
+        return UTF8;
+    }
+
+    /**
+     * Must be called if the result of {@link #newDigest} changes.
+     */
+    protected void resetDigests() {
+        digests = null;
+    }
+
+    /**
+     * Takes the MessageDigest of the current thread. It is taken out while in use, so if the
+     * same thread needs another one in the mean time, that one is simply created.
+     */
+    private MessageDigest takeDigest() {
+        ThreadLocal<MessageDigest> d = digests;
+        if (d == null) {
+            d = new ThreadLocal<MessageDigest>();
+            digests = d;
+        }
+        MessageDigest md = d.get();
+        if (md == null) {
+            md = newDigest();
+        } else {
+            d.set(null);
+        }
+        return md;
+    }
+
+    private byte[] release(MessageDigest md) {
+        byte[] result = md.digest(); // this also resets it
+        ThreadLocal<MessageDigest> d = digests;
+        if (d != null) {
+            d.set(md);
+        }
+        return result;
+    }
+
+    public byte[] digest(byte[] bytes) {
+        MessageDigest md = takeDigest();
+        md.update(bytes);
+        return release(md);
+    }
+
+    /**
+     * Digests the remaining bytes of the buffer.
+     */
+    public byte[] digest(ByteBuffer bytes) {
+        MessageDigest md = takeDigest();
+        md.update(bytes);
+        return release(md);
+    }
+
+    /**
+     * Digests the stream until its end. A {@link SerializableInputStream} is digested completely
+     * (from the start), and reset afterwards, so it can still be used.
+     */
+    public byte[] digest(InputStream in) throws IOException {
+        SerializableInputStream sis = in instanceof SerializableInputStream ? (SerializableInputStream) in : null;
+        if (sis != null) {
+            sis.reset();
+        }
+        MessageDigest md = takeDigest();
+        try {
+            byte[] buf = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                md.update(buf, 0, n);
+            }
+        } catch (IOException ioe) {
+            md.reset();
+            release(md);
+            throw ioe;
+        }
+        if (sis != null) {
+            sis.reset();
+        }
+        return release(md);
+    }
+
+    /**
+     * Digests the characters read from the reader, encoded with {@link #getCharset}.
+     */
+    public byte[] digest(Reader in) throws IOException {
+        final MessageDigest md = takeDigest();
+        try {
+            Writer writer = new OutputStreamWriter(new OutputStream() {
+                    @Override
+                    public void write(int b) {
+                        md.update((byte) b);
+                    }
+                    @Override
+                    public void write(byte[] b, int off, int len) {
+                        md.update(b, off, len);
+                    }
+                }, getCharset());
+            char[] buf = new char[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                writer.write(buf, 0, n);
+            }
+            writer.flush();
+        } catch (IOException ioe) {
+            md.reset();
+            release(md);
+            throw ioe;
+        }
+        return release(md);
+    }
+
+    public String transform(byte[] bytes) {
+        return toHex(digest(bytes));
+    }
+
+    public String transform(ByteBuffer bytes) {
+        return toHex(digest(bytes));
+    }
+
+    /**
+     * @see #digest(InputStream)
+     */
+    public String transform(InputStream in) throws IOException {
+        return toHex(digest(in));
+    }
+
+    @Override
+    public String transform(String s) {
+        return toHex(digest(s.getBytes(getCharset())));
+    }
+
+    /**
+     * Digests the Reader in blocks, and writes the digest to the Writer.
+     */
+    @Override
+    public Writer transform(Reader r, Writer w) {
+        try {
+            w.write(toHex(digest(r)));
+        } catch (IOException e) {
+            log.error(e.toString(), e);
+        }
+        return w;
+    }
+
+    public static String toHex(byte[] bytes) {
+        char[] result = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            result[2 * i]     = HEX[(bytes[i] >> 4) & 0xf];
+            result[2 * i + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(result);
+    }
+
+}
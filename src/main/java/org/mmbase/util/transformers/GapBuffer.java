@@ -0,0 +1,168 @@
+/*
+
+This software is OSI Certified Open Source Software.
+OSI Certified is a certification mark of the Open Source Initiative.
+
+The license (Mozilla version 1.0) can be read at the MMBase site.
+See http://www.MMBase.org/license
+
+*/
+package org.mmbase.util.transformers;
+
+/**
+ * A mutable character sequence with (a subset of) the methods of {@link StringBuilder}, which is
+ * efficient if the edits are all near each other. The characters after the last edit are not
+ * shifted on every insert or delete, but only once, when an edit happens elsewhere.
+ *
+ * {@link XmlField} uses this for the passes over 'rich' text, which scan the text from the start
+ * to the end, inserting and deleting along the way. With a StringBuilder that made them
+ * quadratic.
+ *
+ * Invalid indices cause the same exceptions as they would with a StringBuilder.
+ *
+ * @author Michiel Meeuwissen
+ * @since MMBase-2.0
+ */
+final class GapBuffer implements CharSequence {
+
+    private char[] buf;
+    private int gapStart;
+    private int gapEnd;
+
+    GapBuffer(CharSequence s) {
+        int length = s.length();
+        buf = new char[length + Math.max(16, length / 4)];
+        for (int i = 0; i < length; i++) {
+            buf[i] = s.charAt(i);
+        }
+        gapStart = length;
+        gapEnd = buf.length;
+    }
+
+    @Override
+    public int length() {
+        return buf.length - (gapEnd - gapStart);
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length()) {
+            throw new StringIndexOutOfBoundsException(index);
+        }
+        return index < gapStart ? buf[index] : buf[index + gapEnd - gapStart];
+    }
+
+    /**
+     * Moves the gap to the given position, and makes it at least <code>size</code> large.
+     */
+    private void gap(int pos, int size) {
+        if (pos < gapStart) {
+            int count = gapStart - pos;
+            System.arraycopy(buf, pos, buf, gapEnd - count, count);
+            gapStart -= count;
+            gapEnd -= count;
+        } else if (pos > gapStart) {
+            int count = pos - gapStart;
+            System.arraycopy(buf, gapEnd, buf, gapStart, count);
+            gapStart += count;
+            gapEnd += count;
+        }
+        if (gapEnd - gapStart < size) {
+            int after = buf.length - gapEnd;
+            char[] newBuf = new char[Math.max(buf.length * 2, length() + size + 16)];
+            System.arraycopy(buf, 0, newBuf, 0, gapStart);
+            System.arraycopy(buf, gapEnd, newBuf, newBuf.length - after, after);
+            gapEnd = newBuf.length - after;
+            buf = newBuf;
+        }
+    }
+
+    GapBuffer insert(int offset, String str) {
+        if (offset < 0 || offset > length()) {
+            throw new StringIndexOutOfBoundsException("offset " + offset + ", length " + length());
+        }
+        int l = str.length();
+        gap(offset, l);
+        str.getChars(0, l, buf, gapStart);
+        gapStart += l;
+        return this;
+    }
+
+    GapBuffer delete(int start, int end) {
+        int length = length();
+        if (end > length) {
+            end = length;
+        }
+        if (start < 0 || start > end) {
+            throw new StringIndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+        }
+        gap(start, 0);
+        gapEnd += end - start;
+        return this;
+    }
+
+    GapBuffer deleteCharAt(int index) {
+        if (index < 0 || index >= length()) {
+            throw new StringIndexOutOfBoundsException(index);
+        }
+        return delete(index, index + 1);
+    }
+
+    GapBuffer replace(int start, int end, String str) {
+        delete(start, end);
+        return insert(start, str);
+    }
+
+    int indexOf(String str) {
+        return indexOf(str, 0);
+    }
+
+    /**
+     * As {@link String#indexOf(String, int)}
+     */
+    int indexOf(String str, int fromIndex) {
+        int length = length();
+        int l = str.length();
+        if (fromIndex < 0) {
+            fromIndex = 0;
+        }
+        if (l == 0) {
+            return fromIndex <= length ? fromIndex : length;
+        }
+        char first = str.charAt(0);
+        int max = length - l;
+        int gapLength = gapEnd - gapStart;
+        OUTER:
+        for (int i = fromIndex; i <= max; i++) {
+            if ((i < gapStart ? buf[i] : buf[i + gapLength]) != first) continue;
+            for (int j = 1; j < l; j++) {
+                int k = i + j;
+                if ((k < gapStart ? buf[k] : buf[k + gapLength]) != str.charAt(j)) continue OUTER;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().substring(start, end);
+    }
+
+    /**
+     * Replaces the contents of the given StringBuilder with the contents of this buffer.
+     */
+    void copyTo(StringBuilder sb) {
+        sb.setLength(0);
+        sb.append(buf, 0, gapStart);
+        sb.append(buf, gapEnd, buf.length - gapEnd);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder(length());
+        copyTo(result);
+        return result.toString();
+    }
+
+}
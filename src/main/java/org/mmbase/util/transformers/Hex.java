@@ -21,7 +21,7 @@ import java.util.Map;
  * @version $Id$
  */
 
-public class Hex extends ByteArrayToCharTransformer implements ByteToCharTransformer, ConfigurableTransformer {
+public class Hex extends BufferedByteToCharTransformer implements ConfigurableTransformer {
     private static final long serialVersionUID = 0L;
     private final static String ENCODING = "HEX";
     private final static int HEX = 1;
@@ -45,54 +45,60 @@ public class Hex extends ByteArrayToCharTransformer implements ByteToCharTransfo
     }
 
 
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+    @Override
+    protected int getByteBlockSize() {
+        return 1;
+    }
+
+    @Override
+    protected int getCharBlockSize() {
+        return 2;
+    }
+
+    @Override
+    protected int encodedLength(int length) {
+        return length * 2;
+    }
+
+    @Override
+    protected int decodedLength(char[] in, int off, int len) {
+        return len / 2;
+    }
+
     /**
-     * Transform a bytearray to a string of hexadecimal digits.
+     * Transform bytes to hexadecimal digits.
      */
     @Override
-    public String transform(byte[] bytes) {
-        StringBuilder strbuf = new StringBuilder(bytes.length * 2);
-        for (byte element : bytes) {
-            if ((element & 0xff) < 0x10) {
-                strbuf.append("0");
-            }
-            strbuf.append(Long.toString(element & 0xff, 16));
+    protected int encode(byte[] in, int off, int len, char[] out, int outOff) {
+        int op = outOff;
+        for (int i = off; i < off + len; i++) {
+            int b = in[i] & 0xff;
+            out[op++] = DIGITS[b >> 4];
+            out[op++] = DIGITS[b & 0xf];
         }
+        return op - outOff;
+    }
 
-        return strbuf.toString();
+    private static int digit(char c) {
+        if (c >= '0' && c <= '9') return c - '0';
+        if (c >= 'a' && c <= 'f') return 10 + c - 'a';
+        if (c >= 'A' && c <= 'F') return 10 + c - 'A';
+        throw new IllegalArgumentException("the entered string to decode properly was wrong: '" + c + "' is not a hexadecimal digit");
     }
 
     /**
-     * Transform a string of hexadecimal digits to a bytearray.
-     * @param r The string to transform
-     * @return an array of bytes
-     * @throws IllegalArgumentException whenever the input string is not correctly formatted.
+     * Transform hexadecimal digits to bytes.
+     * @throws IllegalArgumentException whenever the input is not correctly formatted.
      */
     @Override
-    public byte[] transformBack(String r) {
-        try {
-            int strlen = r.length();
-            byte[] retval = new byte[strlen/2];
-            for (int i=0; i<strlen; i+=2) {
-                char c1 = r.charAt(i);
-                char c2 = r.charAt(i+1);
-                int b = 0;
-                if (c1 >= '0' && c1 <= '9') {
-                    b += 16 * (c1 - '0');
-                } else {
-                    b += 16 * (10 + c1 - 'a');
-                }
-                if (c2 >= '0' && c2 <= '9') {
-                    b += (c2 - '0');
-                } else {
-                    b += (10 + c2 - 'a');
-                }
-                retval[i/2] = (byte)b;
-            }
-            return retval;
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new IllegalArgumentException("the entered string to decode properly was wrong: " + e);
+    protected int decode(char[] in, int off, int len, byte[] out, int outOff, boolean last) {
+        int op = outOff;
+        for (int i = off; i < off + len; i += 2) {
+            out[op++] = (byte) ((digit(in[i]) << 4) | digit(in[i + 1]));
         }
+        return op - outOff;
     }
 
     @Override
@@ -0,0 +1,515 @@
+/*
+
+This software is OSI Certified Open Source Software.
+OSI Certified is a certification mark of the Open Source Initiative.
+
+The license (Mozilla version 1.0) can be read at the MMBase site.
+See http://www.MMBase.org/license
+
+*/
+package org.mmbase.util.transformers;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A small, forgiving, streaming tokenizer for HTML, in the spirit of SAX. It reads the input only
+ * once, and reports text, character references, tags and comments to a {@link Handler}. It does
+ * not build a tree, does not imply missing tags, and does not validate anything. Only the contents
+ * of the elements which browsers do not tokenize either (like <code>script</code>, <code>style</code>
+ * and <code>textarea</code>) are treated specially, because whatever looks like markup in there,
+ * e.g. the start of a comment, is not.
+ *
+ * Tag and attribute names are reported in lower case. Markup which cannot be completed before the
+ * end of the input is dropped.
+ *
+ * @author Michiel Meeuwissen
+ * @since MMBase-2.0
+ * @see TagStripper
+ */
+final class HtmlTokenizer {
+
+    static final int BUFFER_SIZE = 4096;
+
+    /**
+     * Character references longer than this are not recognized as such.
+     */
+    private static final int MAX_REFERENCE = 32;
+
+    /**
+     * Elements of which the contents are reported with {@link Handler#rawText}, until their end tag.
+     */
+    static final Set<String> RAW_TEXT = new HashSet<String>(Arrays.asList(
+            "script", "style", "xmp", "iframe", "noembed", "noframes", "noscript", "plaintext"));
+
+    /**
+     * Elements of which the contents are text, until their end tag. Character references are
+     * recognized in there, tags and comments are not.
+     */
+    static final Set<String> RCDATA = new HashSet<String>(Arrays.asList("textarea", "title"));
+
+    /**
+     * Receives the tokens of an HTML document, in order.
+     */
+    interface Handler {
+        /**
+         * Text, not containing any character references. A '&lt;' or '&amp;' in it can only come
+         * from the input literally, because it did not start a tag or a reference.
+         */
+        void text(char[] buf, int off, int len) throws IOException;
+
+        /**
+         * The contents of one of the {@link #RAW_TEXT} elements, which are not tokenized.
+         * @param element The name of the element
+         */
+        void rawText(String element, char[] buf, int off, int len) throws IOException;
+
+        /**
+         * A character reference, like <code>&amp;eacute;</code>.
+         * @param name The reference without the surrounding <code>&amp;</code> and <code>;</code>, so e.g. 'eacute', '#233' or '#xe9'.
+         */
+        void reference(String name) throws IOException;
+
+        /**
+         * @param attributes The attributes, with their values not yet decoded (see {@link
+         * HtmlTokenizer#decode}). The value of an attribute without value is <code>null</code>.
+         * @param empty Whether the tag was closed with <code>/&gt;</code>
+         */
+        void startTag(String name, Map<String, String> attributes, boolean empty) throws IOException;
+
+        void endTag(String name) throws IOException;
+
+        void comment(String data) throws IOException;
+
+        /**
+         * Called when the input is exhausted.
+         */
+        void endDocument() throws IOException;
+    }
+
+    private final Handler handler;
+
+    private Reader in;
+    private final char[] buf = new char[BUFFER_SIZE];
+    private int pos = 0;
+    private int len = 0;
+    private boolean eof = false;
+    private final StringBuilder token = new StringBuilder();
+
+    HtmlTokenizer(Handler h) {
+        handler = h;
+    }
+
+    /**
+     * Tokenizes the complete Reader.
+     */
+    void parse(Reader reader) throws IOException {
+        in = reader;
+        pos = len = 0;
+        eof = false;
+        while (true) {
+            int start = pos;
+            while (pos < len) {
+                char c = buf[pos];
+                if (c == '<' || c == '&') break;
+                pos++;
+            }
+            if (pos > start) {
+                handler.text(buf, start, pos - start);
+            }
+            if (pos == len) {
+                if (! fill()) break;
+                continue;
+            }
+            if (buf[pos++] == '<') {
+                markup();
+            } else {
+                reference();
+            }
+        }
+        handler.endDocument();
+    }
+
+    private boolean fill() throws IOException {
+        if (eof) return false;
+        int read;
+        do {
+            read = in.read(buf, 0, buf.length);
+        } while (read == 0);
+        if (read == -1) {
+            eof = true;
+            pos = len = 0;
+            return false;
+        }
+        pos = 0;
+        len = read;
+        return true;
+    }
+
+    private int read() throws IOException {
+        if (pos == len && ! fill()) {
+            return -1;
+        }
+        return buf[pos++];
+    }
+
+    /**
+     * Puts back the last character returned by {@link #read}. That character is always still in
+     * the buffer.
+     */
+    private void unread(int c) {
+        if (c != -1) {
+            pos--;
+        }
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f';
+    }
+
+    private static boolean isLetter(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static int lower(int c) {
+        return (c >= 'A' && c <= 'Z') ? c + ('a' - 'A') : c;
+    }
+
+    private void text(String s) throws IOException {
+        handler.text(s.toCharArray(), 0, s.length());
+    }
+
+    /**
+     * Just after a '&amp;'.
+     */
+    private void reference() throws IOException {
+        token.setLength(0);
+        int c = read();
+        while (c != -1 && (isLetter(c) || (c >= '0' && c <= '9') || (c == '#' && token.length() == 0)) && token.length() < MAX_REFERENCE) {
+            token.append((char) c);
+            c = read();
+        }
+        if (c == ';' && token.length() > 0) {
+            handler.reference(token.toString());
+        } else {
+            unread(c);
+            text("&" + token);
+        }
+    }
+
+    /**
+     * Just after a '&lt;'.
+     */
+    private void markup() throws IOException {
+        int c = read();
+        if (isLetter(c)) {
+            startTag(c);
+        } else if (c == '/') {
+            c = read();
+            if (isLetter(c)) {
+                String name = name(c);
+                if (skipUntil('>')) {
+                    handler.endTag(name);
+                }
+            } else if (c != '>') {
+                skipUntil('>');
+            }
+        } else if (c == '!') {
+            c = read();
+            if (c == '-') {
+                c = read();
+                if (c == '-') {
+                    comment();
+                    return;
+                }
+            }
+            unread(c);
+            declaration();
+        } else if (c == '?') {
+            // processing instruction
+            skipUntil('>');
+        } else {
+            // not markup after all
+            unread(c);
+            text("<");
+        }
+    }
+
+    /**
+     * Reads a tag or attribute name, starting with <code>c</code>.
+     */
+    private String name(int c) throws IOException {
+        token.setLength(0);
+        while (c != -1 && ! isWhitespace(c) && c != '/' && c != '>') {
+            token.append((char) lower(c));
+            c = read();
+        }
+        unread(c);
+        return token.toString();
+    }
+
+    /**
+     * @return false if the input ended first
+     */
+    private boolean skipUntil(char end) throws IOException {
+        while (true) {
+            int c = read();
+            if (c == -1) return false;
+            if (c == end) return true;
+        }
+    }
+
+    private int skipWhitespace() throws IOException {
+        int c = read();
+        while (isWhitespace(c)) {
+            c = read();
+        }
+        return c;
+    }
+
+    private void startTag(int first) throws IOException {
+        String name = name(first);
+        Map<String, String> attributes = new LinkedHashMap<String, String>();
+        boolean empty = false;
+        while (true) {
+            int c = skipWhitespace();
+            if (c == -1) {
+                return;
+            }
+            if (c == '>') {
+                break;
+            }
+            if (c == '/') {
+                empty = true;
+                continue;
+            }
+            empty = false;
+            token.setLength(0);
+            while (c != -1 && ! isWhitespace(c) && c != '/' && c != '>' && (c != '=' || token.length() == 0)) {
+                token.append((char) lower(c));
+                c = read();
+            }
+            String attribute = token.toString();
+            if (isWhitespace(c)) {
+                c = skipWhitespace();
+            }
+            String value = null;
+            if (c == '=') {
+                c = skipWhitespace();
+                token.setLength(0);
+                if (c == '"' || c == '\'') {
+                    int quote = c;
+                    c = read();
+                    while (c != quote) {
+                        if (c == -1) return;
+                        token.append((char) c);
+                        c = read();
+                    }
+                } else {
+                    while (c != -1 && ! isWhitespace(c) && c != '>') {
+                        token.append((char) c);
+                        c = read();
+                    }
+                    unread(c);
+                }
+                value = token.toString();
+            } else {
+                unread(c);
+            }
+            if (! attributes.containsKey(attribute)) {
+                attributes.put(attribute, value);
+            }
+        }
+        handler.startTag(name, attributes, empty);
+        if (! empty && (RAW_TEXT.contains(name) || RCDATA.contains(name))) {
+            rawText(name);
+        }
+    }
+
+    /**
+     * Reads everything until the end tag of the given element, and reports it as raw text, or, for
+     * the {@link #RCDATA} elements, as text and character references.
+     */
+    private void rawText(String name) throws IOException {
+        boolean rcdata = RCDATA.contains(name);
+        String end = "</" + name;
+        token.setLength(0);
+        int matched = 0;
+        while (true) {
+            int c = read();
+            if (c == -1) {
+                token.append(end, 0, matched);
+                flushRawText(name);
+                return;
+            }
+            if (matched == end.length()) {
+                if (isWhitespace(c) || c == '/' || c == '>') {
+                    flushRawText(name);
+                    if (c == '>' || skipUntil('>')) {
+                        handler.endTag(name);
+                    }
+                    return;
+                }
+                token.append(end);
+                matched = 0;
+            }
+            if (lower(c) == end.charAt(matched)) {
+                matched++;
+            } else {
+                token.append(end, 0, matched);
+                matched = 0;
+                if (c == '<') {
+                    matched = 1;
+                } else if (c == '&' && rcdata) {
+                    flushRawText(name);
+                    reference();
+                    token.setLength(0);
+                } else {
+                    token.append((char) c);
+                }
+            }
+            if (token.length() >= BUFFER_SIZE) {
+                flushRawText(name);
+            }
+        }
+    }
+
+    private void flushRawText(String name) throws IOException {
+        if (token.length() > 0) {
+            char[] raw = new char[token.length()];
+            token.getChars(0, raw.length, raw, 0);
+            if (RCDATA.contains(name)) {
+                handler.text(raw, 0, raw.length);
+            } else {
+                handler.rawText(name, raw, 0, raw.length);
+            }
+            token.setLength(0);
+        }
+    }
+
+    /**
+     * Just after <code>&lt;!--</code>. Like browsers do, the comment also ends at
+     * <code>--!&gt;</code>, and <code>&lt;!--&gt;</code> and <code>&lt;!---&gt;</code> are
+     * complete (empty) comments.
+     */
+    private void comment() throws IOException {
+        token.setLength(0);
+        while (true) {
+            int c = read();
+            if (c == -1) {
+                return;
+            }
+            token.append((char) c);
+            if (c == '>') {
+                int l = token.length();
+                if (l == 1 || (l == 2 && token.charAt(0) == '-')) {
+                    handler.comment("");
+                    return;
+                }
+                int end = l >= 4 && token.charAt(l - 2) == '!' ? l - 2 : l - 1;
+                if (end >= 2 && token.charAt(end - 1) == '-' && token.charAt(end - 2) == '-') {
+                    token.setLength(end - 2);
+                    handler.comment(token.toString());
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Just after <code>&lt;!</code>, e.g. a doctype or a CDATA section. These are ignored.
+     */
+    private void declaration() throws IOException {
+        token.setLength(0);
+        while (true) {
+            int c = read();
+            if (c == -1) {
+                return;
+            }
+            token.append((char) c);
+            if (c == '>') {
+                int l = token.length();
+                if (token.indexOf("[CDATA[") != 0 || (l >= 3 && token.charAt(l - 2) == ']' && token.charAt(l - 3) == ']')) {
+                    return;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * The character a character reference refers to, or <code>null</code> if it is not known.
+     * @param name The reference without '&amp;' and ';'
+     */
+    static String resolve(String name) {
+        if (name.startsWith("#")) {
+            try {
+                int codePoint = name.length() > 1 && (name.charAt(1) == 'x' || name.charAt(1) == 'X') ?
+                    Integer.parseInt(name.substring(2), 16) :
+                    Integer.parseInt(name.substring(1));
+                if (codePoint <= 0 || codePoint > Character.MAX_CODE_POINT) {
+                    return null;
+                }
+                return new String(Character.toChars(codePoint));
+            } catch (NumberFormatException nfe) {
+                return null;
+            }
+        }
+        if (name.equals("amp")) return "&";
+        if (name.equals("apos")) return "'";
+        if (name.equals("nbsp")) return "\u00a0";
+        return Iso1.iso2htmlMappings.get(name);
+    }
+
+    /**
+     * Replaces the character references in an attribute value by the characters they refer
+     * to. Like browsers do, numeric references are also recognized without the closing ';'.
+     */
+    static String decode(String value) {
+        int amp = value.indexOf('&');
+        if (amp == -1) {
+            return value;
+        }
+        StringBuilder result = new StringBuilder(value.length());
+        int i = 0;
+        while (amp != -1) {
+            result.append(value, i, amp);
+            int end = amp + 1;
+            String resolved = null;
+            if (end < value.length() && value.charAt(end) == '#') {
+                end++;
+                boolean hex = end < value.length() && (value.charAt(end) == 'x' || value.charAt(end) == 'X');
+                if (hex) end++;
+                int digits = end;
+                while (end < value.length() && Character.digit(value.charAt(end), hex ? 16 : 10) != -1) {
+                    end++;
+                }
+                if (end > digits) {
+                    resolved = resolve(value.substring(amp + 1, end));
+                    if (end < value.length() && value.charAt(end) == ';') {
+                        end++;
+                    }
+                }
+            } else {
+                while (end < value.length() && Character.isLetterOrDigit(value.charAt(end))) {
+                    end++;
+                }
+                if (end < value.length() && value.charAt(end) == ';') {
+                    resolved = resolve(value.substring(amp + 1, end));
+                    end++;
+                }
+            }
+            if (resolved == null) {
+                result.append('&');
+                i = amp + 1;
+            } else {
+                result.append(resolved);
+                i = end;
+            }
+            amp = value.indexOf('&', i);
+        }
+        result.append(value, i, value.length());
+        return result.toString();
+    }
+
+}
@@ -9,6 +9,7 @@ See http://www.MMBase.org/license
 */
 package org.mmbase.util.transformers;
 
+import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
 
@@ -22,7 +23,7 @@ import org.mmbase.util.logging.*;
  * @version $Id$
  */
 
-public class LowerCaser extends ReaderTransformer  {
+public class LowerCaser extends ReaderTransformer implements StreamingCharTransformer {
     private static final long serialVersionUID = 0L;
     private static final Logger log = Logging.getLoggerInstance(LowerCaser.class);
 
@@ -42,6 +43,23 @@ public class LowerCaser extends ReaderTransformer  {
         return w;
     }
 
+    @Override
+    public Writer transformingWriter(Writer w) {
+        return new StreamingWriter(w) {
+            private char[] result = new char[0];
+            @Override
+            public void write(char[] cbuf, int off, int len) throws IOException {
+                if (result.length < len) {
+                    result = new char[len];
+                }
+                for (int i = 0; i < len; i++) {
+                    result[i] = Character.toLowerCase(cbuf[off + i]);
+                }
+                out.write(result, 0, len);
+            }
+        };
+    }
+
 
     @Override
     public String toString() {
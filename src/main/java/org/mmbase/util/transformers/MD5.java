@@ -9,33 +9,75 @@ See http://www.MMBase.org/license
 */
 package org.mmbase.util.transformers;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+
 import org.mmbase.util.logging.Logger;
 import org.mmbase.util.logging.Logging;
 
 /**
- * Do MD5 encoding. Decoding is of course not possible. MD5 encoding
- * can not be efficiently 'piped', because the complete String is
- * needed. So, be careful 'chaining' it.
+ * Do MD5 encoding. Decoding is of course not possible. The characters are digested as ISO-8859-1,
+ * so the results are the same as of older versions, which did not use {@link MessageDigest}. For
+ * Strings with characters which are not in ISO-8859-1, that old implementation is still used, so
+ * stored results of those remain valid too (they are not the MD5 of any encoding of the String).
  *
  * @author Michiel Meeuwissen
  * @version $Id$
  */
 
-public class MD5 extends StringTransformer  {
+public class MD5 extends DigestTransformer  {
     private static final long serialVersionUID = 0L;
     private static final Logger log = Logging.getLoggerInstance(MD5.class);
 
     private final static String ENCODING = "MD5";
-    private MD5Implementation transformer = new MD5Implementation();
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
 
     @Override
     public String toString() {
         return ENCODING;
     }
 
+    @Override
+    protected MessageDigest newDigest() {
+        return getInstance(ENCODING);
+    }
+
+    @Override
+    protected Charset getCharset() {
+        return ISO_8859_1;
+    }
+
     @Override
     public String transform(String r) {
-        return transformer.calcMD5(r);
+        for (int i = 0; i < r.length(); i++) {
+            if (r.charAt(i) > 0xff) {
+                return new MD5Implementation().calcMD5(r);
+            }
+        }
+        return super.transform(r);
+    }
+
+    /**
+     * Like {@link #transform(String)}. Whether the old implementation must be used, is only known
+     * at the end, so the Reader is not digested in blocks, but read completely first.
+     */
+    @Override
+    public Writer transform(Reader r, Writer w) {
+        try {
+            StringBuilder buf = new StringBuilder();
+            char[] chars = new char[8192];
+            int n;
+            while ((n = r.read(chars)) != -1) {
+                buf.append(chars, 0, n);
+            }
+            w.write(transform(buf.toString()));
+        } catch (IOException e) {
+            log.error(e.toString(), e);
+        }
+        return w;
     }
 
     @Override
@@ -43,6 +85,7 @@ public class MD5 extends StringTransformer  {
         throw new UnsupportedOperationException("transformBack(String) can never be done for MD5(i hope so :p)");
     }
 
+    // The implementation which was used before MessageDigest.
     // from http://pajhome.org.uk/crypt/md5/md5.java.txt
     // With permission of Thomas Weber (tw@orange-interactive.de)
     static class MD5Implementation implements java.io.Serializable {
@@ -216,8 +259,8 @@ public class MD5 extends StringTransformer  {
     }
 
     public static void main(String[] argv) {
-        MD5Implementation transformer = new MD5Implementation();
+        MD5 transformer = new MD5();
         log.debug(transformer);
-        System.out.println(transformer.calcMD5(argv[0]));
+        System.out.println(transformer.transform(argv[0]));
     }
 }
@@ -0,0 +1,183 @@
+/*
+
+This software is OSI Certified Open Source Software.
+OSI Certified is a certification mark of the Open Source Initiative.
+
+The license (Mozilla version 1.0) can be read at the MMBase site.
+See http://www.MMBase.org/license
+
+*/
+package org.mmbase.util.transformers;
+
+import java.security.MessageDigest;
+
+/**
+ * The 128 bits variant for 64 bits platforms of MurmurHash3 (by Austin Appleby, public domain),
+ * with seed 0, as a {@link MessageDigest}. This is not a cryptographic hash, but it is a lot faster
+ * than those, and well distributed, which makes it suitable for e.g. cache keys.
+ *
+ * The digest is h1 followed by h2, both little endian, which is the same as the usual
+ * implementations give. The 64 bits variant is h1 only.
+ *
+ * @author Michiel Meeuwissen
+ * @since MMBase-2.0
+ */
+public class MurmurHash3 extends MessageDigest implements Cloneable {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private final int length;
+    private byte[] tail = new byte[16];
+    private int tailLength;
+    private long h1;
+    private long h2;
+    private long total;
+
+    /**
+     * @param bits 64 or 128
+     */
+    public MurmurHash3(int bits) {
+        super("MURMUR3_" + bits);
+        if (bits != 64 && bits != 128) {
+            throw new IllegalArgumentException("Only 64 and 128 bits are supported (not " + bits + ")");
+        }
+        length = bits / 8;
+    }
+
+    public MurmurHash3() {
+        this(128);
+    }
+
+    private static long getLong(byte[] b, int i) {
+        return (b[i] & 0xffL)
+            | (b[i + 1] & 0xffL) << 8
+            | (b[i + 2] & 0xffL) << 16
+            | (b[i + 3] & 0xffL) << 24
+            | (b[i + 4] & 0xffL) << 32
+            | (b[i + 5] & 0xffL) << 40
+            | (b[i + 6] & 0xffL) << 48
+            | (b[i + 7] & 0xffL) << 56;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        return k1 * C2;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        return k2 * C1;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    private void block(byte[] b, int i) {
+        h1 ^= mixK1(getLong(b, i));
+        h1 = Long.rotateLeft(h1, 27);
+        h1 += h2;
+        h1 = h1 * 5 + 0x52dce729;
+
+        h2 ^= mixK2(getLong(b, i + 8));
+        h2 = Long.rotateLeft(h2, 31);
+        h2 += h1;
+        h2 = h2 * 5 + 0x38495ab5;
+    }
+
+    @Override
+    protected int engineGetDigestLength() {
+        return length;
+    }
+
+    @Override
+    protected void engineUpdate(byte input) {
+        tail[tailLength++] = input;
+        total++;
+        if (tailLength == 16) {
+            block(tail, 0);
+            tailLength = 0;
+        }
+    }
+
+    @Override
+    protected void engineUpdate(byte[] input, int offset, int len) {
+        total += len;
+        if (tailLength > 0) {
+            int n = Math.min(len, 16 - tailLength);
+            System.arraycopy(input, offset, tail, tailLength, n);
+            tailLength += n;
+            offset += n;
+            len -= n;
+            if (tailLength < 16) {
+                return;
+            }
+            block(tail, 0);
+            tailLength = 0;
+        }
+        int end = offset + len - len % 16;
+        for (; offset < end; offset += 16) {
+            block(input, offset);
+        }
+        tailLength = len % 16;
+        System.arraycopy(input, end, tail, 0, tailLength);
+    }
+
+    @Override
+    protected byte[] engineDigest() {
+        long k1 = 0;
+        long k2 = 0;
+        for (int i = tailLength - 1; i >= 8; i--) {
+            k2 = (k2 << 8) | (tail[i] & 0xffL);
+        }
+        for (int i = Math.min(tailLength, 8) - 1; i >= 0; i--) {
+            k1 = (k1 << 8) | (tail[i] & 0xffL);
+        }
+        long r1 = h1 ^ (tailLength > 0 ? mixK1(k1) : 0);
+        long r2 = h2 ^ (tailLength > 8 ? mixK2(k2) : 0);
+
+        r1 ^= total;
+        r2 ^= total;
+        r1 += r2;
+        r2 += r1;
+        r1 = fmix(r1);
+        r2 = fmix(r2);
+        r1 += r2;
+        r2 += r1;
+
+        byte[] result = new byte[length];
+        for (int i = 0; i < 8; i++) {
+            result[i] = (byte) (r1 >>> (8 * i));
+        }
+        if (length == 16) {
+            for (int i = 0; i < 8; i++) {
+                result[8 + i] = (byte) (r2 >>> (8 * i));
+            }
+        }
+        engineReset();
+        return result;
+    }
+
+    @Override
+    protected void engineReset() {
+        h1 = 0;
+        h2 = 0;
+        total = 0;
+        tailLength = 0;
+    }
+
+    @Override
+    public Object clone() throws CloneNotSupportedException {
+        MurmurHash3 clone = (MurmurHash3) super.clone();
+        clone.tail = tail.clone();
+        return clone;
+    }
+}
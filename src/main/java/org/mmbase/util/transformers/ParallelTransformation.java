@@ -0,0 +1,171 @@
+/*
+
+This software is OSI Certified Open Source Software.
+OSI Certified is a certification mark of the Open Source Initiative.
+
+The license (Mozilla version 1.0) can be read at the MMBase site.
+See http://www.MMBase.org/license
+
+*/
+package org.mmbase.util.transformers;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.mmbase.util.ThreadPools;
+import org.mmbase.util.logging.*;
+
+/**
+ * Transforms very large Strings by cutting them in segments, which are transformed simultaneously
+ * by {@link ThreadPools#forkJoinPool}, and then concatenated in order again. This can of course
+ * only be used for transformations which give the same result when applied to parts of the input
+ * separately. Where the input may be cut is indicated by a {@link Boundary}.
+ *
+ * Transformers using this have a property 'parallelThreshold'. Smaller inputs are transformed
+ * sequentially.
+ *
+ * @author Michiel Meeuwissen
+ * @since MMBase-2.0
+ */
+
+public abstract class ParallelTransformation {
+
+    private static final Logger log = Logging.getLoggerInstance(ParallelTransformation.class);
+
+    /**
+     * Inputs smaller than this (in chars) are on default not transformed in parallel.
+     */
+    public static final int DEFAULT_THRESHOLD = 1024 * 1024;
+
+    /**
+     * The approximate size of the segments.
+     */
+    static final int SEGMENT_SIZE = 128 * 1024;
+
+    public enum Boundary {
+        /**
+         * Any character boundary, but not in the middle of a surrogate pair. For transformations
+         * which transform every character on its own.
+         */
+        CHARACTER,
+        /**
+         * Just before a US-ASCII white space character.
+         */
+        WHITESPACE,
+        /**
+         * On a newline. The newline itself is not part of the segments, but is put back between the
+         * transformed segments. For transformations which handle the input line by line, and also
+         * don't retain the trailing newline.
+         */
+        LINE
+    }
+
+    private final Boundary boundary;
+
+    protected ParallelTransformation(Boundary b) {
+        boundary = b;
+    }
+
+    /**
+     * Transforms one segment, sequentially.
+     */
+    protected abstract String transformSegment(String segment);
+
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f';
+    }
+
+    /**
+     * The first position at or after <code>preferred</code> where the string can be cut, or
+     * <code>-1</code> if there is no such position.
+     */
+    int cut(String input, int preferred) {
+        int length = input.length();
+        switch(boundary) {
+        case CHARACTER:
+            if (Character.isHighSurrogate(input.charAt(preferred - 1))) {
+                preferred++;
+            }
+            return preferred < length ? preferred : -1;
+        case WHITESPACE:
+            for (int i = preferred; i < length; i++) {
+                if (isWhitespace(input.charAt(i))) {
+                    return i;
+                }
+            }
+            return -1;
+        case LINE:
+            // there must remain something after the newline.
+            int nl = input.indexOf('\n', preferred);
+            return nl == -1 || nl == length - 1 ? -1 : nl;
+        default:
+            throw new IllegalStateException();
+        }
+    }
+
+    /**
+     * The segments of the given String.
+     */
+    List<String> segments(String input) {
+        List<String> result = new ArrayList<String>();
+        int start = 0;
+        while (true) {
+            int end = input.length() - start > 2 * SEGMENT_SIZE ? cut(input, start + SEGMENT_SIZE) : -1;
+            if (end == -1) {
+                result.add(input.substring(start));
+                return result;
+            }
+            result.add(input.substring(start, end));
+            start = boundary == Boundary.LINE ? end + 1 : end;
+        }
+    }
+
+    /**
+     * Transforms the given String, in parallel if it is larger than the given threshold.
+     * @param threshold Inputs smaller than this are transformed sequentially. If it is not positive, that always happens.
+     */
+    public String transform(String input, int threshold) {
+        if (input == null || threshold <= 0 || input.length() < threshold) {
+            return transformSegment(input);
+        }
+        List<String> segments = segments(input);
+        if (segments.size() == 1) {
+            return transformSegment(input);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Transforming " + input.length() + " chars in " + segments.size() + " segments");
+        }
+        List<Callable<String>> tasks = new ArrayList<Callable<String>>(segments.size());
+        for (final String segment : segments) {
+            tasks.add(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return transformSegment(segment);
+                    }
+                });
+        }
+        StringBuilder result = new StringBuilder(input.length() + input.length() / 8);
+        boolean first = true;
+        for (Future<String> future : ThreadPools.forkJoinPool.invokeAll(tasks)) {
+            if (! first && boundary == Boundary.LINE) {
+                result.append('\n');
+            }
+            first = false;
+            try {
+                result.append(future.get());
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(ie);
+            } catch (ExecutionException ee) {
+                Throwable cause = ee.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new RuntimeException(cause);
+            }
+        }
+        return result.toString();
+    }
+
+}
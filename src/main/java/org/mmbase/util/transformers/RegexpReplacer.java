@@ -43,6 +43,13 @@ public class RegexpReplacer extends ChunkedTransformer<Pattern> {
      */
     protected static final Collection<Entry<Pattern, String>> regexps = new ArrayList<Entry<Pattern, String>>();
 
+    /**
+     * Compiled versions of the pattern collections, filled by {@link #readPatterns}. This map is
+     * never changed, only replaced (collection -> compiled patterns)
+     */
+    private static volatile Map<Collection<Entry<Pattern, String>>, CompiledPatterns> compiledPatterns =
+        new IdentityHashMap<Collection<Entry<Pattern, String>>, CompiledPatterns>();
+
     protected  class PatternWatcher extends ResourceWatcher {
         protected Collection<Entry<Pattern, String>> patterns;
         PatternWatcher(Collection<Entry<Pattern, String>> p) {
@@ -103,13 +110,23 @@ public class RegexpReplacer extends ChunkedTransformer<Pattern> {
             utilReaders.put(this.getClass().getName(), utilReader);
         }
 
-        patterns.clear();
-
+        List<Entry<Pattern, String>> newPatterns = new ArrayList<Entry<Pattern, String>>();
         Collection<Map.Entry<String, String>> regs = utilReader.getMaps().get("regexps");
         if (regs != null) {
-            addPatterns(regs, patterns);
+            addPatterns(regs, newPatterns);
         } else {
-            readDefaultPatterns(patterns);
+            readDefaultPatterns(newPatterns);
+        }
+        CompiledPatterns compiled = new CompiledPatterns(newPatterns);
+        synchronized(patterns) {
+            patterns.clear();
+            patterns.addAll(newPatterns);
+        }
+        synchronized(RegexpReplacer.class) {
+            Map<Collection<Entry<Pattern, String>>, CompiledPatterns> newCompiled =
+                new IdentityHashMap<Collection<Entry<Pattern, String>>, CompiledPatterns>(compiledPatterns);
+            newCompiled.put(patterns, compiled);
+            compiledPatterns = newCompiled;
         }
     }
 
@@ -131,13 +148,27 @@ public class RegexpReplacer extends ChunkedTransformer<Pattern> {
         }
     }
 
+    /**
+     * The status of a transformation also fixes the patterns to use. If the patterns are reloaded
+     * during a transformation, that transformation still uses the old ones.
+     * @since MMBase-2.0
+     */
+    protected class PatternStatus extends Status {
+        final CompiledPatterns compiled = compiledPatterns.get(getPatterns());
+    }
+
+    @Override
+    protected Status newStatus() {
+        return new PatternStatus();
+    }
+
     private class Chunk {
-        String string;
+        CharSequence string;
         boolean replaced = false;
-        Chunk(String s) {
+        Chunk(CharSequence s) {
             string = s;
         }
-        Chunk(String s, boolean r) {
+        Chunk(CharSequence s, boolean r) {
             string = s; replaced = r;
         }
         @Override
@@ -147,6 +178,14 @@ public class RegexpReplacer extends ChunkedTransformer<Pattern> {
 
     @Override
     protected boolean replace(String string, Writer w, Status status) throws IOException {
+        return replace((CharSequence) string, w, status);
+    }
+
+    /**
+     * Matches the patterns on the CharSequence itself, so no String needs to be made of it if none matches.
+     */
+    @Override
+    protected boolean replace(CharSequence string, Writer w, Status status) throws IOException {
         if (! (status.inA && ! replaceInA)) {
 
             boolean r = false; // result value
@@ -161,8 +200,29 @@ public class RegexpReplacer extends ChunkedTransformer<Pattern> {
             }
             chunks.add(new Chunk(string));
 
+            boolean words = to == ChunkedTransformer.XMLTEXT_WORDS || to == ChunkedTransformer.WORDS;
+
+            Collection<Entry<Pattern, String>> patterns;
+            int skip = 0;
+            CompiledPatterns compiled = status instanceof PatternStatus ? ((PatternStatus) status).compiled : null;
+            if (compiled != null) {
+                patterns = compiled.patterns;
+                // Before the first match nothing changes, so the patterns which don't match the
+                // original string can be skipped.
+                skip = words ? compiled.firstMatching(string) : compiled.firstFinding(string);
+                if (skip == -1) {
+                    write(w, string);
+                    return false;
+                }
+            } else {
+                patterns = getPatterns();
+            }
 
-            for (Map.Entry<Pattern, String> entry : getPatterns()) {
+            for (Map.Entry<Pattern, String> entry : patterns) {
+                if (skip > 0) {
+                    skip--;
+                    continue;
+                }
                 Pattern p = entry.getKey();
 
 
@@ -177,7 +237,7 @@ public class RegexpReplacer extends ChunkedTransformer<Pattern> {
                     Matcher m = p.matcher(chunk.string);
                     String replacement = entry.getValue();
                     boolean result = false;
-                    if (to == ChunkedTransformer.XMLTEXT_WORDS || to == ChunkedTransformer.WORDS) {
+                    if (words) {
                         result = m.matches(); // try for a full match, as string is one word.
                     } else {
                         result = m.find();
@@ -221,12 +281,12 @@ public class RegexpReplacer extends ChunkedTransformer<Pattern> {
                 }
             }
             for (Chunk s : chunks) {
-                w.write(s.string);
+                write(w, s.string);
             }
 
             return r;
         } else {
-            w.write(string);
+            write(w, string);
             return false;
         }
 
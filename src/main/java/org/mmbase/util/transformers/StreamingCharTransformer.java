@@ -0,0 +1,36 @@
+/*
+
+This software is OSI Certified Open Source Software.
+OSI Certified is a certification mark of the Open Source Initiative.
+
+The license (Mozilla version 1.0) can be read at the MMBase site.
+See http://www.MMBase.org/license
+
+*/
+package org.mmbase.util.transformers;
+
+import java.io.Writer;
+
+/**
+ * A CharTransformer which can also be fed its input piece by piece, on the calling thread. This is
+ * used by {@link TransformingWriter} and {@link TransformingReader}, which otherwise have to
+ * collect the complete input before the transformation can start.
+ *
+ * @author Michiel Meeuwissen
+ * @since MMBase-2.0
+ * @see StreamingWriter
+ */
+
+public interface StreamingCharTransformer extends CharTransformer {
+
+    /**
+     * Returns a Writer which transforms everything written to it, and writes the result to
+     * <code>w</code>. The returned Writer keeps the state of one transformation, so it must not be
+     * shared between threads.
+     *
+     * Closing the returned Writer writes any pending output and flushes it, but does
+     * <em>not</em> close <code>w</code>.
+     */
+    Writer transformingWriter(Writer w);
+
+}
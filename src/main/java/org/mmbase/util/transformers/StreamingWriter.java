@@ -0,0 +1,100 @@
+/*
+
+This software is OSI Certified Open Source Software.
+OSI Certified is a certification mark of the Open Source Initiative.
+
+The license (Mozilla version 1.0) can be read at the MMBase site.
+See http://www.MMBase.org/license
+
+*/
+package org.mmbase.util.transformers;
+
+import java.io.*;
+
+/**
+ * Base class for the Writers returned by {@link StreamingCharTransformer#transformingWriter}.
+ * Extensions only need to implement {@link #write(char[], int, int)}, and if they hold back some
+ * characters, {@link #finish()}.
+ *
+ * @author Michiel Meeuwissen
+ * @since MMBase-2.0
+ */
+
+public abstract class StreamingWriter extends Writer {
+
+    protected final Writer out;
+
+    protected StreamingWriter(Writer out) {
+        super(out);
+        this.out = out;
+    }
+
+    /**
+     * Writes the output which is still pending at the end of the input. The default
+     * implementation does nothing.
+     */
+    protected void finish() throws IOException {
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Finishes the transformation, but leaves the wrapped writer open.
+     */
+    @Override
+    public void close() throws IOException {
+        finish();
+        out.flush();
+    }
+
+
+    /**
+     * Returns a Writer transforming to <code>out</code> with the given CharTransformer. If it is a
+     * {@link StreamingCharTransformer} this is simply its {@link
+     * StreamingCharTransformer#transformingWriter}, otherwise all input is collected, and the
+     * transformation only happens on {@link #close()}.
+     */
+    public static Writer of(CharTransformer ct, Writer out) {
+        if (ct instanceof StreamingCharTransformer) {
+            return ((StreamingCharTransformer) ct).transformingWriter(out);
+        } else {
+            return new Buffering(ct, out);
+        }
+    }
+
+    /**
+     * The fall back for CharTransformers which can only transform a complete Reader.
+     */
+    private static class Buffering extends StreamingWriter {
+        private final CharTransformer charTransformer;
+        private final StringBuilder buffer = new StringBuilder();
+        Buffering(CharTransformer ct, Writer out) {
+            super(out);
+            charTransformer = ct;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            buffer.append(cbuf, off, len);
+        }
+        @Override
+        public void write(String str, int off, int len) {
+            buffer.append(str, off, off + len);
+        }
+        @Override
+        public void flush() {
+            // nothing can be flushed before the input is complete
+        }
+
+        @Override
+        protected void finish() {
+            String in = buffer.toString();
+            buffer.setLength(0);
+            charTransformer.transform(new StringReader(in), out);
+        }
+    }
+
+}
@@ -3,20 +3,22 @@ package org.mmbase.util.transformers;
 import org.mmbase.util.logging.Logger;
 import org.mmbase.util.logging.Logging;
 
-import javax.swing.text.AttributeSet;
-import javax.swing.text.MutableAttributeSet;
-import javax.swing.text.html.HTML;
-import javax.swing.text.html.HTMLEditorKit;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 /**
+ * Strips HTML tags and attributes which are not in a white list. The input is read only once, by
+ * a {@link HtmlTokenizer}, and the result is written while reading.
+ *
  * @author Michiel Meeuwissen
  * @since 1.8
  */
@@ -24,10 +26,34 @@ public class TagStripper extends ReaderTransformer {
     private static final Logger LOG = Logging.getLoggerInstance(TagStripper.class);
 
 
-    final HTMLEditorKit.Parser parser = new ParserGetter().getParser();
+    /**
+     * Elements which never have contents nor end tags.
+     */
+    static final Set<String> VOID = new HashSet<String>(Arrays.asList(
+            "area", "base", "basefont", "br", "col", "embed", "frame", "hr", "img", "input", "isindex",
+            "keygen", "link", "meta", "param", "source", "track", "wbr"));
 
-    private static final String NL_TOKEN = "XXXX_NL_XXXX";
+    /**
+     * Elements which break the flow of the text, so they are replaced by a space if they are stripped.
+     */
+    static final Set<String> BLOCK = new HashSet<String>(Arrays.asList(
+            "address", "article", "aside", "blockquote", "body", "br", "caption", "center", "dd", "dir", "div",
+            "dl", "dt", "fieldset", "figcaption", "figure", "footer", "form", "frame", "h1", "h2", "h3", "h4",
+            "h5", "h6", "head", "header", "hr", "html", "isindex", "li", "main", "menu", "nav", "noframes", "ol",
+            "option", "p", "pre", "section", "table", "td", "th", "title", "tr", "ul"));
 
+    /**
+     * Elements which cannot directly contain themselves, so a start tag implicitly closes the
+     * previous one, like in <code>&lt;li&gt;a&lt;li&gt;b</code>.
+     */
+    static final Set<String> NOT_NESTED = new HashSet<String>(Arrays.asList(
+            "dd", "dt", "li", "option", "p", "td", "th", "tr"));
+
+    /**
+     * Elements in which newlines are kept.
+     */
+    static final Set<String> PREFORMATTED = new HashSet<String>(Arrays.asList(
+            "listing", "pre", "textarea", "xmp"));
 
     private final List<Tag> tags;
     boolean addBrs          = false;
@@ -68,27 +94,11 @@ public class TagStripper extends ReaderTransformer {
 
     @Override
     public Writer transform(Reader r, final Writer w) {
-        final TagStripperCallback callback = new TagStripperCallback(w);
-        // before going into the parser, make existing newlines recognizable, by replacing them by a token
-        r = new TransformingReader(r, new ChunkedTransformer(ChunkedTransformer.XMLTEXT) {
-            @Override
-            protected boolean replace(String string, Writer w, Status status) throws IOException {
-                w.write(string.replaceAll("\n", NL_TOKEN));
-                return false;
-            }
-
-            @Override
-            protected String base() {
-                return "nl";
-            }
-
-        });
         try {
-            parser.parse(r, callback, true);
-        } catch (Exception e) {
+            new HtmlTokenizer(new TagStripperCallback(w)).parse(r);
+        } catch (IOException e) {
             LOG.warn(e.getMessage(), e);
         }
-
         return w;
     }
 
@@ -97,15 +107,6 @@ public class TagStripper extends ReaderTransformer {
         return tags + " " + (addBrs ? "(adding brs)" : "");
     }
 
-
-    protected static class ParserGetter extends HTMLEditorKit {
-        // purely to make this method public
-        @Override
-        public HTMLEditorKit.Parser getParser() {
-            return super.getParser();
-        }
-    }
-
     /**
      * Enumeration for types of allowances
      */
@@ -145,20 +146,49 @@ public class TagStripper extends ReaderTransformer {
         }
     };
 
-    private static class PatternAllowance extends Allowance {
-        private final Pattern pattern;
+    /**
+     * Matches a regular expression. The results for short strings, like tag and attribute names,
+     * are remembered, because those are checked over and over again.
+     */
+    private static abstract class AbstractPatternAllowance extends Allowance {
+        private static final int MAX_CACHED_LENGTH = 32;
+        private static final int MAX_CACHE_SIZE = 1000;
 
-        PatternAllowance(Pattern p) {
+        protected final Pattern pattern;
+        private final Map<String, Boolean> matches = new ConcurrentHashMap<String, Boolean>();
+
+        AbstractPatternAllowance(Pattern p) {
             pattern = p;
         }
 
+        protected boolean matches(String p) {
+            if (p.length() > MAX_CACHED_LENGTH) {
+                return pattern.matcher(p).matches();
+            }
+            Boolean result = matches.get(p);
+            if (result == null) {
+                result = pattern.matcher(p).matches();
+                if (matches.size() < MAX_CACHE_SIZE) {
+                    matches.put(p, result);
+                }
+            }
+            return result;
+        }
+    }
+
+    private static class PatternAllowance extends AbstractPatternAllowance {
+
+        PatternAllowance(Pattern p) {
+            super(p);
+        }
+
         PatternAllowance(String s) {
-            pattern = Pattern.compile(s);
+            super(Pattern.compile(s));
         }
 
         @Override
         Allows allows(String p) {
-            return pattern.matcher(p).matches() ? Allows.YES : Allows.DONTKNOW;
+            return matches(p) ? Allows.YES : Allows.DONTKNOW;
         }
 
         @Override
@@ -167,20 +197,19 @@ public class TagStripper extends ReaderTransformer {
         }
     }
 
-    private static class PatternDisallowance extends Allowance {
-        private final Pattern pattern;
+    private static class PatternDisallowance extends AbstractPatternAllowance {
 
         PatternDisallowance(Pattern p) {
-            pattern = p;
+            super(p);
         }
 
         PatternDisallowance(String s) {
-            pattern = Pattern.compile(s);
+            super(Pattern.compile(s));
         }
 
         @Override
         Allows allows(String p) {
-            return pattern.matcher(p).matches() ? Allows.NO : Allows.DONTKNOW;
+            return matches(p) ? Allows.NO : Allows.DONTKNOW;
         }
 
         @Override
@@ -229,6 +258,8 @@ public class TagStripper extends ReaderTransformer {
         public Allows allows(String k, String v) {
             Allows ka = key.allows(k);
             if (ka == Allows.NO) return Allows.NO;
+            // the value only matters for the attributes this is about
+            if (ka == Allows.DONTKNOW) return Allows.DONTKNOW;
             Allows va = value == null ? Allows.YES : value.allows(v);
             if (va == Allows.NO) return Allows.NO;
             if (ka == Allows.YES && va == Allows.YES) return Allows.YES;
@@ -295,20 +326,34 @@ public class TagStripper extends ReaderTransformer {
 
     }
 
-    static enum State {
-        DEFAULT,
-        SCRIPT,
-        ERROR
+    /**
+     * An element which is currently open.
+     */
+    static class Open {
+        final String name;
+        final TagCheck check;
+
+        Open(String n, TagCheck c) {
+            name = n;
+            check = c;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
     }
 
-    protected class TagStripperCallback extends HTMLEditorKit.ParserCallback {
+    protected class TagStripperCallback implements HtmlTokenizer.Handler {
         private final Writer out;
-        List<HTML.Tag> impliedTags = new ArrayList<HTML.Tag>();
-        List<HTML.Tag> stack = new ArrayList<HTML.Tag>();
+        final List<Open> stack = new ArrayList<Open>();
         int removeBody = 0;
-        State state = State.DEFAULT;
+        int preformatted = 0;
         StringBuilder spaceBuffer = new StringBuilder();
         int wrote = 0;
+        char last = ' ';
+        boolean softSpace = false;
+        boolean cr = false;
 
 
         TagStripperCallback(Writer out) {
@@ -322,9 +367,7 @@ public class TagStripper extends ReaderTransformer {
 
 
         TagCheck allowed(String tagName) {
-            //System.out.print("Checking wheter 'tagName' allowed");
             for (Tag tag : tags) {
-                //System.out.println("using " + tag);
                 Allows a = tag.allows(tagName);
                 switch (a) {
                     case YES: {
@@ -338,276 +381,298 @@ public class TagStripper extends ReaderTransformer {
             return new TagCheck(false, null);
         }
 
-        @Override
-        public void handleText(char[] text, int position) {
-            try {
-                //System.out.println("Handling " + new String(text) + " for " + position + " " + stack);
-                if (removeBody != 0) {
-                    return;
-                }
-                if (state == State.SCRIPT) {
-                    // sigh, the parser is pretty incomprehenisible
-                    // It give a very odd handleText event after a script tag.
-                    state = State.DEFAULT;
-                    return;
-                }
-                space();
-                if (addBrs) {
-                    String t = new String(text);
-                    if (text[0] == '>') { // odd, otherwise <br /> ends up as <br />>
-                        t = t.substring(1);
-                    }
-                    if (LOG.isTraceEnabled()) {
-                        LOG.trace("handling " + t);
-                    }
-
-                    if (stack.get(0).isPreformatted()) {
-                        t = t.replaceAll(NL_TOKEN, "\n");
-                    } else {
-                        t = t.replaceAll(NL_TOKEN, "<br class='auto' />");
-                    }
-                    if (escapeAmps) {
-                        // see comment in handleAttributes
-                        t = t.replaceAll("&", "&amp;");
-                    }
-                    out.write(t);
-                    wrote += t.length();
-
-                } else {
-
-
-                    String nlReplacement =
-                            ((stack.get(0).isPreformatted() || stack.size() == impliedTags.size())
-                                    || conserveNewlines) ? "\n" : " ";
+        protected void write(String s) throws IOException {
+            if (s.length() > 0) {
+                out.write(s);
+                wrote += s.length();
+                last = s.charAt(s.length() - 1);
+            }
+        }
 
-                    String t;
-                    if (text[0] == '>') { // odd, otherwise <br /> ends up as <br />>
-                        t = new String(text).substring(1);
-                    } else {
-                        t = new String(text);
-                    }
-                    if (escapeAmps) {
-                        // see comment in handleAttributes
-                        t = t.replaceAll("&", "&amp;");
-                    }
-                    t = replaceNewLInes(t, nlReplacement);
-                    out.write(t);
-                    wrote += t.length();
-                }
-            } catch (IOException e) {
-                LOG.warn(e);
+        protected void write(char[] buf, int off, int len) throws IOException {
+            if (len > 0) {
+                out.write(buf, off, len);
+                wrote += len;
+                last = buf[off + len - 1];
             }
         }
 
-        private String replaceNewLInes(String t, String replacement) {
-            if (t.endsWith(NL_TOKEN)) {
-                t = t.substring(0, t.length() - NL_TOKEN.length());
+        protected void space() throws IOException {
+            if (spaceBuffer.length() > 0) {
+                write(spaceBuffer.toString());
+                spaceBuffer.setLength(0);
+            } else if (softSpace) {
+                write(" ");
             }
-            if (t.startsWith(replacement)) {
-                t = t.substring(NL_TOKEN.length());
+            softSpace = false;
+        }
+
+        /**
+         * Makes sure that some white space is written before the next output, because a stripped
+         * tag separated two words. If the next output starts with white space itself, nothing is added.
+         */
+        protected void breakFlow() {
+            if (wrote > 0 && ! Character.isWhitespace(last)) {
+                softSpace = true;
             }
-            t = t.replaceAll(NL_TOKEN, replacement);
-            return t;
         }
 
-        TagCheck getTag(HTML.Tag tag, MutableAttributeSet attributes) {
-            //System.out.println("getting tag " + tag);
-            boolean implied = attributes.containsAttribute(IMPLIED, Boolean.TRUE);
-            TagCheck t;
-            if (implied) {
-                t = new TagCheck(false, null);
-                impliedTags.add(tag);
+        protected String newline() {
+            if (preformatted > 0) {
+                return "\n";
+            } else if (addBrs) {
+                return "<br class='auto' />";
+            } else if (conserveNewlines || stack.isEmpty()) {
+                return "\n";
             } else {
-                t = allowed(tag.toString());
+                return " ";
             }
-            return t;
-
         }
 
-        void handleAttributes(Tag t, MutableAttributeSet attributes) throws IOException {
-            //System.out.println("handling attributes for " + t + " " + attributes);
-            Enumeration<?> en = attributes.getAttributeNames();
-            while (en.hasMoreElements()) {
-                Object attName = en.nextElement();
-                if (addBrs && attName.equals("nl_")) continue;
-                AttributeSet set = attributes;
-                Object value = attributes.getAttribute(attName);
-                while (value == null && set.getResolveParent() != null) {
-                    set = set.getResolveParent();
-                    value = set.getAttribute(attName);
-                }
-                String att = "" + attName;
-                String val = "" + value;
-                if (t.allowsAttribute(att, val)) {
-                    out.write(' ');
-                    out.write(att);
-                    out.write('=');
-                    out.write('"');
-                    wrote += 3;
-                    wrote += att.length();
-                    String s = val;
-                    if (escapeAmps) {
-                        // HTMLEditorKit translates all Iso1 entities to unicode.
-                        // Escape remaining amps, to produce valid Xml.
-                        s = s.replaceAll("&", "&amp;");
-                    }
-                    s = s.replaceAll("\"", "&quot;");
-                    out.write(s);
-                    wrote += s.length();
-                    out.write('"');
-                    wrote++;
+        @Override
+        public void text(char[] text, int off, int len) throws IOException {
+            if (removeBody != 0 || len == 0) {
+                return;
+            }
+            if (Character.isWhitespace(text[off])) {
+                softSpace = false;
+            }
+            space();
+            int end = off + len;
+            int start = off;
+            for (int i = off; i < end; i++) {
+                char c = text[i];
+                String replacement;
+                switch(c) {
+                case '\n':
+                    replacement = cr ? "" : newline();
+                    break;
+                case '\r':
+                    replacement = newline();
+                    break;
+                case '<':
+                    replacement = "&lt;";
+                    break;
+                case '&':
+                    replacement = escapeAmps ? "&amp;" : "&";
+                    break;
+                default:
+                    cr = false;
+                    continue;
                 }
+                cr = c == '\r';
+                write(text, start, i - start);
+                write(replacement);
+                start = i + 1;
             }
+            write(text, start, end - start);
         }
 
-        protected void space() throws IOException {
-            out.write(spaceBuffer.toString());
-            wrote += spaceBuffer.length();
-            spaceBuffer.setLength(0);
+        @Override
+        public void rawText(String element, char[] text, int off, int len) throws IOException {
+            if (! element.equals("script") && ! element.equals("style")) {
+                // not tokenized, but still text, which must not be written back as markup
+                text(text, off, len);
+                return;
+            }
+            if (removeBody != 0 || stack.isEmpty() || ! stack.get(stack.size() - 1).check.allowed) {
+                // the contents of stripped script and style tags are no text.
+                return;
+            }
+            space();
+            write(text, off, len);
         }
 
         @Override
-        public void handleStartTag(HTML.Tag tag, MutableAttributeSet attributes, int position) {
-            // System.out.println("Start tag " + tag + " for " + position);
-            try {
-                stack.add(0, tag);
-                TagCheck t = getTag(tag, attributes);
-                if (tag == HTML.Tag.SCRIPT) {
-                    state = State.SCRIPT;
+        public void reference(String name) throws IOException {
+            if (removeBody != 0) {
+                return;
+            }
+            space();
+            cr = false;
+            if (escapeAmps) {
+                // To produce valid XML, only leave the references known in XML.
+                String resolved = HtmlTokenizer.resolve(name);
+                if (resolved == null) {
+                    write("&amp;" + name + ";");
+                    return;
+                } else if (! name.startsWith("#") && ! name.equals("amp") && ! name.equals("lt") && ! name.equals("gt") && ! name.equals("quot") && ! name.equals("apos")) {
+                    write(resolved);
+                    return;
                 }
-                if (t.tag != null && t.tag.removeBody()) removeBody++;
-                if (removeBody == 0) {
-                    if (t.allowed) {
-                        space();
-                        out.write('<');
-                        wrote++;
-                        String ts = tag.toString();
-                        out.write(ts);
-                        wrote += ts.length();
-                        handleAttributes(t.tag, attributes);
-                        out.write('>');
-                        wrote++;
-                    } else {
-                        if (tag == HTML.Tag.P && addNewlines) {
-                        } else {
-                            if (wrote > 0) {
-                                spaceBuffer.append(' ');
-                            }
+            }
+            write("&" + name + ";");
+        }
+
+        void handleAttributes(Tag t, Map<String, String> attributes) throws IOException {
+            for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+                String att = attribute.getKey();
+                if (! isValidName(att)) continue;
+                String val = attribute.getValue() == null ? att : HtmlTokenizer.decode(attribute.getValue());
+                if (t.allowsAttribute(att, normalize(val))) {
+                    StringBuilder s = new StringBuilder(val.length() + att.length() + 4);
+                    s.append(' ').append(att).append("=\"");
+                    for (int i = 0; i < val.length(); i++) {
+                        char c = val.charAt(i);
+                        switch(c) {
+                        case '&':
+                            // the value is decoded already, so an '&' must not start a reference again
+                            s.append("&amp;");
+                            break;
+                        case '"':
+                            s.append("&quot;");
+                            break;
+                        case '<':
+                            s.append("&lt;");
+                            break;
+                        default:
+                            s.append(c);
                         }
                     }
+                    s.append('"');
+                    write(s.toString());
                 }
-
-
-            } catch (IOException e) {
-                LOG.warn(e);
             }
         }
 
         @Override
-        public void handleEndTag(HTML.Tag tag, int position) {
-            //System.out.println("End tag " + tag + " at " + position);
-            stack.remove(0);
-            try {
-                String tagName = tag.toString();
-                TagCheck t;
-                boolean implied = impliedTags.size() > 0 && impliedTags.get(impliedTags.size() - 1).equals(tag);
-                if (implied) {
-                    t = new TagCheck(false, null);
-                    impliedTags.remove(impliedTags.size() - 1);
+        public void startTag(String tag, Map<String, String> attributes, boolean empty) throws IOException {
+            boolean isVoid = empty || VOID.contains(tag);
+            if (! isVoid && NOT_NESTED.contains(tag) && ! stack.isEmpty() && stack.get(stack.size() - 1).name.equals(tag)) {
+                endTag(tag);
+            }
+            TagCheck t = isValidName(tag) ? allowed(tag) : new TagCheck(false, null);
+            if (removeBody == 0) {
+                if (t.allowed) {
+                    space();
+                    write("<" + tag);
+                    handleAttributes(t.tag, attributes);
+                    write(isVoid ? " />" : ">");
                 } else {
-                    t = allowed(tagName);
-                }
-
-                if (removeBody == 0) {
-                    if (t.allowed) {
-                        out.write("</");
-                        wrote += 2;
-                        out.write(tagName);
-                        wrote += tagName.length();
-                        out.write('>');
-                        wrote++;
-                    } else {
-                        if (tag == HTML.Tag.P && addNewlines) {
-                            spaceBuffer.append("\n\n");
-                        }
+                    if (tag.equals("br") && addNewlines) {
+                        spaceBuffer.append('\n');
+                    } else if (tag.equals("p") && addNewlines) {
+                    } else if (BLOCK.contains(tag)) {
+                        breakFlow();
                     }
                 }
-                if (t.tag != null && t.tag.removeBody()) removeBody--;
-            } catch (IOException e) {
-                LOG.warn(e);
+            }
+            if (! isVoid) {
+                stack.add(new Open(tag, t));
+                if (t.tag != null && t.tag.removeBody()) removeBody++;
+                if (PREFORMATTED.contains(tag)) preformatted++;
             }
         }
 
         @Override
-        public void handleSimpleTag(HTML.Tag tag, MutableAttributeSet attributes, int position) {
-            //stack.remove(0);
-            //System.out.println("SIMPLE TAG " + tag);
-            try {
-                String tagName = tag.toString();
-                TagCheck t = getTag(tag, attributes);
-                if (removeBody == 0) {
-                    if (t.allowed) {
-                        out.write('<');
-                        wrote++;
-                        out.write(tagName);
-                        wrote += tagName.length();
-                        handleAttributes(t.tag, attributes);
-                        out.write(" />");
-                        wrote += 3;
-                    } else {
-                        if (tag == HTML.Tag.BR && addNewlines) {
-                            spaceBuffer.append('\n');
-                        } else {
-                            if (tag.breaksFlow()) {
-                                spaceBuffer.append(' ');
-                            }
-                        }
+        public void endTag(String tag) throws IOException {
+            for (int i = stack.size() - 1; i >= 0; i--) {
+                if (stack.get(i).name.equals(tag)) {
+                    while (stack.size() > i) {
+                        close(stack.remove(stack.size() - 1));
                     }
+                    return;
                 }
-            } catch (IOException e) {
-                LOG.warn(e);
             }
-
+            // not open, ignored
         }
 
-        @Override
-        public void handleError(String mes, int position) {
-            //System.out.println("Error " + mes + " at " + position);
-            LOG.debug(mes + " at " + position);
-            state = State.ERROR;
+        protected void close(Open open) throws IOException {
+            if (removeBody == 0) {
+                if (open.check.allowed) {
+                    write("</" + open.name + ">");
+                } else {
+                    if (open.name.equals("p") && addNewlines) {
+                        spaceBuffer.append("\n\n");
+                    } else if (BLOCK.contains(open.name)) {
+                        breakFlow();
+                    }
+                }
+            }
+            if (open.check.tag != null && open.check.tag.removeBody()) removeBody--;
+            if (PREFORMATTED.contains(open.name)) preformatted--;
         }
 
         @Override
-        public void handleComment(char[] data, int pos) {
-            //System.out.println("Comment at " + pos + " for " + new String(data));
-            try {
-                if (removeBody == 0) {
-                    out.write("<!-- " + new String(data) + " -->");
-                }
-            } catch (IOException e) {
-                LOG.warn(e);
+        public void comment(String data) throws IOException {
+            if (removeBody == 0 && isSafeComment(data)) {
+                write("<!--" + data + "-->");
             }
         }
 
-
         @Override
-        public void handleEndOfLineString(String eol) {
-            //System.out.println("EOL " + eol);
+        public void endDocument() throws IOException {
+            while (! stack.isEmpty()) {
+                close(stack.remove(stack.size() - 1));
+            }
+            out.flush();
         }
+    }
 
-        @Override
-        public void flush() {
-            try {
-                out.flush();
-            } catch (IOException e) {
-                LOG.warn(e);
+    /**
+     * Only tags and attributes with names like this are ever written. Anything else could never
+     * be valid, so it is stripped.
+     */
+    static boolean isValidName(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9' && i > 0) || ((c == '-' || c == ':' || c == '_' || c == '.') && i > 0)) {
+                continue;
             }
+            return false;
         }
+        return name.length() > 0;
+    }
+
+    /**
+     * Whether the comment can be written back as is. Comments which browsers could end
+     * differently than this tokenizer did (because they start with '&gt;' or '-&gt;', or contain
+     * '--') are dropped, because something after such an end would not be stripped.
+     */
+    static boolean isSafeComment(String data) {
+        return ! data.startsWith(">") && ! data.startsWith("->") && ! data.endsWith("-") && data.indexOf("--") == -1 && data.indexOf("<!-") == -1;
+    }
+
+    /**
+     * The value of an attribute as a browser would interpret it, to check it against the
+     * allowances. E.g. 'java&amp;#x09;script:' is a javascript url too.
+     */
+    static String normalize(String value) {
+        int i = 0;
+        while (i < value.length() && value.charAt(i) > ' ') {
+            i++;
+        }
+        if (i == value.length()) {
+            return value;
+        }
+        StringBuilder result = new StringBuilder(value.length());
+        for (i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\t' || c == '\n' || c == '\r') continue;
+            if (c <= ' ' && result.length() == 0) continue;
+            result.append(c);
+        }
+        int end = result.length();
+        while (end > 0 && result.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        result.setLength(end);
+        return result.toString();
     }
 
 
     // event attribute can contain javascript, so those are forbidden when doing XSS-stripping.
-    static final Attr EVENTS = new Attr(new PatternDisallowance("(?i)onclick|ondblclick|onmousedown|onmousemove|onmouseout|onmouseover|onmouseup|onload|onunload|onchange|onsubmit|onreset|onselect|onblur|onfocus|onkeydown|onkeyup|onkeypress"));
+    static final Attr EVENTS = new Attr(new PatternDisallowance("(?i)on[a-z]+"));
+
+    // urls which are (or can contain) scripts
+    static final String SCRIPT_URL = "(?is)(javascript|vbscript|livescript|data):.*";
+
+    // attributes which contain urls, with a value like that, are forbidden too.
+    static final Attr URLS = new Attr(new PatternAllowance("(?i)href|src|action|formaction|background|lowsrc|dynsrc|poster|codebase|data"),
+                                      new PatternDisallowance(SCRIPT_URL));
+
+    // namespaced links, like xlink:href in svg and mathml, are forbidden all together
+    static final Attr NAMESPACED_HREF = new Attr(new PatternDisallowance("(?i).+:href"));
 
     // only strip cross-site-scripting
     final static List<Tag> XSS = new ArrayList<Tag>();
@@ -617,9 +682,10 @@ public class TagStripper extends ReaderTransformer {
             // <a> tags are permitted.
             Tag a = new Tag(new PatternAllowance("(?i)a"));
             // also the href attribute is permitted on that tag, but not all values.
-            a.getAttributes().add(new Attr(new PatternAllowance("(?i)href"), new PatternDisallowance("(?i)javascript:.*")));
+            a.getAttributes().add(new Attr(new PatternAllowance("(?i)href"), new PatternDisallowance(SCRIPT_URL)));
             // these 'events' attributes are forbidden also on <a>
             a.getAttributes().add(EVENTS);
+            a.getAttributes().add(NAMESPACED_HREF);
             XSS.add(a);
         }
         // tags that are forbidden all together, because they a scripting, or the contents cannot be checked
@@ -630,6 +696,8 @@ public class TagStripper extends ReaderTransformer {
             Tag all = new Tag(ALLOW_ALL);
             // but not those event attributes
             all.getAttributes().add(EVENTS);
+            all.getAttributes().add(URLS);
+            all.getAttributes().add(NAMESPACED_HREF);
             XSS.add(all);
         }
     }
@@ -11,103 +11,148 @@ package org.mmbase.util.transformers;
 
 import java.io.*;
 
+import org.mmbase.util.StringBuilderWriter;
+
 import org.mmbase.util.logging.*;
 
 /**
  * A Filtering Reader based on CharTransformers.
-<pre>
-
-  _________   ____
- /          \/    \
- | R --> PW - this |
- |    T     |  PR  |
- \_________/ \____/
-
-
-  PW: piped writer, this PR: this reader, T: transformer
-
-  </pre>
+ *
  * This reader can be instantiated with another Reader and a CharTransformer. All reading from this
  * reader will be transformed output from reading on the given Reader.
  *
+ * The transformation happens on the reading thread. If the CharTransformer is a {@link
+ * StreamingCharTransformer} the wrapped Reader is consumed in chunks, as far as needed to satisfy
+ * each read. Otherwise the complete wrapped Reader is transformed on the first read.
+ *
  * @author Michiel Meeuwissen
  * @since MMBase-1.8
  * @see   ChainedCharTransformer
  * @see   TransformingWriter
  */
 
-public class TransformingReader extends PipedReader {
+public class TransformingReader extends Reader {
 
     private static final Logger log = Logging.getLoggerInstance(TransformingReader.class);
 
+    private static final int CHUNK_SIZE = 4096;
+
     private final Reader in;
-    private final CharTransformerLink link;
+    private final CharTransformer charTransformer;
+
+    /**
+     * Transformed characters which are not yet read.
+     */
+    private final StringBuilder buffer = new StringBuilder();
+    private int position = 0;
+
+    /**
+     * Writes to {@link #buffer}. <code>null</code> if the transformer is not a {@link StreamingCharTransformer}.
+     */
+    private final Writer transforming;
+    private char[] chunk;
+    private boolean eof = false;
+    private Throwable exception;
 
     public TransformingReader(Reader in, CharTransformer charTransformer)  {
         super();
         this.in = in;
-        PipedWriter w = new PipedWriter();
-        try {
-            connect(w);
-        } catch (IOException ioe) {
-            log.error(ioe.getMessage(), ioe);
+        this.charTransformer = charTransformer;
+        if (charTransformer instanceof StreamingCharTransformer) {
+            transforming = ((StreamingCharTransformer) charTransformer).transformingWriter(new StringBuilderWriter(buffer));
+        } else {
+            transforming = null;
         }
-        link = new CharTransformerLink(charTransformer, in, w, true);
-
-        // this works:
-        //Thread t = new Thread(link);
-        //t.start();
+    }
 
-        // this too, but main does not finish immediately. I suppose that is ok though:
-        // Costed me some time to realise this....
-        org.mmbase.util.ThreadPools.filterExecutor.execute(link);
+    /**
+     * Makes sure there are unread characters in the buffer, unless the end of the input was reached.
+     * @return <code>false</code> if there is nothing to read any more
+     */
+    private boolean fill() throws IOException {
+        while (position == buffer.length()) {
+            if (eof) {
+                return false;
+            }
+            buffer.setLength(0);
+            position = 0;
+            try {
+                if (transforming == null) {
+                    charTransformer.transform(in, new StringBuilderWriter(buffer));
+                    eof = true;
+                } else {
+                    if (chunk == null) {
+                        chunk = new char[CHUNK_SIZE];
+                    }
+                    int read = in.read(chunk, 0, CHUNK_SIZE);
+                    if (read == -1) {
+                        transforming.close();
+                        eof = true;
+                    } else {
+                        transforming.write(chunk, 0, read);
+                    }
+                }
+            } catch (RuntimeException re) {
+                log.warn(re.getMessage(), re);
+                exception = re;
+                eof = true;
+            }
+        }
+        return true;
+    }
 
+    @Override
+    public int read() throws IOException {
+        synchronized(lock) {
+            if (! fill()) {
+                return -1;
+            }
+            return buffer.charAt(position++);
+        }
     }
 
     @Override
-    public synchronized int read() throws IOException {
-        int result =  super.read();
-        if (result == -1) { // nothing to read any more, wait until transformation is ready.
-            waitReady();
-            in.close();
+    public int read(char cbuf[], int off, int len)  throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        synchronized(lock) {
+            if (! fill()) {
+                return -1;
+            }
+            int result = Math.min(len, buffer.length() - position);
+            buffer.getChars(position, position + result, cbuf, off);
+            position += result;
+            return result;
         }
-        return result;
     }
 
     @Override
-    public synchronized int read(char cbuf[], int off, int len)  throws IOException {
-        int result = super.read(cbuf, off, len);
-        if (result == -1) {
-            waitReady();
-            //   in.close();
+    public boolean ready() {
+        synchronized(lock) {
+            return position < buffer.length();
         }
-        return result;
     }
 
     /**
-     * Wait until the transformation is ready
+     * If some exception occured during the transformation, then it can be found here.
+     * @since MMBase-2.0
      */
-    protected void waitReady() {
-        try {
-            while (! link.ready()) {
-                synchronized(link) { // make sure we have the lock
-                    link.wait();
-                }
-            }
-        } catch (InterruptedException ie) {
-            log.warn("" + ie.getMessage(), ie);
-        }
+    public Throwable getException() {
+        return exception;
     }
 
-
-
     /**
      * {@inheritDoc}
      * Also closes the wrapped Reader.
      */
     @Override
     public void close() throws IOException {
-        super.close();
+        synchronized(lock) {
+            eof = true;
+            buffer.setLength(0);
+            position = 0;
+        }
         in.close();
     }
 
@@ -156,7 +201,6 @@ public class TransformingReader extends PipedReader {
                 log.error(e.getMessage(), e);
             }
         }
-        org.mmbase.util.ThreadPools.filterExecutor.shutdown();
     }
 
 
@@ -15,22 +15,14 @@ import org.mmbase.util.logging.*;
 
 /**
  * A Filtering Writer based on CharTransformers.
-
-<pre>
-
-  ____  _________
- /    \/         \
- |this - PR --> W |
- | PW  |    T     |
- \____/ \________/
-
-
-  PR: piped reader, this PW: this writer, T: transformer
-
-  </pre>
+ *
  * This writer can be instantiated with another Writer and a CharTransformer. All writing will be transformed by the given
  * CharTransformer before arriving at the given Writer.
  *
+ * The transformation happens on the writing thread. If the CharTransformer is a {@link
+ * StreamingCharTransformer} every write is transformed immediately, otherwise the written characters
+ * are collected and transformed when this writer is closed.
+ *
  * When ready, this TransformingWriter should be 'closed'. A coding example can be found in this classe's main method.
  *
  * @author Michiel Meeuwissen
@@ -39,46 +31,77 @@ import org.mmbase.util.logging.*;
  * @see   TransformingReader
  */
 
-public class TransformingWriter extends PipedWriter {
+public class TransformingWriter extends Writer {
 
     private static final Logger log = Logging.getLoggerInstance(TransformingWriter.class);
 
     private final Writer out;
-    private final CharTransformerLink link;
+    private final Writer transforming;
+    private boolean closed = false;
+    private Throwable exception;
 
 
     public TransformingWriter(Writer out, CharTransformer charTransformer)  {
         super();
         this.out = out;
+        this.transforming = StreamingWriter.of(charTransformer, out);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Writer closed");
+        }
+        if (exception != null) {
+            throw new IOException(exception.getMessage(), exception);
+        }
+    }
 
-        PipedReader r = new PipedReader();
-        CharTransformerLink l;
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        ensureOpen();
         try {
-            connect(r);
-            l = new CharTransformerLink(charTransformer, r, out, false);
-            org.mmbase.util.ThreadPools.filterExecutor.execute(l);
-        } catch (IOException ioe) {
-            log.error(ioe.getMessage());
-            l = null;
+            transforming.write(cbuf, off, len);
+        } catch (RuntimeException re) {
+            exception = re;
+            throw re;
         }
-        link = l;
     }
 
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        ensureOpen();
+        try {
+            transforming.write(str, off, len);
+        } catch (RuntimeException re) {
+            exception = re;
+            throw re;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        transforming.flush();
+    }
+
+    /**
+     * Finishes the transformation. All output is written to the wrapped Writer after this.
+     */
     protected void waitUntilReady() throws IOException {
-        super.close(); // accept no more input
+        if (closed) {
+            return;
+        }
+        closed = true; // accept no more input
         try {
-            while (! link.ready()) {
-                synchronized(link) { // make sure we have the lock
-                    link.wait();
-                }
-            }
-        } catch (InterruptedException ie) {
-            log.warn("" + ie);
+            transforming.close();
+        } catch (RuntimeException re) {
+            log.warn(re.getMessage(), re);
+            exception = re;
         }
     }
 
     public Throwable getException() {
-        return link.getException();
+        return exception;
     }
 
     /**
@@ -113,8 +136,6 @@ public class TransformingWriter extends PipedWriter {
             log.error("" + e + Logging.stackTrace(e));
         }
 
-        org.mmbase.util.ThreadPools.filterExecutor.shutdown();
-
     }
 
 
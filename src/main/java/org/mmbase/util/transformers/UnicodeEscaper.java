@@ -9,6 +9,7 @@ See http://www.MMBase.org/license
 */
 package org.mmbase.util.transformers;
 
+import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
 
@@ -22,7 +23,7 @@ import org.mmbase.util.logging.*;
  * @version $Id$
  */
 
-public class UnicodeEscaper extends ReaderTransformer  {
+public class UnicodeEscaper extends ReaderTransformer implements StreamingCharTransformer {
     private static final Logger log = Logging.getLoggerInstance(UnicodeEscaper.class);
 
     private boolean escapeLow = false;
@@ -31,6 +32,68 @@ public class UnicodeEscaper extends ReaderTransformer  {
         escapeLow = e;
     }
 
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private boolean needsEscape(char c) {
+        return c > 127 || (escapeLow && c < 32);
+    }
+
+    private int indexOfEscape(CharSequence s, int from) {
+        int length = s.length();
+        for (int i = from; i < length; i++) {
+            if (needsEscape(s.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void escape(CharSequence s, int from, Appendable out) throws IOException {
+        int clean = 0;
+        for (int i = from; i != -1; i = indexOfEscape(s, clean)) {
+            out.append(s, clean, i);
+            char c = s.charAt(i);
+            out.append('\\').append('u')
+                .append(HEX[(c >> 12) & 15]).append(HEX[(c >> 8) & 15])
+                .append(HEX[(c >> 4) & 15]).append(HEX[c & 15]);
+            clean = i + 1;
+        }
+        out.append(s, clean, s.length());
+    }
+
+    /**
+     * Escapes <code>s</code>, and appends the result to <code>out</code> (which may e.g. be a Writer).
+     * @since MMBase-2.0
+     */
+    public void transform(CharSequence s, Appendable out) throws IOException {
+        int first = indexOfEscape(s, 0);
+        if (first == -1) {
+            out.append(s);
+        } else {
+            escape(s, first, out);
+        }
+    }
+
+    /**
+     * @return The escaped String, or <code>s</code> itself if nothing needed escaping
+     */
+    @Override
+    public String transform(String s) {
+        if (s == null) return null;
+        int first = indexOfEscape(s, 0);
+        if (first == -1) {
+            return s;
+        }
+        StringBuilder sb = new StringBuilder(s.length() + 32);
+        try {
+            escape(s, first, sb);
+        } catch (IOException ioe) {
+            // StringBuilder doesn't throw that
+            throw new IllegalStateException(ioe);
+        }
+        return sb.toString();
+    }
+
     @Override
     public Writer transform(Reader r, Writer w) {
         try {
@@ -55,6 +118,31 @@ public class UnicodeEscaper extends ReaderTransformer  {
         return w;
     }
 
+    @Override
+    public Writer transformingWriter(Writer w) {
+        return new StreamingWriter(w) {
+            @Override
+            public void write(char[] cbuf, int off, int len) throws IOException {
+                int end = off + len;
+                int clean = off;
+                for (int i = off; i < end; i++) {
+                    char c = cbuf[i];
+                    if (c > 127 || (escapeLow && c < 32)) {
+                        out.write(cbuf, clean, i - clean);
+                        clean = i + 1;
+                        String hex = Integer.toHexString(c);
+                        out.write("\\u");
+                        for (int j = hex.length(); j < 4; j++) {
+                            out.write('0');
+                        }
+                        out.write(hex);
+                    }
+                }
+                out.write(cbuf, clean, end - clean);
+            }
+        };
+    }
+
     @Override
     public Writer transformBack(Reader r, Writer w) {
         try {
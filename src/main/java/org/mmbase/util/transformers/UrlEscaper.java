@@ -83,6 +83,75 @@ public class UrlEscaper extends ReaderTransformer{
         return w;
     }
 
+    private static boolean isAcceptable(char c) {
+        return c >= 32 && c < 128 && isacceptable[c - 32];
+    }
+
+    private static int indexOfEscape(CharSequence s, int from) {
+        int length = s.length();
+        for (int i = from; i < length; i++) {
+            if (! isAcceptable(s.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Appends <code>s</code> to <code>out</code>, escaped. <code>from</code> must be the index of
+     * the first character which must be escaped. The runs of characters which need no escaping
+     * are appended at once, the others are encoded in UTF-8 together, so surrogate pairs stay intact.
+     */
+    private static void escape(CharSequence s, int from, Appendable out) throws IOException {
+        int length = s.length();
+        int clean = 0;
+        for (int i = from; i != -1; i = indexOfEscape(s, clean)) {
+            out.append(s, clean, i);
+            clean = i + 1;
+            while (clean < length && ! isAcceptable(s.charAt(clean))) {
+                clean++;
+            }
+            for (byte b : s.subSequence(i, clean).toString().getBytes("UTF-8")) {
+                int a = b & 0xff;
+                out.append((char) HEX_ESCAPE).append(hex[a >> 4]).append(hex[a & 15]);
+            }
+        }
+        out.append(s, clean, length);
+    }
+
+    /**
+     * Escapes a String.
+     * @return The escaped String, or <code>s</code> itself if nothing needed escaping
+     * @since MMBase-2.0
+     */
+    public static String escape(String s) {
+        int first = indexOfEscape(s, 0);
+        if (first == -1) {
+            return s;
+        }
+        StringBuilder sb = new StringBuilder(s.length() + 16);
+        try {
+            escape(s, first, sb);
+        } catch (IOException ioe) {
+            // StringBuilder doesn't throw that
+            throw new IllegalStateException(ioe);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Escapes <code>s</code>, and appends the result to <code>out</code> (which may e.g. be a Writer).
+     * @since MMBase-2.0
+     */
+    public static void escape(CharSequence s, Appendable out) throws IOException {
+        int first = indexOfEscape(s, 0);
+        if (first == -1) {
+            out.append(s);
+        } else {
+            escape(s, first, out);
+        }
+    }
+
     public static void escape(BufferedInputStream r, Writer w) {
         byte[] buf = new byte[BUF_SIZE];
         try {
@@ -106,6 +175,27 @@ public class UrlEscaper extends ReaderTransformer{
     }
 
 
+    private int parallelThreshold = ParallelTransformation.DEFAULT_THRESHOLD;
+
+    /**
+     * Inputs of at least this number of chars are transformed by a number of threads. Not positive
+     * means never.
+     * @since MMBase-2.0
+     */
+    public void setParallelThreshold(int t) {
+        parallelThreshold = t;
+    }
+
+    @Override
+    public String transform(String r) {
+        return new ParallelTransformation(ParallelTransformation.Boundary.CHARACTER) {
+            @Override
+            protected String transformSegment(String segment) {
+                return escape(segment);
+            }
+        }.transform(r, parallelThreshold);
+    }
+
     /**
      * Unescape a url.
      * Replaces escape sequences with the actual character.
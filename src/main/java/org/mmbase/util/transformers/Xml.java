@@ -9,9 +9,15 @@ See http://www.MMBase.org/license
 */
 package org.mmbase.util.transformers;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.mmbase.util.logging.Logger;
+import org.mmbase.util.logging.Logging;
+
 /**
  * Transformations related to escaping in XML.
  * @author Michiel Meeuwissen
@@ -19,7 +25,9 @@ import java.util.Map;
  * @version $Id$
  */
 
-public class Xml extends ConfigurableStringTransformer implements CharTransformer {
+public class Xml extends ConfigurableStringTransformer implements StreamingCharTransformer {
+
+    private static final Logger log = Logging.getLoggerInstance(Xml.class);
 
     public final static int ESCAPE           = 1;
     public final static int ESCAPE_ATTRIBUTE = 2;
@@ -60,62 +68,155 @@ public class Xml extends ConfigurableStringTransformer implements CharTransforme
 
 
 
+    /*
+     * The escaping is driven by tables, indexed by character, with the replacement of every
+     * character which must be escaped. The characters which are not in the table are never
+     * escaped. The input is scanned for the next character to escape, and the runs in between are
+     * copied at once. If nothing needs escaping, the input String itself is returned.
+     */
+
+    private static final String[] ESCAPES                   = escapes("&<>\"");
+    private static final String[] ATTRIBUTE_ESCAPES         = escapes("&\"'");
+    private static final String[] ATTRIBUTE_DOUBLE_ESCAPES  = escapes("&\"");
+    private static final String[] ATTRIBUTE_SINGLE_ESCAPES  = escapes("&'");
+    private static final String[] ATTRIBUTE_HTML_ESCAPES    = escapes("&\"'\n\r");
+
+    private static String[] escapes(String chars) {
+        String[] table = new String[128];
+        for (char c : chars.toCharArray()) {
+            switch(c) {
+            case '&':  table[c] = "&amp;"; break;
+            case '<':  table[c] = "&lt;"; break;
+            case '>':  table[c] = "&gt;"; break;
+            case '"':  table[c] = "&quot;"; break;
+            case '\'': table[c] = "&apos;"; break;
+            case '\n':
+            case '\r': table[c] = " "; break;
+            default: throw new IllegalArgumentException("" + c);
+            }
+        }
+        return table;
+    }
+
+    private static String[] attributeEscapes(char quot) {
+        switch(quot) {
+        case '"':  return ATTRIBUTE_DOUBLE_ESCAPES;
+        case '\'': return ATTRIBUTE_SINGLE_ESCAPES;
+        default: {
+            String[] table = new String[Math.max(128, quot + 1)];
+            table['&'] = "&amp;";
+            table[quot] = "&apos;";
+            return table;
+        }
+        }
+    }
+
+    /**
+     * The index of the first character at or after <code>from</code> which must be escaped, or -1.
+     */
+    private static int indexOfEscape(CharSequence s, int from, String[] table) {
+        int length = s.length();
+        for (int i = from; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < table.length && table[c] != null) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Appends <code>s</code> to <code>out</code>, escaped. <code>from</code> must be the index of
+     * the first character which must be escaped.
+     */
+    private static void escape(CharSequence s, int from, String[] table, Appendable out) throws IOException {
+        int clean = 0;
+        for (int i = from; i != -1; i = indexOfEscape(s, clean, table)) {
+            out.append(s, clean, i).append(table[s.charAt(i)]);
+            clean = i + 1;
+        }
+        out.append(s, clean, s.length());
+    }
+
+    private static String escape(String s, String[] table) {
+        int first = indexOfEscape(s, 0, table);
+        if (first == -1) {
+            return s;
+        }
+        StringBuilder sb = new StringBuilder(s.length() + 16);
+        escape(s, first, table, sb);
+        return sb.toString();
+    }
+
+    private static void escape(CharSequence s, String[] table, Appendable out) throws IOException {
+        int first = indexOfEscape(s, 0, table);
+        if (first == -1) {
+            out.append(s);
+        } else {
+            escape(s, first, table, out);
+        }
+    }
+
+    private static void escape(CharSequence s, int from, String[] table, StringBuilder out) {
+        try {
+            escape(s, from, table, (Appendable) out);
+        } catch (IOException ioe) {
+            // StringBuilder doesn't throw that
+            throw new IllegalStateException(ioe);
+        }
+    }
+
+    private static void escape(CharSequence s, String[] table, StringBuilder out) {
+        int first = indexOfEscape(s, 0, table);
+        if (first == -1) {
+            out.append(s);
+        } else {
+            escape(s, first, table, out);
+        }
+    }
+
     /**
      * Attributes of XML tags cannot contain quotes, and also &amp; must be escaped
      * @param att String representing the attribute
      * @param quot Which quote (either ' or ")
+     * @return The escaped String, or <code>att</code> itself if nothing needed escaping
      */
     public static String XMLAttributeEscape(String att, char quot) {
         if (att == null) return "";
-        StringBuilder sb = new StringBuilder();
-        char[] data = att.toCharArray();
-        char c;
-        for (char element : data) {
-            c = element;
-            if (c == quot){
-                if (quot == '"') {
-                    sb.append("&quot;");
-                } else {
-                    sb.append("&apos;");
-                }
+        return escape(att, attributeEscapes(quot));
+    }
 
-            } else if (c == '&') {
-                sb.append("&amp;");
-            } else {
-                sb.append(c);
-            }
-        }
-        return sb.toString();
+    /**
+     * As {@link #XMLAttributeEscape(String, char)}, but appends the result to <code>out</code> (which may e.g. be a Writer).
+     * @since MMBase-2.0
+     */
+    public static void XMLAttributeEscape(CharSequence att, char quot, Appendable out) throws IOException {
+        escape(att, attributeEscapes(quot), out);
     }
+
     /**
      * Attributes of XML tags cannot contain quotes, and also &amp; must be escaped
      * @param att String representing the attribute
+     * @return The escaped String, or <code>att</code> itself if nothing needed escaping
      */
     public static String XMLAttributeEscape(String att) {
         if (att == null) return "";
-        StringBuilder sb = new StringBuilder();
-        char[] data = att.toCharArray();
-        char c;
-        for (char element : data) {
-            c = element;
-            if (c == '"') {
-                sb.append("&quot;");
-            } else if (c == '\'')  {
-                sb.append("&apos;");
-            } else if (c == '&') {
-                sb.append("&amp;");
-            } else {
-                sb.append(c);
-            }
-        }
-        return sb.toString();
+        return escape(att, ATTRIBUTE_ESCAPES);
+    }
+
+    /**
+     * As {@link #XMLAttributeEscape(String)}, but appends the result to <code>out</code> (which may e.g. be a Writer).
+     * @since MMBase-2.0
+     */
+    public static void XMLAttributeEscape(CharSequence att, Appendable out) throws IOException {
+        escape(att, ATTRIBUTE_ESCAPES, out);
     }
 
     /**
      * Utility class for escaping and unescaping
      * (XML)data
      * @param xml the xml to encode
-     * @return the encoded xml data
+     * @return the encoded xml data, or <code>xml</code> itself if nothing needed escaping
      * <UL>
      * <LI>& is replaced by &amp;amp;</LI>
      * <LI>" is replaced by &amp;quot;</LI>
@@ -125,31 +226,14 @@ public class Xml extends ConfigurableStringTransformer implements CharTransforme
      **/
     public static String XMLEscape(String xml){
         if (xml == null) return "";
-        StringBuilder sb = new StringBuilder();
-        XMLEscape(xml, sb);
-        return sb.toString();
+        return escape(xml, ESCAPES);
     }
 
     /**
      * @since MMBase-1.9
      */
     public static void XMLEscape(String xml, StringBuilder sb) {
-        char[] data = xml.toCharArray();
-        char c;
-        for (char element : data) {
-            c = element;
-            if (c =='&'){
-                sb.append("&amp;");
-            } else if (c =='<'){
-                sb.append("&lt;");
-            } else if (c =='>'){
-                sb.append("&gt;");
-            } else if (c =='"'){
-                sb.append("&quot;");
-            } else {
-                sb.append(c);
-            }
-        }
+        escape(xml, ESCAPES, sb);
     }
     /**
      * @since MMBase-1.8
@@ -160,9 +244,12 @@ public class Xml extends ConfigurableStringTransformer implements CharTransforme
         sb.append(s.toString());
     }
 
-    private static String removeNewlines(String incoming) {
-        String ret = incoming.replace('\n', ' ');
-        return ret.replace('\r', ' ');
+    /**
+     * As {@link #XMLEscape(String)}, but appends the result to <code>out</code> (which may e.g. be a Writer).
+     * @since MMBase-2.0
+     */
+    public static void XMLEscape(CharSequence xml, Appendable out) throws IOException {
+        escape(xml, ESCAPES, out);
     }
 
     /**
@@ -214,17 +301,87 @@ public class Xml extends ConfigurableStringTransformer implements CharTransforme
     }
 
 
+    private int parallelThreshold = ParallelTransformation.DEFAULT_THRESHOLD;
+
+    /**
+     * Inputs of at least this number of chars are transformed by a number of threads. Not positive
+     * means never.
+     * @since MMBase-2.0
+     */
+    public void setParallelThreshold(int t) {
+        parallelThreshold = t;
+    }
+
     @Override
     public String transform(String r) {
+        return new ParallelTransformation(ParallelTransformation.Boundary.CHARACTER) {
+            @Override
+            protected String transformSegment(String segment) {
+                return transformSequentially(segment);
+            }
+        }.transform(r, parallelThreshold);
+    }
+
+    private String[] getEscapes() {
         switch(to){
-        case ESCAPE:           return XMLEscape(r);
-        case ESCAPE_ATTRIBUTE: return XMLAttributeEscape(r);
-        case ESCAPE_ATTRIBUTE_DOUBLE: return XMLAttributeEscape(r, '"');
-        case ESCAPE_ATTRIBUTE_SINGLE: return XMLAttributeEscape(r, '\'');
-        case ESCAPE_ATTRIBUTE_HTML: return removeNewlines(XMLAttributeEscape(r));
+        case ESCAPE:                  return ESCAPES;
+        case ESCAPE_ATTRIBUTE:        return ATTRIBUTE_ESCAPES;
+        case ESCAPE_ATTRIBUTE_DOUBLE: return ATTRIBUTE_DOUBLE_ESCAPES;
+        case ESCAPE_ATTRIBUTE_SINGLE: return ATTRIBUTE_SINGLE_ESCAPES;
+        case ESCAPE_ATTRIBUTE_HTML:   return ATTRIBUTE_HTML_ESCAPES; // also replaces newlines by spaces
         default: throw new UnknownCodingException(getClass(), "transform", to);
         }
     }
+
+    private String transformSequentially(String r) {
+        if (r == null) return "";
+        return escape(r, getEscapes());
+    }
+
+    /**
+     * Escapes everything written to the returned Writer directly to <code>w</code>.
+     * @since MMBase-2.0
+     */
+    @Override
+    public Writer transformingWriter(Writer w) {
+        final String[] table = getEscapes();
+        return new StreamingWriter(w) {
+            @Override
+            public void write(char[] cbuf, int off, int len) throws IOException {
+                int end = off + len;
+                int clean = off;
+                for (int i = off; i < end; i++) {
+                    char c = cbuf[i];
+                    if (c < table.length && table[c] != null) {
+                        out.write(cbuf, clean, i - clean);
+                        out.write(table[c]);
+                        clean = i + 1;
+                    }
+                }
+                out.write(cbuf, clean, end - clean);
+            }
+            @Override
+            public void write(String str, int off, int len) throws IOException {
+                escape(str.subSequence(off, off + len), table, out);
+            }
+        };
+    }
+
+    @Override
+    public Writer transform(Reader r, Writer w) {
+        try {
+            Writer escaping = transformingWriter(w);
+            char[] buf = new char[4096];
+            int n;
+            while ((n = r.read(buf)) != -1) {
+                escaping.write(buf, 0, n);
+            }
+            escaping.close();
+        } catch (IOException ioe) {
+            log.error(ioe.toString());
+        }
+        return w;
+    }
     @Override
     public String transformBack(String r) {
         // the attribute unescape will do a little to much, I think.
@@ -1,15 +1,8 @@
 package org.mmbase.util.transformers;
 
-import java.io.*;
 import java.util.HashMap;
 import java.util.Map;
 
-import javax.xml.transform.stream.StreamSource;
-import javax.xml.transform.stream.StreamResult;
-
-import org.mmbase.util.ResourceLoader;
-import org.mmbase.util.XSLTransformer;
-
 import org.mmbase.util.logging.Logger;
 import org.mmbase.util.logging.Logging;
 
@@ -63,6 +56,11 @@ public class XmlField extends ConfigurableStringTransformer implements CharTrans
         obj.append(result);
     }
 
+    static void handleList(GapBuffer obj) {
+        String result = ListParser.transform(obj.toString());
+        obj.replace(0, obj.length(), result);
+    }
+
     /**
      * This is the original implementation of {@link #handleList}, but without support for lists in
      * lists (MMB-1658). Code pretty much incomprehensible as it is, so didn't add support for this
@@ -166,6 +164,22 @@ public class XmlField extends ConfigurableStringTransformer implements CharTrans
 
     }
     public static void replaceAll(StringBuilder builder, String from, String to) {
+        int index = builder.indexOf(from);
+        if (index == -1) return;
+        // copy to a new buffer, rather then shifting the rest of the buffer on every replacement
+        StringBuilder result = new StringBuilder(builder.length());
+        int start = 0;
+        while (index != -1) {
+            result.append(builder, start, index).append(to);
+            start = index + from.length(); // Move to the end of the replaced string
+            index = builder.indexOf(from, start);
+        }
+        result.append(builder, start, builder.length());
+        builder.setLength(0);
+        builder.append(result);
+    }
+
+    static void replaceAll(GapBuffer builder, String from, String to) {
         int index = builder.indexOf(from);
         while (index != -1)
         {
@@ -186,6 +200,12 @@ public class XmlField extends ConfigurableStringTransformer implements CharTrans
     // I cite _m_pos_! -> <mmxf><p>I cite <em>m_pos</em>!</p></mmxf>
 
     static void handleEmph(StringBuilder obj, char ch, String tag) {
+        GapBuffer buffer = new GapBuffer(obj);
+        handleEmph(buffer, ch, tag);
+        buffer.copyTo(obj);
+    }
+
+    static void handleEmph(GapBuffer obj, char ch, String tag) {
 
         replaceAll(obj, "" + ch + ch, "&#95;"); // makes it possible to escape underscores (or what you choose)
 
@@ -259,6 +279,12 @@ public class XmlField extends ConfigurableStringTransformer implements CharTrans
      * @since MMBase-1.8.6
      */
     static void preHandleHeaders(StringBuilder obj) {
+        GapBuffer buffer = new GapBuffer(obj);
+        preHandleHeaders(buffer);
+        buffer.copyTo(obj);
+    }
+
+    static void preHandleHeaders(GapBuffer obj) {
 
         int pos = (obj.length() > 0 && (obj.charAt(0) == '$')) ? 0 : obj.indexOf("\n$");
         while (pos >= 0) {
@@ -283,6 +309,12 @@ public class XmlField extends ConfigurableStringTransformer implements CharTrans
      *
      */
     static void handleHeaders(StringBuilder obj) {
+        GapBuffer buffer = new GapBuffer(obj);
+        handleHeaders(buffer);
+        buffer.copyTo(obj);
+    }
+
+    static void handleHeaders(GapBuffer obj) {
         // handle headers
         int requested_level;
         char ch;
@@ -362,7 +394,7 @@ public class XmlField extends ConfigurableStringTransformer implements CharTrans
     }
 
     // check if on that position the string object contains a <ul> or <ol>
-    static private boolean containsListTag(StringBuilder obj, int pos) {
+    static private boolean containsListTag(GapBuffer obj, int pos) {
         return obj.length() > pos + 4 &&
                obj.charAt(pos) == '<' &&
                (obj.charAt(pos+1) == 'u' || obj.charAt(pos+1) == 'o') &&
@@ -395,6 +427,12 @@ public class XmlField extends ConfigurableStringTransformer implements CharTrans
      * @param placeListsInsideP (defaults to false) whether a list should be placed inside a &lt;p&gt; (as allowed by xhtml2).
      */
     static void handleParagraphs(StringBuilder obj, boolean leaveExtraNewLines, boolean surroundingP, boolean placeListsInsideP) {
+        GapBuffer buffer = new GapBuffer(obj);
+        handleParagraphs(buffer, leaveExtraNewLines, surroundingP, placeListsInsideP);
+        buffer.copyTo(obj);
+    }
+
+    static void handleParagraphs(GapBuffer obj, boolean leaveExtraNewLines, boolean surroundingP, boolean placeListsInsideP) {
 
         log.debug(placeListsInsideP ? "placings lists INSIDE" : "placings lists OUTSIDE");
         // handle paragraphs:
@@ -571,6 +609,12 @@ public class XmlField extends ConfigurableStringTransformer implements CharTrans
      *@since MMBase 1.8
      */
     static void handleTables(StringBuilder obj) {
+        GapBuffer buffer = new GapBuffer(obj);
+        handleTables(buffer);
+        buffer.copyTo(obj);
+    }
+
+    static void handleTables(GapBuffer obj) {
         int tables = 0;
         int pos = 0;
         while (pos != -1) {
@@ -671,6 +715,10 @@ public class XmlField extends ConfigurableStringTransformer implements CharTrans
                     pos += 5;
                 } else {
                     pos = obj.indexOf("\n", pos) + 1;
+                    if (pos == 0) {
+                        // no new line any more, close the table at the end (this used to loop forever)
+                        pos = obj.length();
+                    }
                     if (pos >= obj.length()) break;
                     // oddd. what to do know?
                 }
@@ -695,7 +743,7 @@ public class XmlField extends ConfigurableStringTransformer implements CharTrans
     /**
      * Removes all new lines and space which are too much.
      */
-    static void cleanupText(StringBuilder obj) {
+    static void cleanupText(GapBuffer obj) {
         // remaining new lines have no meaning.
         replaceAll(obj, ">\n", ">"); // don't replace by space if it is just after a tag, it could have a meaning then.
         replaceAll(obj, "\n", " "); // replace by space, because people could use it as word boundary.
@@ -718,6 +766,12 @@ public class XmlField extends ConfigurableStringTransformer implements CharTrans
      * @since MMBase-1.7
      */
     protected static void handleFormat(StringBuilder obj, boolean format) {
+        GapBuffer buffer = new GapBuffer(obj);
+        handleFormat(buffer, format);
+        buffer.copyTo(obj);
+    }
+
+    static void handleFormat(GapBuffer obj, boolean format) {
         if (format) {
             replaceAll(obj, "\r", "\n");
         } else {
@@ -731,6 +785,9 @@ public class XmlField extends ConfigurableStringTransformer implements CharTrans
     protected static StringBuilder prepareData(String data) {
         return new StringBuilder(prepareDataString(data));
     }
+    static GapBuffer prepareBuffer(String data) {
+        return new GapBuffer(prepareDataString(data));
+    }
 
     /**
      * Constant for use as argument of {@link #handleRich}
@@ -751,6 +808,12 @@ public class XmlField extends ConfigurableStringTransformer implements CharTrans
     }
 
     protected static void handleRich(StringBuilder obj, boolean sections, boolean leaveExtraNewLines, boolean surroundingP, boolean placeListsInsideP) {
+        GapBuffer buffer = new GapBuffer(obj);
+        handleRich(buffer, sections, leaveExtraNewLines, surroundingP, placeListsInsideP);
+        buffer.copyTo(obj);
+    }
+
+    static void handleRich(GapBuffer obj, boolean sections, boolean leaveExtraNewLines, boolean surroundingP, boolean placeListsInsideP) {
         // the order _is_ important!
         if (sections) {
             preHandleHeaders(obj);
@@ -766,6 +829,12 @@ public class XmlField extends ConfigurableStringTransformer implements CharTrans
     }
 
     protected static void handleNewlines(StringBuilder obj) {
+        GapBuffer buffer = new GapBuffer(obj);
+        handleNewlines(buffer);
+        buffer.copyTo(obj);
+    }
+
+    static void handleNewlines(GapBuffer obj) {
         replaceAll(obj, "</ul>\n", "</ul>"); // otherwise we will wind up with the silly "</ul><br />  the \n was necessary for </ul></p>
         replaceAll(obj, "</ol>\n", "</ol>");
         replaceAll(obj, "\n", "<br />");  // handle new remaining newlines.
@@ -799,7 +868,7 @@ public class XmlField extends ConfigurableStringTransformer implements CharTrans
      */
 
     public static String richToXML(String data, boolean format, boolean placeListsInsideP) {
-        StringBuilder obj = prepareData(data);
+        GapBuffer obj = prepareBuffer(data);
         handleRich(obj, SECTIONS, LEAVE_NEWLINES, SURROUNDING_P, placeListsInsideP);
         handleNewlines(obj);
         handleFormat(obj, format);
@@ -818,7 +887,7 @@ public class XmlField extends ConfigurableStringTransformer implements CharTrans
      * @see #richToXML
      */
     public static String poorToXML(String data, boolean format, boolean placeListsInsideP) {
-        StringBuilder obj = prepareData(data);
+        GapBuffer obj = prepareBuffer(data);
         handleRich(obj, SECTIONS, REMOVE_NEWLINES, SURROUNDING_P, placeListsInsideP);
         handleFormat(obj, format);
         return obj.toString();
@@ -839,7 +908,7 @@ public class XmlField extends ConfigurableStringTransformer implements CharTrans
      * @since MMBase-1.7
      */
     public static String richToHTMLBlock(String data, boolean multipibleBrs, boolean surroundingP, boolean placeListsInsideP) {
-        StringBuilder obj = prepareData(data);
+        GapBuffer obj = prepareBuffer(data);
 
         handleRich(obj, false, multipibleBrs, surroundingP, placeListsInsideP);
         // no <section> tags, leave newlines if multipble br's requested
@@ -864,7 +933,7 @@ public class XmlField extends ConfigurableStringTransformer implements CharTrans
      * @since MMBase-1.7
      */
     public static String poorToHTMLInline(String data) {
-        StringBuilder obj = prepareData(data);
+        GapBuffer obj = prepareBuffer(data);
         // don't add newlines.
         handleFormat(obj, false);
         handleEmph(obj, '_', "em");
@@ -875,30 +944,40 @@ public class XmlField extends ConfigurableStringTransformer implements CharTrans
 
     /**
      * Base function for XSL conversions.
+     * @see XslPipeline
      */
 
     protected static String XSLTransform(String xslFile, String data) {
         try {
-            java.net.URL u = ResourceLoader.getConfigurationRoot().getResource("xslt/" + xslFile);
-            java.io.StringWriter res = new java.io.StringWriter();
-            XSLTransformer.transform(new StreamSource(new StringReader(data)), u, new StreamResult(res), null);
-            return res.toString();
+            return XslPipeline.getInstance(xslFile).transform(data);
         } catch (javax.xml.transform.TransformerException te) {
             return te.getMessage();
         }
     }
 
+    /**
+     * The validating DocumentBuilder of the current thread, for {@link #validate}. Creating the
+     * factory and the builder is much more expensive than the validation of a small piece of XML.
+     */
+    private static final ThreadLocal<javax.xml.parsers.DocumentBuilder> validators = new ThreadLocal<javax.xml.parsers.DocumentBuilder>();
+
     protected static void validate(String incoming) throws FormatException {
         try {
             if (log.isDebugEnabled()) {
                 log.debug("Validating " + incoming);
             }
-            javax.xml.parsers.DocumentBuilderFactory dfactory = javax.xml.parsers.DocumentBuilderFactory.newInstance();
-
-            // turn validating on..
-            dfactory.setValidating(true);
-            dfactory.setNamespaceAware(true);
-            javax.xml.parsers.DocumentBuilder documentBuilder = dfactory.newDocumentBuilder();
+            javax.xml.parsers.DocumentBuilder documentBuilder = validators.get();
+            if (documentBuilder == null) {
+                javax.xml.parsers.DocumentBuilderFactory dfactory = javax.xml.parsers.DocumentBuilderFactory.newInstance();
+
+                // turn validating on..
+                dfactory.setValidating(true);
+                dfactory.setNamespaceAware(true);
+                documentBuilder = dfactory.newDocumentBuilder();
+                validators.set(documentBuilder);
+            } else {
+                documentBuilder.reset();
+            }
 
             // in order to find the dtd.....
             org.mmbase.util.xml.EntityResolver resolver = new org.mmbase.util.xml.EntityResolver();
@@ -1026,6 +1105,8 @@ public class XmlField extends ConfigurableStringTransformer implements CharTrans
             //return XSLTransform("mmxf2rich.xslt", XML_TAGSTART + data + XML_TAGEND);
         case ASCII :
             return XSLTransform("text.xslt", data);
+        case XHTML :
+            return XSLTransform("mmxf2xhtml.xslt", data);
         case HTML_BLOCK:
         case HTML_BLOCK_BR:
         case HTML_INLINE:
@@ -1110,6 +1191,8 @@ public class XmlField extends ConfigurableStringTransformer implements CharTrans
             return "MMXF_HTML_INLINE";
         case ASCII :
             return "MMXF_ASCII";
+        case XHTML :
+            return "MMXF_XHTML";
         default :
             throw new UnknownCodingException(getClass(), to);
         }
@@ -0,0 +1,173 @@
+/*
+
+This software is OSI Certified Open Source Software.
+OSI Certified is a certification mark of the Open Source Initiative.
+
+The license (Mozilla version 1.0) can be read at the MMBase site.
+See http://www.MMBase.org/license
+
+*/
+package org.mmbase.util.transformers;
+
+import java.io.*;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.*;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import org.mmbase.cache.xslt.FactoryCache;
+import org.mmbase.cache.xslt.TemplateCache;
+import org.mmbase.util.ResourceLoader;
+
+import org.mmbase.util.logging.Logger;
+import org.mmbase.util.logging.Logging;
+
+/**
+ * Applies one of the XSLT's of the configuration ('xslt/...') to pieces of XML, as {@link XmlField}
+ * does for MMXF_ASCII and MMXF_XHTML. The difference with just calling {@link
+ * org.mmbase.util.XSLTransformer} is that everything which does not depend on the XML itself is
+ * done only once: the stylesheet is resolved and compiled once (and stored in the {@link
+ * TemplateCache}, so it is still recompiled if it changes), and every thread keeps its own SAX
+ * parser. The XML is parsed by that parser straight into the transformer, it is never
+ * materialized as a DOM.
+ *
+ * @author Michiel Meeuwissen
+ * @since MMBase-2.0
+ */
+final class XslPipeline {
+
+    private static final Logger log = Logging.getLoggerInstance(XslPipeline.class);
+
+    private static final ConcurrentHashMap<String, XslPipeline> pipelines = new ConcurrentHashMap<String, XslPipeline>();
+
+    /**
+     * The parser of the current thread. It is taken out while in use, so a transformation which
+     * causes another one on the same thread simply creates a new parser.
+     */
+    private static final ThreadLocal<XMLReader> readers = new ThreadLocal<XMLReader>();
+
+    /**
+     * Returns the pipeline for the given XSLT of the configuration.
+     * @param xslFile The name of the xslt, relative to the 'xslt' directory of the configuration, e.g. 'text.xslt'.
+     */
+    static XslPipeline getInstance(String xslFile) {
+        XslPipeline pipeline = pipelines.get(xslFile);
+        if (pipeline == null) {
+            pipeline = new XslPipeline(xslFile);
+            XslPipeline existing = pipelines.putIfAbsent(xslFile, pipeline);
+            if (existing != null) {
+                pipeline = existing;
+            }
+        }
+        return pipeline;
+    }
+
+    private final String xslFile;
+    private URL url;
+    private Source xsl;
+    private org.mmbase.util.xml.URIResolver uri;
+
+    /**
+     * Used if the TemplateCache is not active.
+     */
+    private Templates templates;
+
+    private XslPipeline(String xslFile) {
+        this.xslFile = xslFile;
+    }
+
+    private synchronized Templates getTemplates() throws TransformerException {
+        if (url == null) {
+            url = ResourceLoader.getConfigurationRoot().getResource("xslt/" + xslFile);
+            if (url == null) {
+                throw new TransformerException("No such xslt 'xslt/" + xslFile + "'");
+            }
+            try {
+                uri = new org.mmbase.util.xml.URIResolver(new URL(url, "."));
+            } catch (java.net.MalformedURLException mfe) {
+                throw new TransformerException(mfe.getMessage(), mfe);
+            }
+            // only used as the key in the cache
+            xsl = new StreamSource(url.toString());
+        }
+        TemplateCache cache = TemplateCache.getCache();
+        Templates result = cache.getTemplates(xsl, uri);
+        if (result == null) {
+            if (! cache.isActive() && templates != null) {
+                return templates;
+            }
+            log.service("Compiling " + url);
+            InputStream input;
+            try {
+                input = url.openStream();
+            } catch (IOException ioe) {
+                throw new TransformerException(ioe.getMessage(), ioe);
+            }
+            try {
+                result = FactoryCache.getCache().getFactory(uri).newTemplates(new StreamSource(input, url.toString()));
+            } finally {
+                try {
+                    input.close();
+                } catch (IOException ioe) {
+                    log.warn(ioe);
+                }
+            }
+            cache.put(xsl, result, uri);
+            templates = result;
+        }
+        return result;
+    }
+
+    private static XMLReader newReader() throws TransformerException {
+        try {
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            XMLReader reader = factory.newSAXParser().getXMLReader();
+            reader.setEntityResolver(new org.mmbase.util.xml.EntityResolver());
+            return reader;
+        } catch (ParserConfigurationException pce) {
+            throw new TransformerException(pce.getMessage(), pce);
+        } catch (SAXException se) {
+            throw new TransformerException(se.getMessage(), se);
+        }
+    }
+
+    /**
+     * Transforms the XML read from <code>in</code>, and writes the result to <code>out</code>.
+     */
+    void transform(Reader in, Writer out) throws TransformerException {
+        javax.xml.transform.Transformer transformer = getTemplates().newTransformer();
+        XMLReader reader = readers.get();
+        if (reader == null) {
+            reader = newReader();
+        } else {
+            readers.set(null);
+        }
+        try {
+            transformer.transform(new SAXSource(reader, new InputSource(in)), new StreamResult(out));
+        } finally {
+            readers.set(reader);
+        }
+    }
+
+    String transform(String data) throws TransformerException {
+        StringWriter result = new StringWriter(data.length());
+        transform(new StringReader(data), result);
+        return result.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "xslt/" + xslFile;
+    }
+
+}
@@ -16,6 +16,8 @@ import org.mmbase.util.logging.*;
 
 /**
  * CSS compressor based on <a href="http://yuilibrary.com/">YUI Library</a>
+ *
+ * The results are remembered by the {@link CompressionCache}, unless {@link #setCache} is false.
  * @author Michiel Meeuwissen
  * @since MMBase-1.9.6
  */
@@ -24,6 +26,8 @@ public class YUICSSCompressor extends  ReaderTransformer {
     private static final long serialVersionUID = 0L;
     private static final Logger LOG = Logging.getLoggerInstance(YUICSSCompressor.class);
     private int linebreakpos = -1;
+    private boolean cache = true;
+
     public YUICSSCompressor() {
     }
 
@@ -31,11 +35,33 @@ public class YUICSSCompressor extends  ReaderTransformer {
         linebreakpos = l;
     }
 
+    /**
+     * @since MMBase-2.0
+     */
+    public void setCache(boolean c) {
+        cache = c;
+    }
+
     @Override
     public Writer transform(Reader reader, Writer writer) {
         try {
-            CssCompressor compressor = new CssCompressor(reader);
-            compressor.compress(writer, linebreakpos);
+            if (cache) {
+                StringWriter input = new StringWriter();
+                org.mmbase.util.IOUtil.copy(reader, input);
+                CompressionCache compressed = CompressionCache.getInstance();
+                String key = compressed.key("css linebreakpos=" + linebreakpos, input.toString());
+                String result = compressed.get(key);
+                if (result == null) {
+                    StringWriter output = new StringWriter();
+                    new CssCompressor(new StringReader(input.toString())).compress(output, linebreakpos);
+                    result = output.toString();
+                    compressed.put(key, result);
+                }
+                writer.write(result);
+            } else {
+                CssCompressor compressor = new CssCompressor(reader);
+                compressor.compress(writer, linebreakpos);
+            }
         } catch (IOException ioe) {
             LOG.error(ioe);
         }
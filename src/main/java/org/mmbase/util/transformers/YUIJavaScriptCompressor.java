@@ -16,6 +16,8 @@ import org.mmbase.util.logging.*;
 
 /**
  * Javascript compressor based on <a href="http://yuilibrary.com/">YUI Library</a>
+ *
+ * The results are remembered by the {@link CompressionCache}, unless {@link #setCache} is false.
 
  * @author Michiel Meeuwissen
  * @since MMBase-1.9.6
@@ -60,6 +62,8 @@ public class YUIJavaScriptCompressor extends  ReaderTransformer {
     private boolean initialNewline = true;
 
     private int linebreakpos = -1;
+    private boolean cache = true;
+
     public YUIJavaScriptCompressor() {
     }
 
@@ -79,6 +83,26 @@ public class YUIJavaScriptCompressor extends  ReaderTransformer {
     public void setInitialNewline(boolean i) {
         initialNewline = i;
     }
+    /**
+     * @since MMBase-2.0
+     */
+    public void setCache(boolean c) {
+        cache = c;
+    }
+
+    /**
+     * Describes everything which influences the result of the compression.
+     */
+    private String getSettings() {
+        return "js munge=" + munge + " preserveAllSemiColons=" + preserveAllSemiColons + " disableOptimizations=" + disableOptimizations + " linebreakpos=" + linebreakpos;
+    }
+
+    private void compress(Reader reader, Writer writer) throws IOException {
+        JavaScriptCompressor compressor = new JavaScriptCompressor(reader,
+                                                                   new JavaScriptErrorReporter(LOG));
+        compressor.compress(writer, linebreakpos, munge, false,
+                            preserveAllSemiColons, disableOptimizations);
+    }
 
     @Override
     public Writer transform(Reader reader, Writer writer) {
@@ -88,11 +112,24 @@ public class YUIJavaScriptCompressor extends  ReaderTransformer {
             }
 
             if (WORKS) {
-                LOG.service("Compressing javascript from " + reader + " -> " + writer);
-                JavaScriptCompressor compressor = new JavaScriptCompressor(reader,
-                                                                           new JavaScriptErrorReporter(LOG));
-                compressor.compress(writer, linebreakpos, munge, false,
-                                    preserveAllSemiColons, disableOptimizations);
+                if (cache) {
+                    StringWriter input = new StringWriter();
+                    org.mmbase.util.IOUtil.copy(reader, input);
+                    CompressionCache compressed = CompressionCache.getInstance();
+                    String key = compressed.key(getSettings(), input.toString());
+                    String result = compressed.get(key);
+                    if (result == null) {
+                        LOG.service("Compressing javascript from " + reader);
+                        StringWriter output = new StringWriter();
+                        compress(new StringReader(input.toString()), output);
+                        result = output.toString();
+                        compressed.put(key, result);
+                    }
+                    writer.write(result);
+                } else {
+                    LOG.service("Compressing javascript from " + reader + " -> " + writer);
+                    compress(reader, writer);
+                }
                 LOG.debug("Ready");
             } else {
                 CopyCharTransformer.INSTANCE.transform(reader, writer);
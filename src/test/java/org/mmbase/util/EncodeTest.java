@@ -0,0 +1,100 @@
+package org.mmbase.util;
+
+import org.mmbase.util.transformers.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author Michiel Meeuwissen
+ * @version $Id$
+ */
+public class EncodeTest {
+
+    /**
+     * A transformer which is not thread-safe.
+     */
+    public static class Confined extends StringTransformer {
+        private static final long serialVersionUID = 0L;
+        private final StringBuilder buf = new StringBuilder();
+        @Override
+        public String transform(String s) {
+            buf.setLength(0);
+            return buf.append('[').append(s).append(']').toString();
+        }
+        @Override
+        public String toString() {
+            return "TEST_CONFINED";
+        }
+    }
+
+    /**
+     * Counts how often it is instantiated.
+     */
+    public static class CountedConfined extends StringTransformer {
+        private static final long serialVersionUID = 0L;
+        static final java.util.concurrent.atomic.AtomicInteger instances = new java.util.concurrent.atomic.AtomicInteger();
+        public CountedConfined() {
+            instances.incrementAndGet();
+        }
+        @Override
+        public String transform(String s) {
+            return s;
+        }
+        @Override
+        public String toString() {
+            return "TEST_COUNTED_CONFINED";
+        }
+    }
+
+    @Test
+    public void encode() {
+        assertEquals("a &amp; b", Encode.encode("ESCAPE_XML", "a & b"));
+        assertEquals("a & b", Encode.decode("escape_xml", "a &amp; b"));
+        assertEquals("YQ==", Encode.encode("BASE64", "a"));
+    }
+
+    @Test
+    public void shared() {
+        Encode encoder = Encode.encoder("ESCAPE_XML");
+        assertSame(encoder, Encode.encoder("ESCAPE_XML"));
+        assertSame(encoder, Encode.encoder("escape_xml"));
+        assertSame(encoder.getTransformer(), Encode.encoder("ESCAPE_XML").getTransformer());
+        assertEquals("ESCAPE_XML", encoder.getEncoding());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknown() {
+        Encode.encoder("NO_SUCH_ENCODING");
+    }
+
+    @Test
+    public void threadConfined() throws Exception {
+        Encode.register(Confined.class.getName());
+        final Encode encoder = Encode.encoder("TEST_CONFINED");
+        assertEquals("[a]", encoder.encode("a"));
+        final Transformer[] other = new Transformer[1];
+        Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    other[0] = encoder.getTransformer();
+                }
+            };
+        thread.start();
+        thread.join();
+        assertSame(encoder.getTransformer(), encoder.getTransformer());
+        assertNotSame(encoder.getTransformer(), other[0]);
+    }
+
+    @Test
+    public void threadConfinedLazy() {
+        Encode.register(CountedConfined.class.getName());
+        int registered = CountedConfined.instances.get();
+        Encode encoder = Encode.encoder("TEST_COUNTED_CONFINED");
+        // no transformer made which is never used
+        assertEquals(registered, CountedConfined.instances.get());
+        assertEquals("a", encoder.encode("a"));
+        assertEquals("b", encoder.encode("b"));
+        assertEquals(registered + 1, CountedConfined.instances.get());
+    }
+
+}
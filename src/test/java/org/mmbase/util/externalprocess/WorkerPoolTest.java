@@ -0,0 +1,226 @@
+/*
+
+This software is OSI Certified Open Source Software.
+OSI Certified is a certification mark of the Open Source Initiative.
+
+The license (Mozilla version 1.0) can be read at the MMBase site.
+See http://www.MMBase.org/license
+
+*/
+package org.mmbase.util.externalprocess;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.mmbase.util.transformers.AbstractCommandStringTransformer;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Uses this class itself (its main method) as the worker. It upper cases its input, or exits or
+ * sleeps if that is requested.
+ *
+ * @author Michiel Meeuwissen
+ */
+public class WorkerPoolTest {
+
+    static String[] getCommand() {
+        String javaHome = System.getProperty("java.home");
+        return new String[] {javaHome + File.separator + "bin" + File.separator + "java", "-cp", System.getProperty("java.class.path"), WorkerPoolTest.class.getName()};
+    }
+
+    static byte[] execute(WorkerPool pool, String request) throws Exception {
+        return pool.execute(request.getBytes("UTF-8"));
+    }
+
+    @Test
+    public void execute() throws Exception {
+        WorkerPool pool = new WorkerPool(1, getCommand());
+        assertEquals("HELLO", new String(execute(pool, "hello"), "UTF-8"));
+        assertEquals("", new String(execute(pool, ""), "UTF-8"));
+        assertEquals("WORLD", new String(execute(pool, "world"), "UTF-8"));
+        assertEquals(1, pool.getStarted());
+        pool.shutdown();
+    }
+
+    @Test
+    public void concurrent() throws Exception {
+        final WorkerPool pool = new WorkerPool(3, getCommand());
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        List<Future<byte[]>> results = new ArrayList<Future<byte[]>>();
+        for (int i = 0; i < 60; i++) {
+            final String request = "request " + i;
+            results.add(executor.submit(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws Exception {
+                        return execute(pool, request);
+                    }
+                }));
+        }
+        for (int i = 0; i < 60; i++) {
+            assertEquals("REQUEST " + i, new String(results.get(i).get(), "UTF-8"));
+        }
+        executor.shutdown();
+        assertTrue(pool.getStarted() <= 3);
+        pool.shutdown();
+    }
+
+    @Test
+    public void restart() throws Exception {
+        WorkerPool pool = new WorkerPool(1, getCommand());
+        assertEquals("A", new String(execute(pool, "a"), "UTF-8"));
+        try {
+            execute(pool, "exit");
+            fail();
+        } catch (ProcessException pe) {
+        }
+        assertEquals("B", new String(execute(pool, "b"), "UTF-8"));
+        assertEquals(2, pool.getStarted());
+        assertEquals(0, pool.healthCheck());
+        pool.shutdown();
+    }
+
+    @Test
+    public void timeout() throws Exception {
+        WorkerPool pool = new WorkerPool(1, getCommand());
+        pool.setTimeout(2000);
+        assertEquals("A", new String(execute(pool, "a"), "UTF-8"));
+        try {
+            execute(pool, "sleep");
+            fail();
+        } catch (ProcessException pe) {
+            assertTrue(pe.getMessage(), pe.getMessage().contains("No answer in 2000 ms"));
+        }
+        assertEquals("B", new String(execute(pool, "b"), "UTF-8"));
+        pool.shutdown();
+    }
+
+    @Test
+    public void badLength() throws Exception {
+        WorkerPool pool = new WorkerPool(1, getCommand());
+        pool.setMaxResponse(1000);
+        for (String request : new String[] {"negative", "huge", "toolong"}) {
+            try {
+                execute(pool, request);
+                fail();
+            } catch (ProcessException pe) {
+                assertTrue(pe.getMessage(), pe.getMessage().contains("not between 0 and 1000"));
+            }
+        }
+        assertEquals("C", new String(execute(pool, "c"), "UTF-8"));
+        assertEquals(4, pool.getStarted());
+        pool.shutdown();
+    }
+
+    @Test
+    public void healthChecks() throws Exception {
+        WorkerPool pool = new WorkerPool(1, getCommand());
+        pool.setHealthCheckInterval(0);
+        assertEquals("A", new String(execute(pool, "a"), "UTF-8"));
+        assertEquals("", new String(execute(pool, "hang"), "UTF-8"));
+        // the health check finds the idle worker not answering
+        pool.setTimeout(200);
+        pool.setHealthCheckInterval(100);
+        long end = System.currentTimeMillis() + 10000;
+        while (pool.toString().contains("(1/1 idle") && System.currentTimeMillis() < end) {
+            Thread.sleep(50);
+        }
+        assertTrue(pool.toString(), pool.toString().contains("(0/1 idle"));
+        pool.shutdown();
+    }
+
+    @Test
+    public void shutdownAll() throws Exception {
+        final WorkerPool pool = WorkerPool.getInstance(2, getCommand());
+        assertSame(pool, WorkerPool.getInstance(2, getCommand()));
+        assertEquals("A", new String(execute(pool, "a"), "UTF-8"));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<byte[]> slow = executor.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    return execute(pool, "slow");
+                }
+            });
+        long end = System.currentTimeMillis() + 10000;
+        while (! pool.toString().contains("(0/2 idle") && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        WorkerPool.shutdownAll();
+        // the busy worker finishes its job, and is stopped then too
+        assertEquals("SLOW", new String(slow.get(), "UTF-8"));
+        executor.shutdown();
+        assertTrue(pool.toString(), pool.toString().contains("(0/2 idle"));
+        assertNotSame(pool, WorkerPool.getInstance(2, getCommand()));
+        WorkerPool.shutdownAll();
+    }
+
+    public static class UpperCaser extends AbstractCommandStringTransformer {
+        private static final long serialVersionUID = 0L;
+        @Override
+        protected String[] getCommand() {
+            return WorkerPoolTest.getCommand();
+        }
+    }
+
+    @Test
+    public void transformer() {
+        UpperCaser upperCaser = new UpperCaser();
+        upperCaser.setPoolSize(2);
+        upperCaser.setThrowErrors(true);
+        assertEquals("STARTING", upperCaser.transform("starting"));
+        for (int i = 0; i < 50; i++) {
+            assertEquals("TRANSFORM " + i, upperCaser.transform("transform " + i));
+        }
+    }
+
+    /**
+     * The worker.
+     */
+    public static void main(String[] argv) throws Exception {
+        BufferedReader lines = new BufferedReader(new InputStreamReader(System.in, "ISO-8859-1"));
+        OutputStream out = new BufferedOutputStream(System.out);
+        String length;
+        while ((length = lines.readLine()) != null) {
+            char[] buf = new char[Integer.parseInt(length)];
+            int read = 0;
+            while (read < buf.length) {
+                read += lines.read(buf, read, buf.length - read);
+            }
+            String request = new String(new String(buf).getBytes("ISO-8859-1"), "UTF-8");
+            if (request.equals("exit")) {
+                System.exit(1);
+            }
+            if (request.equals("sleep")) {
+                Thread.sleep(100000);
+            }
+            if (request.equals("slow")) {
+                Thread.sleep(1000);
+            }
+            if (request.equals("negative")) {
+                out.write("-1\n".getBytes("US-ASCII"));
+                out.flush();
+                continue;
+            }
+            if (request.equals("huge")) {
+                out.write((Integer.MAX_VALUE + "\n").getBytes("US-ASCII"));
+                out.flush();
+                continue;
+            }
+            if (request.equals("toolong")) {
+                out.write("1001\n".getBytes("US-ASCII"));
+                out.flush();
+                continue;
+            }
+            if (request.equals("hang")) {
+                // answers this, but not the next request
+                out.write("0\n".getBytes("US-ASCII"));
+                out.flush();
+                Thread.sleep(100000);
+            }
+            byte[] answer = request.toUpperCase().getBytes("UTF-8");
+            out.write((answer.length + "\n").getBytes("US-ASCII"));
+            out.write(answer);
+            out.flush();
+        }
+    }
+}
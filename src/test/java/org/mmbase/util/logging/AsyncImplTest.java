@@ -0,0 +1,220 @@
+/*
+
+This software is OSI Certified Open Source Software.
+OSI Certified is a certification mark of the Open Source Initiative.
+
+The license (Mozilla version 1.0) can be read at the MMBase site.
+See http://www.MMBase.org/license
+
+*/
+package org.mmbase.util.logging;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.util.*;
+import java.util.regex.*;
+import java.io.*;
+/**
+ * @author Michiel Meeuwissen
+ * @version $Id$
+ */
+public class AsyncImplTest {
+
+    private static ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+    private static PrintStream          ORIG = System.out;
+
+    @BeforeClass
+    public static void setup() {
+        // the first consumer thread initializes ThreadPools, which logs a lot
+        AsyncImpl.getLoggerInstance("setup").info("setup");
+        AsyncImpl.shutdown();
+        System.setOut(new PrintStream(stdout));
+    }
+
+    @AfterClass
+    public static void shutdown() {
+        AsyncImpl.shutdown();
+        System.setOut(ORIG);
+    }
+
+    @Before
+    public void clear() {
+        AsyncImpl.shutdown();
+        stdout.reset();
+    }
+
+    /**
+     * What was written to stdout, without what ThreadPools logs when the consumer thread is created.
+     */
+    private static String output() {
+        return new String(stdout.toByteArray()).replaceAll("(?m)^\\S+ \\S+ \\S+ Found mn .*\\n", "");
+    }
+
+    @After
+    public void reset() {
+        AsyncImpl.shutdown();
+        AsyncImpl.configure("overflow=block,buffer=8192");
+        assertEquals(AsyncImpl.Overflow.BLOCK, AsyncImpl.getOverflow());
+        assertEquals(8192, AsyncImpl.getBufferSize());
+    }
+
+    @Test
+    public void options() {
+        AsyncImpl.configure("options:stdout,overflow=drop,buffer=16");
+        assertEquals(AsyncImpl.Overflow.DROP, AsyncImpl.getOverflow());
+        assertEquals(16, AsyncImpl.getBufferSize());
+        AsyncImpl.configure("options:overflow=discard");
+        assertEquals(AsyncImpl.Overflow.DISCARD, AsyncImpl.getOverflow());
+        AsyncImpl.configure(":stdout,service options:buffer=32");
+        assertEquals(32, AsyncImpl.getBufferSize());
+        assertEquals("stdout,service\noptions.a:debug\n", SimpleTimeStampImpl.takeOptions("stdout,service,buffer=32 options.a:buffer=4,debug options.b:overflow=block", Arrays.asList("buffer", "overflow"), new HashMap<String, String>()));
+    }
+
+    @Test
+    public void shutdownWhileLogging() throws InterruptedException {
+        AsyncImpl.configure("stop:stdout,service,overflow=block,buffer=2");
+        final Logger log = AsyncImpl.getLoggerInstance("stop.a");
+        Thread[] producers = new Thread[4];
+        for (int t = 0; t < producers.length; t++) {
+            producers[t] = new Thread() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < 2000; i++) {
+                            log.service("message " + i);
+                        }
+                    }
+                };
+            producers[t].start();
+        }
+        for (int i = 0; i < 20; i++) {
+            AsyncImpl.shutdown();
+            Thread.sleep(1);
+        }
+        for (Thread producer : producers) {
+            producer.join(20000);
+            assertFalse(producer.isAlive());
+        }
+        AsyncImpl.shutdown();
+        String[] lines = output().split("\n");
+        assertEquals(producers.length * 2000, lines.length);
+    }
+
+    /**
+     * With a big buffer the producers don't wait, so they may claim a slot of a ring which is being
+     * stopped, after it was drained.
+     */
+    @Test
+    public void shutdownWhileLoggingBigBuffer() throws InterruptedException {
+        AsyncImpl.configure("stopbig:stdout,service,overflow=block,buffer=8192");
+        final Logger log = AsyncImpl.getLoggerInstance("stopbig.a");
+        Thread[] producers = new Thread[4];
+        for (int t = 0; t < producers.length; t++) {
+            producers[t] = new Thread() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < 20000; i++) {
+                            log.service("message " + i);
+                        }
+                    }
+                };
+            producers[t].start();
+        }
+        for (int i = 0; i < 200; i++) {
+            AsyncImpl.shutdown();
+            Thread.yield();
+        }
+        for (Thread producer : producers) {
+            producer.join(20000);
+            assertFalse(producer.isAlive());
+        }
+        AsyncImpl.shutdown();
+        String[] lines = output().split("\n");
+        assertEquals(producers.length * 20000, lines.length);
+    }
+
+    @Test
+    public void configure() {
+        AsyncImpl.configure("async:stdout,debug,overflow=block");
+        Logger a = AsyncImpl.getLoggerInstance("async.a");
+        a.trace("a0");
+        a.debug("a1");
+        a.service("a2");
+        AsyncImpl.configure("async:service");
+        a.debug("a3");
+        a.warn("a4");
+        AsyncImpl.shutdown();
+        String result = output();
+        Pattern p = Pattern.compile("DEBUG \\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2},\\d{3} a1\\n" +
+                                    "SERVICE \\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2},\\d{3} a2\\n" +
+                                    "WARN \\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2},\\d{3} a4\\n");
+        assertTrue(p + "\n" + result, p.matcher(result).matches());
+    }
+
+    @Test
+    public void order() throws InterruptedException {
+        AsyncImpl.configure("order:stdout,service,overflow=block,buffer=16");
+        final int threads = 4;
+        final int count = 1000;
+        Thread[] producers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final Logger log = AsyncImpl.getLoggerInstance("order." + t);
+            final int thread = t;
+            producers[t] = new Thread() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < count; i++) {
+                            log.service(thread + ":" + i);
+                        }
+                    }
+                };
+            producers[t].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        AsyncImpl.shutdown();
+        String[] lines = output().split("\n");
+        // nothing is lost when blocking, and the messages of one thread stay in order
+        assertEquals(threads * count, lines.length);
+        int[] next = new int[threads];
+        for (String line : lines) {
+            String[] message = line.substring(line.lastIndexOf(' ') + 1).split(":");
+            int thread = Integer.parseInt(message[0]);
+            assertEquals(line, next[thread]++, Integer.parseInt(message[1]));
+        }
+        assertEquals(0, AsyncImpl.getDropped());
+    }
+
+    @Test
+    public void drop() {
+        AsyncImpl.configure("drop:stdout,service,overflow=drop,buffer=4");
+        Logger log = AsyncImpl.getLoggerInstance("drop.a");
+        int count = 10000;
+        for (int i = 0; i < count; i++) {
+            log.service("" + i);
+        }
+        long dropped = AsyncImpl.getDropped();
+        AsyncImpl.shutdown();
+        String[] lines = output().split("\n");
+        assertEquals(count, lines.length + dropped);
+    }
+
+    @Test
+    public void discard() {
+        AsyncImpl.configure("discard:stdout,service,overflow=discard,buffer=4");
+        Logger log = AsyncImpl.getLoggerInstance("discard.a");
+        int count = 10000;
+        for (int i = 0; i < count; i++) {
+            log.service("s" + i);
+            log.warn("w" + i);
+        }
+        long dropped = AsyncImpl.getDropped();
+        AsyncImpl.shutdown();
+        int warnings = 0;
+        for (String line : output().split("\n")) {
+            if (line.startsWith("WARN")) warnings++;
+        }
+        assertEquals(count, warnings);
+        assertTrue(dropped <= count);
+    }
+}
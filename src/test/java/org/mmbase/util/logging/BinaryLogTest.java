@@ -0,0 +1,166 @@
+/*
+
+This software is OSI Certified Open Source Software.
+OSI Certified is a certification mark of the Open Source Initiative.
+
+The license (Mozilla version 1.0) can be read at the MMBase site.
+See http://www.MMBase.org/license
+
+*/
+package org.mmbase.util.logging;
+
+import java.io.*;
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author Michiel Meeuwissen
+ * @version $Id$
+ */
+public class BinaryLogTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("binarylog", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private static String decode(List<File> files) throws IOException {
+        StringBuilder buf = new StringBuilder();
+        for (File f : files) {
+            BinaryLog.decode(f, buf);
+        }
+        return buf.toString();
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        BinaryLog log = new BinaryLog(new File(dir, "test"), 4096, 2);
+        long time = System.currentTimeMillis();
+        log.write(time, Level.INFO, "org.mmbase.A", "a {} b {} c {} d {}", new Object[] {1, "x", null, 1.5}, null);
+        log.write(time - 10, Level.DEBUG, "org.mmbase.B", null, new Object[] {"plain € 😀"}, null);
+        log.write(time + 5, Level.WARN, "org.mmbase.A", "a {} b {} c {} d {}", new Object[] {-300L, true, new int[0], new String[] {"q"}}, new Exception("bla"));
+        log.close();
+        String[] lines = decode(BinaryLog.getFiles(dir, "test")).split("\n");
+        assertEquals("INFO " + TimeStamp.format(time) + " org.mmbase.A a 1 b x c null d 1.5", lines[0]);
+        assertEquals("DEBUG " + TimeStamp.format(time - 10) + " org.mmbase.B plain € 😀", lines[1]);
+        assertTrue(lines[2], lines[2].startsWith("WARN " + TimeStamp.format(time + 5) + " org.mmbase.A a -300 b true c [I@"));
+        assertTrue(lines[2], lines[2].endsWith(" d [q]"));
+        assertEquals("java.lang.Exception: bla", lines[3]);
+    }
+
+    @Test
+    public void rotate() throws IOException {
+        BinaryLog log = new BinaryLog(new File(dir, "test"), 2048, 3);
+        long time = System.currentTimeMillis();
+        for (int i = 0; i < 1000; i++) {
+            log.write(time + i, Level.SERVICE, "cat", "message {}", new Object[] {i}, null);
+        }
+        log.close();
+        List<File> files = BinaryLog.getFiles(dir, "test");
+        assertEquals(3, files.size());
+        String[] lines = decode(files).split("\n");
+        assertEquals("SERVICE " + TimeStamp.format(time + 999) + " cat message 999", lines[lines.length - 1]);
+        for (int i = 1; i < lines.length; i++) {
+            int previous = Integer.parseInt(lines[i - 1].substring(lines[i - 1].lastIndexOf(' ') + 1));
+            assertEquals(previous + 1, Integer.parseInt(lines[i].substring(lines[i].lastIndexOf(' ') + 1)));
+        }
+        assertEquals(0, log.getDropped());
+
+        // continues with the next sequence number
+        BinaryLog again = new BinaryLog(new File(dir, "test"), 2048, 3);
+        assertEquals(BinaryLog.getSequence(files.get(2)) + 1, BinaryLog.getSequence(again.getFile()));
+        again.close();
+        assertEquals(3, BinaryLog.getFiles(dir, "test").size());
+    }
+
+    @Test
+    public void tooLarge() throws IOException {
+        BinaryLog log = new BinaryLog(new File(dir, "test"), 1024, 2);
+        char[] big = new char[2000];
+        Arrays.fill(big, 'x');
+        log.write(System.currentTimeMillis(), Level.INFO, "cat", null, new Object[] {new String(big)}, null);
+        log.write(System.currentTimeMillis(), Level.INFO, "cat", null, new Object[] {"small"}, null);
+        log.close();
+        assertEquals(1, log.getDropped());
+        assertTrue(decode(BinaryLog.getFiles(dir, "test")).endsWith(" cat small\n"));
+    }
+
+    @Test
+    public void rotationFailure() throws IOException, InterruptedException {
+        BinaryLog log = new BinaryLog(new File(dir, "test"), 1024, 5);
+        // the next file cannot be created
+        File next = new File(dir, "test.1" + BinaryLog.SUFFIX);
+        assertTrue(next.mkdir());
+        long time = System.currentTimeMillis();
+        int i = 0;
+        while (log.write(time, Level.INFO, "cat", "message {}", new Object[] {i}, null)) {
+            i++;
+        }
+        assertEquals(1, log.getDropped());
+        assertFalse(log.write(time, Level.INFO, "cat", "message {}", new Object[] {i}, null));
+        assertTrue(next.delete());
+        Thread.sleep(BinaryLog.RETRY + 100);
+        assertTrue(log.write(time, Level.INFO, "cat", "again", new Object[0], null));
+        log.close();
+        assertFalse(log.write(time, Level.INFO, "cat", "closed", new Object[0], null));
+        assertEquals(3, log.getDropped());
+        assertTrue(decode(BinaryLog.getFiles(dir, "test")).endsWith(" cat again\n"));
+    }
+
+    @Test
+    public void implFallback() throws IOException {
+        File notADirectory = new File(dir, "file");
+        assertTrue(notADirectory.createNewFile());
+        PrintStream err = System.err;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(captured, true));
+        try {
+            BinaryImpl.configure("org.mmbase:file=" + new File(notADirectory, "impl") + ",info");
+            Logger log = BinaryImpl.getLoggerInstance("org.mmbase.Fallback");
+            log.info("first {}", 1);
+            log.info("second");
+            assertNull(BinaryImpl.getBinaryLog());
+        } finally {
+            System.setErr(err);
+            BinaryImpl.shutdown();
+        }
+        String[] lines = new String(captured.toByteArray()).split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0], lines[0].startsWith("Could not open binary log "));
+        assertTrue(lines[1], lines[1].matches("INFO .* org.mmbase.Fallback first 1"));
+        assertTrue(lines[2], lines[2].matches("INFO .* org.mmbase.Fallback second"));
+    }
+
+    @Test
+    public void impl() throws IOException {
+        BinaryImpl.configure("file=" + new File(dir, "impl") + ",size=64K,files=2,debug");
+        Logger log = BinaryImpl.getLoggerInstance("org.mmbase.Impl");
+        log.trace("not logged {}", 1);
+        log.debug("a {} b", 2);
+        log.service("failed {}", "x", new IllegalStateException("bla"));
+        log.info("plain");
+        BinaryImpl.shutdown();
+        String[] lines = decode(BinaryLog.getFiles(dir, "impl")).split("\n");
+        assertTrue(lines[0], lines[0].matches("DEBUG .* org.mmbase.Impl a 2 b"));
+        assertTrue(lines[1], lines[1].matches("SERVICE .* org.mmbase.Impl failed x"));
+        assertEquals("java.lang.IllegalStateException: bla", lines[2]);
+        assertTrue(lines[lines.length - 1], lines[lines.length - 1].matches("INFO .* org.mmbase.Impl plain"));
+        assertEquals(16 * 1024, BinaryImpl.parseSize("16k"));
+    }
+}
@@ -0,0 +1,150 @@
+/*
+
+This software is OSI Certified Open Source Software.
+OSI Certified is a certification mark of the Open Source Initiative.
+
+The license (Mozilla version 1.0) can be read at the MMBase site.
+See http://www.MMBase.org/license
+
+*/
+package org.mmbase.util.logging;
+
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author Michiel Meeuwissen
+ * @version $Id$
+ */
+public class BufferedLoggerTest {
+
+    /**
+     * A buffered logger with a clock which only moves when the test says so.
+     */
+    private static class TimedLogger extends BufferedLogger {
+        long time = 1000000;
+        @Override
+        protected long currentTimeMillis() {
+            return time;
+        }
+    }
+
+    private static List<String> lines(BufferedLogger log) {
+        String list = log.getList(Level.TRACE);
+        return list.length() == 0 ? Collections.<String>emptyList() : Arrays.asList(list.split("\n"));
+    }
+
+    @Test
+    public void basic() {
+        BufferedLogger log = new BufferedLogger();
+        log.setLevel(Level.DEBUG);
+        assertEquals(Collections.emptyList(), lines(log));
+        log.trace("a");
+        log.debug("b");
+        log.info("c");
+        assertEquals(Arrays.asList("b", "c"), lines(log));
+        // relogging does not remove
+        assertEquals(Arrays.asList("b", "c"), lines(log));
+        assertEquals("c\n", log.getList(Level.INFO));
+    }
+
+    @Test
+    public void maxSize() {
+        BufferedLogger log = new BufferedLogger();
+        log.setMaxSize(3);
+        for (int i = 0; i < 10; i++) {
+            log.info("" + i);
+        }
+        assertEquals(Arrays.asList("7", "8", "9"), lines(log));
+        log.setMaxSize(2);
+        assertEquals(Arrays.asList("8", "9"), lines(log));
+        log.setMaxSize(5);
+        log.info("10");
+        assertEquals(Arrays.asList("8", "9", "10"), lines(log));
+    }
+
+    @Test
+    public void maxAge() {
+        TimedLogger log = new TimedLogger();
+        log.info("a");
+        log.info("b");
+        log.time += 100;
+        log.info("c");
+        log.setMaxAge(50);
+        assertEquals(Arrays.asList("c"), lines(log));
+        assertEquals(0, log.cleanup());
+        log.time += 50;
+        assertEquals(0, log.cleanup());
+        log.time += 1;
+        assertEquals(1, log.cleanup());
+        assertEquals(Collections.emptyList(), lines(log));
+    }
+
+    @Test
+    public void reLog() {
+        TimedLogger log = new TimedLogger();
+        log.info("a");
+        Date after = new Date(log.time);
+        log.time += 1;
+        log.info("b");
+        log.info("c");
+        java.io.StringWriter w = new java.io.StringWriter();
+        log.reLog(new WriterLogger(w), true, after);
+        assertEquals("b\nc\n", w.toString());
+        // cleared
+        assertEquals(Collections.emptyList(), lines(log));
+        log.info("d");
+        assertEquals(Arrays.asList("d"), lines(log));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void deprecated() {
+        BufferedLogger log = new BufferedLogger();
+        boolean found = false;
+        for (java.lang.ref.WeakReference<BufferedLogger> ref : BufferedLogger.instances) {
+            found |= ref.get() == log;
+        }
+        assertTrue(found);
+        long before = System.currentTimeMillis();
+        BufferedLogger.LogEntry entry = log.new LogEntry("a", Level.INFO);
+        assertTrue(entry.getTimeStamp().getTime() >= before);
+        assertEquals("a", entry.line);
+    }
+
+    @Test
+    public void concurrent() throws InterruptedException {
+        final BufferedLogger log = new BufferedLogger();
+        log.setMaxSize(100);
+        final int threads = 4;
+        final int count = 10000;
+        Thread[] loggers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            loggers[t] = new Thread() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < count; i++) {
+                            log.info(thread + ":" + i);
+                        }
+                    }
+                };
+            loggers[t].start();
+        }
+        for (Thread t : loggers) {
+            t.join();
+        }
+        List<String> lines = lines(log);
+        assertEquals(100, lines.size());
+        int[] previous = new int[threads];
+        Arrays.fill(previous, -1);
+        for (String line : lines) {
+            String[] parts = line.split(":");
+            int thread = Integer.parseInt(parts[0]);
+            int i = Integer.parseInt(parts[1]);
+            assertTrue(line, i > previous[thread]);
+            previous[thread] = i;
+        }
+    }
+}
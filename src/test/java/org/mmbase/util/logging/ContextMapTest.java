@@ -0,0 +1,201 @@
+/*
+
+This software is OSI Certified Open Source Software.
+OSI Certified is a certification mark of the Open Source Initiative.
+
+The license (Mozilla version 1.0) can be read at the MMBase site.
+See http://www.MMBase.org/license
+
+*/
+package org.mmbase.util.logging;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.mmbase.util.ThreadPools;
+import org.mmbase.util.transformers.ParallelTransformation;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author Michiel Meeuwissen
+ * @version $Id$
+ */
+public class ContextMapTest {
+
+    private final MDC mdc = Logging.getMDC();
+
+    @After
+    public void tearDown() {
+        mdc.setContext(ContextMap.EMPTY);
+    }
+
+    @Test
+    public void with() {
+        ContextMap a = ContextMap.EMPTY.with("a", 1);
+        ContextMap ab = a.with("b", 2);
+        assertEquals(Collections.singletonMap("a", 1), a);
+        assertEquals(2, ab.size());
+        assertEquals(2, ab.get("b"));
+        assertTrue(ab.containsKey("a"));
+        assertFalse(ab.containsKey("c"));
+        assertNull(ab.get(null));
+
+        ContextMap ab3 = ab.with("b", 3);
+        assertEquals(3, ab3.get("b"));
+        assertEquals(2, ab.get("b"));
+
+        assertSame(ab, ab.with("c", null));
+        assertEquals(Collections.singletonMap("b", 2), ab.with("a", null));
+        assertSame(ContextMap.EMPTY, a.with("a", null));
+    }
+
+    @Test
+    public void copyOf() {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("a", 1);
+        map.put("b", null);
+        map.put("c", "x");
+        ContextMap copy = ContextMap.copyOf(map);
+        assertEquals(2, copy.size());
+        assertEquals(new HashSet<String>(Arrays.asList("a", "c")), copy.keySet());
+        assertSame(copy, ContextMap.copyOf(copy));
+        assertSame(ContextMap.EMPTY, ContextMap.copyOf(null));
+    }
+
+    @Test
+    public void mdc() {
+        mdc.put("request", "/index.jsp");
+        Map<String, Object> context = mdc.getContext();
+        mdc.put("user", "admin");
+        assertEquals(Collections.singletonMap("request", "/index.jsp"), context);
+        assertEquals("admin", mdc.get("user"));
+        mdc.setContext(context);
+        assertNull(mdc.get("user"));
+        assertEquals("/index.jsp", mdc.get("request"));
+    }
+
+    @Test
+    public void threadPools() throws Exception {
+        Callable<Object> request = new Callable<Object>() {
+            @Override
+            public Object call() {
+                return mdc.get("request");
+            }
+        };
+        mdc.put("request", "/a.jsp");
+        Future<Object> a = ThreadPools.jobsExecutor.submit(request);
+        Future<Object> s = ThreadPools.scheduler.schedule(request, 1, TimeUnit.MILLISECONDS);
+        Future<Object> f = ThreadPools.forkJoinPool.submit(request);
+        mdc.put("request", "/b.jsp");
+        Future<Object> b = ThreadPools.filterExecutor.submit(request);
+        assertEquals("/a.jsp", a.get());
+        assertEquals("/a.jsp", s.get());
+        assertEquals("/a.jsp", f.get());
+        assertEquals("/b.jsp", b.get());
+
+        mdc.setContext(ContextMap.EMPTY);
+        assertNull(ThreadPools.jobsExecutor.submit(request).get());
+    }
+
+    @Test
+    public void emptyContextNotLeaked() throws Exception {
+        final Object[] seen = new Object[2];
+        // submitted without a context
+        final Runnable task = ThreadPools.withContext(new Runnable() {
+                @Override
+                public void run() {
+                    seen[0] = mdc.get("user");
+                    mdc.put("user", "bob");
+                }
+            });
+        Thread worker = new Thread() {
+                @Override
+                public void run() {
+                    // left behind by a previous task
+                    mdc.put("user", "alice");
+                    task.run();
+                    seen[1] = mdc.get("user");
+                }
+            };
+        worker.start();
+        worker.join();
+        assertNull(seen[0]);
+        assertEquals("alice", seen[1]);
+
+        // and on the same thread of a pool
+        Future<?> leaving = ThreadPools.jobsExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    mdc.put("user", "alice");
+                }
+            });
+        leaving.get();
+        Callable<Object> user = new Callable<Object>() {
+            @Override
+            public Object call() {
+                return mdc.get("user");
+            }
+        };
+        for (int i = 0; i < 10; i++) {
+            assertNull(ThreadPools.jobsExecutor.submit(user).get());
+        }
+    }
+
+    @Test
+    public void forkJoinInvokeAll() throws Exception {
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for (int i = 0; i < 4; i++) {
+            tasks.add(new Callable<Object>() {
+                    @Override
+                    public Object call() {
+                        return mdc.get("request");
+                    }
+                });
+        }
+        mdc.put("request", "/x");
+        for (Future<Object> f : ThreadPools.forkJoinPool.invokeAll(tasks)) {
+            assertEquals("/x", f.get());
+        }
+        for (Future<Object> f : ThreadPools.forkJoinPool.invokeAll(tasks, 1, TimeUnit.MINUTES)) {
+            assertEquals("/x", f.get());
+        }
+        assertEquals("/x", ThreadPools.forkJoinPool.invokeAny(tasks));
+        StringBuilder input = new StringBuilder();
+        while (input.length() < 1024 * 1024) {
+            input.append("line\n");
+        }
+        String result = new ParallelTransformation(ParallelTransformation.Boundary.LINE) {
+                @Override
+                protected String transformSegment(String segment) {
+                    return String.valueOf(mdc.get("request"));
+                }
+            }.transform(input.toString(), 1);
+        String[] segments = result.split("\n");
+        assertTrue(segments.length > 1);
+        for (String segment : segments) {
+            assertEquals("/x", segment);
+        }
+    }
+
+    @Test
+    public void queuedFutures() {
+        mdc.put("request", "/a.jsp");
+        Future<Object> future = ThreadPools.scheduler.schedule(new Callable<Object>() {
+                @Override
+                public Object call() {
+                    return null;
+                }
+            }, 1, TimeUnit.HOURS);
+        ThreadPools.identify(future, "queued job");
+        try {
+            assertTrue(ThreadPools.scheduler.getQueue().contains(future));
+            for (Runnable r : ThreadPools.scheduler.getQueue()) {
+                assertTrue(r instanceof Future);
+            }
+            assertEquals("queued job", ThreadPools.getString(future));
+        } finally {
+            future.cancel(true);
+            ThreadPools.scheduler.remove((Runnable) future);
+        }
+    }
+}
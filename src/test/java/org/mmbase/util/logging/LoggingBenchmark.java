@@ -0,0 +1,199 @@
+/*
+
+This software is OSI Certified Open Source Software.
+OSI Certified is a certification mark of the Open Source Initiative.
+
+The license (Mozilla version 1.0) can be read at the MMBase site.
+See http://www.MMBase.org/license
+
+*/
+package org.mmbase.util.logging;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.WriterAppender;
+import org.apache.commons.logging.impl.Jdk14Logger;
+import org.mmbase.util.logging.commons.CommonsLog;
+import org.mmbase.util.logging.log4j.Log4jImpl;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the hot path of the {@link Logger} implementations: logging on an enabled level,
+ * plain and parameterized, on a disabled level, parameterized, concatenated and with an 'isDebugEnabled' guard, with
+ * the MDC, and from several threads at once. Everything is written to streams which discard it, so
+ * this measures the logging, not the disk.
+ *
+ * This replaces {@link Performance}. It is not a unit test, run it with the main method (on the
+ * test classpath). The arguments are those of JMH, e.g. <code>-p impl=SimpleTimeStampImpl,AsyncImpl -wi 1 -i 3</code>.
+ *
+ * @author Michiel Meeuwissen
+ * @since MMBase-2.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoggingBenchmark {
+
+    private static final String CATEGORY = "A0123456789.B0123456789.C0123456789";
+    private static final String MESSAGE  = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ1234567890";
+
+    @Param({"SimpleImpl", "SimpleTimeStampImpl", "Log4jImpl", "java", "commons", "ChainedLogger", "BufferedLogger", "AsyncImpl", "BinaryImpl", "RateLimitedLogger"})
+    public String impl;
+
+    private Logger log;
+    private MDC mdc;
+    private PrintStream out;
+    private PrintStream err;
+    private File dir;
+
+    private static final OutputStream NULL = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        };
+
+    @Setup
+    public void setup() throws IOException {
+        // the simple implementations take the streams when they are configured or instantiated
+        out = System.out;
+        err = System.err;
+        System.setOut(new PrintStream(NULL));
+        System.setErr(new PrintStream(NULL));
+        log = getLogger(impl);
+        log.setLevel(Level.INFO);
+        mdc = log instanceof Log4jImpl ? Log4jImpl.getMDC() : Logging.getMDC();
+    }
+
+    private Logger getLogger(String impl) throws IOException {
+        if ("SimpleImpl".equals(impl)) {
+            SimpleImpl.configure("stdout,info");
+            return SimpleImpl.getLoggerInstance(CATEGORY);
+        } else if ("SimpleTimeStampImpl".equals(impl)) {
+            SimpleTimeStampImpl.configure("stdout,info");
+            return SimpleTimeStampImpl.getLoggerInstance(CATEGORY);
+        } else if ("Log4jImpl".equals(impl)) {
+            Log4jImpl l = Log4jImpl.getLoggerInstance(CATEGORY);
+            l.setAdditivity(false);
+            l.addAppender(new WriterAppender(new PatternLayout("%d{ISO8601} %-5p %c %X{request} - %m%n"), new PrintStream(NULL)));
+            return l;
+        } else if ("java".equals(impl)) {
+            return new org.mmbase.util.logging.java.Impl(getJavaLogger(CATEGORY));
+        } else if ("commons".equals(impl)) {
+            getJavaLogger("commons." + CATEGORY);
+            return new CommonsLog(new Jdk14Logger("commons." + CATEGORY));
+        } else if ("ChainedLogger".equals(impl)) {
+            SimpleTimeStampImpl.configure("stdout,info");
+            return new ChainedLogger(SimpleTimeStampImpl.getLoggerInstance(CATEGORY), new BufferedLogger());
+        } else if ("BufferedLogger".equals(impl)) {
+            return new BufferedLogger();
+        } else if ("AsyncImpl".equals(impl)) {
+            AsyncImpl.configure("stdout,info,overflow=drop");
+            return AsyncImpl.getLoggerInstance(CATEGORY);
+        } else if ("RateLimitedLogger".equals(impl)) {
+            // after the first few, this measures the suppressed messages
+            SimpleTimeStampImpl.configure("stdout,info");
+            return new RateLimitedLogger(SimpleTimeStampImpl.getLoggerInstance(CATEGORY), new RateLimitedLogger.Limit("", 10));
+        } else if ("BinaryImpl".equals(impl)) {
+            dir = File.createTempFile("loggingbenchmark", "");
+            dir.delete();
+            BinaryImpl.configure("file=" + new File(dir, "benchmark") + ",size=64M,files=2,info");
+            return BinaryImpl.getLoggerInstance(CATEGORY);
+        } else {
+            throw new IllegalArgumentException(impl);
+        }
+    }
+
+    private static java.util.logging.Logger getJavaLogger(String name) {
+        java.util.logging.Logger l = java.util.logging.Logger.getLogger(name);
+        l.setUseParentHandlers(false);
+        l.addHandler(new java.util.logging.StreamHandler(NULL, new java.util.logging.SimpleFormatter()));
+        l.setLevel(java.util.logging.Level.INFO);
+        return l;
+    }
+
+    @TearDown
+    public void tearDown() {
+        AsyncImpl.shutdown();
+        BinaryImpl.shutdown();
+        if (dir != null) {
+            for (File f : BinaryLog.getFiles(dir, "benchmark")) {
+                f.delete();
+            }
+            dir.delete();
+        }
+        System.setOut(out);
+        System.setErr(err);
+    }
+
+    @Benchmark
+    public void enabled() {
+        log.info(MESSAGE);
+    }
+
+    @Benchmark
+    public void enabledParameterized() {
+        log.info("{} of {}", MESSAGE, 1);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void enabledThreads() {
+        log.info(MESSAGE);
+    }
+
+    @Benchmark
+    public void disabled() {
+        log.debug(MESSAGE);
+    }
+
+    @Benchmark
+    public void disabledParameterized() {
+        log.debug("{} of {}", MESSAGE, 1);
+    }
+
+    @Benchmark
+    public void disabledConcatenated(Blackhole bh) {
+        log.debug(MESSAGE + bh.hashCode());
+    }
+
+    @Benchmark
+    public void disabledGuarded(Blackhole bh) {
+        if (log.isDebugEnabled()) {
+            log.debug(MESSAGE + bh.hashCode());
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void disabledThreads() {
+        log.debug(MESSAGE);
+    }
+
+    @Benchmark
+    public void mdc() {
+        mdc.put("request", "/mmbase/index.jsp");
+        try {
+            log.info(MESSAGE);
+        } finally {
+            mdc.put("request", null);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException, org.openjdk.jmh.runner.options.CommandLineOptionException {
+        new Runner(new OptionsBuilder().parent(new CommandLineOptions(args)).include(LoggingBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,196 @@
+/*
+
+This software is OSI Certified Open Source Software.
+OSI Certified is a certification mark of the Open Source Initiative.
+
+The license (Mozilla version 1.0) can be read at the MMBase site.
+See http://www.MMBase.org/license
+
+*/
+package org.mmbase.util.logging;
+
+import java.util.*;
+import java.util.function.Supplier;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author Michiel Meeuwissen
+ * @version $Id$
+ */
+public class LoggingTest {
+
+    private static class ListLogger extends AbstractSimpleImpl {
+        final List<String> lines = new ArrayList<String>();
+        @Override
+        protected void log(String s, Level l) {
+            lines.add(l + " " + s);
+        }
+    }
+
+    /**
+     * Counts how often it is converted to a string.
+     */
+    private static class Counted {
+        int count = 0;
+        @Override
+        public String toString() {
+            count++;
+            return "counted";
+        }
+    }
+
+    @Test
+    public void format() {
+        assertEquals("a 1 b 2", Logging.format("a {} b {}", 1, 2));
+        assertEquals("a 1 b {}", Logging.format("a {} b {}", 1));
+        assertEquals("a 1", Logging.format("a {}", 1, 2));
+        assertEquals("a {} 1", Logging.format("a \\{} {}", 1));
+        assertEquals("null null", Logging.format("{} {}", null, null));
+        assertEquals("[x, [y]]", Logging.format("{}", (Object) new Object[] {"x", new String[] {"y"}}));
+        assertEquals("no place holders", Logging.format("no place holders"));
+    }
+
+    @Test
+    public void parameterized() {
+        ListLogger log = new ListLogger();
+        log.setLevel(Level.SERVICE);
+        log.service("a {} b {}", 1, 2);
+        log.info("c {}", "d");
+        assertEquals(Arrays.asList("SERVICE a 1 b 2", "INFO c d"), log.lines);
+        log.lines.clear();
+
+        Exception e = new Exception("e");
+        log.warn("failed {}", "x", e);
+        assertEquals(1, log.lines.size());
+        assertTrue(log.lines.get(0), log.lines.get(0).startsWith("WARN failed x\njava.lang.Exception: e"));
+        log.lines.clear();
+
+        // the throwable is used, if there is a place holder for it
+        log.warn("failed {} {}", "x", e);
+        assertEquals(Arrays.asList("WARN failed x java.lang.Exception: e"), log.lines);
+        log.lines.clear();
+
+        // but a single throwable argument makes it warn(Object, Throwable)
+        log.warn("failed {}", e);
+        assertTrue(log.lines.get(0), log.lines.get(0).startsWith("WARN failed {}\njava.lang.Exception: e"));
+    }
+
+    @Test
+    public void nulls() {
+        ListLogger log = new ListLogger();
+        log.info((String) null, "x");
+        log.info("a {}", (Object[]) null);
+        log.info((String) null, (Object[]) null);
+        assertEquals(Arrays.asList("INFO null", "INFO a {}", "INFO null"), log.lines);
+        assertEquals("null", Logging.format(null, "x"));
+        assertEquals("a {}", Logging.format("a {}", (Object[]) null));
+    }
+
+    @Test
+    public void lazy() {
+        ListLogger log = new ListLogger();
+        log.setLevel(Level.INFO);
+        Counted counted = new Counted();
+        final int[] supplied = new int[1];
+        Supplier<String> supplier = new Supplier<String>() {
+                @Override
+                public String get() {
+                    supplied[0]++;
+                    return "supplied";
+                }
+            };
+        log.debug("{}", counted);
+        log.service("{}", counted);
+        log.trace(supplier);
+        log.debug(supplier);
+        assertEquals(0, counted.count);
+        assertEquals(0, supplied[0]);
+        assertTrue(log.lines.isEmpty());
+
+        log.info("{}", counted);
+        log.info(supplier);
+        assertEquals(1, counted.count);
+        assertEquals(1, supplied[0]);
+        assertEquals(Arrays.asList("INFO counted", "INFO supplied"), log.lines);
+    }
+
+    @Test
+    public void fixedArity() {
+        final int[] varargs = new int[1];
+        ListLogger log = new ListLogger() {
+                @Override
+                public void debug(String format, Object... args) {
+                    varargs[0]++;
+                    super.debug(format, args);
+                }
+            };
+        log.setLevel(Level.INFO);
+        log.debug("{}", 1);
+        log.debug("{} {}", 1, 2);
+        // the array for the varargs is not even created
+        assertEquals(0, varargs[0]);
+        log.setLevel(Level.DEBUG);
+        log.debug("{}", 1);
+        log.debug("{} {}", 1, 2);
+        assertEquals(2, varargs[0]);
+        assertEquals(Arrays.asList("DEBUG 1", "DEBUG 1 2"), log.lines);
+        log.lines.clear();
+
+        log.error("failed", new Exception("e"));
+        assertTrue(log.lines.get(0), log.lines.get(0).startsWith("ERROR failed\njava.lang.Exception: e"));
+    }
+
+    @Test
+    public void chained() {
+        ListLogger debug = new ListLogger();
+        debug.setLevel(Level.DEBUG);
+        ListLogger warn = new ListLogger();
+        warn.setLevel(Level.WARN);
+        Counted counted = new Counted();
+        Logger chain = new ChainedLogger(debug, warn);
+        chain.trace("{}", counted);
+        assertEquals(0, counted.count);
+        chain.debug("{}", counted);
+        chain.error("{}", counted);
+        // formatted once per call, and only given to the loggers for which it is enabled
+        assertEquals(2, counted.count);
+        assertEquals(Arrays.asList("DEBUG counted", "ERROR counted"), debug.lines);
+        assertEquals(Arrays.asList("ERROR counted"), warn.lines);
+    }
+
+    @Test
+    public void wrapper() {
+        ListLogger list = new ListLogger();
+        LoggerWrapper wrapper = new LoggerWrapper(list, "test");
+        wrapper.info("{}{}", "a", "b");
+        wrapper.debug("{}", "c");
+        assertEquals(Arrays.asList("INFO ab"), list.lines);
+    }
+
+    @Test
+    public void factory() throws Exception {
+        LoggerFactory factory = Logging.getFactory(SimpleTimeStampImpl.class);
+        assertTrue(factory instanceof SimpleTimeStampImpl.Factory);
+        assertTrue(Logging.getFactory(AsyncImpl.class) instanceof AsyncImpl.Factory);
+        assertTrue(Logging.getFactory(org.mmbase.util.logging.log4j.Log4jImpl.class) instanceof org.mmbase.util.logging.log4j.Log4jImpl.Factory);
+
+        // no factory registered, uses the static methods
+        factory = Logging.getFactory(ExceptionImpl.class);
+        assertEquals(ExceptionImpl.class, factory.getLoggerClass());
+        assertTrue(factory.getLoggerInstance("a") instanceof ExceptionImpl);
+        assertNotNull(factory.getMDC()); // AbstractSimpleImpl#getMDC
+    }
+
+    @Test(expected = NoSuchMethodException.class)
+    public void noFactory() throws Exception {
+        Logging.getFactory(String.class);
+    }
+
+    @Test
+    public void cached() {
+        Logger a = Logging.getLoggerInstance("org.mmbase.test.cached");
+        assertSame(a, Logging.getLoggerInstance("org.mmbase.test.cached"));
+        assertNotSame(a, Logging.getLoggerInstance("org.mmbase.test.cached.b"));
+    }
+}
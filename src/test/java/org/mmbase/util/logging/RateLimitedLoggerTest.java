@@ -0,0 +1,155 @@
+/*
+
+This software is OSI Certified Open Source Software.
+OSI Certified is a certification mark of the Open Source Initiative.
+
+The license (Mozilla version 1.0) can be read at the MMBase site.
+See http://www.MMBase.org/license
+
+*/
+package org.mmbase.util.logging;
+
+import java.io.StringWriter;
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author Michiel Meeuwissen
+ * @version $Id$
+ */
+public class RateLimitedLoggerTest {
+
+    private StringWriter writer;
+
+    @Before
+    public void setUp() {
+        RateLimitedLogger.report(true);
+        writer = new StringWriter();
+    }
+
+    private List<String> lines() {
+        String s = writer.toString();
+        return s.length() == 0 ? Collections.<String>emptyList() : Arrays.asList(s.split("\n"));
+    }
+
+    @Test
+    public void burst() {
+        Logger log = new RateLimitedLogger(new WriterLogger(writer, Level.TRACE), new RateLimitedLogger.Limit("", 1, 5, 0, 60));
+        for (int i = 0; i < 100; i++) {
+            log.warn("cache didn't shrink " + i);
+        }
+        assertEquals(5, lines().size());
+        log.warn("something else");
+        log.warn("template {}", 1);
+        log.warn("template {}", 2);
+        assertEquals(8, lines().size());
+        assertEquals("something else", lines().get(5));
+
+        assertEquals(1, RateLimitedLogger.report(true));
+        assertEquals("Suppressed 95 messages like 'cache didn't shrink #' in the last 0 s (ratelimit * 1.0/s burst 5 summary 60s)", lines().get(8));
+        assertEquals(0, RateLimitedLogger.report(true));
+    }
+
+    @Test
+    public void sample() {
+        Logger log = new RateLimitedLogger(new WriterLogger(writer, Level.TRACE), new RateLimitedLogger.Limit("", 0.1, 1, 10, 60));
+        for (int i = 0; i < 101; i++) {
+            log.error("error {}", i);
+        }
+        assertEquals(11, lines().size());
+        assertEquals(Arrays.asList("error 0", "error 10", "error 20"), lines().subList(0, 3));
+    }
+
+    @Test
+    public void rate() throws InterruptedException {
+        Logger log = new RateLimitedLogger(new WriterLogger(writer, Level.TRACE), new RateLimitedLogger.Limit("", 20, 1, 0, 60));
+        log.info("a");
+        log.info("a");
+        assertEquals(1, lines().size());
+        Thread.sleep(100);
+        log.info("a");
+        assertEquals(2, lines().size());
+    }
+
+    @Test
+    public void disabled() {
+        Logger log = new RateLimitedLogger(new WriterLogger(writer, Level.INFO), new RateLimitedLogger.Limit("", 1, 2, 0, 60));
+        for (int i = 0; i < 10; i++) {
+            log.debug("a");
+        }
+        log.info("a");
+        log.info("a");
+        assertEquals(Arrays.asList("a", "a"), lines());
+        assertEquals(0, RateLimitedLogger.report(true));
+    }
+
+    @Test
+    public void disabledNotConverted() {
+        Logger log = new RateLimitedLogger(new WriterLogger(writer, Level.INFO), new RateLimitedLogger.Limit("", 1, 2, 0, 60));
+        final int[] converted = new int[1];
+        Object message = new Object() {
+                @Override
+                public String toString() {
+                    converted[0]++;
+                    return "message";
+                }
+            };
+        log.debug(message);
+        log.trace(message, new Exception());
+        assertEquals(0, converted[0]);
+        log.info(message);
+        assertEquals(Arrays.asList("message"), lines());
+    }
+
+    @Test
+    public void logging() {
+        assertTrue(Logging.getRateLimits().isEmpty());
+        try {
+            Logging.setRateLimits(Arrays.asList(new RateLimitedLogger.Limit("org.mmbase.test", 1), new RateLimitedLogger.Limit("org.mmbase.test.a", 10)));
+            Logger a = Logging.getLoggerInstance("org.mmbase.test.a.B");
+            assertTrue(a.toString(), a.toString().contains("(ratelimit org.mmbase.test.a 10.0/s burst 10 summary 60s)"));
+            Logger b = Logging.getLoggerInstance("org.mmbase.test.b");
+            assertTrue(b.toString(), b.toString().contains("(ratelimit org.mmbase.test 1.0/s burst 1 summary 60s)"));
+            assertFalse(Logging.getLoggerInstance("org.mmbase.other").toString().contains("ratelimit"));
+        } finally {
+            Logging.setRateLimits(Collections.<RateLimitedLogger.Limit>emptyList());
+        }
+        assertFalse(Logging.getLoggerInstance("org.mmbase.test.a.B").toString().contains("ratelimit"));
+    }
+
+    @Test
+    public void changedLimits() {
+        Logger log = new RateLimitedLogger(new WriterLogger(writer, Level.TRACE), "org.mmbase.test.changed.A");
+        Logger cached = Logging.getLoggerInstance("org.mmbase.test.changed.B");
+        assertFalse(cached.toString(), cached.toString().contains("ratelimit"));
+        try {
+            for (int i = 0; i < 10; i++) {
+                log.warn("warning {}", i);
+            }
+            assertEquals(10, lines().size());
+            Logging.setRateLimits(Arrays.asList(new RateLimitedLogger.Limit("org.mmbase.test.changed", 1, 2, 0, 60)));
+            for (int i = 0; i < 10; i++) {
+                log.warn("warning {}", i);
+            }
+            assertEquals(12, lines().size());
+            assertSame(cached, Logging.getLoggerInstance("org.mmbase.test.changed.B"));
+            assertTrue(cached.toString(), cached.toString().contains("(ratelimit org.mmbase.test.changed 1.0/s burst 2 summary 60s)"));
+        } finally {
+            Logging.setRateLimits(Collections.<RateLimitedLogger.Limit>emptyList());
+        }
+        for (int i = 0; i < 10; i++) {
+            log.warn("warning {}", i);
+        }
+        assertEquals(22, lines().size());
+        assertFalse(cached.toString().contains("ratelimit"));
+    }
+
+    @Test
+    public void key() {
+        assertEquals("abc", RateLimitedLogger.key("abc"));
+        assertEquals("size # > #", RateLimitedLogger.key("size 1234 > 1000"));
+        assertEquals("#a#", RateLimitedLogger.key("12a3"));
+        assertEquals("null", RateLimitedLogger.key(null));
+    }
+}
@@ -61,4 +61,43 @@ public class SimpleTimeStampImplTest {
 
     }
 
+    @Test
+    public void prefixes() {
+        SimpleTimeStampImpl.configure("trie.org:debug trie.org.mmbase:warn trie.org.mmbase.cache:stdout");
+        Logger cache = SimpleTimeStampImpl.getLoggerInstance("trie.org.mmbase.cache.Cache");
+        assertTrue(cache.isEnabledFor(Level.WARN));
+        assertFalse(cache.isEnabledFor(Level.INFO));
+        assertTrue(SimpleTimeStampImpl.getLoggerInstance("trie.org.other").isDebugEnabled());
+        assertTrue(SimpleTimeStampImpl.getLoggerInstance("trie.orga").isDebugEnabled());
+
+        // the latest configuration wins, also for a shorter prefix
+        SimpleTimeStampImpl.configure("trie.org", "info");
+        assertTrue(cache.isEnabledFor(Level.INFO));
+        assertFalse(cache.isServiceEnabled());
+        assertTrue(SimpleTimeStampImpl.getLoggerInstance("trie.org.mmbase.new").isEnabledFor(Level.INFO));
+        assertFalse(SimpleTimeStampImpl.getLoggerInstance("trie.org.other").isDebugEnabled());
+
+        // a configuration without level leaves the level alone
+        SimpleTimeStampImpl.configure("trie.org.mmbase", "stderr");
+        assertTrue(cache.isEnabledFor(Level.INFO));
+        assertSame(System.err, ((SimpleTimeStampImpl) cache).getStream(Level.INFO));
+    }
+
+    @Test
+    public void manyPrefixes() {
+        StringBuilder conf = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            conf.append("many.org.mmbase.module").append(i).append(":stdout,info ");
+        }
+        SimpleTimeStampImpl.configure(conf.toString());
+        for (int i = 0; i < 1000; i++) {
+            SimpleTimeStampImpl.getLoggerInstance("many.org.mmbase.module" + (i % 100) + ".Logger" + i);
+        }
+        SimpleTimeStampImpl.configure("many.org.mmbase.module5:debug");
+        assertTrue(SimpleTimeStampImpl.getLoggerInstance("many.org.mmbase.module5.Logger5").isDebugEnabled());
+        assertTrue(SimpleTimeStampImpl.getLoggerInstance("many.org.mmbase.module5.Logger105").isDebugEnabled());
+        assertFalse(SimpleTimeStampImpl.getLoggerInstance("many.org.mmbase.module6.Logger6").isDebugEnabled());
+        assertTrue(SimpleTimeStampImpl.getLoggerInstance("many.org.mmbase.module6.Logger6").isEnabledFor(Level.INFO));
+    }
+
 }
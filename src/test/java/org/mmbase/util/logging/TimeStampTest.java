@@ -0,0 +1,68 @@
+/*
+
+This software is OSI Certified Open Source Software.
+OSI Certified is a certification mark of the Open Source Initiative.
+
+The license (Mozilla version 1.0) can be read at the MMBase site.
+See http://www.MMBase.org/license
+
+*/
+package org.mmbase.util.logging;
+
+import java.text.SimpleDateFormat;
+import java.util.*;
+import org.apache.log4j.spi.LoggingEvent;
+import org.mmbase.util.logging.log4j.MMPatternLayout;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author Michiel Meeuwissen
+ * @version $Id$
+ */
+public class TimeStampTest {
+
+    private final SimpleDateFormat format = new SimpleDateFormat(TimeStamp.PATTERN);
+
+    @Test
+    public void format() {
+        Random random = new Random(1);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 10000; i++) {
+            long time = now + random.nextInt(10000000) - 5000000;
+            assertEquals(format.format(new Date(time)), TimeStamp.format(time));
+        }
+        for (long time : new long[] {0, 999, 1000, -1, -999, -1000, -1001, now}) {
+            assertEquals(format.format(new Date(time)), TimeStamp.format(time));
+        }
+        assertEquals(TimeStamp.LENGTH, TimeStamp.format(now).length());
+    }
+
+    @Test
+    public void sameSecond() {
+        long second = (System.currentTimeMillis() / 1000) * 1000;
+        for (int ms = 0; ms < 1000; ms++) {
+            assertEquals(format.format(new Date(second + ms)), TimeStamp.format(second + ms));
+        }
+        StringBuilder buf = new StringBuilder("x ");
+        assertEquals("x " + format.format(new Date(second + 7)), TimeStamp.append(buf, second + 7).toString());
+    }
+
+    @Test
+    public void patternLayout() {
+        long time = System.currentTimeMillis();
+        LoggingEvent event = new LoggingEvent("a", org.apache.log4j.Logger.getLogger("a"), time, org.apache.log4j.Level.INFO, "message", null);
+        assertEquals(format.format(new Date(time)) + " message", new MMPatternLayout("%d{ISO8601} %m").format(event));
+        assertEquals(format.format(new Date(time)) + " message", new MMPatternLayout("%d %m").format(event));
+        assertEquals(new SimpleDateFormat("HH:mm").format(new Date(time)) + " message", new MMPatternLayout("%d{HH:mm} %m").format(event));
+
+        // formatted directly after the first event, unless padded or truncated
+        MMPatternLayout layout = new MMPatternLayout("%d %m");
+        MMPatternLayout padded = new MMPatternLayout("%25d|%-25d|%.10d %m");
+        String expected = format.format(new Date(time));
+        for (int i = 0; i < 2; i++) {
+            assertEquals(expected + " message", layout.format(event));
+            assertEquals("  " + expected + "|" + expected + "  |" + expected.substring(expected.length() - 10) + " message", padded.format(event));
+        }
+    }
+}
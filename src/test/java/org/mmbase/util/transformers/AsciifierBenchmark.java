@@ -0,0 +1,67 @@
+package org.mmbase.util.transformers;
+
+import java.text.Normalizer;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures {@link Asciifier} and {@link DiacriticsRemover} on typical titles, of which slugs are
+ * made, compared with the regular expressions they used before. This is not a unit test, run it
+ * with the main method (on the test classpath).
+ *
+ * @author Michiel Meeuwissen
+ * @since MMBase-2.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AsciifierBenchmark {
+
+    private static final Pattern NOASCII = Pattern.compile("[^\\p{ASCII}]");
+
+    @Param({"Annual report 2024", "Café crème brûlée in Zürich", "перестройка"})
+    public String title;
+
+    private final Asciifier asciifier = new Asciifier();
+    private final StringBuilder buffer = new StringBuilder();
+
+    @Benchmark
+    public String asciifier() {
+        return asciifier.transform(title);
+    }
+
+    @Benchmark
+    public StringBuilder asciifierAppendable() throws java.io.IOException {
+        buffer.setLength(0);
+        asciifier.transform(title, buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public String asciifierPatterns() {
+        String str = DiacriticsRemover.DIACRITICS.matcher(Normalizer.normalize(title, Normalizer.Form.NFD)).replaceAll("");
+        return NOASCII.matcher(str).replaceAll("?");
+    }
+
+    @Benchmark
+    public String diacriticsRemover() {
+        return DiacriticsRemover.INSTANCE.transform(title);
+    }
+
+    @Benchmark
+    public String diacriticsRemoverPatterns() {
+        return DiacriticsRemover.DIACRITICS.matcher(Normalizer.normalize(title, Normalizer.Form.NFD)).replaceAll("");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(AsciifierBenchmark.class.getSimpleName()).build()).run();
+    }
+}
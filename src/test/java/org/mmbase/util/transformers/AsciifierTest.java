@@ -29,4 +29,26 @@ public class AsciifierTest  {
         assertEquals("Cafe_22_", a.transform(testString2));
     }
 
+    @Test
+    public void table() throws Exception {
+        Asciifier a = new Asciifier();
+        String ascii = "Annual report 2024";
+        assertSame(ascii, a.transform(ascii));
+        // modifier symbols are diacritics too
+        assertEquals("a b", a.transform("a^ `b"));
+        assertEquals("a ?", a.transform("\u00e5 \u0436"));
+        // a combining mark which is not removed, and must be reordered by the normalization
+        assertEquals("a??", a.transform("a\u05b0\u0591"));
+
+        StringBuilder sb = new StringBuilder("slug: ");
+        a.transform("Caf\u00e9", sb);
+        assertEquals("slug: Cafe", sb.toString());
+
+        a.setCollapseMultiple(true);
+        a.setReplacer("-");
+        assertEquals("-", a.transform("\u0436\u0301\u0436"));
+        a.setRemoveDiacritis(false);
+        assertEquals("Caf-", a.transform("Caf\u00e9"));
+    }
+
 }
@@ -0,0 +1,97 @@
+package org.mmbase.util.transformers;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the {@link BufferedByteToCharTransformer}s on arrays, ByteBuffers and streams, with
+ * java.util.Base64 as a reference. This is not a unit test, run it with the main method (on the
+ * test classpath), and compare the results with those of an older version.
+ *
+ * @author Michiel Meeuwissen
+ * @since MMBase-2.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Base64Benchmark {
+
+    @Param({"1000", "1000000"})
+    public int size;
+
+    private final Base64 base64 = new Base64();
+    private final Hex hex = new Hex();
+    private byte[] bytes;
+    private ByteBuffer direct;
+    private String encoded;
+    private String hexEncoded;
+
+    @Setup
+    public void setup() {
+        bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        direct = ByteBuffer.allocateDirect(size);
+        direct.put(bytes).flip();
+        encoded = base64.transform(bytes);
+        hexEncoded = hex.transform(bytes);
+    }
+
+    @Benchmark
+    public String encode() {
+        return base64.transform(bytes);
+    }
+
+    @Benchmark
+    public String encodeReference() {
+        return java.util.Base64.getEncoder().encodeToString(bytes);
+    }
+
+    @Benchmark
+    public String encodeDirectBuffer() {
+        return base64.transform(direct.duplicate());
+    }
+
+    @Benchmark
+    public Writer encodeStream() {
+        return base64.transform(new ByteArrayInputStream(bytes), new StringWriter(encoded.length()));
+    }
+
+    @Benchmark
+    public byte[] decode() {
+        return base64.transformBack(encoded);
+    }
+
+    @Benchmark
+    public byte[] decodeReference() {
+        return java.util.Base64.getDecoder().decode(encoded);
+    }
+
+    @Benchmark
+    public OutputStream decodeStream() {
+        return base64.transformBack(new StringReader(encoded), new ByteArrayOutputStream(size));
+    }
+
+    @Benchmark
+    public String hexEncode() {
+        return hex.transform(bytes);
+    }
+
+    @Benchmark
+    public byte[] hexDecode() {
+        return hex.transformBack(hexEncoded);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(Base64Benchmark.class.getSimpleName()).build()).run();
+    }
+}
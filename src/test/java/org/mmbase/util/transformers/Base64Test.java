@@ -0,0 +1,110 @@
+package org.mmbase.util.transformers;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author Michiel Meeuwissen
+ * @version $Id$
+ */
+public class Base64Test {
+
+    private static byte[] random(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void basic() {
+        Base64 base64 = new Base64();
+        assertEquals("", base64.transform(new byte[0]));
+        assertEquals("YQ==", base64.transform("a".getBytes()));
+        assertEquals("YWI=", base64.transform("ab".getBytes()));
+        assertEquals("YWJj", base64.transform("abc".getBytes()));
+        assertEquals("abc", new String(base64.transformBack("YWJj")));
+        assertEquals("ab", new String(base64.transformBack("YWI=")));
+        assertEquals("6869", new Hex().transform("hi".getBytes()));
+        assertEquals("hi", new String(new Hex().transformBack("6869")));
+        assertEquals("ÿ", new String(new Hex().transformBack("FF"), java.nio.charset.Charset.forName("ISO-8859-1")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void illegal() {
+        new Base64().transformBack("YQ==YQ==");
+    }
+
+    @Test
+    public void streams() throws IOException {
+        for (BufferedByteToCharTransformer t : new BufferedByteToCharTransformer[] {new Base64(), new Hex()}) {
+            // around the sizes of the buffers
+            for (int length : new int[] {0, 1, 2, 3, 4, 6143, 6144, 6145, 100000}) {
+                byte[] bytes = random(length);
+                String encoded = t.transform(bytes);
+                assertEquals(encoded, t.transform(new ByteArrayInputStream(bytes), new StringWriter()).toString());
+                assertEquals(encoded, t.transform(ByteBuffer.wrap(bytes)));
+                ByteBuffer direct = ByteBuffer.allocateDirect(length);
+                direct.put(bytes).flip();
+                assertEquals(encoded, t.transform(direct));
+
+                assertArrayEquals(bytes, t.transformBack(encoded));
+                assertArrayEquals(bytes, ((ByteArrayOutputStream) t.transformBack(new StringReader(encoded))).toByteArray());
+                assertArrayEquals(bytes, t.transformBack((CharSequence) encoded).array());
+
+                // written in odd pieces, and flushed in between
+                StringWriter writer = new StringWriter();
+                OutputStream out = t.encodingOutputStream(writer);
+                for (int i = 0; i < length; i += 1001) {
+                    out.write(bytes, i, Math.min(1001, length - i));
+                    out.flush();
+                }
+                out.close();
+                assertEquals(encoded, writer.toString());
+            }
+        }
+    }
+
+    @Test
+    public void large() throws IOException {
+        // 'streams' of 20 MB, which are never completely in memory
+        final long length = 20 * 1000 * 1000;
+        PipedReader reader = new PipedReader(100000);
+        final Base64 base64 = new Base64();
+        final Writer writer = new PipedWriter(reader);
+        Thread encoder = new Thread() {
+                @Override
+                public void run() {
+                    base64.transform(new BufferedInputStream(in(length)), writer);
+                    try {
+                        writer.close();
+                    } catch (IOException ioe) {
+                    }
+                }
+            };
+        encoder.start();
+        InputStream decoded = base64.decodingInputStream(reader);
+        long count = 0;
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = decoded.read(buf)) != -1) {
+            for (int i = 0; i < n; i++) {
+                assertEquals((byte) (count++ % 251), buf[i]);
+            }
+        }
+        assertEquals(length, count);
+    }
+
+    private static InputStream in(final long length) {
+        return new InputStream() {
+            long count = 0;
+            @Override
+            public int read() {
+                return count < length ? (int) (count++ % 251) : -1;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,71 @@
+package org.mmbase.util.transformers;
+
+import org.mmbase.util.Encode;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author Michiel Meeuwissen
+ * @version $Id$
+ */
+public class CachingCharTransformerTest {
+
+    /**
+     * Counts its invocations, and appends the count to the result, so cached results can be recognized.
+     */
+    static class Counting extends StringTransformer {
+        private static final long serialVersionUID = 0L;
+        int count = 0;
+        @Override
+        public String transform(String s) {
+            return s + (++count);
+        }
+    }
+
+    @Test
+    public void cached() {
+        Counting counting = new Counting();
+        CharTransformer caching = new CachingCharTransformer(counting);
+        assertEquals("a1", caching.transform("a"));
+        assertEquals("a1", caching.transform("a"));
+        assertEquals("b2", caching.transform("b"));
+        assertEquals("a1", caching.transform("a"));
+        assertEquals(2, counting.count);
+    }
+
+    @Test
+    public void sharing() {
+        Counting counting1 = new Counting();
+        Counting counting2 = new Counting();
+        assertEquals("x1", new CachingCharTransformer(counting1).transform("x"));
+        assertEquals("x1", new CachingCharTransformer(counting2).transform("x"));
+        assertEquals("y2", new CachingCharTransformer(counting1, "id").transform("y"));
+        // same id, so the result of counting1 is used
+        assertEquals("y2", new CachingCharTransformer(counting2, "id").transform("y"));
+        assertEquals(1, counting2.count);
+    }
+
+    @Test
+    public void maxEntrySize() {
+        Counting counting = new Counting();
+        CharTransformer caching = new CachingCharTransformer(counting);
+        StringBuilder big = new StringBuilder();
+        while (big.length() <= CachingCharTransformer.getCache().getMaxEntrySize()) {
+            big.append("big ");
+        }
+        caching.transform(big.toString());
+        caching.transform(big.toString());
+        assertEquals(2, counting.count);
+    }
+
+    @Test
+    public void encode() {
+        Encode encode = new Encode("MMXF_ASCII");
+        assertTrue(encode.getTransformer() instanceof CachingCharTransformer);
+        assertEquals("MMXF_ASCII", encode.getEncoding());
+        assertFalse(new Encode("ESCAPE_XML").getTransformer() instanceof CachingCharTransformer);
+        assertEquals("<p>a</p>", Encode.decode("MMXF_HTML_BLOCK", "a"));
+        assertEquals("<p>a</p>", Encode.decode("MMXF_HTML_BLOCK", "a"));
+    }
+
+}
@@ -0,0 +1,77 @@
+package org.mmbase.util.transformers;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the {@link ChunkedTransformer}s on a few hundred kB of HTML. This is not a unit test, run it
+ * with the main method (on the test classpath), and compare the results with those of an older
+ * version.
+ *
+ * @author Michiel Meeuwissen
+ * @since MMBase-2.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChunkedTransformerBenchmark {
+
+    @Param({"XMLTEXT_WORDS", "XMLTEXT", "WORDS", "LINES"})
+    public String mode;
+
+    private String html;
+    private CharTransformer linkFinder;
+    private CharTransformer censor;
+
+    @Setup
+    public void setup() {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            buf.append("<p class=\"intro\">Visit http://www.mmbase.org/ or mail info@mmbase.org about &quot;mmbase&quot; ");
+            buf.append("(the best, fuck it), paragraph ").append(i).append(".</p>\n");
+            buf.append("<ul><li><a href=\"http://example.com/\">example</a> and www.example.org.</li></ul>\n");
+        }
+        html = buf.toString();
+        LinkFinder lf = new LinkFinder();
+        lf.configure(config(mode) | ChunkedTransformer.ONLY_USE_FIRST_MATCHING_PATTERN);
+        linkFinder = lf;
+        Censor c = new Censor();
+        c.configure(config(mode));
+        censor = c;
+    }
+
+    private static int config(String mode) {
+        if ("XMLTEXT_WORDS".equals(mode)) return ChunkedTransformer.XMLTEXT_WORDS;
+        if ("XMLTEXT".equals(mode))       return ChunkedTransformer.XMLTEXT;
+        if ("WORDS".equals(mode))         return ChunkedTransformer.WORDS;
+        if ("LINES".equals(mode))         return ChunkedTransformer.LINES;
+        throw new IllegalArgumentException(mode);
+    }
+
+    @Benchmark
+    public String linkFinder() {
+        return linkFinder.transform(html);
+    }
+
+    @Benchmark
+    public String censor() {
+        return censor.transform(html);
+    }
+
+    @Benchmark
+    public Writer censorStream() {
+        return censor.transform(new StringReader(html), new StringWriter(html.length()));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ChunkedTransformerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,68 @@
+package org.mmbase.util.transformers;
+
+import java.util.*;
+import java.util.regex.*;
+import org.mmbase.util.Entry;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Compares {@link CompiledPatterns} with simply trying all patterns one by one.
+ * @author Michiel Meeuwissen
+ */
+
+public class CompiledPatternsTest {
+
+    private static final String[] PATTERNS = {
+        "mmbase", "(?i)mmbase", "MMBase", "(?i)micro", "soft", "a\\.b", "x", "(?i)X", "é", "(?i)É",
+        ".+@.+", "http://.+", "www\\..+", "[0-9]+", "(a)\\1", "(?i)ab+c", "^b", "c$", "(?<n>q)", "\\Qa.\\E", "b|c", "(?x)a # comment"
+    };
+    private static final String[] PIECES = {
+        "a", "b", "c", "A", "B", "C", ".", "@", "x", "X", "1", "23", "mmbase", "MMBASE", "MMBase", "micro", "soft", "é", "É", "www", "http://", " ", "q"
+    };
+
+    private static int naive(List<Entry<Pattern, String>> patterns, String s, boolean matches) {
+        for (int i = 0; i < patterns.size(); i++) {
+            Matcher m = patterns.get(i).getKey().matcher(s);
+            if (matches ? m.matches() : m.find()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void random() {
+        Random random = new Random(1);
+        for (int t = 0; t < 300; t++) {
+            List<Entry<Pattern, String>> patterns = new ArrayList<Entry<Pattern, String>>();
+            int n = 1 + random.nextInt(8);
+            for (int i = 0; i < n; i++) {
+                patterns.add(new Entry<Pattern, String>(Pattern.compile(PATTERNS[random.nextInt(PATTERNS.length)]), ""));
+            }
+            CompiledPatterns compiled = new CompiledPatterns(patterns);
+            for (int j = 0; j < 100; j++) {
+                StringBuilder s = new StringBuilder();
+                int l = random.nextInt(6);
+                for (int k = 0; k < l; k++) {
+                    s.append(PIECES[random.nextInt(PIECES.length)]);
+                }
+                String string = s.toString();
+                assertEquals(patterns + " matches '" + string + "'", naive(patterns, string, true), compiled.firstMatching(string));
+                assertEquals(patterns + " finds in '" + string + "'", naive(patterns, string, false), compiled.firstFinding(string));
+            }
+        }
+    }
+
+    @Test
+    public void caseInsensitiveIsOnlyAscii() {
+        List<Entry<Pattern, String>> patterns = new ArrayList<Entry<Pattern, String>>();
+        patterns.add(new Entry<Pattern, String>(Pattern.compile("(?i)é"), ""));
+        patterns.add(new Entry<Pattern, String>(Pattern.compile("(?i)e"), ""));
+        CompiledPatterns compiled = new CompiledPatterns(patterns);
+        assertEquals(-1, compiled.firstMatching("É"));
+        assertEquals(1, compiled.firstMatching("E"));
+        assertEquals(0, compiled.firstFinding("Eé"));
+    }
+
+}
@@ -0,0 +1,86 @@
+package org.mmbase.util.transformers;
+
+import java.io.*;
+import org.mmbase.util.ResourceLoader;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author Michiel Meeuwissen
+ * @version $Id$
+ */
+public class CompressionCacheTest {
+
+    private static final String CSS = "body {\n    color: #ffffff;\n    margin: 0px 0px 0px 0px;\n}\n";
+
+    @Test
+    public void css() {
+        CompressionCache cache = CompressionCache.getInstance();
+        YUICSSCompressor compressor = new YUICSSCompressor();
+        String expected = "body{color:#fff;margin:0}";
+        assertNull(cache.get(cache.key("css linebreakpos=-1", CSS)));
+        assertEquals(expected, compressor.transform(CSS));
+        assertEquals(expected, cache.get(cache.key("css linebreakpos=-1", CSS)));
+        assertEquals(expected, compressor.transform(CSS));
+
+        compressor.setCache(false);
+        assertEquals(expected, compressor.transform(CSS));
+    }
+
+    @Test
+    public void javascript() {
+        YUIJavaScriptCompressor compressor = new YUIJavaScriptCompressor();
+        compressor.setInitialNewline(false);
+        String js = "function sum(first, second) {\n    var result = first + second;\n    return result;\n}\n";
+        String compressed = compressor.transform(js);
+        assertEquals(compressed, compressor.transform(js));
+        compressor.setCache(false);
+        assertEquals(compressed, compressor.transform(js));
+        compressor.setCache(true);
+        compressor.setMunge(false);
+        // other settings, other entry
+        assertEquals(compressor.transform(js), new YUIJavaScriptCompressor() {{ setInitialNewline(false); setMunge(false); setCache(false); }}.transform(js));
+    }
+
+    @Test
+    public void key() {
+        CompressionCache cache = CompressionCache.getInstance();
+        String key = cache.key("css linebreakpos=-1", CSS);
+        assertEquals(64, key.length());
+        assertEquals(new Digest(Digest.SHA256).transform("css linebreakpos=-1\n" + CSS), key);
+        assertFalse(key.equals(cache.key("css linebreakpos=0", CSS)));
+    }
+
+    @Test
+    public void directory() throws IOException {
+        File dir = File.createTempFile("compressed", "");
+        dir.delete();
+        CompressionCache cache = CompressionCache.getInstance();
+        cache.setDirectory(dir);
+        try {
+            String key = cache.key("test", "input");
+            cache.put(key, "output");
+            assertTrue(new File(dir, key).isFile());
+            org.mmbase.cache.CacheManager.getCache("CompressedResources").clear();
+            assertEquals("output", cache.get(key));
+        } finally {
+            cache.setDirectory(null);
+            for (File f : dir.listFiles()) {
+                f.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void precompile() throws Exception {
+        ResourceLoader loader = ResourceLoader.getConfigurationRoot().getChildResourceLoader("compression");
+        CompressionCache cache = CompressionCache.getInstance();
+        assertEquals(Integer.valueOf(1), cache.precompile(loader, new YUICSSCompressor(), CompressionCache.CSS).get());
+        StringWriter css = new StringWriter();
+        org.mmbase.util.IOUtil.copy(loader.getReader("b.css"), css);
+        assertEquals("body{color:#fff;margin:0}", cache.get(cache.key("css linebreakpos=-1", css.toString())));
+        assertEquals(Integer.valueOf(1), cache.precompile(loader, new YUIJavaScriptCompressor(), CompressionCache.JAVASCRIPT).get());
+    }
+
+}
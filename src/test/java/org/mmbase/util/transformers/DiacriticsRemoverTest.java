@@ -21,4 +21,17 @@ public class DiacriticsRemoverTest  {
 
     }
 
+    @Test
+    public void table() throws Exception {
+        DiacriticsRemover norm = DiacriticsRemover.INSTANCE;
+        String ascii = "Annual report 2024";
+        assertSame(ascii, norm.transform(ascii));
+        assertEquals("a b", norm.transform("a^ `b"));
+        assertEquals("\u0436", norm.transform("\u0436\u0301"));
+        assertEquals("AAaa", norm.transform("\u00c5\u00c0\u00e0a"));
+        StringBuilder sb = new StringBuilder();
+        norm.transform("Z\u00fcrich", sb);
+        assertEquals("Zurich", sb.toString());
+    }
+
 }
@@ -0,0 +1,97 @@
+package org.mmbase.util.transformers;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Random;
+import org.mmbase.util.Encode;
+import org.mmbase.util.SerializableInputStream;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author Michiel Meeuwissen
+ * @version $Id$
+ */
+public class DigestTest {
+
+    private static final String FOX = "The quick brown fox jumps over the lazy dog";
+
+    @Test
+    public void md5() {
+        MD5 md5 = new MD5();
+        assertEquals("900150983cd24fb0d6963f7d28e17f72", md5.transform("abc"));
+        assertEquals("d41d8cd98f00b204e9800998ecf8427e", md5.transform(""));
+        MD5.MD5Implementation old = new MD5.MD5Implementation();
+        for (String s : new String[] {"", "abc", "café", "€ 10", FOX + FOX + FOX}) {
+            assertEquals(s, old.calcMD5(s), md5.transform(s));
+        }
+        assertEquals(md5.transform("abc"), Encode.encode("MD5", "abc"));
+    }
+
+    @Test
+    public void sha() {
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", new Digest(Digest.SHA256).transform("abc"));
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", Encode.encode("SHA256", "abc"));
+        assertEquals(128, Encode.encode("SHA512", "abc").length());
+    }
+
+    @Test
+    public void murmur() {
+        assertEquals("6c1b07bc7bbc4be347939ac4a93c437a", new Digest(Digest.MURMUR3_128).transform(FOX));
+        assertEquals("6c1b07bc7bbc4be3", Encode.encode("MURMUR3_64", FOX));
+        assertEquals("00000000000000000000000000000000", Encode.encode("MURMUR3_128", ""));
+    }
+
+    @Test
+    public void murmurBlocks() throws Exception {
+        byte[] bytes = new byte[1000];
+        new Random(1).nextBytes(bytes);
+        for (int length = 0; length < 40; length++) {
+            MessageDigest whole = new MurmurHash3();
+            whole.update(bytes, 0, length);
+            byte[] expected = whole.digest();
+            for (int split = 0; split <= length; split++) {
+                MessageDigest parts = new MurmurHash3();
+                parts.update(bytes, 0, split);
+                MessageDigest clone = (MessageDigest) parts.clone();
+                for (int i = split; i < length; i++) {
+                    parts.update(bytes[i]);
+                }
+                clone.update(bytes, split, length - split);
+                assertArrayEquals(expected, parts.digest());
+                assertArrayEquals(expected, clone.digest());
+            }
+        }
+    }
+
+    @Test
+    public void streams() throws IOException {
+        byte[] bytes = new byte[100000];
+        new Random(2).nextBytes(bytes);
+        for (DigestTransformer digest : new DigestTransformer[] {new MD5(), new Digest(Digest.SHA256), new Digest(Digest.SHA512), new Digest(Digest.MURMUR3_64), new Digest(Digest.MURMUR3_128)}) {
+            String expected = digest.transform(bytes);
+            assertEquals(expected, digest.transform(new ByteArrayInputStream(bytes)));
+            assertEquals(expected, digest.transform(ByteBuffer.wrap(bytes)));
+            ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+            direct.put(bytes).flip();
+            assertEquals(expected, digest.transform(direct));
+
+            SerializableInputStream sis = new SerializableInputStream(bytes);
+            assertEquals(expected, digest.transform(sis));
+            // can still be used
+            assertEquals(expected, digest.transform(sis));
+            assertArrayEquals(bytes, sis.get());
+
+            StringBuilder s = new StringBuilder();
+            for (int i = 0; i < 10000; i++) {
+                s.append(i).append(i % 2 == 0 ? 'a' : 'é');
+            }
+            assertEquals(digest.transform(s.toString()), digest.transform(new StringReader(s.toString())).toString());
+            s.append('€');
+            assertEquals(digest.transform(s.toString()), digest.transform(new StringReader(s.toString())).toString());
+            assertEquals(digest.transform("€ 10"), digest.transform(new StringReader("€ 10")).toString());
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+package org.mmbase.util.transformers;
+
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that transforming in parallel gives the same results as sequentially.
+ * @author Michiel Meeuwissen
+ */
+
+public class ParallelTransformationTest {
+
+    private static final String[] PIECES = {
+        "a", "<b>", "\"", "&", " ", "\n", "\r\n", "\t", "😀", "é", "ﬁ", "Ï", "mmbase", "http://www.mmbase.org", "?", "100%"
+    };
+
+    private static String input(int size) {
+        Random random = new Random(size);
+        StringBuilder buf = new StringBuilder(size + 100);
+        while (buf.length() < size) {
+            buf.append(PIECES[random.nextInt(PIECES.length)]);
+        }
+        return buf.toString();
+    }
+
+    @Test
+    public void segments() {
+        String in = input(3 * 1024 * 1024);
+        for (ParallelTransformation.Boundary boundary : ParallelTransformation.Boundary.values()) {
+            ParallelTransformation pt = new ParallelTransformation(boundary) {
+                @Override
+                protected String transformSegment(String segment) {
+                    return segment;
+                }
+            };
+            List<String> segments = pt.segments(in);
+            assertTrue(segments.size() > 10);
+            StringBuilder joined = new StringBuilder();
+            for (String segment : segments) {
+                if (joined.length() > 0 && boundary == ParallelTransformation.Boundary.LINE) {
+                    joined.append('\n');
+                }
+                joined.append(segment);
+            }
+            assertEquals(in, joined.toString());
+            assertEquals(in, pt.transform(in, 1));
+        }
+    }
+
+    private void same(String in, CharTransformer parallel, CharTransformer sequential) {
+        assertEquals(parallel.toString(), sequential.transform(in), parallel.transform(in));
+    }
+
+    @Test
+    public void transformers() {
+        String in = input(2 * 1024 * 1024);
+        {
+            Xml sequential = new Xml();
+            sequential.setParallelThreshold(0);
+            same(in, new Xml(), sequential);
+        }
+        {
+            UrlEscaper sequential = new UrlEscaper();
+            sequential.setParallelThreshold(0);
+            same(in, new UrlEscaper(), sequential);
+        }
+        {
+            Asciifier sequential = new Asciifier();
+            sequential.setParallelThreshold(0);
+            Asciifier parallel = new Asciifier();
+            sequential.setCollapseMultiple(true);
+            parallel.setCollapseMultiple(true);
+            same(in, parallel, sequential);
+        }
+        {
+            LinkFinder sequential = new LinkFinder();
+            sequential.configure(ChunkedTransformer.LINES);
+            sequential.setParallelThreshold(0);
+            LinkFinder parallel = new LinkFinder();
+            parallel.configure(ChunkedTransformer.LINES);
+            same(in, parallel, sequential);
+        }
+    }
+
+}
@@ -0,0 +1,155 @@
+package org.mmbase.util.transformers;
+
+import java.io.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author Michiel Meeuwissen
+ * @version $Id$
+ */
+public class TagStripperTest {
+
+    private String strip(TagStripper stripper, String in) {
+        return stripper.transform(new StringReader(in), new StringWriter()).toString();
+    }
+
+    private String xss(String in) {
+        return strip(TagStripper.createXSSStripper(), in);
+    }
+
+    private String all(String in) {
+        return strip(TagStripper.createAllStripper(), in);
+    }
+
+    @Test
+    public void xssTags() {
+        assertEquals("hello <b>world</b>", xss("hello <b>world</b>"));
+        assertEquals("<p>Upper</p>", xss("<P>Upper</P>"));
+        assertEquals("a<br />b<br />c", xss("a<br>b<br/>c"));
+        assertEquals("beforeafter", xss("before<script type='text/javascript'>var a = '</b>';</script>after"));
+        assertEquals("b", xss("<script>a</SCRIPT >b"));
+        // like in browsers, the contents of an iframe end at the first end tag
+        assertEquals("insiderest", xss("<iframe src='x'><iframe></iframe>inside</iframe>rest"));
+        assertEquals("ok", xss("<object data='x'><param name='a'></object>ok"));
+        assertEquals("<b>unclosed</b>", xss("<b>unclosed"));
+        assertEquals("stray", xss("</b>stray"));
+        assertEquals("<ul><li>a</li><li>b</li></ul>", xss("<ul><li>a<li>b</ul>"));
+        assertEquals("<!-- comment -->text", xss("<!-- comment -->text"));
+        assertEquals("y", xss("<![CDATA[x]]>y"));
+        assertEquals("a", xss("a<b"));
+    }
+
+    @Test
+    public void xssAttributes() {
+        assertEquals("<a href=\"http://x.nl/\">link</a>", xss("<a href=\"http://x.nl/\" onclick=\"evil()\">link</a>"));
+        assertEquals("<div class=\"x\">text</div>", xss("<DIV CLASS=x ONMOUSEOVER='y'>text</div>"));
+        assertEquals("<img src=\"x\" />", xss("<img src=x onerror=alert(1)>"));
+        assertEquals("<a>x</a>", xss("<a href='javascript:alert(1)'>x</a>"));
+        assertEquals("<a>x</a>", xss("<a href=\"jav&#x09;ascript:alert(1)\">x</a>"));
+        assertEquals("<a>x</a>", xss("<a href=\"&#106avascript:alert(1)\">x</a>"));
+        assertEquals("<a>x</a>", xss("<a href=\" javascript:alert(1)\">x</a>"));
+        assertEquals("<img src=\"a.png\" alt=\"x &quot;y&quot;\" />", xss("<img src=\"a.png\" alt='x \"y\"'>"));
+        assertEquals("<input type=\"checkbox\" checked=\"checked\" />", xss("<input type=checkbox checked>"));
+        assertEquals("<b title=\"a>b\">t</b>", xss("<b title='a>b'>t</b>"));
+    }
+
+    @Test
+    public void comments() {
+        assertEquals("<!---->-->", xss("<!--><script>alert(1)</script>-->"));
+        assertEquals("<!---->-->", xss("<!---><script>alert(1)</script>-->"));
+        assertEquals("<!-- x --> -->", xss("<!-- x --!><script>alert(1)</script> -->"));
+        assertEquals("a", xss("<!-- x -- y -->a"));
+        assertEquals("<!---->-->", all("<!--><script>alert(1)</script>-->"));
+        assertEquals("<!-- x --> -->", all("<!-- x --!><script>alert(1)</script> -->"));
+        assertFalse(TagStripper.isSafeComment(">x"));
+        assertFalse(TagStripper.isSafeComment("->x"));
+        assertFalse(TagStripper.isSafeComment("a--b"));
+        assertTrue(TagStripper.isSafeComment(" comment "));
+    }
+
+    @Test
+    public void rawText() {
+        for (String element : new String[] {"textarea", "title", "xmp", "noscript", "noembed", "noframes", "plaintext"}) {
+            String out = xss("<" + element + "><!--</" + element + "><img src=x onerror=alert(1)>--></" + element + ">");
+            assertFalse(out, out.contains("onerror"));
+            assertFalse(out, out.contains("<!--"));
+        }
+        assertEquals("<textarea>&lt;!--</textarea><img src=\"x\" />-->", xss("<textarea><!--</textarea><img src=x onerror=alert(1)>--></textarea>"));
+        assertEquals("<textarea>&lt;b&gt; &amp; caf&eacute;</textarea>", xss("<textarea><b&gt; &amp; caf&eacute;</textarea>"));
+        assertEquals("<title>a &lt;b> c</title>", xss("<title>a <b> c</TITLE>"));
+        assertEquals("<xmp>&lt;p></xmp>", xss("<xmp><p></xmp>"));
+        assertEquals("<img src=\"x\" />-->rest", xss("<iframe><!--</iframe><img src=x onerror=alert(1)>--></iframe>rest"));
+        assertEquals("a &lt;b> c", all("<textarea>a <b> c</textarea>"));
+        assertEquals("caf&eacute;", all("<title>caf&eacute;</title>"));
+    }
+
+    @Test
+    public void scriptUrls() {
+        assertEquals("<a>x</a>", xss("<a href=\"vbscript:msgbox(1)\">x</a>"));
+        assertEquals("<a>x</a>", xss("<a href=\"DATA:text/html;base64,PHNjcmlwdD5hbGVydCgxKTwvc2NyaXB0Pg==\">x</a>"));
+        assertEquals("<img />", xss("<img src=\"javascript:alert(1)\">"));
+        assertEquals("<form><button>x</button></form>", xss("<form action=\"javascript:alert(1)\"><button formaction=\"data:x\">x</button></form>"));
+        assertEquals("<math><mi>x</mi></math>", xss("<math><mi xlink:href=\"javascript:alert(1)\">x</mi></math>"));
+        assertEquals("<svg><a>x</a></svg>", xss("<svg><a xlink:href=\"http://x.nl/\">x</a></svg>"));
+        // only url attributes are checked for script urls
+        assertEquals("<p title=\"data: none\">x</p>", xss("<p title=\"data: none\">x</p>"));
+        assertEquals("<img src=\"http://x.nl/data:x\" />", xss("<img src=\"http://x.nl/data:x\">"));
+    }
+
+    @Test
+    public void unresolvedReferences() {
+        assertEquals("<a href=\"javascript&amp;colon;alert(1)\">x</a>", xss("<a href=\"javascript&colon;alert(1)\">x</a>"));
+        assertEquals("<a href=\"java&amp;Tab;script:alert(1)\">x</a>", xss("<a href=\"java&Tab;script:alert(1)\">x</a>"));
+        assertEquals("<a href=\"javascript&amp;colon;alert(1)\">x</a>", xss("<a href=\"javascript&amp;colon;alert(1)\">x</a>"));
+        assertEquals("<a href=\"x?a=1&amp;b=2\">x</a>", xss("<a href=\"x?a=1&b=2\">x</a>"));
+    }
+
+    @Test
+    public void text() {
+        assertEquals("a &amp; b &lt; c & d", xss("a &amp; b &lt; c & d"));
+        assertEquals("&lt;script&gt;", xss("&lt;script&gt;"));
+        assertEquals("x &lt; y and y > z", xss("x < y and y > z"));
+        assertEquals("line1\nline2", xss("line1\r\nline2"));
+        assertEquals("<p>a b</p>", xss("<p>a\nb</p>"));
+        assertEquals("<pre>a\nb</pre>", xss("<pre>a\nb</pre>"));
+    }
+
+    @Test
+    public void escapeAmps() {
+        TagStripper stripper = TagStripper.createXSSStripper().escapeAmps(true);
+        assertEquals("a &amp; b &lt; c &amp; d", strip(stripper, "a &amp; b &lt; c & d"));
+        assertEquals("café &#233; &amp;foo;", strip(stripper, "caf&eacute; &#233; &foo;"));
+        assertEquals("<span title=\"a&amp;b\">s</span>", strip(stripper, "<span title=\"a&amp;b\">s</span>"));
+    }
+
+    @Test
+    public void addBrs() {
+        TagStripper stripper = TagStripper.createXSSStripper().addBrs(true);
+        assertEquals("line1<br class='auto' />line2", strip(stripper, "line1\nline2"));
+        assertEquals("<pre>a\nb</pre>", strip(stripper, "<pre>a\nb</pre>"));
+    }
+
+    @Test
+    public void stripAll() {
+        assertEquals("hello world", all("hello <b>world</b>"));
+        assertEquals("para 1 para 2", all("<p>para 1</p><p>para 2</p>"));
+        assertEquals("a b c", all("<div>a<p>b</p>c</div>"));
+        assertEquals("after", all("<script>alert('x');</script>after"));
+        assertEquals("link", all("<a href=\"http://x.nl/\">link</a>"));
+        assertEquals("a\nb\nc", strip(TagStripper.createAllStripper().addNewlines(true), "a<br>b<br/>c"));
+        assertEquals("para 1\n\npara 2", strip(TagStripper.createAllStripper().addNewlines(true), "<p>para 1</p><p>para 2</p>"));
+    }
+
+    @Test
+    public void largeInput() {
+        StringBuilder in = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            in.append("<p onclick='x'>paragraph ").append(i).append("</p><script>var a = '<p>';</script>");
+            expected.append("<p>paragraph ").append(i).append("</p>");
+        }
+        assertEquals(expected.toString(), xss(in.toString()));
+    }
+
+}
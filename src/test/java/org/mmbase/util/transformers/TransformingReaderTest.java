@@ -0,0 +1,47 @@
+package org.mmbase.util.transformers;
+
+import java.io.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author Michiel Meeuwissen
+ */
+
+public class TransformingReaderTest   {
+
+    private String read(Reader reader) throws IOException {
+        StringWriter result = new StringWriter();
+        org.mmbase.util.IOUtil.copy(reader, result, 7);
+        reader.close();
+        return result.toString();
+    }
+
+    @Test
+    public void streaming() throws IOException {
+        StringBuilder in = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            in.append("line ").append(i).append(" café\n");
+            expected.append("LINE ").append(i).append(" CAF\\u00c9\n");
+        }
+        TransformingReader reader = new TransformingReader(new StringReader(in.toString()), new ChainedCharTransformer().add(new UpperCaser(), new UnicodeEscaper()));
+        assertEquals(expected.toString(), read(reader));
+        assertNull(reader.getException());
+    }
+
+    @Test
+    public void notStreaming() throws IOException {
+        TransformingReader reader = new TransformingReader(new StringReader("  a   b  "), new SpaceReducer());
+        assertEquals(new SpaceReducer().transform("  a   b  "), read(reader));
+    }
+
+    @Test
+    public void readChar() throws IOException {
+        TransformingReader reader = new TransformingReader(new StringReader("ab"), new UpperCaser());
+        assertEquals('A', reader.read());
+        assertEquals('B', reader.read());
+        assertEquals(-1, reader.read());
+    }
+
+}
@@ -28,8 +28,30 @@ public class TransformingWriterTest   {
         String testString = "a=b;";
         writer.write(testString);
         writer.close();
+        assertEquals("A=B;", out.toString().trim());
+        assertNull(writer.getException());
+    }
 
+    @Test
+    public void streaming() throws IOException {
+        Writer out = new StringWriter();
+        TransformingWriter writer = new TransformingWriter(out, new ChainedCharTransformer().add(new UpperCaser(), new UnicodeEscaper()));
+        writer.write("hello ");
+        writer.flush();
+        assertEquals("HELLO ", out.toString());
+        writer.write("w\u00f6rld");
+        writer.close();
+        assertEquals("HELLO W\\u00d6RLD", out.toString());
+    }
 
+    @Test
+    public void notStreaming() throws IOException {
+        Writer out = new StringWriter();
+        TransformingWriter writer = new TransformingWriter(out, new ChainedCharTransformer().add(new UpperCaser(), new SpaceReducer(), new Trimmer()));
+        writer.write("  hello  ");
+        writer.write(" world  ");
+        writer.close();
+        assertEquals("HELLO WORLD", out.toString());
     }
 
 }
@@ -102,6 +102,56 @@ public class XmlFieldTest  {
         assertTrue("\n" + expectedResult + "\n!=\n" + result, expectedResult.equals(result));
 
     }
+
+    @Test(timeout = 2000)
+    public void unclosedTable() {
+        // used to loop forever
+        result = XmlField.richToXML("a\n\n{|\n| a || b\nc");
+        expectedResult = "<p>a</p><table><tr><td> a </td><td> b</td>c</tr></table><p></p>";
+        assertEquals(expectedResult, result);
+    }
+
+    @Test(timeout = 10000)
+    public void largeText() {
+        // this used to take time quadratic in the size of the text
+        StringBuilder in = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            in.append("some _emphasized_   text\n- a\n- b\n\n");
+            expected.append("<p>some <em>emphasized</em> text</p><ul><li>a</li><li>b</li></ul>");
+        }
+        assertEquals(expected.toString(), XmlField.richToHTMLBlock(in.toString(), false, true, false));
+    }
+
+    private static final String MMXF = "<mmxf xmlns=\"http://www.mmbase.org/xmlns/mmxf\"><section><h>Title</h><p>hallo <em>x</em> &amp; y</p><section><h>Sub</h><p id=\"p2\">z</p></section></section></mmxf>";
+
+    private static String transform(int to, String data) {
+        XmlField field = new XmlField();
+        field.configure(to);
+        return field.transform(data);
+    }
+
+    @Test
+    public void ascii() {
+        assertEquals("Titlehallo x & ySubz", transform(XmlField.ASCII, MMXF));
+    }
+
+    @Test
+    public void xhtml() {
+        assertEquals("<h1>Title</h1><p>hallo <em>x</em> &amp; y</p><h2>Sub</h2><p id=\"p2\">z</p>", transform(XmlField.XHTML, MMXF));
+    }
+
+    @Test
+    public void sameAsXslTransformer() throws Exception {
+        // what XmlField used to do for every transformation
+        java.net.URL xsl = org.mmbase.util.ResourceLoader.getConfigurationRoot().getResource("xslt/text.xslt");
+        java.io.StringWriter res = new java.io.StringWriter();
+        org.mmbase.util.XSLTransformer.transform(new javax.xml.transform.stream.StreamSource(new java.io.StringReader(MMXF)), xsl, new javax.xml.transform.stream.StreamResult(res), null);
+        assertEquals(res.toString(), transform(XmlField.ASCII, MMXF));
+        // the compiled pipeline is reused
+        assertEquals(res.toString(), transform(XmlField.ASCII, MMXF));
+    }
+
     public static int IN                      = 0;
     public static int AFTER_PREHANDLE_HEADERS = 1;
     public static int AFTER_HANDLE_LIST       = 2;
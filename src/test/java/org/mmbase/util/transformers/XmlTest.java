@@ -0,0 +1,67 @@
+package org.mmbase.util.transformers;
+
+import java.io.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author Michiel Meeuwissen
+ * @version $Id$
+ */
+public class XmlTest {
+
+    @Test
+    public void escape() {
+        assertEquals("a &amp; b &lt;c&gt; &quot;d&quot; 'e'", Xml.XMLEscape("a & b <c> \"d\" 'e'"));
+        assertEquals("&amp;&quot;&apos;<>", Xml.XMLAttributeEscape("&\"'<>"));
+        assertEquals("&amp;&quot;'", Xml.XMLAttributeEscape("&\"'", '"'));
+        assertEquals("&amp;\"&apos;", Xml.XMLAttributeEscape("&\"'", '\''));
+        assertEquals("a &quot;b&quot;  c", new Xml(Xml.ESCAPE_ATTRIBUTE_HTML).transform("a \"b\"\r\nc"));
+        assertEquals("", Xml.XMLEscape(null));
+    }
+
+    @Test
+    public void sameInstance() {
+        String clean = "nothing to escape here, café";
+        assertSame(clean, Xml.XMLEscape(clean));
+        assertSame(clean, Xml.XMLAttributeEscape(clean));
+        assertSame(clean, new Xml().transform(clean));
+        String url = "nothing_to_escape";
+        assertSame(url, UrlEscaper.escape(url));
+        assertSame(url, new UnicodeEscaper().transform(url));
+    }
+
+    @Test
+    public void appendable() throws IOException {
+        StringWriter writer = new StringWriter();
+        Xml.XMLEscape("<a>", writer);
+        Xml.XMLAttributeEscape("'", writer);
+        assertEquals("&lt;a&gt;&apos;", writer.toString());
+
+        StringBuilder sb = new StringBuilder("x");
+        UrlEscaper.escape("a b", sb);
+        assertEquals("xa%20b", sb.toString());
+    }
+
+    @Test
+    public void reader() {
+        StringBuilder in = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            in.append("<p>").append(i).append("</p>");
+            expected.append("&lt;p&gt;").append(i).append("&lt;/p&gt;");
+        }
+        assertEquals(expected.toString(), new Xml().transform(new StringReader(in.toString()), new StringWriter()).toString());
+    }
+
+    @Test
+    public void writer() throws IOException {
+        StringWriter result = new StringWriter();
+        Writer w = new Xml().transformingWriter(result);
+        w.write("a<");
+        w.write("&b".toCharArray());
+        w.close();
+        assertEquals("a&lt;&amp;b", result.toString());
+    }
+
+}
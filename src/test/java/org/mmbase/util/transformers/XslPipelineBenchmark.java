@@ -0,0 +1,76 @@
+package org.mmbase.util.transformers;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.mmbase.util.ResourceLoader;
+import org.mmbase.util.XSLTransformer;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the MMXF conversions of {@link XmlField} by {@link XslPipeline}, compared with {@link
+ * XSLTransformer}, which XmlField used for every transformation before. This is not a unit test,
+ * run it with the main method (on the test classpath).
+ *
+ * @author Michiel Meeuwissen
+ * @since MMBase-2.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XslPipelineBenchmark {
+
+    /**
+     * The style sheets of MMXF_ASCII and MMXF_XHTML
+     */
+    @Param({"text.xslt", "mmxf2xhtml.xslt"})
+    public String xslt;
+
+    /**
+     * The number of sections in the document
+     */
+    @Param({"1", "100"})
+    public int sections;
+
+    private String mmxf;
+    private URL xsl;
+
+    @Setup
+    public void setup() {
+        StringBuilder buf = new StringBuilder("<mmxf xmlns=\"http://www.mmbase.org/xmlns/mmxf\">");
+        for (int i = 0; i < sections; i++) {
+            buf.append("<section><h>Title ").append(i).append("</h><p>hallo <em>x</em> &amp; y</p>");
+            buf.append("<section><h>Sub</h><p id=\"p").append(i).append("\">z</p></section></section>");
+        }
+        mmxf = buf.append("</mmxf>").toString();
+        xsl = ResourceLoader.getConfigurationRoot().getResource("xslt/" + xslt);
+    }
+
+    @Benchmark
+    public String xslPipeline() throws TransformerException {
+        return XslPipeline.getInstance(xslt).transform(mmxf);
+    }
+
+    @Benchmark
+    public String xslTransformer() throws TransformerException {
+        StringWriter result = new StringWriter();
+        XSLTransformer.transform(new StreamSource(new StringReader(mmxf)), xsl, new StreamResult(result), null);
+        return result.toString();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(XslPipelineBenchmark.class.getSimpleName()).build()).run();
+    }
+}
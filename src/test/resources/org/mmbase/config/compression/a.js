@@ -0,0 +1,5 @@
+/* a test script */
+function sum(first, second) {
+    var result = first + second;
+    return result;
+}